@@ -117,6 +117,37 @@ CREATE TABLE `system_state` (
 PRIMARY KEY (`tag`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8;
 
+CREATE TABLE `leader_lease` (
+  `name` varchar(64) NOT NULL,
+  `holder` varchar(128) NOT NULL,
+  `fencing_token` bigint(20) NOT NULL,
+  `expires_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  `updated_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+PRIMARY KEY (`name`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+CREATE TABLE `change_version` (
+  `entity` varchar(64) NOT NULL,
+  `version` bigint(20) NOT NULL,
+  `updated_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+PRIMARY KEY (`entity`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+INSERT INTO `change_version` (`entity`, `version`) VALUES ('line_items', 0), ('reallocated_plans', 0);
+
+CREATE TABLE `gp_instance_heartbeat` (
+  `instance_id` varchar(128) NOT NULL,
+  `base_url` varchar(256) NOT NULL,
+  `heartbeat_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+PRIMARY KEY (`instance_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+CREATE TABLE `gp_replica_heartbeat` (
+  `instance_id` varchar(128) NOT NULL,
+  `beat_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+PRIMARY KEY (`instance_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
 CREATE TABLE `line_items_tokens_summary` (
 `id` int(11) NOT NULL AUTO_INCREMENT,
 `summary_window_start_timestamp` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
@@ -128,9 +159,21 @@ CREATE TABLE `line_items_tokens_summary` (
 `created_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
 PRIMARY KEY (`id`),
 KEY `summary_window` (`summary_window_start_timestamp`,`summary_window_end_timestamp`),
+KEY `summary_window_start_id` (`summary_window_start_timestamp`,`id`),
 KEY `report_timestamp` (`created_at`)
 ) ENGINE=InnoDB AUTO_INCREMENT=201 DEFAULT CHARSET=utf8;
 
+CREATE TABLE `line_items_tokens_rollup` (
+`line_item_id` varchar(64) NOT NULL,
+`plan_start_timestamp` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+`bidder_code` varchar(64) NOT NULL,
+`ext_line_item_id` varchar(64) NOT NULL,
+`tokens` int(11) NOT NULL DEFAULT '0',
+`updated_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+PRIMARY KEY (`line_item_id`,`plan_start_timestamp`),
+KEY `plan_start` (`plan_start_timestamp`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
 CREATE TABLE `admin_event` (
   `id` varchar(36) NOT NULL,
   `app_name` varchar(64) NOT NULL,
@@ -12,9 +12,16 @@ import org.prebid.pg.gp.server.model.GPConstants;
 import org.prebid.pg.gp.server.spring.config.app.ServerAuthDataConfiguration;
 import org.prebid.pg.gp.server.spring.config.app.ServerAuthDataConfiguration.Principal;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 /**
  * An implementation of {@code AuthProvider} for user authentication and authorization.
@@ -25,11 +32,29 @@ public class BasicAuthProvider implements AuthProvider {
 
     private final ServerAuthDataConfiguration serverAuthDataConfig;
 
+    // principals by username, with roles split once at start-up
+    private final Map<String, Credentials> credentials;
+
     public BasicAuthProvider(ServerAuthDataConfiguration serverAuthDataConfig) {
         this.serverAuthDataConfig = Objects.requireNonNull(serverAuthDataConfig);
+        this.credentials = precompute(serverAuthDataConfig.getPrincipals());
         logger.info("ServerAuthDataConfiguration={0}", serverAuthDataConfig);
     }
 
+    private static Map<String, Credentials> precompute(List<Principal> principals) {
+        final Map<String, Credentials> credentials = new HashMap<>();
+        if (principals != null) {
+            for (Principal principal : principals) {
+                final Set<String> roles = principal.getRoles() == null
+                        ? Collections.emptySet()
+                        : new HashSet<>(Arrays.asList(principal.getRoles().split("\\s*,\\s*")));
+                // the first principal of a username wins, as with the former linear scan
+                credentials.putIfAbsent(principal.getUsername(), new Credentials(principal, roles));
+            }
+        }
+        return Collections.unmodifiableMap(credentials);
+    }
+
     @Override
     public void authenticate(JsonObject authInfo, Handler<AsyncResult<User>> resultHandler) {
         if (!serverAuthDataConfig.isAuthenticationEnabled()) {
@@ -49,12 +74,11 @@ public class BasicAuthProvider implements AuthProvider {
             return;
         }
 
-        for (Principal principal : serverAuthDataConfig.getPrincipals()) {
-            logger.debug(principal);
-            if (principal.getUsername().equals(username) && principal.getPassword().equals(password)) {
-                resultHandler.handle(Future.succeededFuture(new BasicAuthUser(this, username, principal.getRoles())));
-                return;
-            }
+        final Credentials userCredentials = credentials.get(username);
+        if (userCredentials != null && userCredentials.matchPassword(password)) {
+            resultHandler.handle(Future.succeededFuture(
+                    new BasicAuthUser(this, username, userCredentials.principal.getRoles())));
+            return;
         }
 
         logger.warn("Failed authentication");
@@ -73,32 +97,46 @@ public class BasicAuthProvider implements AuthProvider {
         if (!serverAuthDataConfig.isAuthenticationEnabled()) {
             throw new IllegalStateException("BasicAuthentication is not enabled.");
         }
+        final Credentials userCredentials = credentials.get(username);
+        if (userCredentials == null) {
+            logger.info("Unknown user {0} is not allowed access to resource protected by role {1}",
+                    username, resourceRole);
+            resultHandler.handle(Future.succeededFuture(false));
+            return;
+        }
+
+        final Set<String> assignedUserRoles = userCredentials.roles;
+        logger.debug("ResourceRole = {0}, User {1} has assigned roles {2}", resourceRole, username, assignedUserRoles);
         boolean authorized = false;
-        for (Principal principal : serverAuthDataConfig.getPrincipals()) {
-            logger.debug(principal);
-            if (principal.getUsername().equals(username)) {
-                List<String> assignedUserRoles = Arrays.asList(principal.getRoles().split("\\s*,\\s*"));
-                logger.debug(
-                        "ResourceRole = {0}, User {1} has assigned roles {2}", resourceRole, username, assignedUserRoles
-                );
-                if (assignedUserRoles.contains(GPConstants.ADMIN_ROLE) || assignedUserRoles.contains(resourceRole)) {
-                    logger.debug(
-                            "User {0} is allowed access to resource protected by role {1}", username, resourceRole
-                    );
-                    authorized = true;
-                } else {
-                    logger.info(
-                            "User {0} is not allowed access to resource protected by role {1}",
-                            username, resourceRole
-                    );
-                }
-                resultHandler.handle(Future.succeededFuture(authorized));
-                return;
-            }
+        if (assignedUserRoles.contains(GPConstants.ADMIN_ROLE) || assignedUserRoles.contains(resourceRole)) {
+            logger.debug("User {0} is allowed access to resource protected by role {1}", username, resourceRole);
+            authorized = true;
+        } else {
+            logger.info("User {0} is not allowed access to resource protected by role {1}", username, resourceRole);
         }
+        resultHandler.handle(Future.succeededFuture(authorized));
     }
 
     public ServerAuthDataConfiguration getServerAuthDataConfiguration() {
         return this.serverAuthDataConfig;
     }
+
+    private static class Credentials {
+
+        private final Principal principal;
+
+        private final byte[] password;
+
+        private final Set<String> roles;
+
+        Credentials(Principal principal, Set<String> roles) {
+            this.principal = principal;
+            this.password = principal.getPassword().getBytes(StandardCharsets.UTF_8);
+            this.roles = Collections.unmodifiableSet(roles);
+        }
+
+        boolean matchPassword(String candidate) {
+            return MessageDigest.isEqual(password, candidate.getBytes(StandardCharsets.UTF_8));
+        }
+    }
 }
@@ -0,0 +1,103 @@
+package org.prebid.pg.gp.server.auth;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.web.RoutingContext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A Basic authentication handler for machine to machine routes that keeps no session.
+ * <p>
+ * Successfully authenticated {@code Authorization} headers are cached with the decoded principal, so repeated
+ * requests with the same credentials are authenticated with one map lookup. Each request still gets its own
+ * {@link BasicAuthUser}, as users cache permissions in a structure that is not safe to share between event loops.
+ */
+public class StatelessBasicAuthHandler implements Handler<RoutingContext> {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatelessBasicAuthHandler.class);
+
+    private static final String BASIC_PREFIX = "Basic ";
+
+    static final int MAX_CACHED_HEADERS = 1024;
+
+    private final BasicAuthProvider authProvider;
+
+    private final String realm;
+
+    private final ConcurrentMap<String, JsonObject> principals = new ConcurrentHashMap<>();
+
+    public StatelessBasicAuthHandler(BasicAuthProvider authProvider, String realm) {
+        this.authProvider = Objects.requireNonNull(authProvider);
+        this.realm = Objects.requireNonNull(realm);
+    }
+
+    @Override
+    public void handle(RoutingContext routingContext) {
+        final String authorization = routingContext.request().getHeader(HttpHeaders.AUTHORIZATION);
+        if (authorization == null || !authorization.regionMatches(true, 0, BASIC_PREFIX, 0, BASIC_PREFIX.length())) {
+            unauthorized(routingContext);
+            return;
+        }
+
+        final JsonObject principal = principals.get(authorization);
+        if (principal != null) {
+            proceed(routingContext, principal);
+            return;
+        }
+
+        final String decoded;
+        try {
+            decoded = new String(Base64.getDecoder().decode(authorization.substring(BASIC_PREFIX.length()).trim()),
+                    StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            unauthorized(routingContext);
+            return;
+        }
+        final int separator = decoded.indexOf(':');
+        if (separator < 0) {
+            unauthorized(routingContext);
+            return;
+        }
+
+        final JsonObject authInfo = new JsonObject()
+                .put("username", decoded.substring(0, separator))
+                .put("password", decoded.substring(separator + 1));
+        authProvider.authenticate(authInfo, ar -> {
+            if (ar.failed()) {
+                unauthorized(routingContext);
+                return;
+            }
+            final JsonObject authenticated = ar.result().principal();
+            // only valid credentials are cached, their number is bounded by the configured principals
+            if (principals.size() < MAX_CACHED_HEADERS) {
+                principals.putIfAbsent(authorization, authenticated);
+            }
+            proceed(routingContext, authenticated);
+        });
+    }
+
+    private void proceed(RoutingContext routingContext, JsonObject principal) {
+        routingContext.setUser(
+                new BasicAuthUser(authProvider, principal.getString("username"), principal.getString("roles")));
+        routingContext.next();
+    }
+
+    private void unauthorized(RoutingContext routingContext) {
+        logger.debug("Unauthorized request to {0}", routingContext.request().path());
+        routingContext.response()
+                .putHeader(HttpHeaderNames.WWW_AUTHENTICATE, String.format("Basic realm=\"%s\"", realm))
+                .setStatusCode(HttpResponseStatus.UNAUTHORIZED.code())
+                .end();
+    }
+
+}
@@ -0,0 +1,171 @@
+package org.prebid.pg.gp.server.breaker;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.prebid.pg.gp.server.exception.ServiceOverloadedException;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.spring.config.app.AdmissionControlConfiguration;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+
+/**
+ * An admission controller bounding the number of commands in flight.
+ * <p>
+ * Commands over the in-flight limit wait in a bounded queue for at most the configured queue time budget,
+ * any other command is shed right away with a {@link ServiceOverloadedException}.
+ */
+public class AdmissionController {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionController.class);
+
+    private final String name;
+
+    private final Vertx vertx;
+
+    private final AdmissionControlConfiguration config;
+
+    private final Metrics metrics;
+
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+
+    private int inFlight;
+
+    public AdmissionController(String name, Vertx vertx, AdmissionControlConfiguration config, Metrics metrics) {
+        this.name = Objects.requireNonNull(name);
+        this.vertx = Objects.requireNonNull(vertx);
+        this.config = Objects.requireNonNull(config);
+        this.metrics = Objects.requireNonNull(metrics);
+
+        metrics.registerGauge(metricName("in-flight"), this::getInFlight);
+        metrics.registerGauge(metricName("queued"), this::getQueued);
+        logger.info("Created AdmissionController {0}, with config={1}", name, config);
+    }
+
+    /**
+     * Executes the passed in {@code command} once admitted.
+     *
+     * @param command the command to be executed
+     * @param <T> type parameter
+     * @return a future of T, failed with {@link ServiceOverloadedException} if the command was shed
+     */
+    public <T> Future<T> executeCommand(Handler<Future<T>> command) {
+        final Future<T> result = Future.future();
+        if (!config.getEnabled()) {
+            command.handle(result);
+            return result;
+        }
+
+        acquire().setHandler(admission -> {
+            if (admission.failed()) {
+                result.fail(admission.cause());
+                return;
+            }
+            final Future<T> passedFuture = Future.future();
+            passedFuture.setHandler(ar -> {
+                release();
+                result.handle(ar);
+            });
+            try {
+                command.handle(passedFuture);
+            } catch (RuntimeException e) {
+                passedFuture.tryFail(e);
+            }
+        });
+        return result;
+    }
+
+    Future<Void> acquire() {
+        final Waiter waiter;
+        synchronized (this) {
+            if (inFlight < config.getMaxInFlight()) {
+                inFlight++;
+                metrics.incCounter(metricName("admitted"));
+                return Future.succeededFuture();
+            }
+            if (waiters.size() >= config.getMaxQueued()) {
+                metrics.incCounter(metricName("shed"));
+                return Future.failedFuture(overloaded("queue is full"));
+            }
+            waiter = new Waiter(System.currentTimeMillis());
+            waiters.addLast(waiter);
+        }
+        waiter.timerId = vertx.setTimer(config.getMaxQueueTimeMs(), id -> expire(waiter));
+        return waiter.future;
+    }
+
+    void release() {
+        final Waiter next;
+        synchronized (this) {
+            next = waiters.pollFirst();
+            if (next == null) {
+                inFlight--;
+                return;
+            }
+        }
+        // the permit of the finished command passes on to the next waiter
+        vertx.cancelTimer(next.timerId);
+        metrics.incCounter(metricName("admitted"));
+        metrics.updateTimer(metricName("queue-time"), System.currentTimeMillis() - next.enqueuedAt);
+        next.future.complete();
+    }
+
+    private void expire(Waiter waiter) {
+        synchronized (this) {
+            if (!waiters.remove(waiter)) {
+                return;
+            }
+        }
+        metrics.incCounter(metricName("shed"));
+        metrics.updateTimer(metricName("queue-time"), System.currentTimeMillis() - waiter.enqueuedAt);
+        waiter.future.fail(overloaded("queue time budget exceeded"));
+    }
+
+    private ServiceOverloadedException overloaded(String reason) {
+        return new ServiceOverloadedException(
+                String.format("Request shed by admission controller %s::%s", name, reason), config.getRetryAfterSec());
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueued() {
+        return waiters.size();
+    }
+
+    /**
+     * Gets the current load as the share of in-flight and queued commands over the configured capacity.
+     *
+     * @return a value between 0 and 1
+     */
+    public synchronized double getUtilization() {
+        if (!config.getEnabled()) {
+            return 0;
+        }
+        final int capacity = config.getMaxInFlight() + config.getMaxQueued();
+        return capacity <= 0 ? 1 : Math.min(1.0, (double) (inFlight + waiters.size()) / capacity);
+    }
+
+    private String metricName(String tag) {
+        return String.format("admission.%s.%s", name, tag);
+    }
+
+    private static class Waiter {
+
+        private final Future<Void> future = Future.future();
+
+        private final long enqueuedAt;
+
+        private volatile long timerId = -1;
+
+        Waiter(long enqueuedAt) {
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+}
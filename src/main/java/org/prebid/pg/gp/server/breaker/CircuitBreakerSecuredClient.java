@@ -20,6 +20,15 @@ public class CircuitBreakerSecuredClient {
                 .closeHandler(ignored -> circuitClosed());
     }
 
+    /**
+     * Creates a client sharing the circuit breaker of the given client, whose handlers are registered already.
+     *
+     * @param securedClient the client to share the circuit breaker of
+     */
+    protected CircuitBreakerSecuredClient(CircuitBreakerSecuredClient securedClient) {
+        this.plannerCircuitBreaker = securedClient.plannerCircuitBreaker;
+    }
+
     private void circuitOpened() {
         logger.warn("Circuit {0} opened", plannerCircuitBreaker.getBreaker().name());
     }
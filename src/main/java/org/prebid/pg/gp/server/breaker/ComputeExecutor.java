@@ -0,0 +1,152 @@
+package org.prebid.pg.gp.server.breaker;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.prebid.pg.gp.server.exception.ServiceOverloadedException;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.spring.config.app.ComputeExecutorConfiguration;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * An executor of CPU-bound work, such as JSON decoding of result sets and token reallocation,
+ * keeping it off the event loop.
+ * <p>
+ * Work runs on a dedicated worker pool, separate from the Vert.x worker pool used by JDBC calls,
+ * so a large catalog decode neither stalls the event loop nor starves database access.
+ * When the pool's queue is full, work is rejected with a {@link ServiceOverloadedException} rather than run on
+ * the calling thread, which may be an event loop. When the executor is disabled, work runs on the calling thread.
+ */
+public class ComputeExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ComputeExecutor.class);
+
+    private static final String POOL_NAME = "gp-compute";
+
+    private static final int REJECTED_RETRY_AFTER_SEC = 1;
+
+    private final ComputeExecutorConfiguration config;
+
+    private final Metrics metrics;
+
+    private final WorkerExecutor workerExecutor;
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final AtomicInteger running = new AtomicInteger();
+
+    public ComputeExecutor(Vertx vertx, ComputeExecutorConfiguration config, Metrics metrics) {
+        this.config = Objects.requireNonNull(config);
+        this.metrics = Objects.requireNonNull(metrics);
+        this.workerExecutor = config.getEnabled()
+                ? Objects.requireNonNull(vertx).createSharedWorkerExecutor(
+                        POOL_NAME, config.getPoolSize(), config.getMaxExecuteTimeMs(), TimeUnit.MILLISECONDS)
+                : null;
+
+        metrics.registerGauge(metricName("queued"), queued::get);
+        metrics.registerGauge(metricName("running"), running::get);
+        logger.info("Created ComputeExecutor with config={0}", config);
+    }
+
+    /**
+     * Applies the {@code mapper} to the result of the {@code input} future on the compute pool.
+     *
+     * @param input the future to map
+     * @param mapper the CPU-bound mapping
+     * @param stage name of the stage, used in metric names
+     * @param <T> type of the input
+     * @param <R> type of the result
+     * @return a future of the mapped result, completed on the caller's context
+     */
+    public <T, R> Future<R> map(Future<T> input, Function<T, R> mapper, String stage) {
+        return input.compose(value -> execute(value, mapper, stage));
+    }
+
+    /**
+     * Applies the {@code mapper} to the {@code value} on the compute pool.
+     *
+     * @param value the value to map
+     * @param mapper the CPU-bound mapping
+     * @param stage name of the stage, used in metric names
+     * @param <T> type of the input
+     * @param <R> type of the result
+     * @return a future of the mapped result, completed on the caller's context, failed with
+     *         {@link ServiceOverloadedException} if the queue of the pool is full
+     */
+    public <T, R> Future<R> execute(T value, Function<T, R> mapper, String stage) {
+        if (workerExecutor == null) {
+            return runOnCaller(value, mapper, stage);
+        }
+        // the slot is reserved before checking the limit, so concurrent callers cannot overshoot it
+        if (queued.incrementAndGet() > config.getMaxQueued()) {
+            queued.decrementAndGet();
+            metrics.incCounter(metricName("rejected"));
+            return Future.failedFuture(new ServiceOverloadedException(
+                    String.format("Compute pool queue is full::%s", stage), REJECTED_RETRY_AFTER_SEC));
+        }
+
+        final Future<R> result = Future.future();
+        final long enqueuedAt = System.currentTimeMillis();
+        workerExecutor.<R>executeBlocking(future -> {
+            queued.decrementAndGet();
+            running.incrementAndGet();
+            final long start = System.currentTimeMillis();
+            metrics.updateTimer(metricName(stage + ".queue-time"), start - enqueuedAt);
+            try {
+                future.complete(mapper.apply(value));
+            } catch (RuntimeException e) {
+                metrics.incCounter(metricName(stage + ".exc"));
+                future.fail(e);
+            } finally {
+                running.decrementAndGet();
+                metrics.updateTimer(metricName(stage + ".run-time"), System.currentTimeMillis() - start);
+            }
+        }, false, result);
+        return result;
+    }
+
+    private <T, R> Future<R> runOnCaller(T value, Function<T, R> mapper, String stage) {
+        final long start = System.currentTimeMillis();
+        try {
+            return Future.succeededFuture(mapper.apply(value));
+        } catch (RuntimeException e) {
+            metrics.incCounter(metricName(stage + ".exc"));
+            return Future.failedFuture(e);
+        } finally {
+            final long elapsed = System.currentTimeMillis() - start;
+            metrics.updateTimer(metricName(stage + ".run-time"), elapsed);
+            if (Context.isOnEventLoopThread()) {
+                metrics.updateTimer(metricName("event-loop-blocked-time"), elapsed);
+            }
+        }
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public int getRunning() {
+        return running.get();
+    }
+
+    /**
+     * Closes the compute pool.
+     */
+    public void close() {
+        if (workerExecutor != null) {
+            workerExecutor.close();
+        }
+    }
+
+    private String metricName(String tag) {
+        return String.format("compute.%s", tag);
+    }
+
+}
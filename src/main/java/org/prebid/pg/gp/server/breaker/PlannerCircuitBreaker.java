@@ -2,14 +2,21 @@ package org.prebid.pg.gp.server.breaker;
 
 import io.vertx.circuitbreaker.CircuitBreaker;
 import io.vertx.circuitbreaker.CircuitBreakerOptions;
+import io.vertx.circuitbreaker.CircuitBreakerState;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
+import org.prebid.pg.gp.server.exception.ServiceOverloadedException;
 import org.prebid.pg.gp.server.spring.config.app.CircuitBreakerConfiguration;
 
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A {@code CircuitBreaker} for general planner.
@@ -20,6 +27,10 @@ public class PlannerCircuitBreaker {
 
     private final CircuitBreaker breaker;
 
+    private final Map<CircuitBreakerState, AtomicLong> transitions = new EnumMap<>(CircuitBreakerState.class);
+
+    private volatile Instant lastTransitionAt;
+
     public PlannerCircuitBreaker(String name, Vertx vertx, CircuitBreakerConfiguration circuitBreakerConfiguration) {
         CircuitBreakerOptions circuitBreakerOptions = new CircuitBreakerOptions();
         circuitBreakerOptions.setMaxFailures(circuitBreakerConfiguration.getOpeningThreshold())
@@ -27,6 +38,12 @@ public class PlannerCircuitBreaker {
 
         breaker = CircuitBreaker
                 .create(Objects.requireNonNull(name), Objects.requireNonNull(vertx), circuitBreakerOptions);
+        for (CircuitBreakerState state : CircuitBreakerState.values()) {
+            transitions.put(state, new AtomicLong());
+        }
+        openHandler(ignored -> { });
+        halfOpenHandler(ignored -> { });
+        closeHandler(ignored -> { });
 
         logger.info(
                 "Created PlannerCircuitBreaker {0}, with options={1}",
@@ -41,7 +58,7 @@ public class PlannerCircuitBreaker {
      * @return this circuit breaker
      */
     public PlannerCircuitBreaker openHandler(Handler<Void> handler) {
-        breaker.openHandler(handler);
+        breaker.openHandler(transitionHandler(CircuitBreakerState.OPEN, handler));
         return this;
     }
 
@@ -52,7 +69,7 @@ public class PlannerCircuitBreaker {
      * @return this circuit breaker
      */
     public PlannerCircuitBreaker halfOpenHandler(Handler<Void> handler) {
-        breaker.halfOpenHandler(handler);
+        breaker.halfOpenHandler(transitionHandler(CircuitBreakerState.HALF_OPEN, handler));
         return this;
     }
 
@@ -63,27 +80,38 @@ public class PlannerCircuitBreaker {
      * @return this circuit breaker
      */
     public PlannerCircuitBreaker closeHandler(Handler<Void> handler) {
-        breaker.closeHandler(handler);
+        breaker.closeHandler(transitionHandler(CircuitBreakerState.CLOSED, handler));
         return this;
     }
 
     /**
-     * Executes the passed in {@code command}.
+     * Executes the passed in {@code command}. A command shed with a {@link ServiceOverloadedException} fails
+     * without counting as a failure of the breaker, the protected resource being healthy.
      *
      * @param command the command to be executed
      * @param <T> type parameter
      * @return a future of T
      */
     public <T> Future<T> executeCommand(Handler<Future<T>> command) {
-        return breaker.execute(future -> execute(command, future));
+        final AtomicReference<Throwable> shed = new AtomicReference<>();
+        return breaker.<T>execute(future -> execute(command, future, shed))
+                .compose(result -> shed.get() == null
+                        ? Future.succeededFuture(result)
+                        : Future.failedFuture(shed.get()));
     }
 
-    private <T> void execute(Handler<Future<T>> command, Future<T> future) {
+    private <T> void execute(Handler<Future<T>> command, Future<T> future, AtomicReference<Throwable> shed) {
         final Future<T> passedFuture = Future.future();
         command.handle(passedFuture);
         passedFuture
                 .compose(response -> succeedBreaker(response, future))
-                .recover(exception -> failBreaker(exception, future));
+                .recover(exception -> {
+                    if (exception instanceof ServiceOverloadedException) {
+                        shed.set(exception);
+                        return succeedBreaker(null, future);
+                    }
+                    return failBreaker(exception, future);
+                });
     }
 
     private <T> Future<T> succeedBreaker(T result, Future<T> future) {
@@ -96,6 +124,28 @@ public class PlannerCircuitBreaker {
         return future;
     }
 
+    private Handler<Void> transitionHandler(CircuitBreakerState state, Handler<Void> handler) {
+        return event -> {
+            transitions.get(state).incrementAndGet();
+            lastTransitionAt = Instant.now();
+            handler.handle(event);
+        };
+    }
+
+    /**
+     * Gets the number of transitions into the given {@code state} since start-up.
+     *
+     * @param state the state
+     * @return the number of transitions
+     */
+    public long getTransitions(CircuitBreakerState state) {
+        return transitions.get(state).get();
+    }
+
+    public Instant getLastTransitionAt() {
+        return lastTransitionAt;
+    }
+
     public CircuitBreaker getBreaker() {
         return breaker;
     }
@@ -0,0 +1,19 @@
+package org.prebid.pg.gp.server.exception;
+
+/**
+ * Unchecked exceptions thrown when a request is shed because the server is overloaded.
+ */
+public class ServiceOverloadedException extends RuntimeException {
+
+    private final int retryAfterSec;
+
+    public ServiceOverloadedException(String message, int retryAfterSec) {
+        super(message);
+        this.retryAfterSec = retryAfterSec;
+    }
+
+    public int getRetryAfterSec() {
+        return retryAfterSec;
+    }
+
+}
@@ -0,0 +1,400 @@
+package org.prebid.pg.gp.server.handler;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.web.RoutingContext;
+import org.javatuples.Triplet;
+import org.prebid.pg.gp.server.breaker.AdmissionController;
+import org.prebid.pg.gp.server.breaker.ComputeExecutor;
+import org.prebid.pg.gp.server.exception.InvalidRequestException;
+import org.prebid.pg.gp.server.exception.ServiceOverloadedException;
+import org.prebid.pg.gp.server.http.AlertProxyHttpClient;
+import org.prebid.pg.gp.server.jdbc.CircuitBreakerSecuredPlannerDataAccessClient;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.model.AlertPriority;
+import org.prebid.pg.gp.server.model.GPConstants;
+import org.prebid.pg.gp.server.model.LineItem;
+import org.prebid.pg.gp.server.model.PbsHost;
+import org.prebid.pg.gp.server.model.PbsHostPlan;
+import org.prebid.pg.gp.server.model.PlanRequest;
+import org.prebid.pg.gp.server.model.ReallocatedPlan;
+import org.prebid.pg.gp.server.model.Shutdown;
+import org.prebid.pg.gp.server.services.PlanRenderer;
+import org.prebid.pg.gp.server.services.PlanVersionTracker;
+import org.prebid.pg.gp.server.spring.config.app.HostReallocationConfiguration;
+import org.prebid.pg.gp.server.spring.config.app.PlanRequestConfiguration;
+import org.prebid.pg.gp.server.util.Constants;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * A handler for retrieval of line item delivery plans of many PBS hosts in one request.
+ * <p>
+ * Hosts, reallocated plans and line items are read once for all requested hosts, and the plans are streamed
+ * back as one section per host, each rendered on the compute pool just before it is written.
+ */
+public class BulkPlanRequestHandler implements Handler<RoutingContext> {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkPlanRequestHandler.class);
+
+    private final CircuitBreakerSecuredPlannerDataAccessClient dataAccessClient;
+
+    private final String maskedErrorMessage;
+
+    private final String resourceRole;
+
+    private final boolean securityEnabled;
+
+    private final HostReallocationConfiguration reallocationConfig;
+
+    private final int pbsMaxIdlePeriodInSeconds;
+
+    private final Metrics metrics;
+
+    private final Shutdown shutdown;
+
+    private final AlertProxyHttpClient alertHttpClient;
+
+    private final PlanRenderer planRenderer;
+
+    private final ComputeExecutor computeExecutor;
+
+    private final AdmissionController admissionController;
+
+    private final PlanVersionTracker planVersionTracker;
+
+    private final PlanRequestConfiguration planRequestConfig;
+
+    public BulkPlanRequestHandler(
+            CircuitBreakerSecuredPlannerDataAccessClient dataAccessClient,
+            String maskedErrorMessage, String resourceRole, boolean securityEnabled,
+            HostReallocationConfiguration reallocationConfig,
+            int pbsMaxIdlePeriodInSeconds,
+            Metrics metrics,
+            Shutdown shutdown,
+            AlertProxyHttpClient alertHttpClient,
+            PlanRenderer planRenderer,
+            ComputeExecutor computeExecutor,
+            AdmissionController admissionController,
+            PlanVersionTracker planVersionTracker,
+            PlanRequestConfiguration planRequestConfig
+    ) {
+        this.dataAccessClient = dataAccessClient;
+        this.maskedErrorMessage = maskedErrorMessage;
+        this.resourceRole = resourceRole;
+        this.securityEnabled = securityEnabled;
+        this.reallocationConfig = reallocationConfig;
+        this.pbsMaxIdlePeriodInSeconds = pbsMaxIdlePeriodInSeconds;
+        this.metrics = metrics;
+        this.shutdown = shutdown;
+        this.alertHttpClient = alertHttpClient;
+        this.planRenderer = planRenderer;
+        this.computeExecutor = computeExecutor;
+        this.admissionController = admissionController;
+        this.planVersionTracker = planVersionTracker;
+        this.planRequestConfig = planRequestConfig;
+        if (securityEnabled) {
+            logger.info("BulkPlanRequestHandler protected by role {0}", resourceRole);
+        }
+    }
+
+    /**
+     * Handles retrieval of line items delivery plans of many PBS hosts.
+     *
+     * @param routingContext context of request and response
+     */
+    @Override
+    public void handle(RoutingContext routingContext) {
+        if (shutdown.getInitiating() == Boolean.TRUE) {
+            routingContext.response()
+                    .setStatusCode(HttpResponseStatus.BAD_GATEWAY.code())
+                    .end("Server shutdown has been initiated");
+            return;
+        }
+
+        if (securityEnabled) {
+            routingContext.user().isAuthorized(resourceRole, rs -> {
+                if (rs.succeeded() && rs.result().booleanValue()) {
+                    processRequest(routingContext);
+                } else {
+                    routingContext.response().setStatusCode(HttpResponseStatus.FORBIDDEN.code()).end();
+                }
+            });
+        } else {
+            processRequest(routingContext);
+        }
+    }
+
+    private void processRequest(RoutingContext routingContext) {
+        final long start = System.currentTimeMillis();
+        final Future<List<PlanRequest>> parsed = parseRequest(routingContext);
+        if (parsed.failed()) {
+            errorHandler(parsed.cause(), routingContext, start);
+            return;
+        }
+
+        final List<PlanRequest> planRequests = parsed.result();
+        final Instant hostActiveSince = Instant.now().minusSeconds(pbsMaxIdlePeriodInSeconds);
+        // read before the plans so that a concurrent change is picked up by the next request
+        final Map<String, String> planVersions = new HashMap<>();
+        for (PlanRequest planRequest : planRequests) {
+            final String hostKey = planRequest.getUniqueInstanceId();
+            planVersions.put(hostKey, planVersionTracker.currentVersion(hostKey));
+        }
+
+        admissionController.<Triplet<List<LineItem>, List<PbsHost>, List<ReallocatedPlan>>>executeCommand(
+                future -> getPlanInputs(planRequests, hostActiveSince).setHandler(future))
+                .setHandler(ar -> {
+                    if (ar.failed()) {
+                        errorHandler(ar.cause(), routingContext, start);
+                    } else {
+                        streamPlans(planRequests, planVersions, ar.result(), routingContext, start);
+                    }
+                });
+    }
+
+    private Future<List<PlanRequest>> parseRequest(RoutingContext routingContext) {
+        final Buffer body = routingContext.getBody();
+        if (body == null || body.length() == 0) {
+            return badRequest("Incoming request has no body");
+        }
+
+        final JsonArray hosts;
+        try {
+            hosts = body.toJsonArray();
+        } catch (DecodeException | ClassCastException ex) {
+            return badRequest(String.format("Cannot decode incoming bulk plan request::%s", ex.getMessage()));
+        }
+        if (hosts.isEmpty() || hosts.size() > planRequestConfig.getBulk().getMaxHosts()) {
+            return badRequest(String.format("Cannot decode incoming bulk plan request::between 1 and %s hosts expected",
+                    planRequestConfig.getBulk().getMaxHosts()));
+        }
+
+        final List<PlanRequest> planRequests = new ArrayList<>();
+        for (Object host : hosts) {
+            final JsonObject hostJson = host instanceof JsonObject ? (JsonObject) host : new JsonObject();
+            final PlanRequest planRequest = PlanRequest.builder()
+                    .vendor(hostJson.getValue("vendor") instanceof String ? hostJson.getString("vendor") : null)
+                    .region(hostJson.getValue("region") instanceof String ? hostJson.getString("region") : null)
+                    .instanceId(hostJson.getValue("instanceId") instanceof String
+                            ? hostJson.getString("instanceId") : null)
+                    .build();
+            if (isBlank(planRequest.getVendor()) || isBlank(planRequest.getRegion())
+                    || isBlank(planRequest.getInstanceId())) {
+                return badRequest(String.format("Cannot decode incoming bulk plan request::"
+                        + "'vendor', 'region' and 'instanceId' are required for every host::%s", host));
+            }
+            planRequests.add(planRequest);
+        }
+        logger.debug("PBS_GetBulkPlans_Request: {0} hosts", planRequests.size());
+        return Future.succeededFuture(planRequests);
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isEmpty();
+    }
+
+    private static <T> Future<T> badRequest(String msg) {
+        logger.error("{0}::{1}", GPConstants.BAD_FORMAT, msg);
+        return Future.failedFuture(new InvalidRequestException(GPConstants.BAD_FORMAT, msg));
+    }
+
+    private Future<Triplet<List<LineItem>, List<PbsHost>, List<ReallocatedPlan>>> getPlanInputs(
+            List<PlanRequest> planRequests, Instant hostActiveSince) {
+        final Instant inactiveSince =
+                Instant.now().minus(reallocationConfig.getLineItemHasExpiredMin(), ChronoUnit.MINUTES);
+        final Set<String> requestedHostKeys = planRequests.stream()
+                .map(PlanRequest::getUniqueInstanceId)
+                .collect(Collectors.toSet());
+        // only the plans of the requested hosts that are active get rendered
+        return dataAccessClient.getLineItemsByStatus(Constants.LINE_ITEM_ACTIVE_STATUS, inactiveSince)
+                .compose(lineItems -> dataAccessClient.findActiveHosts(hostActiveSince)
+                        .compose(activeHosts -> dataAccessClient.getReallocatedPlans(activeHosts.stream()
+                                        .filter(host -> requestedHostKeys.contains(host.getUniqueInstanceId()))
+                                        .collect(Collectors.toList()))
+                                .map(plans -> new Triplet<>(lineItems, activeHosts, plans))));
+    }
+
+    private void streamPlans(List<PlanRequest> planRequests, Map<String, String> planVersions,
+                             Triplet<List<LineItem>, List<PbsHost>, List<ReallocatedPlan>> planInputs,
+                             RoutingContext routingContext, long start) {
+        final List<LineItem> lineItems = planInputs.getValue0();
+        final int activeHosts = planInputs.getValue1().size();
+        final Set<String> activeHostKeys = planInputs.getValue1().stream()
+                .map(PbsHost::getUniqueInstanceId)
+                .collect(Collectors.toSet());
+        final Map<String, ReallocatedPlan> plansByHost = planInputs.getValue2().stream()
+                .filter(plan -> !plan.isEmpty())
+                .collect(Collectors.toMap(ReallocatedPlan::getUniqueInstanceId, plan -> plan, (a, b) -> a));
+
+        final Function<PlanRequest, PbsHostPlan> renderer = planRequest -> {
+            final String hostKey = planRequest.getUniqueInstanceId();
+            final List<ObjectNode> rendered = activeHostKeys.contains(hostKey)
+                    ? planRenderer.render(planRenderer.getReallocationMap(plansByHost.get(hostKey)),
+                            lineItems, activeHosts, planRequest, true)
+                    : Collections.<ObjectNode>emptyList();
+            return PbsHostPlan.builder()
+                    .vendor(planRequest.getVendor())
+                    .region(planRequest.getRegion())
+                    .instanceId(planRequest.getInstanceId())
+                    .version(planVersions.get(hostKey))
+                    .lineItems(rendered)
+                    .build();
+        };
+
+        final HttpServerResponse response = routingContext.response();
+        response.setChunked(true)
+                .setStatusCode(HttpResponseStatus.OK.code())
+                .putHeader(HttpHeaders.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON);
+        new SectionWriter(response, planRequests.iterator(), renderer, start).write();
+    }
+
+    private void errorHandler(Throwable cause, RoutingContext routingContext, long startTime) {
+        final HttpServerResponse response = routingContext.response();
+        if (cause instanceof ServiceOverloadedException) {
+            ServiceOverloadedException overloaded = (ServiceOverloadedException) cause;
+            logger.warn(overloaded.getMessage());
+            metrics.incCounter(metricName("shed"));
+            response.setStatusCode(HttpResponseStatus.SERVICE_UNAVAILABLE.code())
+                    .putHeader(HttpHeaders.RETRY_AFTER, String.valueOf(overloaded.getRetryAfterSec()))
+                    .putHeader(HttpHeaders.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON)
+                    .end(Json.encode(Collections.singletonList(maskedErrorMessage)));
+            return;
+        }
+
+        final String errorDetail;
+        final int statusCode;
+        if (cause instanceof InvalidRequestException
+                && ((InvalidRequestException) cause).getCode().equalsIgnoreCase(GPConstants.BAD_FORMAT)) {
+            statusCode = HttpResponseStatus.BAD_REQUEST.code();
+            errorDetail = ((InvalidRequestException) cause).getException();
+        } else {
+            logger.error("Exception in executing BulkPlanRequestHandler::{0}", cause.getMessage());
+            statusCode = HttpResponseStatus.INTERNAL_SERVER_ERROR.code();
+            errorDetail = maskedErrorMessage;
+            alertHttpClient.raiseEvent(
+                    Constants.GP_PLANNER_PLAN_REQUEST_HANDLER_ERROR,
+                    AlertPriority.MEDIUM,
+                    String.format("Exception in BulkPlanRequestHandler::%s", cause.getMessage()));
+        }
+        response.setStatusCode(statusCode)
+                .putHeader(HttpHeaders.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON)
+                .end(Json.encode(Collections.singletonList(errorDetail)));
+        metrics.incCounter(metricName("exc"));
+        metrics.updateTimer(metricName("processing-time"), System.currentTimeMillis() - startTime);
+    }
+
+    private String metricName(String tag) {
+        return String.format("pbs-bulk-plan-request.%s", tag);
+    }
+
+    /**
+     * Writes one section per host, rendering each on the compute pool and pausing while the response write queue
+     * is full. Stops as soon as the client goes away, dropping any pending drain wait.
+     */
+    private class SectionWriter {
+
+        private final HttpServerResponse response;
+
+        private final Iterator<PlanRequest> planRequests;
+
+        private final Function<PlanRequest, PbsHostPlan> renderer;
+
+        private final long start;
+
+        private int hosts;
+
+        private int lineItems;
+
+        private volatile boolean closed;
+
+        SectionWriter(HttpServerResponse response, Iterator<PlanRequest> planRequests,
+                      Function<PlanRequest, PbsHostPlan> renderer, long start) {
+            this.response = response;
+            this.planRequests = planRequests;
+            this.renderer = renderer;
+            this.start = start;
+            response.closeHandler(v -> close("closed by the client"));
+            response.exceptionHandler(ex -> close(ex.getMessage()));
+        }
+
+        void write() {
+            if (closed) {
+                return;
+            }
+            if (!planRequests.hasNext()) {
+                end();
+                return;
+            }
+            if (response.writeQueueFull()) {
+                response.drainHandler(v -> write());
+                return;
+            }
+            // one host at a time, so a bulk request holds at most one slot of the compute pool
+            computeExecutor.execute(planRequests.next(), renderer, "render-bulk-plan").setHandler(ar -> {
+                if (closed) {
+                    return;
+                }
+                if (ar.failed()) {
+                    // the sections written so far cannot be taken back, reset so the client sees a broken response
+                    logger.error("Failure in rendering bulk plan after {0} hosts::{1}",
+                            hosts, ar.cause().getMessage());
+                    metrics.incCounter(metricName("exc"));
+                    close(ar.cause().getMessage());
+                    response.close();
+                    return;
+                }
+                final PbsHostPlan hostPlan = ar.result();
+                response.write((hosts == 0 ? "[" : ",") + Json.encode(hostPlan));
+                hosts++;
+                lineItems += hostPlan.getLineItems().size();
+                write();
+            });
+        }
+
+        private void end() {
+            response.end(hosts == 0 ? "[]" : "]");
+
+            logger.info("Returned plans of {0} hosts with {1} line items in {2}ms",
+                    hosts, lineItems, System.currentTimeMillis() - start);
+            metrics.incCounter(metricName("requests-served"));
+            metrics.incCounter(metricName("hosts-served"), hosts);
+            metrics.incCounter(metricName("line-items-served"), lineItems);
+            metrics.updateTimer(metricName("processing-time"), System.currentTimeMillis() - start);
+        }
+
+        private void close(String reason) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            // no drain follows on a closed connection, release the wait holding the plan inputs
+            response.drainHandler(null);
+            logger.warn("Bulk plan response stopped after {0} hosts::{1}", hosts, reason);
+            metrics.incCounter(metricName("response-closed"));
+        }
+    }
+
+}
@@ -1,5 +1,7 @@
 package org.prebid.pg.gp.server.handler;
 
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import com.fasterxml.jackson.databind.introspect.Annotated;
 import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
 import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
@@ -12,6 +14,7 @@ import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.logging.Logger;
@@ -29,10 +32,15 @@ import org.prebid.pg.gp.server.model.GPConstants;
 import org.prebid.pg.gp.server.model.LineItemIdentity;
 import org.prebid.pg.gp.server.model.LineItemsTokensSummary;
 import org.prebid.pg.gp.server.model.Shutdown;
+import org.prebid.pg.gp.server.services.LineItemsTokensSummaryCache;
+import org.prebid.pg.gp.server.services.LineItemsTokensSummaryService;
 import org.prebid.pg.gp.server.spring.config.WebConfiguration.CsvMapperFactory;
 import org.prebid.pg.gp.server.util.Constants;
 import org.springframework.util.StringUtils;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoUnit;
 import java.time.Instant;
@@ -76,6 +84,8 @@ public class LineItemsTokensSummaryHandler implements Handler<RoutingContext> {
 
     private final Shutdown shutdown;
 
+    private final LineItemsTokensSummaryCache summaryCache;
+
     public LineItemsTokensSummaryHandler(
             CircuitBreakerSecuredPlannerDataAccessClient plannerDataAccessClient,
             CsvMapperFactory csvMapperFactory,
@@ -83,7 +93,8 @@ public class LineItemsTokensSummaryHandler implements Handler<RoutingContext> {
             boolean securityEnabled,
             Metrics metrics,
             AlertProxyHttpClient alertHttpClient,
-            Shutdown shutdown) {
+            Shutdown shutdown,
+            LineItemsTokensSummaryCache summaryCache) {
         this.dataAccessClient = Objects.requireNonNull(plannerDataAccessClient);
         this.csvMapperFactory = Objects.requireNonNull(csvMapperFactory);
         this.resourceRole = Objects.requireNonNull(resourceRole);
@@ -91,6 +102,7 @@ public class LineItemsTokensSummaryHandler implements Handler<RoutingContext> {
         this.metrics = Objects.requireNonNull(metrics);
         this.alertHttpClient = Objects.requireNonNull(alertHttpClient);
         this.shutdown = Objects.requireNonNull(shutdown);
+        this.summaryCache = Objects.requireNonNull(summaryCache);
         logger.info("LineItemsTokensSummaryHandler protected by role {0}", resourceRole);
     }
 
@@ -130,61 +142,124 @@ public class LineItemsTokensSummaryHandler implements Handler<RoutingContext> {
 
     @SuppressWarnings({"squid:S1854", "squid:S1481"})
     private void processRequest(RoutingContext routingContext) {
-        final AtomicReference<Request> reqReference = new AtomicReference<>();
+        final AtomicReference<CsvResponseWriter> writerReference = new AtomicReference<>();
         final long start = System.currentTimeMillis();
         metrics.incCounter(metricName("requests-served"));
+        final HttpServerResponse response = routingContext.response();
+        response.putHeader(HttpHeaders.CONTENT_TYPE, HttpHeaderValues.TEXT_PLAIN);
         parseRequest(routingContext)
                 .compose(req -> {
-                    reqReference.set(req);
-                    return getLineItemTokensSummary(req);
+                    final CsvResponseWriter writer;
+                    try {
+                        writer = new CsvResponseWriter(response, req.getMetrics());
+                    } catch (IOException ex) {
+                        return Future.failedFuture(ex);
+                    }
+                    writerReference.set(writer);
+                    return streamLineItemTokensSummary(req, writer).compose(v -> writer.end());
                 })
-                .setHandler(ar -> finalHandler(ar, routingContext, reqReference.get(), start));
+                .setHandler(ar -> finalHandler(ar, response, writerReference.get(), start));
+    }
+
+    private Future<Void> streamLineItemTokensSummary(Request req, CsvResponseWriter writer) {
+        if (!summaryCache.isEnabled()) {
+            return streamLiveTokensSummary(req, req.getStartTimestamp(), writer);
+        }
+        // hours summarized by the tokens summary service never change and are served from the cache
+        return dataAccessClient.getSystemState(LineItemsTokensSummaryService.LINE_ITEM_HISTORY_SUMMARY_TS)
+                .compose(summarizedUntil -> {
+                    final Instant closedUntil = min(Instant.parse(summarizedUntil),
+                            req.getEndTimestamp().truncatedTo(ChronoUnit.HOURS));
+                    final Instant liveStart = closedUntil.isAfter(req.getStartTimestamp())
+                            ? closedUntil
+                            : req.getStartTimestamp();
+                    return streamClosedHours(req, closedUntil, writer)
+                            .compose(v -> streamLiveTokensSummary(req, liveStart, writer));
+                });
     }
 
-    private Future<List<LineItemsTokensSummary>> getLineItemTokensSummary(Request req) {
+    private Future<Void> streamClosedHours(Request req, Instant closedUntil, CsvResponseWriter writer) {
+        Future<Void> future = Future.succeededFuture();
+        Instant missedFrom = null;
+        Instant hour = req.getStartTimestamp();
+        for (; !hour.plus(1, ChronoUnit.HOURS).isAfter(closedUntil); hour = hour.plus(1, ChronoUnit.HOURS)) {
+            final List<LineItemsTokensSummary> cached = summaryCache.get(hour, req.getUniqueLineItemIds());
+            if (cached == null) {
+                missedFrom = missedFrom == null ? hour : missedFrom;
+                continue;
+            }
+            if (missedFrom != null) {
+                future = streamMissedHours(future, req, missedFrom, hour, writer);
+                missedFrom = null;
+            }
+            future = future.compose(v -> writer.write(cached));
+        }
+        return missedFrom != null
+                ? streamMissedHours(future, req, missedFrom, hour, writer)
+                : future;
+    }
+
+    private Future<Void> streamMissedHours(Future<Void> previous, Request req, Instant fromHour, Instant toHour,
+            CsvResponseWriter writer) {
+        return previous.compose(v -> {
+            final LineItemsTokensSummaryCache.Collector collector =
+                    summaryCache.collect(fromHour, req.getUniqueLineItemIds());
+            return dataAccessClient.streamLineItemsTokensSummary(
+                    fromHour, toHour.plusSeconds(1), req.getUniqueLineItemIds(), page -> {
+                        collector.accept(page);
+                        return writer.write(page);
+                    })
+                    .map(done -> {
+                        collector.complete(toHour);
+                        return done;
+                    });
+        });
+    }
+
+    private Future<Void> streamLiveTokensSummary(Request req, Instant startTime, CsvResponseWriter writer) {
         Instant now = Instant.now();
         Instant currentHour = now.truncatedTo(ChronoUnit.HOURS);
         Instant tokenSummaryEndTime = req.getEndTimestamp().plusSeconds(1);
         if (!req.endTimestamp.isAfter(currentHour)) {
-            return dataAccessClient.getLineItemsTokensSummary(
-                    req.getStartTimestamp(), tokenSummaryEndTime, req.getUniqueLineItemIds());
-        } else if (!req.getStartTimestamp().isBefore(currentHour)) {
+            return dataAccessClient.streamLineItemsTokensSummary(
+                    startTime, tokenSummaryEndTime, req.getUniqueLineItemIds(), writer::write);
+        } else if (!startTime.isBefore(currentHour)) {
             return dataAccessClient.getHourlyLineItemTokens(
-                    req.getStartTimestamp(), req.getEndTimestamp(), req.getLineItems());
+                    startTime, req.getEndTimestamp(), req.getLineItems())
+                    .compose(writer::write);
         }
-        return dataAccessClient.getLineItemsTokensSummary(
-                req.getStartTimestamp(), tokenSummaryEndTime, req.getUniqueLineItemIds())
-                .compose(summaries -> {
-                    Instant start = summaries.isEmpty()
-                            ? req.getStartTimestamp()
-                            : summaries.get(summaries.size() - 1).getSummaryWindowEndTimestamp();
-                    return dataAccessClient.getHourlyLineItemTokens(
-                            start, req.getEndTimestamp(), req.getLineItems())
-                            .map(latestSummaries -> {
-                                summaries.addAll(latestSummaries);
-                                return summaries;
-                            });
-                });
+        // pages come ordered by window start, the hourly tokens follow the last summarized window
+        final AtomicReference<Instant> summarizedUntil = new AtomicReference<>(startTime);
+        return dataAccessClient.streamLineItemsTokensSummary(
+                startTime, tokenSummaryEndTime, req.getUniqueLineItemIds(), page -> {
+                    summarizedUntil.set(page.get(page.size() - 1).getSummaryWindowEndTimestamp());
+                    return writer.write(page);
+                })
+                .compose(v -> dataAccessClient.getHourlyLineItemTokens(
+                        summarizedUntil.get(), req.getEndTimestamp(), req.getLineItems()))
+                .compose(writer::write);
     }
 
-    private void finalHandler(AsyncResult<List<LineItemsTokensSummary>> asyncResult,
-            RoutingContext routingContext, Request request, long startTime) {
-        HttpServerResponse response = routingContext.response();
-        response.putHeader(HttpHeaders.CONTENT_TYPE, HttpHeaderValues.TEXT_PLAIN);
+    private static Instant min(Instant first, Instant second) {
+        return first.isBefore(second) ? first : second;
+    }
 
-        if (asyncResult.succeeded()) {
-            try {
-                final CsvMapper csvMapper = csvMapperFactory.getCsvMapper();
-                setCsvFilters(csvMapper, request.getMetrics());
-                String csv = csvMapper.writerFor(List.class)
-                        .with(csvSchema(request.getMetrics()))
-                        .writeValueAsString(asyncResult.result());
-                response.setStatusCode(HttpResponseStatus.OK.code()).end(csv);
-            } catch (Exception ex) {
-                handleErrorResponse(response, ex);
+    private void finalHandler(AsyncResult<Void> asyncResult, HttpServerResponse response,
+            CsvResponseWriter writer, long startTime) {
+        if (asyncResult.failed()) {
+            if (writer != null && writer.isStarted()) {
+                // the status line is already sent, cutting the connection tells the client the report is partial
+                metrics.incCounter(metricName("exc"));
+                logger.error("Failure in streaming tokens summary::{0}", asyncResult.cause().getMessage());
+                alertHttpClient.raiseEvent(
+                        Constants.GP_PLANNER_LINE_ITEM_TOKENS_SUMMARY_HANDLER_ERROR,
+                        AlertPriority.MEDIUM,
+                        String.format("Exception in LineItemTokensSummaryHandler::%s",
+                                asyncResult.cause().getMessage()));
+                response.close();
+            } else {
+                handleErrorResponse(response, asyncResult.cause());
             }
-        } else {
-            handleErrorResponse(response, asyncResult.cause());
         }
         metrics.updateTimer(metricName("processing-time"), System.currentTimeMillis() - startTime);
     }
@@ -295,6 +370,112 @@ public class LineItemsTokensSummaryHandler implements Handler<RoutingContext> {
         return String.format("line-items-tokens-summary-request.%s", tag);
     }
 
+    /**
+     * Writes the report rows to the response as CSV as they come, buffering them until
+     * {@code CHUNK_BYTES} are pending so small reports are sent in a single plain response.
+     */
+    private class CsvResponseWriter {
+
+        private static final int CHUNK_BYTES = 64 * 1024;
+
+        private final HttpServerResponse response;
+
+        private final ObjectWriter objectWriter;
+
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        private final SequenceWriter sequenceWriter;
+
+        private boolean started;
+
+        private boolean rowsWritten;
+
+        private volatile boolean closed;
+
+        // wait for the write queue to drain, failed if the connection is closed first as no drain would follow
+        private Future<Void> drained;
+
+        CsvResponseWriter(HttpServerResponse response, Set<String> requestMetrics) throws IOException {
+            final CsvMapper csvMapper = csvMapperFactory.getCsvMapper();
+            setCsvFilters(csvMapper, requestMetrics);
+            this.response = response;
+            this.objectWriter = csvMapper.writer(csvSchema(requestMetrics));
+            this.sequenceWriter = objectWriter.writeValues(buffer);
+            response.closeHandler(v -> {
+                closed = true;
+                failDrained(new IllegalStateException("Response closed by the client"));
+            });
+            response.exceptionHandler(this::failDrained);
+        }
+
+        boolean isStarted() {
+            return started;
+        }
+
+        Future<Void> write(List<LineItemsTokensSummary> rows) {
+            if (closed) {
+                return Future.failedFuture(new IllegalStateException("Response closed by the client"));
+            }
+            if (rows.isEmpty()) {
+                return Future.succeededFuture();
+            }
+            try {
+                sequenceWriter.writeAll(rows);
+                sequenceWriter.flush();
+            } catch (IOException ex) {
+                return Future.failedFuture(ex);
+            }
+            rowsWritten = true;
+            if (buffer.size() < CHUNK_BYTES) {
+                return Future.succeededFuture();
+            }
+            if (!started) {
+                started = true;
+                response.setStatusCode(HttpResponseStatus.OK.code());
+                response.setChunked(true);
+            }
+            response.write(Buffer.buffer(buffer.toByteArray()));
+            buffer.reset();
+            if (!response.writeQueueFull()) {
+                return Future.succeededFuture();
+            }
+            if (closed) {
+                return Future.failedFuture(new IllegalStateException("Response closed by the client"));
+            }
+            final Future<Void> future = Future.future();
+            drained = future;
+            response.drainHandler(v -> future.tryComplete());
+            return future;
+        }
+
+        private void failDrained(Throwable cause) {
+            if (drained != null) {
+                drained.tryFail(cause);
+            }
+        }
+
+        Future<Void> end() {
+            if (closed) {
+                return Future.failedFuture(new IllegalStateException("Response closed by the client"));
+            }
+            try {
+                sequenceWriter.close();
+                final String csv = rowsWritten
+                        ? buffer.toString(StandardCharsets.UTF_8.name())
+                        : objectWriter.forType(List.class).writeValueAsString(Collections.emptyList());
+                if (started) {
+                    response.end(csv);
+                } else {
+                    response.setStatusCode(HttpResponseStatus.OK.code()).end(csv);
+                }
+            } catch (IOException ex) {
+                return Future.failedFuture(ex);
+            }
+            return Future.succeededFuture();
+        }
+
+    }
+
     @Builder
     @Getter
     @ToString
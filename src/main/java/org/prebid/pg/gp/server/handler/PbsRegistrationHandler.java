@@ -13,17 +13,29 @@ import io.vertx.core.json.Json;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import io.vertx.ext.web.RoutingContext;
+import org.javatuples.Pair;
+import org.prebid.pg.gp.server.breaker.AdmissionController;
 import org.prebid.pg.gp.server.exception.InvalidRequestException;
+import org.prebid.pg.gp.server.exception.ServiceOverloadedException;
 import org.prebid.pg.gp.server.jdbc.CircuitBreakerSecuredPlannerDataAccessClient;
 import org.prebid.pg.gp.server.metric.Metrics;
 import org.prebid.pg.gp.server.model.AdminEvent;
 import org.prebid.pg.gp.server.model.AdminTracer;
 import org.prebid.pg.gp.server.model.GPConstants;
+import org.prebid.pg.gp.server.model.PbsHost;
+import org.prebid.pg.gp.server.model.PbsHostPlan;
+import org.prebid.pg.gp.server.model.PlanRequest;
 import org.prebid.pg.gp.server.model.Registration;
+import org.prebid.pg.gp.server.model.RegistrationResponse;
 import org.prebid.pg.gp.server.model.Shutdown;
+import org.prebid.pg.gp.server.services.PlanRenderer;
+import org.prebid.pg.gp.server.services.PlanVersionTracker;
+import org.prebid.pg.gp.server.services.PollHintService;
+import org.prebid.pg.gp.server.spring.config.app.HostReallocationConfiguration;
 import org.prebid.pg.gp.server.util.Constants;
 
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -50,6 +62,20 @@ public class PbsRegistrationHandler implements Handler<RoutingContext> {
 
     private CircuitBreakerSecuredPlannerDataAccessClient dataAccessClient;
 
+    private final PollHintService pollHintService;
+
+    private final HostReallocationConfiguration reallocationConfig;
+
+    private final int pbsMaxIdlePeriodInSeconds;
+
+    private final PlanRenderer planRenderer;
+
+    private final AdmissionController admissionController;
+
+    private final PlanVersionTracker planVersionTracker;
+
+    private final boolean includePlansEnabled;
+
     static final String REG_REQUEST_KEY = "registration";
 
     public PbsRegistrationHandler(
@@ -60,7 +86,14 @@ public class PbsRegistrationHandler implements Handler<RoutingContext> {
             Metrics metrics,
             boolean isAlgoTest,
             AdminTracer adminTracer,
-            Shutdown shutdown
+            Shutdown shutdown,
+            PollHintService pollHintService,
+            HostReallocationConfiguration reallocationConfig,
+            int pbsMaxIdlePeriodInSeconds,
+            PlanRenderer planRenderer,
+            AdmissionController admissionController,
+            PlanVersionTracker planVersionTracker,
+            boolean includePlansEnabled
     ) {
         this.dataAccessClient = dataAccessClient;
         this.maskedErrorMessage = maskedErrorMessage;
@@ -70,6 +103,13 @@ public class PbsRegistrationHandler implements Handler<RoutingContext> {
         this.isAlgoTest = isAlgoTest;
         this.tracer = adminTracer;
         this.shutdown = shutdown;
+        this.pollHintService = pollHintService;
+        this.reallocationConfig = reallocationConfig;
+        this.pbsMaxIdlePeriodInSeconds = pbsMaxIdlePeriodInSeconds;
+        this.planRenderer = planRenderer;
+        this.admissionController = admissionController;
+        this.planVersionTracker = planVersionTracker;
+        this.includePlansEnabled = includePlansEnabled;
         if (securityEnabled && !isAlgoTest) {
             logger.info("PbsRegistrationHandler protected by role {0}", resourceRole);
         }
@@ -106,11 +146,36 @@ public class PbsRegistrationHandler implements Handler<RoutingContext> {
         final long start = System.currentTimeMillis();
 
         parseRequest(routingContext)
-                .compose(registration -> dataAccessClient.updateRegistration(registration))
-                .compose(rs -> includeAdminDirectiveIfAny(routingContext.get(REG_REQUEST_KEY)))
+                .compose(this::register)
                 .setHandler(ar -> finalHandler(ar, routingContext, start));
     }
 
+    /**
+     * Records the registration and reads the admin directive, and the plan if requested, back to back on one
+     * connection. Including the plan is admitted like a plan request, a registration shed from it is recorded
+     * without the plan.
+     */
+    private Future<Pair<AdminEvent, PbsHostPlan>> register(Registration registration) {
+        if (!isPlanRequested(registration)) {
+            return registerInSession(registration, false);
+        }
+        final Future<Pair<AdminEvent, PbsHostPlan>> admitted = admissionController.executeCommand(
+                future -> registerInSession(registration, true).setHandler(future));
+        return admitted
+                .recover(e -> e instanceof ServiceOverloadedException
+                        ? this.<Void>planNotIncluded(e).compose(v -> registerInSession(registration, false))
+                        : Future.failedFuture(e));
+    }
+
+    private Future<Pair<AdminEvent, PbsHostPlan>> registerInSession(Registration registration, boolean withPlan) {
+        return dataAccessClient.inSession(sessionClient -> sessionClient.updateRegistration(registration)
+                .compose(rs -> includeAdminDirectiveIfAny(sessionClient, registration))
+                .compose(adminEvent -> (withPlan
+                        ? includePlan(sessionClient, registration)
+                        : Future.<PbsHostPlan>succeededFuture())
+                        .map(plan -> new Pair<>(adminEvent, plan))));
+    }
+
     private Future<Registration> parseRequest(RoutingContext routingContext) {
         final Buffer body = routingContext.getBody();
 
@@ -160,7 +225,7 @@ public class PbsRegistrationHandler implements Handler<RoutingContext> {
         }
     }
 
-    private void finalHandler(AsyncResult<AdminEvent> asyncResult, RoutingContext routingContext,
+    private void finalHandler(AsyncResult<Pair<AdminEvent, PbsHostPlan>> asyncResult, RoutingContext routingContext,
             long startTime) {
         HttpServerResponse response = routingContext.response();
         int statusCode = HttpResponseStatus.OK.code();
@@ -187,18 +252,30 @@ public class PbsRegistrationHandler implements Handler<RoutingContext> {
 
         response.setStatusCode(statusCode).putHeader(HttpHeaders.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON);
         if (errorDetails.isEmpty()) {
-            if (asyncResult.result() != null) {
-                AdminEvent adminEvent = asyncResult.result();
+            putNextPollHint(routingContext);
+            AdminEvent adminEvent = asyncResult.result().getValue0();
+            PbsHostPlan plan = asyncResult.result().getValue1();
+            if (adminEvent != null) {
                 AdminTracer adminTracer = adminEvent.getDirective().getTracer();
                 if (adminTracer != null) {
                     adminTracer.setEnabled(null);
                     adminTracer.setExpiresAt(null);
                 }
+            }
+            if (plan != null) {
+                response.putHeader(PlanVersionTracker.PLAN_VERSION_HEADER, plan.getVersion());
+                response.end(Json.encode(RegistrationResponse.builder()
+                        .directive(adminEvent == null ? null : adminEvent.getDirective())
+                        .plan(plan)
+                        .build()));
+            } else if (adminEvent != null) {
                 response.end(Json.encode(adminEvent.getDirective()));
-                dataAccessClient.deleteAdminEvent(adminEvent.getId());
             } else {
                 response.end();
             }
+            if (adminEvent != null) {
+                dataAccessClient.deleteAdminEvent(adminEvent.getId());
+            }
         } else {
             metrics.incCounter(metricName("exc"));
             response.end(Json.encode(errorDetails));
@@ -206,11 +283,73 @@ public class PbsRegistrationHandler implements Handler<RoutingContext> {
         metrics.updateTimer(metricName("processing-time"), System.currentTimeMillis() - startTime);
     }
 
-    private Future<AdminEvent> includeAdminDirectiveIfAny(Registration registration) {
+    private Future<AdminEvent> includeAdminDirectiveIfAny(CircuitBreakerSecuredPlannerDataAccessClient sessionClient,
+                                                          Registration registration) {
         if (registration == null) {
             return Future.succeededFuture();
         }
-        return dataAccessClient.findEarliestActiveAdminEvent(Constants.APP_PBS, registration, Instant.now());
+        return sessionClient.findEarliestActiveAdminEvent(Constants.APP_PBS, registration, Instant.now());
+    }
+
+    private boolean isPlanRequested(Registration registration) {
+        return includePlansEnabled && registration != null && Boolean.TRUE.equals(registration.getIncludePlans());
+    }
+
+    private Future<PbsHostPlan> includePlan(CircuitBreakerSecuredPlannerDataAccessClient sessionClient,
+                                            Registration registration) {
+        final PlanRequest planRequest = PlanRequest.builder()
+                .vendor(registration.getVendor())
+                .region(registration.getRegion())
+                .instanceId(registration.getInstanceId())
+                .build();
+        // the host has just registered, so it is active without looking it up again
+        final PbsHost activeHost = PbsHost.builder()
+                .vendor(registration.getVendor())
+                .region(registration.getRegion())
+                .hostInstanceId(registration.getInstanceId())
+                .build();
+        final Instant now = Instant.now();
+        final Instant hostActiveSince = now.minusSeconds(pbsMaxIdlePeriodInSeconds);
+        final Instant inactiveSince = now.minus(reallocationConfig.getLineItemHasExpiredMin(), ChronoUnit.MINUTES);
+        // read before the plan so that a concurrent change is picked up by the next request
+        final String planVersion = planVersionTracker.currentVersion(planRequest.getUniqueInstanceId());
+
+        return sessionClient.getReallocatedPlan(activeHost)
+                .compose(reallocatedPlan -> sessionClient
+                        .getLineItemsByStatus(Constants.LINE_ITEM_ACTIVE_STATUS, inactiveSince)
+                        .compose(lineItems -> sessionClient.findActiveHosts(hostActiveSince)
+                                .map(activeHosts -> PbsHostPlan.builder()
+                                        .vendor(planRequest.getVendor())
+                                        .region(planRequest.getRegion())
+                                        .instanceId(planRequest.getInstanceId())
+                                        .version(planVersion)
+                                        .lineItems(planRenderer.render(planRenderer.getReallocationMap(reallocatedPlan),
+                                                lineItems, activeHosts.size(), planRequest, false))
+                                        .build())))
+                .map(plan -> {
+                    metrics.incCounter(metricName("plans-included"));
+                    return plan;
+                })
+                .recover(this::planNotIncluded);
+    }
+
+    private <T> Future<T> planNotIncluded(Throwable e) {
+        // the registration is recorded, the host falls back to fetching its plan separately
+        logger.warn("Cannot include plans in registration response::{0}", e.getMessage());
+        metrics.incCounter(metricName("plans-failed"));
+        return Future.succeededFuture();
+    }
+
+    private void putNextPollHint(RoutingContext routingContext) {
+        Registration registration = routingContext.get(REG_REQUEST_KEY);
+        if (registration == null) {
+            return;
+        }
+        Integer nextPollSec = pollHintService.nextRegistrationSec(
+                registration.getVendor(), registration.getRegion(), registration.getInstanceId(), Instant.now());
+        if (nextPollSec != null) {
+            routingContext.response().putHeader(PollHintService.NEXT_POLL_HEADER, String.valueOf(nextPollSec));
+        }
     }
 
     private String metricName(String tag) {
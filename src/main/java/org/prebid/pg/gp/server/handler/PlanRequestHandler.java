@@ -1,7 +1,5 @@
 package org.prebid.pg.gp.server.handler;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.netty.handler.codec.http.HttpHeaderValues;
 import io.netty.handler.codec.http.HttpResponseStatus;
@@ -17,8 +15,11 @@ import io.vertx.core.logging.LoggerFactory;
 import io.vertx.ext.web.RoutingContext;
 import org.javatuples.Pair;
 import org.javatuples.Triplet;
+import org.prebid.pg.gp.server.breaker.AdmissionController;
 import org.prebid.pg.gp.server.exception.InvalidRequestException;
+import org.prebid.pg.gp.server.exception.ServiceOverloadedException;
 import org.prebid.pg.gp.server.http.AlertProxyHttpClient;
+import org.prebid.pg.gp.server.jfr.PlanRequestStageEvent;
 import org.prebid.pg.gp.server.jdbc.CircuitBreakerSecuredPlannerDataAccessClient;
 import org.prebid.pg.gp.server.metric.Metrics;
 import org.prebid.pg.gp.server.model.AdminTracer;
@@ -26,21 +27,24 @@ import org.prebid.pg.gp.server.model.AlertPriority;
 import org.prebid.pg.gp.server.model.GPConstants;
 import org.prebid.pg.gp.server.model.LineItem;
 import org.prebid.pg.gp.server.model.PbsHost;
+import org.prebid.pg.gp.server.model.PlanDelta;
 import org.prebid.pg.gp.server.model.PlanRequest;
 import org.prebid.pg.gp.server.model.ReallocatedPlan;
 import org.prebid.pg.gp.server.model.Shutdown;
-import org.prebid.pg.gp.server.model.Weightage;
+import org.prebid.pg.gp.server.services.LastKnownGoodPlans;
+import org.prebid.pg.gp.server.services.LineItemCatalogHistory;
+import org.prebid.pg.gp.server.services.PlanRenderer;
+import org.prebid.pg.gp.server.services.PlanVersionTracker;
+import org.prebid.pg.gp.server.services.PollHintService;
 import org.prebid.pg.gp.server.spring.config.app.HostReallocationConfiguration;
+import org.prebid.pg.gp.server.spring.config.app.PlanRequestConfiguration;
 import org.prebid.pg.gp.server.util.Constants;
-import org.prebid.pg.gp.server.util.JsonUtil;
-import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -57,6 +61,14 @@ public class PlanRequestHandler implements Handler<RoutingContext> {
 
     static final String PLAN_REQUEST_KEY = "plan";
 
+    static final String VERSION_PARAM = "version";
+
+    static final String WAIT_PARAM = "wait";
+
+    static final String DELTA_PARAM = "delta";
+
+    static final String PLAN_STALE_HEADER = "pg-plan-stale-sec";
+
     private final String maskedErrorMessage;
 
     private final CircuitBreakerSecuredPlannerDataAccessClient dataAccessClient;
@@ -77,10 +89,22 @@ public class PlanRequestHandler implements Handler<RoutingContext> {
 
     private final AlertProxyHttpClient alertHttpClient;
 
-    private final Random random;
+    private final PlanRenderer planRenderer;
 
     private final int pbsMaxIdlePeriodInSeconds;
 
+    private final AdmissionController admissionController;
+
+    private final PollHintService pollHintService;
+
+    private final PlanVersionTracker planVersionTracker;
+
+    private final LineItemCatalogHistory catalogHistory;
+
+    private final PlanRequestConfiguration planRequestConfig;
+
+    private final LastKnownGoodPlans lastKnownGoodPlans;
+
     public PlanRequestHandler(
             CircuitBreakerSecuredPlannerDataAccessClient circuitBreakerSecuredPlannerDataAccessClient,
             String maskedErrorMessage, String resourceRole, boolean securityEnabled,
@@ -89,7 +113,13 @@ public class PlanRequestHandler implements Handler<RoutingContext> {
             Metrics metrics, boolean isAlgoTest,
             AdminTracer adminTracer, Shutdown shutdown,
             AlertProxyHttpClient alertHttpClient,
-            Random random
+            Random random,
+            AdmissionController admissionController,
+            PollHintService pollHintService,
+            PlanVersionTracker planVersionTracker,
+            LineItemCatalogHistory catalogHistory,
+            PlanRequestConfiguration planRequestConfig,
+            LastKnownGoodPlans lastKnownGoodPlans
     ) {
         this.dataAccessClient = circuitBreakerSecuredPlannerDataAccessClient;
         this.maskedErrorMessage = maskedErrorMessage;
@@ -102,7 +132,13 @@ public class PlanRequestHandler implements Handler<RoutingContext> {
         this.tracer = adminTracer;
         this.shutdown = shutdown;
         this.alertHttpClient = alertHttpClient;
-        this.random = random;
+        this.planRenderer = new PlanRenderer(adminTracer, random);
+        this.admissionController = admissionController;
+        this.pollHintService = pollHintService;
+        this.planVersionTracker = planVersionTracker;
+        this.catalogHistory = catalogHistory;
+        this.planRequestConfig = planRequestConfig;
+        this.lastKnownGoodPlans = lastKnownGoodPlans;
         if (securityEnabled && !isAlgoTest) {
             logger.info("PlanRequestHandler protected by role {0}", resourceRole);
         }
@@ -144,43 +180,229 @@ public class PlanRequestHandler implements Handler<RoutingContext> {
             return;
         }
 
+        final long start = System.currentTimeMillis();
+        parseRequest(routingContext).setHandler(parsed -> {
+            if (parsed.failed()) {
+                finalHandler(parsed, routingContext, start);
+                return;
+            }
+            final PlanRequest planRequest = parsed.result();
+            awaitPlanChange(planRequest, routingContext).setHandler(ar -> {
+                if (ar.failed()) {
+                    finalHandler(ar, routingContext, start);
+                } else if (ar.result()) {
+                    servePlan(planRequest, routingContext, start);
+                } else {
+                    notModifiedHandler(planRequest, routingContext, start);
+                }
+            });
+        });
+    }
+
+    private Future<Boolean> awaitPlanChange(PlanRequest planRequest, RoutingContext routingContext) {
+        final String knownVersion = routingContext.request().getParam(VERSION_PARAM);
+        final PlanRequestConfiguration.LongPoll longPoll = planRequestConfig.getLongPoll();
+        final String hostKey = planRequest.getUniqueInstanceId();
+        if (knownVersion == null || !longPoll.getEnabled()
+                || !planVersionTracker.currentVersion(hostKey).equals(knownVersion)) {
+            return Future.succeededFuture(Boolean.TRUE);
+        }
+
+        final int waitSec;
+        try {
+            final String wait = routingContext.request().getParam(WAIT_PARAM);
+            waitSec = Math.min(longPoll.getMaxWaitSec(),
+                    wait == null ? longPoll.getDefaultWaitSec() : Integer.parseInt(wait));
+        } catch (NumberFormatException e) {
+            return Future.failedFuture(new InvalidRequestException(
+                    GPConstants.BAD_FORMAT, "Cannot decode incoming plan request::'wait' must be an integer"));
+        }
+        if (waitSec <= 0) {
+            return Future.succeededFuture(Boolean.FALSE);
+        }
+
+        final Future<Boolean> future = Future.future();
+        final PlanVersionTracker.Waiter waiter =
+                planVersionTracker.awaitChange(hostKey, knownVersion, waitSec * 1000L, future::complete);
+        routingContext.response().closeHandler(v -> planVersionTracker.cancel(waiter));
+        metrics.incCounter(metricName("parked"));
+        return future;
+    }
+
+    private void servePlan(PlanRequest planRequest, RoutingContext routingContext, long start) {
         String simTime = routingContext.request().getHeader(PG_SIM_TIMESTAMP_HEADER);
         if (isAlgoTest) {
             logger.info("Received sim time: {0}.", simTime);
         }
-        Instant now = StringUtils.isEmpty(simTime) ? Instant.now() : Instant.parse(simTime);
-
-        final long start = System.currentTimeMillis();
+        final Instant now = StringUtils.isEmpty(simTime) ? Instant.now() : Instant.parse(simTime);
         final Instant hostActiveSince = Instant.now().minusSeconds(pbsMaxIdlePeriodInSeconds);
-        parseRequest(routingContext)
-                .compose(planRequest -> dataAccessClient.findActiveHost(planRequest, hostActiveSince))
+        // read before the plan so that a concurrent change is picked up by the next request
+        final String planVersion = planVersionTracker.currentVersion(planRequest.getUniqueInstanceId());
+        final boolean delta = planRequestConfig.getDelta().getEnabled()
+                && Boolean.parseBoolean(routingContext.request().getParam(DELTA_PARAM));
+        final String baseVersion = routingContext.request().getParam(VERSION_PARAM);
+
+        admissionController.<Pair<Object, Long>>executeCommand(future -> {
+            final Future<LastKnownGoodPlans.Snapshot> planInputs = lastKnownGoodPlans.guard(
+                    planRequest.getUniqueInstanceId(), PlanVersionTracker.catalogVersionOf(planVersion),
+                    getPlanInputs(planRequest, now, hostActiveSince));
+            planInputs.map(snapshot -> {
+                if (snapshot.isStale()) {
+                    return new Pair<>(getStalePlan(snapshot, planRequest, delta), snapshot.getStaleSec());
+                }
+                final Object plan = delta
+                        ? getPlanDelta(snapshot.getInputs(), planRequest, baseVersion, planVersion)
+                        : getPlan(snapshot.getInputs(), planRequest, routingContext);
+                return new Pair<>(plan, (Long) null);
+            }).setHandler(future);
+        }).setHandler(ar -> {
+            if (ar.succeeded() && ar.result().getValue1() != null) {
+                // no plan version, so the host asks for the whole plan again once the database is back
+                routingContext.response().putHeader(PLAN_STALE_HEADER, String.valueOf(ar.result().getValue1()));
+            } else if (ar.succeeded()) {
+                routingContext.response().putHeader(PlanVersionTracker.PLAN_VERSION_HEADER, planVersion);
+            }
+            finalHandler(ar.map(Pair::getValue0), routingContext, start);
+        });
+    }
+
+    private void notModifiedHandler(PlanRequest planRequest, RoutingContext routingContext, long start) {
+        routingContext.response()
+                .putHeader(PlanVersionTracker.PLAN_VERSION_HEADER,
+                        planVersionTracker.currentVersion(planRequest.getUniqueInstanceId()));
+        putNextPollHint(routingContext);
+        routingContext.response().setStatusCode(HttpResponseStatus.NOT_MODIFIED.code()).end();
+        metrics.incCounter(metricName("not-modified"));
+        metrics.updateTimer(metricName("long-poll-time"), System.currentTimeMillis() - start);
+    }
+
+    private Future<Triplet<ReallocatedPlan, List<LineItem>, List<PbsHost>>> getPlanInputs(
+            PlanRequest planRequest, Instant now, Instant hostActiveSince) {
+        // the queries run back to back on one connection
+        return dataAccessClient.inSession(sessionClient ->
+                readPlanInputs(sessionClient, planRequest, now, hostActiveSince));
+    }
+
+    private Future<Triplet<ReallocatedPlan, List<LineItem>, List<PbsHost>>> readPlanInputs(
+            CircuitBreakerSecuredPlannerDataAccessClient sessionClient, PlanRequest planRequest, Instant now,
+            Instant hostActiveSince) {
+        final String host = planRequest.getUniqueInstanceId();
+        final PlanRequestStageEvent hostStage = PlanRequestStageEvent.start("host", host);
+        return sessionClient.findActiveHost(planRequest, hostActiveSince)
                 .compose(activeHost -> {
+                    hostStage.end(activeHost == null ? 0 : 1);
                     logger.debug("findActiveHost::{0}", activeHost);
-                    return dataAccessClient.getReallocatedPlan(activeHost);
+                    final PlanRequestStageEvent planStage = PlanRequestStageEvent.start("plan", host);
+                    return sessionClient.getReallocatedPlan(activeHost)
+                            .map(reallocatedPlan -> {
+                                planStage.end(weightCount(reallocatedPlan));
+                                return reallocatedPlan;
+                            });
                 })
                 .compose(reallocatedPlan -> {
                     logger.debug("getReallocatedPlans::{0}", reallocatedPlan);
-                    return getLineItems(now).map(lineItems -> new Pair<>(reallocatedPlan, lineItems));
+                    final PlanRequestStageEvent lineItemsStage = PlanRequestStageEvent.start("line-items", host);
+                    return getLineItems(sessionClient, now).map(lineItems -> {
+                        lineItemsStage.end(lineItems.size());
+                        return new Pair<>(reallocatedPlan, lineItems);
+                    });
                 })
                 .compose(pair -> {
                     logger.debug("findActiveHosts");
-                    return dataAccessClient.findActiveHosts(hostActiveSince)
-                            .map(activeHosts -> new Triplet<>(pair.getValue0(), pair.getValue1(), activeHosts));
-                })
-                .map(triplet -> {
-                    logger.debug("getUpdatedPlan");
-                    PlanRequest planRequest = routingContext.get(PLAN_REQUEST_KEY);
-                    List<ObjectNode> lis = getUpdatedPlan(triplet, planRequest);
-                    logger.info("Returning {0} line items with reallocated tokens to <{1}>|<{2}>|<{3}>",
-                            lis.size(), planRequest.getVendor(), planRequest.getRegion(), planRequest.getInstanceId());
-                    if (lis.isEmpty()) {
-                        String msg = String.format("Empty plans for request:: %s",
-                                routingContext.get(PLAN_REQUEST_KEY).toString());
-                        logger.warn(msg);
-                    }
-                    return lis;
-                })
-                .setHandler(ar -> finalHandler(ar, routingContext, start));
+                    final PlanRequestStageEvent activeHostsStage = PlanRequestStageEvent.start("active-hosts", host);
+                    return sessionClient.findActiveHosts(hostActiveSince)
+                            .map(activeHosts -> {
+                                activeHostsStage.end(activeHosts.size());
+                                return new Triplet<>(pair.getValue0(), pair.getValue1(), activeHosts);
+                            });
+                });
+    }
+
+    private Object getStalePlan(LastKnownGoodPlans.Snapshot snapshot, PlanRequest planRequest, boolean delta) {
+        // line items are shared by all hosts served from the same snapshot, render copies
+        final List<ObjectNode> lis = getUpdatedPlan(snapshot.getInputs(), planRequest, true);
+        logger.info("Returning {0} line items of a plan read {1} seconds ago to <{2}>|<{3}>|<{4}>",
+                lis.size(), snapshot.getStaleSec(),
+                planRequest.getVendor(), planRequest.getRegion(), planRequest.getInstanceId());
+        metrics.incCounter(metricName("stale-served"));
+        return delta ? PlanDelta.builder().full(true).lineItems(lis).build() : lis;
+    }
+
+    private List<ObjectNode> getPlan(Triplet<ReallocatedPlan, List<LineItem>, List<PbsHost>> triplet,
+                                     PlanRequest planRequest, RoutingContext routingContext) {
+        logger.debug("getUpdatedPlan");
+        List<ObjectNode> lis = getUpdatedPlan(triplet, planRequest, false);
+        logger.info("Returning {0} line items with reallocated tokens to <{1}>|<{2}>|<{3}>",
+                lis.size(), planRequest.getVendor(), planRequest.getRegion(), planRequest.getInstanceId());
+        if (lis.isEmpty()) {
+            String msg = String.format("Empty plans for request:: %s",
+                    routingContext.get(PLAN_REQUEST_KEY).toString());
+            logger.warn(msg);
+        }
+        return lis;
+    }
+
+    private PlanDelta getPlanDelta(Triplet<ReallocatedPlan, List<LineItem>, List<PbsHost>> triplet,
+                                   PlanRequest planRequest, String baseVersion, String planVersion) {
+        final List<LineItem> lineItems = triplet.getValue1();
+        // digest before rendering, which updates the line item json in place
+        final Map<String, String> contentDigests = LineItemCatalogHistory.contentDigests(lineItems);
+        final Long catalogVersion = PlanVersionTracker.catalogVersionOf(planVersion);
+        if (catalogVersion != null && planVersionTracker.isCatalogStable(catalogVersion)) {
+            catalogHistory.record(catalogVersion, contentDigests);
+        }
+
+        final Map<String, String> baseDigests = PlanVersionTracker.isSameHostPlan(baseVersion, planVersion)
+                ? catalogHistory.get(PlanVersionTracker.catalogVersionOf(baseVersion))
+                : null;
+        if (baseDigests == null) {
+            metrics.incCounter(metricName("delta-fallback"));
+            return PlanDelta.builder()
+                    .version(planVersion)
+                    .full(true)
+                    .lineItems(getUpdatedPlan(triplet, planRequest, false))
+                    .build();
+        }
+
+        final Map<String, Double> reallocationMap = planRenderer.getReallocationMap(triplet.getValue0());
+        final List<LineItem> added = new ArrayList<>();
+        final List<LineItem> changed = new ArrayList<>();
+        for (LineItem lineItem : lineItems) {
+            final String uniqueLineItemId = lineItem.getUniqueLineItemId();
+            final String baseDigest = baseDigests.get(uniqueLineItemId);
+            if (baseDigest == null) {
+                added.add(lineItem);
+            } else if (!baseDigest.equals(contentDigests.get(uniqueLineItemId))
+                    || !reallocationMap.containsKey(uniqueLineItemId)) {
+                // tokens of line items not reallocated yet depend on the number of active hosts, always resend
+                changed.add(lineItem);
+            }
+        }
+        final List<String> removed = baseDigests.keySet().stream()
+                .filter(uniqueLineItemId -> !contentDigests.containsKey(uniqueLineItemId))
+                .sorted()
+                .collect(Collectors.toList());
+
+        final int activeHosts = triplet.getValue2().size();
+        final PlanRequestStageEvent renderStage =
+                PlanRequestStageEvent.start("render-delta", planRequest.getUniqueInstanceId());
+        final PlanDelta planDelta = PlanDelta.builder()
+                .version(planVersion)
+                .baseVersion(baseVersion)
+                .full(false)
+                .added(planRenderer.render(reallocationMap, added, activeHosts, planRequest, false))
+                .changed(planRenderer.render(reallocationMap, changed, activeHosts, planRequest, false))
+                .removed(removed)
+                .build();
+        renderStage.end(planDelta.getAdded().size() + planDelta.getChanged().size());
+        logger.info("Returning delta of {0} added, {1} changed, {2} removed line items to <{3}>|<{4}>|<{5}>",
+                planDelta.getAdded().size(), planDelta.getChanged().size(), removed.size(),
+                planRequest.getVendor(), planRequest.getRegion(), planRequest.getInstanceId());
+        metrics.incCounter(metricName("delta-served"));
+        metrics.incCounter(metricName("requests-served"));
+        metrics.incCounter(metricName("line-items-served"),
+                planDelta.getAdded().size() + planDelta.getChanged().size());
+        return planDelta;
     }
 
     private Future<PlanRequest> parseRequest(RoutingContext routingContext) {
@@ -233,117 +455,37 @@ public class PlanRequestHandler implements Handler<RoutingContext> {
         return errors;
     }
 
-    private Future<List<LineItem>> getLineItems(Instant now) {
+    private static int weightCount(ReallocatedPlan reallocatedPlan) {
+        return reallocatedPlan == null || reallocatedPlan.getReallocationWeights() == null
+                || reallocatedPlan.getReallocationWeights().getWeights() == null
+                ? 0
+                : reallocatedPlan.getReallocationWeights().getWeights().size();
+    }
+
+    private Future<List<LineItem>> getLineItems(CircuitBreakerSecuredPlannerDataAccessClient sessionClient,
+                                                Instant now) {
         Instant curTime = now == null ? Instant.now() : now;
         Instant inactiveSince = curTime.minus(reallocationConfig.getLineItemHasExpiredMin(), ChronoUnit.MINUTES);
-        return dataAccessClient.getLineItemsByStatus(Constants.LINE_ITEM_ACTIVE_STATUS, inactiveSince);
+        return sessionClient.getLineItemsByStatus(Constants.LINE_ITEM_ACTIVE_STATUS, inactiveSince);
     }
 
     private List<ObjectNode> getUpdatedPlan(Triplet<ReallocatedPlan, List<LineItem>, List<PbsHost>> triplet,
-                                            PlanRequest planRequest) {
+                                            PlanRequest planRequest, boolean copy) {
         ReallocatedPlan reallocatedPlan = triplet.getValue0();
-        Map<String, Double> reallocationMap = getReallocationMap(reallocatedPlan);
-        List<ObjectNode> updatedLineItems = new ArrayList<>();
+        Map<String, Double> reallocationMap = planRenderer.getReallocationMap(reallocatedPlan);
         int activeHosts = triplet.getValue2().size();
 
-        if (CollectionUtils.isEmpty(reallocationMap)) {
-            metrics.incCounter(metricName("line-items-served"), updatedLineItems.size());
-            metrics.incCounter(metricName("requests-served"));
-            return updatedLineItems;
-        }
-
-        for (LineItem li : triplet.getValue1()) {
-            ObjectNode liNode = li.getLineItemJson();
-            JsonUtil.setValue(liNode, Constants.FIELD_EXT_LINE_ITEM_ID, li.getLineItemId());
-            JsonUtil.setValue(liNode, Constants.FIELD_LINE_ITEM_ID, li.getBidderCode() + "-" + li.getLineItemId());
-            JsonUtil.setValue(liNode, Constants.FIELD_SOURCE, li.getBidderCode());
-
-            checkAndUpdateDeliverySchedule(liNode, reallocationMap, li.getUniqueLineItemId(), activeHosts);
-            updatedLineItems.add(liNode);
-
-            String accountId = JsonUtil.optString(liNode, Constants.FIELD_ACCOUNT_ID);
-            if (tracer.checkActive()
-                    && tracer.matchLineItemId(li.getLineItemId())
-                    && tracer.matchBidderCode(li.getBidderCode())
-                    && tracer.matchAccount(accountId)) {
-                logger.info("{0}::{1}::{2}", GPConstants.TRACER, planRequest, liNode.toString());
-            }
-        }
+        final PlanRequestStageEvent renderStage =
+                PlanRequestStageEvent.start("render", planRequest.getUniqueInstanceId());
+        List<ObjectNode> updatedLineItems =
+                planRenderer.render(reallocationMap, triplet.getValue1(), activeHosts, planRequest, copy);
+        renderStage.end(updatedLineItems.size());
 
         metrics.incCounter(metricName("requests-served"));
         metrics.incCounter(metricName("line-items-served"), updatedLineItems.size());
         return updatedLineItems;
     }
 
-    private void checkAndUpdateDeliverySchedule(
-            ObjectNode liNode, Map<String, Double> reallocationMap, String uniqueLineItemId, int activeHosts) {
-
-        JsonNode schedulesJson = liNode.get(Constants.FIELD_DELIVERY_SCHEDULES);
-        if (!(schedulesJson instanceof ArrayNode)) {
-            return;
-        }
-
-        ArrayNode scheduleArray = (ArrayNode) schedulesJson;
-        if (scheduleArray.size() == 0) {
-            return;
-        }
-
-        Iterator<JsonNode> iterator = scheduleArray.elements();
-        while (iterator.hasNext()) {
-            JsonNode schedule = iterator.next();
-            if (schedule instanceof ObjectNode) {
-                ObjectNode scheduleObj = (ObjectNode) schedule;
-                JsonNode tokensJson = scheduleObj.get(Constants.FIELD_TOKENS);
-                if (tokensJson instanceof ArrayNode) {
-                    ArrayNode tokensArray = (ArrayNode) tokensJson;
-                    for (JsonNode token : tokensArray) {
-                        ObjectNode tokenNode = (ObjectNode) token;
-                        Integer clazz = JsonUtil.optInt(tokenNode, Constants.FIELD_CLASS);
-
-                        if (clazz == 1) {
-                            Integer oldTokens = JsonUtil.optInt(tokenNode, Constants.FIELD_TOTAL);
-                            if (oldTokens != null) {
-                                int reallocatedTokens = updatePlanTokens(oldTokens, reallocationMap,
-                                        uniqueLineItemId, activeHosts);
-                                JsonUtil.setValue(tokenNode, Constants.FIELD_TOTAL, reallocatedTokens);
-                            }
-                        }
-                    }
-                }
-            }
-        }
-    }
-
-    int updatePlanTokens(int planTokens, Map<String, Double> reallocationMap, String uniqueLineItemId,
-                         int activeHosts) {
-        if (planTokens == 0) {
-            return 0;
-        }
-        int intTokens = planTokens;
-        double tokens = planTokens;
-        if (reallocationMap.containsKey(uniqueLineItemId)) {
-            // already reallocated
-            tokens = (double) planTokens * reallocationMap.get(uniqueLineItemId) / 100;
-            intTokens = (int) tokens;
-        } else if (activeHosts > 0) {
-            // new line item without reallocation
-            tokens = (double) planTokens / activeHosts;
-            intTokens = (int) tokens;
-        }
-        if (tokens - intTokens < 0.00001) {
-            return intTokens;
-        }
-        return random.nextDouble() <= (tokens - intTokens) ? (intTokens + 1) : intTokens;
-    }
-
-    private Map<String, Double> getReallocationMap(ReallocatedPlan reallocatedPlan) {
-        if (reallocatedPlan == null || reallocatedPlan.isEmpty()) {
-            return new HashMap<>();
-        }
-        return reallocatedPlan.getReallocationWeights().getWeights().stream()
-                .collect(Collectors.toMap(Weightage::getUniqueLineItemId, Weightage::getWeight));
-    }
-
     private <T> void finalHandler(AsyncResult<T> asyncResult, RoutingContext routingContext, long startTime) {
         HttpServerResponse response = routingContext.response();
         int statusCode = HttpResponseStatus.OK.code();
@@ -352,8 +494,13 @@ public class PlanRequestHandler implements Handler<RoutingContext> {
 
         if (asyncResult.succeeded()) {
             response.putHeader(HttpHeaders.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON);
+            putNextPollHint(routingContext);
             if (asyncResult.result() != null) {
+                final PlanRequest request = routingContext.get(PLAN_REQUEST_KEY);
+                final PlanRequestStageEvent encodeStage =
+                        PlanRequestStageEvent.start("encode", request == null ? null : request.getUniqueInstanceId());
                 String jsonResp = Json.encode(asyncResult.result());
+                encodeStage.end(jsonResp.length());
                 if (tracer.checkActiveAndRaw()) {
                     PlanRequest planRequest = routingContext.get(PLAN_REQUEST_KEY);
                     if (planRequest != null
@@ -368,6 +515,14 @@ public class PlanRequestHandler implements Handler<RoutingContext> {
             } else {
                 response.setStatusCode(HttpResponseStatus.NO_CONTENT.code()).end();
             }
+        } else if (asyncResult.cause() instanceof ServiceOverloadedException) {
+            ServiceOverloadedException overloaded = (ServiceOverloadedException) asyncResult.cause();
+            logger.warn(overloaded.getMessage());
+            metrics.incCounter(metricName("shed"));
+            response.setStatusCode(HttpResponseStatus.SERVICE_UNAVAILABLE.code())
+                    .putHeader(HttpHeaders.RETRY_AFTER, String.valueOf(overloaded.getRetryAfterSec()))
+                    .putHeader(HttpHeaders.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON)
+                    .end(Json.encode(Collections.singletonList(maskedErrorMessage)));
         } else {
             logger.error("Exception in executing PlanRequestHandler::{0}", asyncResult.cause().getStackTrace());
             if (asyncResult.cause() instanceof InvalidRequestException) {
@@ -400,6 +555,18 @@ public class PlanRequestHandler implements Handler<RoutingContext> {
         metrics.updateTimer(metricName("processing-time"), System.currentTimeMillis() - startTime);
     }
 
+    private void putNextPollHint(RoutingContext routingContext) {
+        PlanRequest planRequest = routingContext.get(PLAN_REQUEST_KEY);
+        if (planRequest == null) {
+            return;
+        }
+        Integer nextPollSec = pollHintService.nextPlansPollSec(
+                planRequest.getVendor(), planRequest.getRegion(), planRequest.getInstanceId(), Instant.now());
+        if (nextPollSec != null) {
+            routingContext.response().putHeader(PollHintService.NEXT_POLL_HEADER, String.valueOf(nextPollSec));
+        }
+    }
+
     private String metricName(String tag) {
         return String.format("pbs-plan-request.%s", tag);
     }
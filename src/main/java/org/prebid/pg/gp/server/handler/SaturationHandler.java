@@ -0,0 +1,66 @@
+package org.prebid.pg.gp.server.handler;
+
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.json.Json;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.web.RoutingContext;
+import org.prebid.pg.gp.server.http.AlertProxyHttpClient;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.metric.SaturationMonitor;
+import org.prebid.pg.gp.server.model.Shutdown;
+
+import java.util.Objects;
+
+/**
+ * A handler for the request of event loop, worker pool, database pool and circuit breaker saturation.
+ */
+public class SaturationHandler extends HandlerBase {
+
+    private static final Logger logger = LoggerFactory.getLogger(SaturationHandler.class);
+
+    private final SaturationMonitor saturationMonitor;
+
+    public SaturationHandler(
+            SaturationMonitor saturationMonitor,
+            String maskedErrorMessage,
+            Metrics metrics,
+            String resourceRole,
+            boolean securityEnabled,
+            AlertProxyHttpClient alertHttpClient,
+            Shutdown shutdown) {
+        super(resourceRole, securityEnabled, maskedErrorMessage, metrics, alertHttpClient, shutdown);
+        this.saturationMonitor = Objects.requireNonNull(saturationMonitor);
+    }
+
+    @Override
+    protected void processRequest(RoutingContext routingContext) {
+        metrics.incCounter(metricName("requests-served"));
+        routingContext.response().putHeader(HttpHeaders.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON);
+        try {
+            routingContext.response()
+                    .setStatusCode(HttpResponseStatus.OK.code())
+                    .end(Json.encode(saturationMonitor.snapshot()));
+        } catch (Exception ex) {
+            handleErrorResponse(routingContext.response(), ex);
+        }
+    }
+
+    @Override
+    protected String metricName(String tag) {
+        return String.format("saturation-request.%s", tag);
+    }
+
+    @Override
+    protected String handlerName() {
+        return "SaturationHandler";
+    }
+
+    @Override
+    protected Logger logger() {
+        return logger;
+    }
+
+}
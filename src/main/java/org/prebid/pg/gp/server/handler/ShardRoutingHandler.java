@@ -0,0 +1,177 @@
+package org.prebid.pg.gp.server.handler;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.web.RoutingContext;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.model.GpInstance;
+import org.prebid.pg.gp.server.services.ShardingService;
+import org.prebid.pg.gp.server.spring.config.app.ShardingConfiguration;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A handler to route plan and registration requests of a PBS host to the general planner instance owning it.
+ * <p>
+ * Requests for hosts owned by this instance, and requests already forwarded by another instance, go on to the
+ * next handler. Otherwise the request is either redirected or proxied to the owner, depending on the forward
+ * mode. A request that fails to be proxied is served by this instance.
+ */
+public class ShardRoutingHandler implements Handler<RoutingContext> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardRoutingHandler.class);
+
+    static final String FORWARDED_HEADER = "pg-gp-forwarded";
+
+    private static final Set<String> HOP_BY_HOP_HEADERS = new HashSet<>(Arrays.asList(
+            HttpHeaders.HOST.toString().toLowerCase(),
+            HttpHeaders.CONTENT_LENGTH.toString().toLowerCase(),
+            HttpHeaders.CONNECTION.toString().toLowerCase(),
+            HttpHeaders.TRANSFER_ENCODING.toString().toLowerCase()));
+
+    private final ShardingService shardingService;
+
+    private final ShardingConfiguration config;
+
+    private final HttpClient httpClient;
+
+    private final Metrics metrics;
+
+    public ShardRoutingHandler(
+            ShardingService shardingService,
+            ShardingConfiguration config,
+            HttpClient httpClient,
+            Metrics metrics
+    ) {
+        this.shardingService = Objects.requireNonNull(shardingService);
+        this.config = Objects.requireNonNull(config);
+        this.httpClient = Objects.requireNonNull(httpClient);
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    /**
+     * Routes the request to the instance owning the PBS host.
+     *
+     * @param routingContext context of request and response
+     */
+    @Override
+    public void handle(RoutingContext routingContext) {
+        final HttpServerRequest request = routingContext.request();
+        final String hostKey = hostKeyOf(routingContext);
+        if (hostKey == null || request.headers().contains(FORWARDED_HEADER) || shardingService.isOwner(hostKey)) {
+            routingContext.next();
+            return;
+        }
+        final GpInstance owner = shardingService.ownerOf(hostKey);
+        final String targetUrl = owner.getBaseUrl() + request.uri();
+        if (ShardingConfiguration.FORWARD_MODE_REDIRECT.equals(config.getForwardMode())) {
+            metrics.incCounter(metricName("redirected"));
+            routingContext.response()
+                    .setStatusCode(HttpResponseStatus.TEMPORARY_REDIRECT.code())
+                    .putHeader(HttpHeaders.LOCATION, targetUrl)
+                    .end();
+            return;
+        }
+        proxy(routingContext, owner, targetUrl);
+    }
+
+    private void proxy(RoutingContext routingContext, GpInstance owner, String targetUrl) {
+        final long start = System.currentTimeMillis();
+        final HttpServerRequest request = routingContext.request();
+        final Future<Void> done = Future.future();
+        final HttpClientRequest proxyRequest = httpClient.requestAbs(request.method(), targetUrl, proxyResponse ->
+                proxyResponse
+                        .exceptionHandler(done::tryFail)
+                        .bodyHandler(body -> {
+                            if (done.tryComplete()) {
+                                metrics.updateTimer(metricName("proxied"), System.currentTimeMillis() - start);
+                                respond(routingContext.response(), proxyResponse.statusCode(),
+                                        proxyResponse.headers(), body);
+                            }
+                        }));
+        proxyRequest.exceptionHandler(done::tryFail);
+        done.setHandler(ar -> {
+            if (ar.failed()) {
+                logger.warn("Failure in proxying {0} to {1}, serving locally::{2}",
+                        request.uri(), owner.getInstanceId(), ar.cause().getMessage());
+                metrics.incCounter(metricName("proxy-failed"));
+                routingContext.next();
+            }
+        });
+        proxyRequest.setTimeout(config.getProxyTimeoutSec() * 1000L);
+        copyHeaders(request.headers(), proxyRequest.headers());
+        proxyRequest.putHeader(FORWARDED_HEADER, shardingService.getSelf().getInstanceId());
+        final Buffer body = routingContext.getBody();
+        if (body != null && body.length() > 0) {
+            proxyRequest.end(body);
+        } else {
+            proxyRequest.end();
+        }
+    }
+
+    private void respond(HttpServerResponse response, int statusCode, MultiMap headers, Buffer body) {
+        if (response.closed()) {
+            return;
+        }
+        response.setStatusCode(statusCode);
+        copyHeaders(headers, response.headers());
+        response.end(body);
+    }
+
+    private static void copyHeaders(MultiMap from, MultiMap to) {
+        for (Map.Entry<String, String> header : from) {
+            if (!HOP_BY_HOP_HEADERS.contains(header.getKey().toLowerCase())) {
+                to.add(header.getKey(), header.getValue());
+            }
+        }
+    }
+
+    static String hostKeyOf(RoutingContext routingContext) {
+        final HttpServerRequest request = routingContext.request();
+        String vendor = request.getParam("vendor");
+        String region = request.getParam("region");
+        String instanceId = request.getParam("instanceId");
+        if (instanceId == null) {
+            final JsonObject body;
+            try {
+                body = routingContext.getBodyAsJson();
+            } catch (RuntimeException e) {
+                return null;
+            }
+            if (body == null) {
+                return null;
+            }
+            vendor = body.getValue("vendor") instanceof String ? body.getString("vendor") : null;
+            region = body.getValue("region") instanceof String ? body.getString("region") : null;
+            instanceId = body.getValue("hostInstanceId") instanceof String ? body.getString("hostInstanceId") : null;
+        }
+        if (isBlank(vendor) || isBlank(region) || isBlank(instanceId)) {
+            return null;
+        }
+        return String.format("%s^^%s^^%s", vendor, region, instanceId);
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isEmpty();
+    }
+
+    private String metricName(String tag) {
+        return String.format("sharding.%s", tag);
+    }
+
+}
@@ -121,8 +121,8 @@ public class AdminEventClient {
                 .region(arr.getString(3))
                 .instanceId(arr.getString(4))
                 .directive(Json.decodeValue(arr.getString(5), Directive.class))
-                .expiryAt(arr.getInstant(6))
-                .createdAt(arr.getInstant(7))
+                .expiryAt(SqlRows.getInstant(arr, 6))
+                .createdAt(SqlRows.getInstant(arr, 7))
                 .build();
     }
 
@@ -0,0 +1,90 @@
+package org.prebid.pg.gp.server.jdbc;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.asyncsql.MySQLClient;
+import io.vertx.ext.sql.SQLClient;
+import io.vertx.ext.sql.SQLConnection;
+
+import java.util.Objects;
+
+/**
+ * Creates clients speaking the MySQL wire protocol asynchronously on the event loop, instead of blocking
+ * a worker thread per query as {@code JDBCClient} does.
+ * <p>
+ * Their connections take the same parameters and options as JDBC connections, see {@link AsyncMySqlConnection}, and
+ * the data access clients read the values of their rows with {@link SqlRows}. Batch updates are not supported by
+ * them, so they only back connections of latency-critical reads and single statement writes.
+ */
+public final class AsyncMySqlClients {
+
+    private AsyncMySqlClients() {
+    }
+
+    /**
+     * Creates a client sharing the pool of the given name with other clients of the same {@code vertx}.
+     *
+     * @param vertx the Vert.x instance
+     * @param config configuration of the client, see {@link #config}
+     * @param poolName name of the connection pool
+     * @return the client
+     */
+    public static SQLClient createShared(Vertx vertx, JsonObject config, String poolName) {
+        return new Client(MySQLClient.createShared(vertx, config, poolName));
+    }
+
+    /**
+     * Builds the configuration of an asynchronous MySQL client.
+     *
+     * @param host database host
+     * @param port database port
+     * @param database database name
+     * @param user database user
+     * @param password password of the user
+     * @param maxPoolSize maximum number of connections
+     * @return configuration of the client
+     */
+    public static JsonObject config(String host, int port, String database, String user, String password,
+                                    int maxPoolSize) {
+        return new JsonObject()
+                .put("host", host)
+                .put("port", port)
+                .put("database", database)
+                .put("username", user)
+                .put("password", password)
+                .put("maxPoolSize", maxPoolSize)
+                .put("charset", "UTF-8");
+    }
+
+    private static class Client implements SQLClient {
+
+        private final SQLClient client;
+
+        Client(SQLClient client) {
+            this.client = Objects.requireNonNull(client);
+        }
+
+        @Override
+        public SQLClient getConnection(Handler<AsyncResult<SQLConnection>> handler) {
+            client.getConnection(ar -> handler.handle(ar.succeeded()
+                    ? Future.succeededFuture(new AsyncMySqlConnection(ar.result()))
+                    : ar));
+            return this;
+        }
+
+        @Override
+        public void close(Handler<AsyncResult<Void>> handler) {
+            client.close(handler);
+        }
+
+        @Override
+        public void close() {
+            client.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,182 @@
+package org.prebid.pg.gp.server.jdbc;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.sql.ResultSet;
+import io.vertx.ext.sql.SQLConnection;
+import io.vertx.ext.sql.SQLOptions;
+import io.vertx.ext.sql.SQLRowStream;
+import io.vertx.ext.sql.TransactionIsolation;
+import io.vertx.ext.sql.UpdateResult;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * A connection of the asynchronous MySQL client taking the same parameters and options as a JDBC connection.
+ * <p>
+ * Instants are added to parameters as ISO-8601 strings, which the JDBC client casts to timestamps but MySQL
+ * rejects when writing them, so they are sent as date-times of UTC, the time zone expected of the session.
+ * Options are ignored, the client always reads the whole result set once.
+ */
+class AsyncMySqlConnection implements SQLConnection {
+
+    private static final Pattern INSTANT = Pattern.compile("\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}(\\.\\d+)?Z");
+
+    private final SQLConnection connection;
+
+    AsyncMySqlConnection(SQLConnection connection) {
+        this.connection = Objects.requireNonNull(connection);
+    }
+
+    @Override
+    public SQLConnection setOptions(SQLOptions options) {
+        return this;
+    }
+
+    @Override
+    public SQLConnection setAutoCommit(boolean autoCommit, Handler<AsyncResult<Void>> resultHandler) {
+        connection.setAutoCommit(autoCommit, resultHandler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection execute(String sql, Handler<AsyncResult<Void>> resultHandler) {
+        connection.execute(sql, resultHandler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection query(String sql, Handler<AsyncResult<ResultSet>> resultHandler) {
+        connection.query(sql, resultHandler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection queryStream(String sql, Handler<AsyncResult<SQLRowStream>> handler) {
+        connection.queryStream(sql, handler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection queryWithParams(String sql, JsonArray params,
+                                         Handler<AsyncResult<ResultSet>> resultHandler) {
+        connection.queryWithParams(sql, toMySql(params), resultHandler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection queryStreamWithParams(String sql, JsonArray params,
+                                               Handler<AsyncResult<SQLRowStream>> handler) {
+        connection.queryStreamWithParams(sql, toMySql(params), handler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection update(String sql, Handler<AsyncResult<UpdateResult>> resultHandler) {
+        connection.update(sql, resultHandler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection updateWithParams(String sql, JsonArray params,
+                                          Handler<AsyncResult<UpdateResult>> resultHandler) {
+        connection.updateWithParams(sql, toMySql(params), resultHandler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection call(String sql, Handler<AsyncResult<ResultSet>> resultHandler) {
+        connection.call(sql, resultHandler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection callWithParams(String sql, JsonArray params, JsonArray outputs,
+                                        Handler<AsyncResult<ResultSet>> resultHandler) {
+        connection.callWithParams(sql, toMySql(params), outputs, resultHandler);
+        return this;
+    }
+
+    @Override
+    public void close(Handler<AsyncResult<Void>> handler) {
+        connection.close(handler);
+    }
+
+    @Override
+    public void close() {
+        connection.close();
+    }
+
+    @Override
+    public SQLConnection commit(Handler<AsyncResult<Void>> handler) {
+        connection.commit(handler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection rollback(Handler<AsyncResult<Void>> handler) {
+        connection.rollback(handler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection batch(List<String> sqlStatements, Handler<AsyncResult<List<Integer>>> handler) {
+        connection.batch(sqlStatements, handler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection batchWithParams(String sqlStatement, List<JsonArray> args,
+                                         Handler<AsyncResult<List<Integer>>> handler) {
+        connection.batchWithParams(sqlStatement, args.stream().map(AsyncMySqlConnection::toMySql)
+                .collect(Collectors.toList()), handler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection batchCallableWithParams(String sqlStatement, List<JsonArray> inArgs,
+                                                 List<JsonArray> outArgs,
+                                                 Handler<AsyncResult<List<Integer>>> handler) {
+        connection.batchCallableWithParams(sqlStatement, inArgs, outArgs, handler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection setTransactionIsolation(TransactionIsolation isolation, Handler<AsyncResult<Void>> handler) {
+        connection.setTransactionIsolation(isolation, handler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection getTransactionIsolation(Handler<AsyncResult<TransactionIsolation>> handler) {
+        connection.getTransactionIsolation(handler);
+        return this;
+    }
+
+    @Override
+    public <N> N unwrap() {
+        return connection.unwrap();
+    }
+
+    static JsonArray toMySql(JsonArray params) {
+        if (params == null) {
+            return null;
+        }
+        final JsonArray converted = new JsonArray();
+        for (int i = 0; i < params.size(); i++) {
+            final Object value = params.getValue(i);
+            if (value instanceof String && INSTANT.matcher((String) value).matches()) {
+                final String instant = (String) value;
+                converted.add(instant.substring(0, instant.length() - 1).replace('T', ' '));
+            } else {
+                converted.add(value);
+            }
+        }
+        return converted;
+    }
+
+}
@@ -0,0 +1,185 @@
+package org.prebid.pg.gp.server.jdbc;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.sql.ResultSet;
+import io.vertx.ext.sql.SQLConnection;
+import io.vertx.ext.sql.UpdateResult;
+import org.prebid.pg.gp.server.metric.Metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * A client to access database for the change versions of entities shared by the general planner instances.
+ * <p>
+ * The version of an entity is bumped in the same transaction that writes the entity, so a version read by any
+ * instance never runs ahead of the data. While the change feed runs, versions bumped by this instance are
+ * remembered until consumed, so the changes made by other instances can be told apart.
+ */
+public class ChangeVersionClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChangeVersionClient.class);
+
+    public static final String LINE_ITEMS = "line_items";
+
+    public static final String REALLOCATED_PLANS = "reallocated_plans";
+
+    private static final String BUMP_SQL =
+            "UPDATE change_version SET version = version + 1 WHERE entity = ?";
+
+    private static final String INSERT_SQL =
+            "INSERT INTO change_version (entity, version) VALUES (?, 1)";
+
+    private static final String GET_VERSION_SQL =
+            "SELECT version FROM change_version WHERE entity = ?";
+
+    private static final String GET_VERSIONS_SQL =
+            "SELECT entity, version FROM change_version";
+
+    // bound on versions not consumed yet, the oldest are dropped and then deemed changed elsewhere
+    private static final int MAX_LOCAL_VERSIONS = 10_000;
+
+    private final Metrics metrics;
+
+    private final ConcurrentMap<String, NavigableSet<Long>> localVersions = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Long> lastCommittedVersions = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Long> consumedVersions = new ConcurrentHashMap<>();
+
+    private volatile boolean localVersionsTracked;
+
+    public ChangeVersionClient(Metrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    /**
+     * Bumps the change version of the given entity. The caller runs this in the transaction writing the entity,
+     * closes the connection, and calls {@link #committed(String, long)} once the transaction is committed.
+     *
+     * @param sqlConnection connection in a transaction
+     * @param entity name of the changed entity
+     * @return a future of the new version
+     */
+    Future<Long> bump(SQLConnection sqlConnection, String entity) {
+        final JsonArray params = new JsonArray().add(entity);
+        return update(sqlConnection, BUMP_SQL, params)
+                .compose(updateResult -> updateResult.getUpdated() > 0
+                        ? Future.succeededFuture(updateResult)
+                        : update(sqlConnection, INSERT_SQL, params))
+                .compose(updateResult -> {
+                    final Future<ResultSet> future = Future.future();
+                    sqlConnection.queryWithParams(GET_VERSION_SQL, params, future);
+                    return future;
+                })
+                .map(rs -> SqlRows.getLong(rs.getResults().get(0), 0))
+                .recover(ex -> {
+                    logger.error("Failure in bumping change version of {0}::{1}", entity, ex.getMessage());
+                    metrics.incCounter(metricName("bump-change-version.exc"));
+                    return Future.failedFuture(ex);
+                });
+    }
+
+    /**
+     * Reads the change versions of all entities.
+     *
+     * @param sqlConnection connection to close afterwards
+     * @return a future of versions by entity name
+     */
+    Future<Map<String, Long>> getVersions(SQLConnection sqlConnection) {
+        final long start = System.currentTimeMillis();
+        final String method = "read-change-versions";
+        final Future<ResultSet> future = Future.future();
+        sqlConnection.query(GET_VERSIONS_SQL, ar -> {
+            sqlConnection.close();
+            metrics.updateTimer(metricName(method), System.currentTimeMillis() - start);
+            if (ar.failed()) {
+                logger.error("Failure in reading change versions::{0}", ar.cause().getMessage());
+                metrics.incCounter(metricName(method + ".exc"));
+            }
+            future.handle(ar);
+        });
+        return future.map(rs -> {
+            final Map<String, Long> versions = new HashMap<>();
+            for (JsonArray row : rs.getResults()) {
+                versions.put(row.getString(0), SqlRows.getLong(row, 1));
+            }
+            return versions;
+        });
+    }
+
+    /**
+     * Starts remembering the versions bumped by this instance, to be consumed by the change feed.
+     */
+    public void trackLocalVersions() {
+        localVersionsTracked = true;
+    }
+
+    /**
+     * Remembers a version bumped by this instance in a committed transaction.
+     *
+     * @param entity name of the entity
+     * @param version the bumped version
+     */
+    public void committed(String entity, long version) {
+        lastCommittedVersions.merge(entity, version, Math::max);
+        if (!localVersionsTracked || version <= consumedVersions.getOrDefault(entity, 0L)) {
+            return;
+        }
+        final NavigableSet<Long> versions = localVersions.computeIfAbsent(entity, key -> new ConcurrentSkipListSet<>());
+        versions.add(version);
+        while (versions.size() > MAX_LOCAL_VERSIONS) {
+            versions.pollFirst();
+        }
+    }
+
+    /**
+     * Gets the highest version bumped by this instance in a committed transaction.
+     *
+     * @param entity name of the entity
+     * @return the version, or 0 if none was bumped yet
+     */
+    public long getLastCommittedVersion(String entity) {
+        return lastCommittedVersions.getOrDefault(entity, 0L);
+    }
+
+    /**
+     * Counts the versions in {@code (after, upTo]} bumped by this instance, and forgets the versions up to
+     * {@code upTo}.
+     *
+     * @param entity name of the entity
+     * @param after the version already consumed
+     * @param upTo the version just read
+     * @return number of versions bumped by this instance in the range
+     */
+    public int consumeLocalVersions(String entity, long after, long upTo) {
+        consumedVersions.merge(entity, upTo, Math::max);
+        final NavigableSet<Long> versions = localVersions.get(entity);
+        if (versions == null) {
+            return 0;
+        }
+        final NavigableSet<Long> consumed = versions.headSet(upTo, true);
+        final int count = consumed.tailSet(after, false).size();
+        consumed.clear();
+        return count;
+    }
+
+    private Future<UpdateResult> update(SQLConnection sqlConnection, String sql, JsonArray params) {
+        final Future<UpdateResult> future = Future.future();
+        sqlConnection.updateWithParams(sql, params, future);
+        return future;
+    }
+
+    private String metricName(String tag) {
+        return String.format("db-access.%s", tag);
+    }
+
+}
@@ -19,6 +19,8 @@ import java.time.Instant;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * A {@link PlannerDataAccessClient} guarded by the circuit breaker.
@@ -34,16 +36,67 @@ public class CircuitBreakerSecuredPlannerDataAccessClient extends CircuitBreaker
         this.plannerDataAccessClient = Objects.requireNonNull(plannerDataAccessClient);
     }
 
+    private CircuitBreakerSecuredPlannerDataAccessClient(
+            PlannerDataAccessClient plannerDataAccessClient,
+            CircuitBreakerSecuredPlannerDataAccessClient securedClient) {
+        super(securedClient);
+        this.plannerDataAccessClient = plannerDataAccessClient;
+    }
+
+    /**
+     * Runs a multi-query flow on a single connection borrowed for its duration, instead of checking out
+     * a connection for every query. Borrowing the connection and every query of the flow are guarded by
+     * the circuit breaker.
+     *
+     * @param flow the queries to run, given a client issuing them on the borrowed connection
+     * @param <T> type of the result of the flow
+     * @return a future of the result of the flow
+     */
+    public <T> Future<T> inSession(Function<CircuitBreakerSecuredPlannerDataAccessClient, Future<T>> flow) {
+        return runInSession(plannerDataAccessClient::openSession, flow);
+    }
+
+    /**
+     * Runs a read-only multi-query flow tolerating replication lag on a single connection, borrowed from a read
+     * replica if routed to one, see {@link #inSession(Function)}.
+     *
+     * @param flow the queries to run, given a client issuing them on the borrowed connection
+     * @param <T> type of the result of the flow
+     * @return a future of the result of the flow
+     */
+    public <T> Future<T> inReadOnlySession(Function<CircuitBreakerSecuredPlannerDataAccessClient, Future<T>> flow) {
+        return runInSession(plannerDataAccessClient::openReadOnlySession, flow);
+    }
+
+    private <T> Future<T> runInSession(Supplier<Future<SqlSession>> opener,
+                                       Function<CircuitBreakerSecuredPlannerDataAccessClient, Future<T>> flow) {
+        final Future<T> result = Future.future();
+        plannerCircuitBreaker.<SqlSession>executeCommand(
+                future -> opener.get().setHandler(ar -> {
+                    if (ar.succeeded() && result.isComplete()) {
+                        // the breaker gave up waiting for the connection
+                        ar.result().release();
+                    }
+                    future.handle(ar);
+                }))
+                .compose(session -> plannerDataAccessClient.inSession(session, sessionClient ->
+                        flow.apply(new CircuitBreakerSecuredPlannerDataAccessClient(sessionClient, this))))
+                .setHandler(result);
+        return result;
+    }
+
     /**
      * Updates the host-based token reallocation plans.
      *
      * @param reallocatedPlans a list of {@link ReallocatedPlan}s
      * @param batchSize size of batch update
+     * @param fence the leader lease fence held by the write transactions
      * @return a future to indicate if update successfully
      */
-    public Future<Void> updateReallocatedPlans(List<ReallocatedPlan> reallocatedPlans, int batchSize) {
+    public Future<Void> updateReallocatedPlans(List<ReallocatedPlan> reallocatedPlans, int batchSize,
+            LeaderLeaseFence fence) {
         return plannerCircuitBreaker.executeCommand(
-                future -> plannerDataAccessClient.updateReallocatedPlans(reallocatedPlans, batchSize)
+                future -> plannerDataAccessClient.updateReallocatedPlans(reallocatedPlans, batchSize, fence)
                         .setHandler(future));
     }
 
@@ -60,6 +113,18 @@ public class CircuitBreakerSecuredPlannerDataAccessClient extends CircuitBreaker
                         .setHandler(future));
     }
 
+    /**
+     * Gets the {@link ReallocatedPlan}s of the given hosts.
+     *
+     * @param hosts the hosts to retrieve reallocation plans for
+     * @return a future of list of {@code ReallocatedPlan}s, hosts without a plan are left out
+     */
+    public Future<List<ReallocatedPlan>> getReallocatedPlans(List<PbsHost> hosts) {
+        return plannerCircuitBreaker.executeCommand(
+                future -> plannerDataAccessClient.getReallocatedPlans(hosts)
+                        .setHandler(future));
+    }
+
     /**
      * Gets the latest {@link ReallocatedPlan}s updated no earlier than the given {@code updatedSince}.
      *
@@ -156,18 +221,42 @@ public class CircuitBreakerSecuredPlannerDataAccessClient extends CircuitBreaker
     }
 
     /**
-     * Gets the delivery token summary information of line items that meet the given criteria.
+     * Streams the delivery token summary information of line items that meet the given criteria, page after page
+     * in the order of their summary window start. Each page is read in its own command once the previous one is
+     * handled, so slow consumers neither hold a connection nor time the command out.
      *
      * @param startTime the earliest time for the start of summary time window
      * @param endTime the latest time for the end of summary time window
      * @param lineItemIds ids of line items
-     * @return a future of list of {@link LineItemsTokensSummary}s
+     * @param pageHandler handler of each page, the next page is read when its future completes
+     * @return a future completed when all pages are handled
      */
-    public Future<List<LineItemsTokensSummary>> getLineItemsTokensSummary(Instant startTime, Instant endTime,
-            List<String> lineItemIds) {
-        return plannerCircuitBreaker.executeCommand(
-                future -> plannerDataAccessClient.getLineItemsTokensSummary(startTime, endTime, lineItemIds)
-                        .setHandler(future));
+    public Future<Void> streamLineItemsTokensSummary(Instant startTime, Instant endTime, List<String> lineItemIds,
+            Function<List<LineItemsTokensSummary>, Future<Void>> pageHandler) {
+        final Future<Void> done = Future.future();
+        streamLineItemsTokensSummary(startTime, endTime, lineItemIds, null, pageHandler, done);
+        return done;
+    }
+
+    private void streamLineItemsTokensSummary(Instant startTime, Instant endTime, List<String> lineItemIds,
+            LineItemsTokensSummary after, Function<List<LineItemsTokensSummary>, Future<Void>> pageHandler,
+            Future<Void> done) {
+        plannerCircuitBreaker.<List<LineItemsTokensSummary>>executeCommand(
+                future -> plannerDataAccessClient.getLineItemsTokensSummary(startTime, endTime, lineItemIds, after)
+                        .setHandler(future))
+                .compose(page -> page.isEmpty()
+                        ? Future.succeededFuture(page)
+                        : pageHandler.apply(page).map(page))
+                .setHandler(ar -> {
+                    if (ar.failed()) {
+                        done.fail(ar.cause());
+                    } else if (ar.result().isEmpty()) {
+                        done.complete();
+                    } else {
+                        final LineItemsTokensSummary last = ar.result().get(ar.result().size() - 1);
+                        streamLineItemsTokensSummary(startTime, endTime, lineItemIds, last, pageHandler, done);
+                    }
+                });
     }
 
     /**
@@ -191,11 +280,23 @@ public class CircuitBreakerSecuredPlannerDataAccessClient extends CircuitBreaker
      *
      * @param lineItems the information to be updated
      * @param batchSize the batch size for update operation
+     * @param fence the leader lease fence held by the write transactions
      * @return a future to indicate update result
      */
-    public Future<Void> updateLineItems(List<LineItem> lineItems, int batchSize) {
+    public Future<Void> updateLineItems(List<LineItem> lineItems, int batchSize, LeaderLeaseFence fence) {
+        return plannerCircuitBreaker.executeCommand(
+                future -> plannerDataAccessClient.updateLineItems(lineItems, batchSize, fence)
+                        .setHandler(future));
+    }
+
+    /**
+     * Gets the change versions of the entities shared by the general planner instances.
+     *
+     * @return a future of versions by entity name
+     */
+    public Future<Map<String, Long>> getChangeVersions() {
         return plannerCircuitBreaker.executeCommand(
-                future -> plannerDataAccessClient.updateLineItems(lineItems, batchSize)
+                future -> plannerDataAccessClient.getChangeVersions()
                         .setHandler(future));
     }
 
@@ -0,0 +1,150 @@
+package org.prebid.pg.gp.server.jdbc;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.sql.ResultSet;
+import io.vertx.ext.sql.SQLClient;
+import io.vertx.ext.sql.SQLConnection;
+import io.vertx.ext.sql.UpdateResult;
+import org.javatuples.Pair;
+import org.prebid.pg.gp.server.metric.Metrics;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A client to access database for purging expired rows of the history tables filled by triggers.
+ * <p>
+ * Rows are deleted by ranges of their auto-increment {@code audit_id}, so each delete locks a bounded range of
+ * the primary key and replicates as a statement touching at most that many rows. Expiry is always checked with
+ * the database clock.
+ */
+public class HistoryRetentionClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistoryRetentionClient.class);
+
+    public static final String LINE_ITEMS_HISTORY = "line_items_history";
+
+    public static final String REALLOCATED_PLANS_HISTORY = "reallocated_plans_history";
+
+    public static final String APP_REGISTRATION_HISTORY = "app_registration_history";
+
+    static final List<String> HISTORY_TABLES = Collections.unmodifiableList(
+            Arrays.asList(LINE_ITEMS_HISTORY, REALLOCATED_PLANS_HISTORY, APP_REGISTRATION_HISTORY));
+
+    private static final String ID_RANGE_SQL = "SELECT MIN(audit_id), MAX(audit_id) FROM %s";
+
+    // history rows are never updated, so audit_time grows with audit_id
+    private static final String FIRST_RETAINED_SQL =
+            "SELECT audit_id FROM %s WHERE audit_time >= TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP) "
+            + "ORDER BY audit_time LIMIT 1";
+
+    private static final String DELETE_CHUNK_SQL =
+            "DELETE FROM %s WHERE audit_id >= ? AND audit_id < ? "
+            + "AND audit_time < TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP)";
+
+    private final SQLClient sqlClient;
+
+    private final Metrics metrics;
+
+    public HistoryRetentionClient(SQLClient sqlClient, Metrics metrics) {
+        this.sqlClient = Objects.requireNonNull(sqlClient);
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    /**
+     * Finds the range of {@code audit_id} holding the rows of the given history table older than {@code ttlSec}.
+     *
+     * @param table name of the history table
+     * @param ttlSec time to live of the rows in seconds
+     * @return a future of the first id, inclusive, and the last id, exclusive, equal if nothing has expired
+     */
+    public Future<Pair<Long, Long>> findExpiredRange(String table, int ttlSec) {
+        checkTable(table);
+        final long start = System.currentTimeMillis();
+        final String method = "find-expired-history";
+        return connect().compose(sqlConnection -> {
+            final Future<ResultSet> idRange = Future.future();
+            sqlConnection.query(String.format(ID_RANGE_SQL, table), idRange);
+            return idRange.compose(range -> {
+                final Future<ResultSet> firstRetained = Future.future();
+                sqlConnection.queryWithParams(String.format(FIRST_RETAINED_SQL, table),
+                        new JsonArray().add(-ttlSec), firstRetained);
+                return firstRetained.map(retained -> expiredRange(range, retained));
+            }).map(range -> {
+                sqlConnection.close();
+                metrics.updateTimer(metricName(method), System.currentTimeMillis() - start);
+                return range;
+            }).recover(ex -> {
+                sqlConnection.close();
+                logger.error("Failure in finding expired rows of {0}::{1}", table, ex.getMessage());
+                metrics.incCounter(metricName(method + ".exc"));
+                return Future.failedFuture(ex);
+            });
+        });
+    }
+
+    /**
+     * Deletes the rows of the given history table older than {@code ttlSec} with {@code audit_id} in the given
+     * range.
+     *
+     * @param table name of the history table
+     * @param fromId first id, inclusive
+     * @param toId last id, exclusive
+     * @param ttlSec time to live of the rows in seconds
+     * @return a future of the number of rows deleted
+     */
+    public Future<Integer> purge(String table, long fromId, long toId, int ttlSec) {
+        checkTable(table);
+        final long start = System.currentTimeMillis();
+        final String method = "purge-history";
+        return connect().compose(sqlConnection -> {
+            final Future<UpdateResult> future = Future.future();
+            sqlConnection.updateWithParams(String.format(DELETE_CHUNK_SQL, table),
+                    new JsonArray().add(fromId).add(toId).add(-ttlSec), ar -> {
+                        sqlConnection.close();
+                        metrics.updateTimer(metricName(method), System.currentTimeMillis() - start);
+                        if (ar.failed()) {
+                            logger.error("Failure in purging {0}::{1}", table, ar.cause().getMessage());
+                            metrics.incCounter(metricName(method + ".exc"));
+                        }
+                        future.handle(ar);
+                    });
+            return future;
+        }).map(UpdateResult::getUpdated);
+    }
+
+    private static Pair<Long, Long> expiredRange(ResultSet range, ResultSet retained) {
+        final JsonArray ids = range.getResults().get(0);
+        if (ids.getValue(0) == null) {
+            return Pair.with(0L, 0L);
+        }
+        final long firstId = ((Number) ids.getValue(0)).longValue();
+        final long lastId = retained.getNumRows() == 0
+                ? ((Number) ids.getValue(1)).longValue() + 1
+                : ((Number) retained.getResults().get(0).getValue(0)).longValue();
+        return Pair.with(firstId, Math.max(firstId, lastId));
+    }
+
+    private static void checkTable(String table) {
+        // table names are formatted into the statements
+        if (!HISTORY_TABLES.contains(table)) {
+            throw new IllegalArgumentException(String.format("Not a history table: %s", table));
+        }
+    }
+
+    private Future<SQLConnection> connect() {
+        final Future<SQLConnection> future = Future.future();
+        sqlClient.getConnection(future);
+        return future;
+    }
+
+    private String metricName(String tag) {
+        return String.format("db-access.%s", tag);
+    }
+
+}
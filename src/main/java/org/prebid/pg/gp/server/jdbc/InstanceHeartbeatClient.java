@@ -0,0 +1,133 @@
+package org.prebid.pg.gp.server.jdbc;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.sql.ResultSet;
+import io.vertx.ext.sql.SQLClient;
+import io.vertx.ext.sql.SQLConnection;
+import io.vertx.ext.sql.UpdateResult;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.model.GpInstance;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * A client to access database for heartbeats of the general planner instances sharing the database.
+ * <p>
+ * Heartbeat age is always computed with the database clock, so clock skew among instances does not matter.
+ */
+public class InstanceHeartbeatClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(InstanceHeartbeatClient.class);
+
+    private static final String BEAT_SQL =
+            "REPLACE INTO gp_instance_heartbeat (instance_id, base_url, heartbeat_at) VALUES (?, ?, CURRENT_TIMESTAMP)";
+
+    private static final String FIND_LIVE_SQL =
+            "SELECT instance_id, base_url FROM gp_instance_heartbeat "
+            + "WHERE heartbeat_at > TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP) ORDER BY instance_id";
+
+    private static final String DELETE_SQL =
+            "DELETE FROM gp_instance_heartbeat WHERE instance_id = ?";
+
+    private static final String DELETE_STALE_SQL =
+            "DELETE FROM gp_instance_heartbeat WHERE heartbeat_at < TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP)";
+
+    private final SQLClient sqlClient;
+
+    private final Metrics metrics;
+
+    public InstanceHeartbeatClient(SQLClient sqlClient, Metrics metrics) {
+        this.sqlClient = Objects.requireNonNull(sqlClient);
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    /**
+     * Records a heartbeat of the given instance.
+     *
+     * @param instance the live instance
+     * @return a future of the update result
+     */
+    public Future<UpdateResult> beat(GpInstance instance) {
+        return update("update-heartbeat", BEAT_SQL,
+                new JsonArray().add(instance.getInstanceId()).add(instance.getBaseUrl()));
+    }
+
+    /**
+     * Finds the instances with a heartbeat within the last {@code ttlSec} seconds.
+     *
+     * @param ttlSec maximum heartbeat age in seconds
+     * @return a future of the live instances ordered by instance id
+     */
+    public Future<List<GpInstance>> findLive(int ttlSec) {
+        final long start = System.currentTimeMillis();
+        final String method = "read-heartbeats";
+        return connect().compose(sqlConnection -> {
+            final Future<ResultSet> future = Future.future();
+            sqlConnection.queryWithParams(FIND_LIVE_SQL, new JsonArray().add(-ttlSec), ar -> {
+                sqlConnection.close();
+                metrics.updateTimer(metricName(method), System.currentTimeMillis() - start);
+                if (ar.failed()) {
+                    logger.error("Failure in reading instance heartbeats::{0}", ar.cause().getMessage());
+                    metrics.incCounter(metricName(method + ".exc"));
+                }
+                future.handle(ar);
+            });
+            return future;
+        }).map(rs -> rs.getResults().stream()
+                .map(row -> GpInstance.builder().instanceId(row.getString(0)).baseUrl(row.getString(1)).build())
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Removes the heartbeat of the given instance, so others stop routing to it right away.
+     *
+     * @param instanceId id of the instance
+     * @return a future of the update result
+     */
+    public Future<UpdateResult> remove(String instanceId) {
+        return update("delete-heartbeat", DELETE_SQL, new JsonArray().add(instanceId));
+    }
+
+    /**
+     * Removes heartbeats older than {@code maxAgeSec} seconds, left behind by instances that crashed.
+     *
+     * @param maxAgeSec maximum heartbeat age in seconds
+     * @return a future of the update result
+     */
+    public Future<UpdateResult> removeStale(int maxAgeSec) {
+        return update("delete-stale-heartbeats", DELETE_STALE_SQL, new JsonArray().add(-maxAgeSec));
+    }
+
+    private Future<UpdateResult> update(String method, String sql, JsonArray params) {
+        final long start = System.currentTimeMillis();
+        return connect().compose(sqlConnection -> {
+            final Future<UpdateResult> future = Future.future();
+            sqlConnection.updateWithParams(sql, params, ar -> {
+                sqlConnection.close();
+                metrics.updateTimer(metricName(method), System.currentTimeMillis() - start);
+                if (ar.failed()) {
+                    logger.error("Failure in {0}::{1}", method, ar.cause().getMessage());
+                    metrics.incCounter(metricName(method + ".exc"));
+                }
+                future.handle(ar);
+            });
+            return future;
+        });
+    }
+
+    private Future<SQLConnection> connect() {
+        final Future<SQLConnection> future = Future.future();
+        sqlClient.getConnection(future);
+        return future;
+    }
+
+    private String metricName(String tag) {
+        return String.format("db-access.%s", tag);
+    }
+
+}
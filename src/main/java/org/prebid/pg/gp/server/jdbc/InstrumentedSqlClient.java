@@ -0,0 +1,48 @@
+package org.prebid.pg.gp.server.jdbc;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.ext.sql.SQLClient;
+import io.vertx.ext.sql.SQLConnection;
+
+import java.util.Objects;
+
+/**
+ * A client measuring how long connections take to be handed out, and instrumenting the statements run on them.
+ */
+class InstrumentedSqlClient implements SQLClient {
+
+    private final SQLClient client;
+
+    private final QueryInstrumentation instrumentation;
+
+    InstrumentedSqlClient(SQLClient client, QueryInstrumentation instrumentation) {
+        this.client = Objects.requireNonNull(client);
+        this.instrumentation = Objects.requireNonNull(instrumentation);
+    }
+
+    @Override
+    public SQLClient getConnection(Handler<AsyncResult<SQLConnection>> handler) {
+        final long start = System.currentTimeMillis();
+        client.getConnection(ar -> {
+            final long waitMs = System.currentTimeMillis() - start;
+            instrumentation.recordConnectionWait(waitMs);
+            handler.handle(ar.succeeded()
+                    ? Future.succeededFuture(new InstrumentedSqlConnection(ar.result(), instrumentation, waitMs))
+                    : ar);
+        });
+        return this;
+    }
+
+    @Override
+    public void close(Handler<AsyncResult<Void>> handler) {
+        client.close(handler);
+    }
+
+    @Override
+    public void close() {
+        client.close();
+    }
+
+}
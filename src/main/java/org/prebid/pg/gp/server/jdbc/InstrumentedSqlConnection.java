@@ -0,0 +1,217 @@
+package org.prebid.pg.gp.server.jdbc;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.sql.ResultSet;
+import io.vertx.ext.sql.SQLConnection;
+import io.vertx.ext.sql.SQLOptions;
+import io.vertx.ext.sql.SQLRowStream;
+import io.vertx.ext.sql.TransactionIsolation;
+import io.vertx.ext.sql.UpdateResult;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.function.ToLongFunction;
+
+/**
+ * A connection recording each statement run on it with {@link QueryInstrumentation}.
+ * <p>
+ * Rows are the rows returned by queries and affected by updates, bytes estimate the size of the values returned
+ * and of the parameters sent. The time taken to hand out the connection is attributed to its first statement.
+ * Streamed queries are timed until the stream opens, their rows are not counted.
+ */
+class InstrumentedSqlConnection implements SQLConnection {
+
+    private final SQLConnection connection;
+
+    private final QueryInstrumentation instrumentation;
+
+    private long connectionWaitMs;
+
+    InstrumentedSqlConnection(SQLConnection connection, QueryInstrumentation instrumentation, long connectionWaitMs) {
+        this.connection = Objects.requireNonNull(connection);
+        this.instrumentation = Objects.requireNonNull(instrumentation);
+        this.connectionWaitMs = connectionWaitMs;
+    }
+
+    @Override
+    public SQLConnection setOptions(SQLOptions options) {
+        connection.setOptions(options);
+        return this;
+    }
+
+    @Override
+    public SQLConnection setAutoCommit(boolean autoCommit, Handler<AsyncResult<Void>> resultHandler) {
+        connection.setAutoCommit(autoCommit, resultHandler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection execute(String sql, Handler<AsyncResult<Void>> resultHandler) {
+        connection.execute(sql, recording(sql, null, result -> 0, result -> 0, resultHandler));
+        return this;
+    }
+
+    @Override
+    public SQLConnection query(String sql, Handler<AsyncResult<ResultSet>> resultHandler) {
+        connection.query(sql, recording(sql, null, ResultSet::getNumRows,
+                InstrumentedSqlConnection::resultBytes, resultHandler));
+        return this;
+    }
+
+    @Override
+    public SQLConnection queryStream(String sql, Handler<AsyncResult<SQLRowStream>> handler) {
+        connection.queryStream(sql, recording(sql, null, stream -> 0, stream -> 0, handler));
+        return this;
+    }
+
+    @Override
+    public SQLConnection queryWithParams(String sql, JsonArray params,
+                                         Handler<AsyncResult<ResultSet>> resultHandler) {
+        connection.queryWithParams(sql, params, recording(sql, params, ResultSet::getNumRows,
+                InstrumentedSqlConnection::resultBytes, resultHandler));
+        return this;
+    }
+
+    @Override
+    public SQLConnection queryStreamWithParams(String sql, JsonArray params,
+                                               Handler<AsyncResult<SQLRowStream>> handler) {
+        connection.queryStreamWithParams(sql, params, recording(sql, params, stream -> 0, stream -> 0, handler));
+        return this;
+    }
+
+    @Override
+    public SQLConnection update(String sql, Handler<AsyncResult<UpdateResult>> resultHandler) {
+        connection.update(sql, recording(sql, null, UpdateResult::getUpdated, result -> 0, resultHandler));
+        return this;
+    }
+
+    @Override
+    public SQLConnection updateWithParams(String sql, JsonArray params,
+                                          Handler<AsyncResult<UpdateResult>> resultHandler) {
+        connection.updateWithParams(sql, params,
+                recording(sql, params, UpdateResult::getUpdated, result -> 0, resultHandler));
+        return this;
+    }
+
+    @Override
+    public SQLConnection call(String sql, Handler<AsyncResult<ResultSet>> resultHandler) {
+        connection.call(sql, recording(sql, null, ResultSet::getNumRows,
+                InstrumentedSqlConnection::resultBytes, resultHandler));
+        return this;
+    }
+
+    @Override
+    public SQLConnection callWithParams(String sql, JsonArray params, JsonArray outputs,
+                                        Handler<AsyncResult<ResultSet>> resultHandler) {
+        connection.callWithParams(sql, params, outputs, recording(sql, params, ResultSet::getNumRows,
+                InstrumentedSqlConnection::resultBytes, resultHandler));
+        return this;
+    }
+
+    @Override
+    public void close(Handler<AsyncResult<Void>> handler) {
+        connection.close(handler);
+    }
+
+    @Override
+    public void close() {
+        connection.close();
+    }
+
+    @Override
+    public SQLConnection commit(Handler<AsyncResult<Void>> handler) {
+        connection.commit(handler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection rollback(Handler<AsyncResult<Void>> handler) {
+        connection.rollback(handler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection batch(List<String> sqlStatements, Handler<AsyncResult<List<Integer>>> handler) {
+        final String sql = sqlStatements.isEmpty() ? "batch" : sqlStatements.get(0);
+        connection.batch(sqlStatements,
+                recording(sql, 0, 0, InstrumentedSqlConnection::sum, result -> 0, handler));
+        return this;
+    }
+
+    @Override
+    public SQLConnection batchWithParams(String sqlStatement, List<JsonArray> args,
+                                         Handler<AsyncResult<List<Integer>>> handler) {
+        connection.batchWithParams(sqlStatement, args, recording(sqlStatement, paramsCount(args), sizeOf(args),
+                InstrumentedSqlConnection::sum, result -> 0, handler));
+        return this;
+    }
+
+    @Override
+    public SQLConnection batchCallableWithParams(String sqlStatement, List<JsonArray> inArgs,
+                                                 List<JsonArray> outArgs,
+                                                 Handler<AsyncResult<List<Integer>>> handler) {
+        connection.batchCallableWithParams(sqlStatement, inArgs, outArgs, recording(sqlStatement,
+                paramsCount(inArgs), sizeOf(inArgs), InstrumentedSqlConnection::sum, result -> 0, handler));
+        return this;
+    }
+
+    @Override
+    public SQLConnection setTransactionIsolation(TransactionIsolation isolation, Handler<AsyncResult<Void>> handler) {
+        connection.setTransactionIsolation(isolation, handler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection getTransactionIsolation(Handler<AsyncResult<TransactionIsolation>> handler) {
+        connection.getTransactionIsolation(handler);
+        return this;
+    }
+
+    @Override
+    public <N> N unwrap() {
+        return connection.unwrap();
+    }
+
+    private <T> Handler<AsyncResult<T>> recording(String sql, JsonArray params, ToLongFunction<T> rows,
+                                                  ToLongFunction<T> resultBytes, Handler<AsyncResult<T>> handler) {
+        return recording(sql, params == null ? 0 : params.size(), QueryInstrumentation.sizeOf(params), rows,
+                resultBytes, handler);
+    }
+
+    private <T> Handler<AsyncResult<T>> recording(String sql, int params, long paramBytes, ToLongFunction<T> rows,
+                                                  ToLongFunction<T> resultBytes, Handler<AsyncResult<T>> handler) {
+        final long waitMs = connectionWaitMs;
+        connectionWaitMs = 0;
+        final long start = System.currentTimeMillis();
+        return ar -> {
+            final long latencyMs = System.currentTimeMillis() - start;
+            final T result = ar.succeeded() ? ar.result() : null;
+            instrumentation.record(sql, params, waitMs, latencyMs,
+                    result == null ? 0 : rows.applyAsLong(result),
+                    paramBytes + (result == null ? 0 : resultBytes.applyAsLong(result)),
+                    ar.failed());
+            handler.handle(ar);
+        };
+    }
+
+    private static int paramsCount(List<JsonArray> args) {
+        return args.stream().mapToInt(JsonArray::size).sum();
+    }
+
+    private static long sizeOf(List<JsonArray> args) {
+        return args.stream().mapToLong(QueryInstrumentation::sizeOf).sum();
+    }
+
+    private static long resultBytes(ResultSet resultSet) {
+        return resultSet.getResults() == null
+                ? 0
+                : resultSet.getResults().stream().mapToLong(QueryInstrumentation::sizeOf).sum();
+    }
+
+    private static long sum(List<Integer> updated) {
+        return updated.stream().mapToLong(Integer::longValue).sum();
+    }
+
+}
@@ -0,0 +1,150 @@
+package org.prebid.pg.gp.server.jdbc;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.sql.ResultSet;
+import io.vertx.ext.sql.SQLClient;
+import io.vertx.ext.sql.SQLConnection;
+import io.vertx.ext.sql.UpdateResult;
+import org.prebid.pg.gp.server.metric.Metrics;
+
+import java.util.Objects;
+
+/**
+ * A client to access database for the leader lease shared by all general planner instances.
+ * <p>
+ * Lease expiry is always computed with the database clock, so clock skew among instances does not matter.
+ * The fencing token is incremented each time the lease changes hands, writes of the leader being fenced with it
+ * by {@link LeaderLeaseFence}.
+ */
+public class LeaderLeaseClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(LeaderLeaseClient.class);
+
+    // fencing_token is assigned first, as MySQL evaluates single-table assignments left to right
+    private static final String RENEW_OR_TAKE_OVER_SQL =
+            "UPDATE leader_lease SET "
+            + "fencing_token = CASE WHEN holder = ? THEN fencing_token ELSE fencing_token + 1 END, "
+            + "holder = ?, expires_at = TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP) "
+            + "WHERE name = ? AND (holder = ? OR expires_at < CURRENT_TIMESTAMP)";
+
+    private static final String INSERT_SQL =
+            "INSERT INTO leader_lease (name, holder, fencing_token, expires_at) "
+            + "VALUES (?, ?, 1, TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP))";
+
+    private static final String GET_VALID_FENCING_TOKEN_SQL =
+            "SELECT fencing_token FROM leader_lease "
+            + "WHERE name = ? AND holder = ? AND expires_at > CURRENT_TIMESTAMP";
+
+    private static final String RELEASE_SQL =
+            "UPDATE leader_lease SET expires_at = TIMESTAMPADD(SECOND, -1, CURRENT_TIMESTAMP) "
+            + "WHERE name = ? AND holder = ?";
+
+    private final SQLClient sqlClient;
+
+    private final Metrics metrics;
+
+    public LeaderLeaseClient(SQLClient sqlClient, Metrics metrics) {
+        this.sqlClient = Objects.requireNonNull(sqlClient);
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    /**
+     * Renews the lease if held by the {@code holder}, or takes it over if expired or never created.
+     *
+     * @param name name of the lease
+     * @param holder unique id of the contending instance
+     * @param leaseSec lease duration in seconds
+     * @return a future of the fencing token, or of {@code null} if the lease is held by another instance
+     */
+    public Future<Long> tryAcquire(String name, String holder, int leaseSec) {
+        final long start = System.currentTimeMillis();
+        final String method = "acquire-leader-lease";
+        return connect().compose(sqlConnection -> {
+            final Future<Long> future = Future.future();
+            update(sqlConnection, RENEW_OR_TAKE_OVER_SQL,
+                    new JsonArray().add(holder).add(holder).add(leaseSec).add(name).add(holder))
+                    .compose(updateResult -> updateResult.getUpdated() > 0
+                            ? Future.succeededFuture(updateResult)
+                            : insertIfAbsent(sqlConnection, name, holder, leaseSec))
+                    .compose(updateResult -> updateResult.getUpdated() > 0
+                            ? readValidFencingToken(sqlConnection, name, holder)
+                            : Future.<Long>succeededFuture())
+                    .setHandler(ar -> {
+                        sqlConnection.close();
+                        metrics.updateTimer(metricName(method), System.currentTimeMillis() - start);
+                        if (ar.failed()) {
+                            logger.error("Failure in acquiring leader lease {0}::{1}", name, ar.cause().getMessage());
+                            metrics.incCounter(metricName(method + ".exc"));
+                        }
+                        future.handle(ar);
+                    });
+            return future;
+        });
+    }
+
+    /**
+     * Expires the lease right away if held by the {@code holder}, so another instance can take over.
+     *
+     * @param name name of the lease
+     * @param holder unique id of the instance
+     * @return a future of the update result
+     */
+    public Future<UpdateResult> release(String name, String holder) {
+        final String method = "release-leader-lease";
+        return connect().compose(sqlConnection -> {
+            final Future<UpdateResult> future = Future.future();
+            update(sqlConnection, RELEASE_SQL, new JsonArray().add(name).add(holder)).setHandler(ar -> {
+                sqlConnection.close();
+                if (ar.failed()) {
+                    logger.error("Failure in releasing leader lease {0}::{1}", name, ar.cause().getMessage());
+                    metrics.incCounter(metricName(method + ".exc"));
+                }
+                future.handle(ar);
+            });
+            return future;
+        });
+    }
+
+    private Future<UpdateResult> insertIfAbsent(SQLConnection sqlConnection, String name, String holder,
+            int leaseSec) {
+        final Future<UpdateResult> future = Future.future();
+        sqlConnection.updateWithParams(INSERT_SQL, new JsonArray().add(name).add(holder).add(leaseSec), ar -> {
+            if (ar.succeeded()) {
+                future.complete(ar.result());
+            } else {
+                // another instance created the lease in the meantime
+                logger.debug("Leader lease {0} was created concurrently::{1}", name, ar.cause().getMessage());
+                future.complete(new UpdateResult());
+            }
+        });
+        return future;
+    }
+
+    private Future<Long> readValidFencingToken(SQLConnection sqlConnection, String name, String holder) {
+        final Future<ResultSet> future = Future.future();
+        sqlConnection.queryWithParams(GET_VALID_FENCING_TOKEN_SQL, new JsonArray().add(name).add(holder), future);
+        return future.map(rs -> rs.getResults() == null || rs.getResults().isEmpty()
+                ? null
+                : SqlRows.getLong(rs.getResults().get(0), 0));
+    }
+
+    private Future<UpdateResult> update(SQLConnection sqlConnection, String sql, JsonArray params) {
+        final Future<UpdateResult> future = Future.future();
+        sqlConnection.updateWithParams(sql, params, future);
+        return future;
+    }
+
+    private Future<SQLConnection> connect() {
+        final Future<SQLConnection> future = Future.future();
+        sqlClient.getConnection(future);
+        return future;
+    }
+
+    private String metricName(String tag) {
+        return String.format("db-access.%s", tag);
+    }
+
+}
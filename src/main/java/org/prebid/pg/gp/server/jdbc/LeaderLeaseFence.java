@@ -0,0 +1,64 @@
+package org.prebid.pg.gp.server.jdbc;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.sql.ResultSet;
+import io.vertx.ext.sql.SQLConnection;
+import org.prebid.pg.gp.server.exception.GeneralPlannerException;
+
+/**
+ * The leader lease held by this instance with a given fencing token, enforced within the write transactions of the
+ * periodic jobs.
+ * <p>
+ * {@link #hold(SQLConnection)} locks the lease row on the connection of the write, provided the lease is still
+ * held with the same token. Taking the lease over blocks on that lock until the write commits, so once the lease
+ * has changed hands the writes of the deposed leader fail and are rolled back.
+ */
+public class LeaderLeaseFence {
+
+    /**
+     * The fence of an instance always leading, i.e. with leader election disabled, which does not check anything.
+     */
+    public static final LeaderLeaseFence NONE = new LeaderLeaseFence(null, null, 0);
+
+    private static final String HOLD_SQL =
+            "SELECT fencing_token FROM leader_lease "
+            + "WHERE name = ? AND holder = ? AND fencing_token = ? AND expires_at > CURRENT_TIMESTAMP FOR UPDATE";
+
+    private final String name;
+
+    private final String holder;
+
+    private final long fencingToken;
+
+    public LeaderLeaseFence(String name, String holder, long fencingToken) {
+        this.name = name;
+        this.holder = holder;
+        this.fencingToken = fencingToken;
+    }
+
+    public long getFencingToken() {
+        return fencingToken;
+    }
+
+    /**
+     * Locks the lease row until the end of the transaction of the given connection, to be called once the
+     * transaction has started and before the first write.
+     *
+     * @param sqlConnection connection of the write transaction
+     * @return a future failed if the lease is no longer held with the fencing token
+     */
+    public Future<Void> hold(SQLConnection sqlConnection) {
+        if (fencingToken == 0) {
+            return Future.succeededFuture();
+        }
+        final Future<ResultSet> future = Future.future();
+        sqlConnection.queryWithParams(HOLD_SQL, new JsonArray().add(name).add(holder).add(fencingToken), future);
+        return future.compose(rs -> rs.getResults() == null || rs.getResults().isEmpty()
+                ? Future.failedFuture(new GeneralPlannerException(String.format(
+                        "Instance %s no longer holds the leader lease %s with fencing token %d",
+                        holder, name, fencingToken)))
+                : Future.succeededFuture());
+    }
+
+}
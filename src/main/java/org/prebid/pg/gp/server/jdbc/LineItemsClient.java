@@ -9,6 +9,7 @@ import io.vertx.core.logging.LoggerFactory;
 import io.vertx.ext.sql.ResultSet;
 import io.vertx.ext.sql.SQLConnection;
 import io.vertx.ext.sql.UpdateResult;
+import org.prebid.pg.gp.server.breaker.ComputeExecutor;
 import org.prebid.pg.gp.server.exception.GeneralPlannerException;
 import org.prebid.pg.gp.server.metric.Metrics;
 import org.prebid.pg.gp.server.model.AdminTracer;
@@ -62,13 +63,36 @@ public class LineItemsClient {
 
     private final String hostname;
 
-    public LineItemsClient(String hostname, Metrics metrics, AdminTracer adminTracer) {
+    private final ComputeExecutor computeExecutor;
+
+    public LineItemsClient(
+            String hostname, Metrics metrics, AdminTracer adminTracer, ComputeExecutor computeExecutor) {
         this.hostname = Validators.checkArgument(hostname, !StringUtils.isEmpty(hostname), "hostname is blank");
         this.metrics = Objects.requireNonNull(metrics);
         this.tracer = Objects.requireNonNull(adminTracer);
+        this.computeExecutor = Objects.requireNonNull(computeExecutor);
     }
 
     Future<UpdateResult> updateLineItems(SQLConnection connection, List<LineItem> lineItems) {
+        return writeLineItems(connection, lineItems)
+                .map(updateResult -> {
+                    connection.close();
+                    return updateResult;
+                })
+                .recover(ex -> {
+                    connection.close();
+                    return Future.failedFuture(ex);
+                });
+    }
+
+    /**
+     * Writes line items without closing the connection, so the write can be part of a larger transaction.
+     *
+     * @param connection the connection
+     * @param lineItems line items to write
+     * @return a future of the update result
+     */
+    Future<UpdateResult> writeLineItems(SQLConnection connection, List<LineItem> lineItems) {
         lineItems.stream().peek(logger::debug);
 
         StringBuilder sb = StringUtil.appendRepeatedly(new StringBuilder(UPDATE_LINE_ITEMS_SQL),
@@ -81,7 +105,6 @@ public class LineItemsClient {
         connection.updateWithParams(sb.toString(),
                 fillInLineItemsParams(lineItems),
                 ar -> {
-                    connection.close();
                     metrics.updateTimer(metricName(method), System.currentTimeMillis() - start);
                     if (ar.succeeded()) {
                         if (tracer.checkActive()) {
@@ -140,7 +163,8 @@ public class LineItemsClient {
                     resultSetFuture.handle(ar);
                 });
 
-        return resultSetFuture.map(rs -> mapToLineItems(rs, "getLineItemsByStatus"));
+        return computeExecutor.map(
+                resultSetFuture, rs -> mapToLineItems(rs, "getLineItemsByStatus"), "map-line-items");
     }
 
     Future<List<LineItem>> getCompactLineItemsByStatus(SQLConnection sqlConnection, String status, Instant endTime) {
@@ -184,7 +208,8 @@ public class LineItemsClient {
                     resultSetFuture.handle(ar);
                 });
 
-        return resultSetFuture.map(rs -> mapToLineItems(rs, "getLineItemsInactiveSince"));
+        return computeExecutor.map(
+                resultSetFuture, rs -> mapToLineItems(rs, "getLineItemsInactiveSince"), "map-line-items");
     }
 
     private void logGetLineItemsError(String method, Throwable cause) {
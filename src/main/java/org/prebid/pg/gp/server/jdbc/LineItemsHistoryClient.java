@@ -1,27 +1,28 @@
 package org.prebid.pg.gp.server.jdbc;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import io.vertx.core.Future;
 import io.vertx.core.json.Json;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
-import io.vertx.ext.jdbc.JDBCClient;
 import io.vertx.ext.sql.ResultSet;
+import io.vertx.ext.sql.SQLClient;
 import io.vertx.ext.sql.SQLConnection;
 import io.vertx.ext.sql.UpdateResult;
+import org.prebid.pg.gp.server.breaker.ComputeExecutor;
 import org.prebid.pg.gp.server.exception.GeneralPlannerException;
 import org.prebid.pg.gp.server.http.AlertProxyHttpClient;
 import org.prebid.pg.gp.server.metric.Metrics;
 import org.prebid.pg.gp.server.model.AlertPriority;
-import org.prebid.pg.gp.server.model.DeliverySchedule;
 import org.prebid.pg.gp.server.model.LineItemIdentity;
 import org.prebid.pg.gp.server.model.LineItemsTokensSummary;
 import org.prebid.pg.gp.server.model.SystemState;
-import org.prebid.pg.gp.server.model.DeliverySchedule.Plan;
-import org.prebid.pg.gp.server.model.DeliverySchedule.Token;
 import org.prebid.pg.gp.server.util.Constants;
 import org.springframework.util.CollectionUtils;
 
+import java.io.IOException;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -29,41 +30,78 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.BiConsumer;
 
 /**
  * A client to access database for line item history information.
+ * <p>
+ * Only the class 1 token totals and start times of the delivery schedules are needed from the line item JSON of
+ * each row, so it is read with a streaming parser skipping everything else instead of being decoded. When
+ * schedules are extracted in the database, the rows carry just the {@code deliverySchedules} array of the line
+ * item, with MySQL {@code JSON_EXTRACT}.
  */
 public class LineItemsHistoryClient {
 
     private static final Logger logger = LoggerFactory.getLogger(LineItemsHistoryClient.class);
 
     private static final String GET_UNORDERED_LINE_ITEMS_HISTORY_SQL =
-            "SELECT bidder_code, line_item_id, line_item, updated_at "
+            "SELECT bidder_code, line_item_id, %s, updated_at "
             + "FROM line_items_history "
             + "WHERE updated_at >= ? AND updated_at < ? ";
 
-    private static final String GET_ORDERED_LINE_ITEMS_HISTORY_SQL =
-            GET_UNORDERED_LINE_ITEMS_HISTORY_SQL
-            + "ORDER BY updated_at ASC";
+    private static final String ORDER_BY_SQL = "ORDER BY updated_at ASC";
+
+    private static final String LINE_ITEM_COLUMN = "line_item";
+
+    private static final String DELIVERY_SCHEDULES_COLUMN = "JSON_EXTRACT(line_item, '$.deliverySchedules')";
+
+    private static final String DELIVERY_SCHEDULES = "deliverySchedules";
+
+    private static final String START_TIMESTAMP = "startTimeStamp";
+
+    private static final String TOKENS = "tokens";
+
+    private static final String TOKEN_CLASS = "class";
+
+    private static final String TOKEN_TOTAL = "total";
 
     private final Metrics metrics;
 
-    private final JDBCClient jdbcClient;
+    private final SQLClient sqlClient;
 
     private final SystemStateClient systemStateClient;
 
     private final AlertProxyHttpClient alertHttpClient;
 
+    private final ComputeExecutor computeExecutor;
+
+    private final String unorderedQuerySql;
+
     public LineItemsHistoryClient(
-            JDBCClient jdbcClient,
+            SQLClient sqlClient,
             Metrics metrics,
             SystemStateClient systemStateClient,
-            AlertProxyHttpClient alertHttpClient
+            AlertProxyHttpClient alertHttpClient,
+            ComputeExecutor computeExecutor
+    ) {
+        this(sqlClient, metrics, systemStateClient, alertHttpClient, computeExecutor, false);
+    }
+
+    public LineItemsHistoryClient(
+            SQLClient sqlClient,
+            Metrics metrics,
+            SystemStateClient systemStateClient,
+            AlertProxyHttpClient alertHttpClient,
+            ComputeExecutor computeExecutor,
+            boolean extractSchedulesInDatabase
     ) {
         this.metrics = Objects.requireNonNull(metrics);
-        this.jdbcClient = Objects.requireNonNull(jdbcClient);
+        this.sqlClient = Objects.requireNonNull(sqlClient);
         this.systemStateClient = Objects.requireNonNull(systemStateClient);
         this.alertHttpClient = Objects.requireNonNull(alertHttpClient);
+        this.computeExecutor = Objects.requireNonNull(computeExecutor);
+        this.unorderedQuerySql = String.format(GET_UNORDERED_LINE_ITEMS_HISTORY_SQL,
+                extractSchedulesInDatabase ? DELIVERY_SCHEDULES_COLUMN : LINE_ITEM_COLUMN);
     }
 
     public Future<List<LineItemsTokensSummary>> findLineItemTokens(Instant updatedAtOrAfter, Instant updatedBefore) {
@@ -96,14 +134,15 @@ public class LineItemsHistoryClient {
                     resultSetFuture.handle(ar);
                 });
 
-        return resultSetFuture.map(rs -> mapToLineItemsTokensSummary(rs, updatedAtOrAfter, updatedBefore));
+        return computeExecutor.map(resultSetFuture,
+                rs -> mapToLineItemsTokensSummary(rs, updatedAtOrAfter, updatedBefore), "map-tokens-summary");
     }
 
     String buildQuerySql(List<LineItemIdentity> lineItemIds) {
         if (CollectionUtils.isEmpty(lineItemIds)) {
-            return GET_ORDERED_LINE_ITEMS_HISTORY_SQL;
+            return unorderedQuerySql + ORDER_BY_SQL;
         }
-        StringBuilder sb = new StringBuilder(GET_UNORDERED_LINE_ITEMS_HISTORY_SQL);
+        StringBuilder sb = new StringBuilder(unorderedQuerySql);
         sb.append(" AND (");
         for (int i = 0; i < lineItemIds.size(); i++) {
             LineItemIdentity li = lineItemIds.get(i);
@@ -114,7 +153,7 @@ public class LineItemsHistoryClient {
                     .append(" AND ")
                     .append("line_item_id = '").append(li.getLineItemId()).append("')");
         }
-        sb.append(") ORDER BY updated_at ASC");
+        sb.append(") ").append(ORDER_BY_SQL);
         String query = sb.toString();
         logger.debug("query sql:{0}", query);
         return query;
@@ -131,36 +170,30 @@ public class LineItemsHistoryClient {
             for (final JsonArray ja : resultSet.getResults()) {
                 try {
                     String li = String.format("%s-%s", ja.getString(0), ja.getString(1));
-                    DeliverySchedule schedules = Json.decodeValue(ja.getString(2), DeliverySchedule.class);
-                    for (Plan plan : schedules.getDeliverySchedules()) {
-                        Instant startTimestamp = Instant.parse(plan.getStartTimestamp());
+                    readClassOneTokens(ja.getString(2), (start, total) -> {
+                        Instant startTimestamp = Instant.parse(start);
                         if (!startTimestamp.isBefore(updatedBefore) || updatedAtOrAfter.isAfter(startTimestamp)) {
-                            continue;
+                            return;
                         }
-                        for (Token token : plan.getTokens()) {
-                            if (token.getClazz() != 1) {
-                                continue;
-                            }
-                            Map<Instant, Integer> intervalSummaries =
-                                    liStartTimeTokensMap.computeIfAbsent(li, key -> new HashMap<>());
-                            liTokensSummaryMap.computeIfAbsent(li, key ->
-                                    LineItemsTokensSummary.builder()
-                                            .bidderCode(ja.getString(0))
-                                            .extLineItemId(ja.getString(1))
-                                            .lineItemId(li)
-                                            .createdAt(createdAt)
-                                            .summaryWindowStartTimestamp(updatedAtOrAfter)
-                                            .summaryWindowEndTimestamp(updatedBefore)
-                                            .tokens(0)  // default
-                                            .build());
-
-                            if (!intervalSummaries.containsKey(startTimestamp)) {
-                                intervalSummaries.put(startTimestamp, token.getTotal());
-                            }
+                        Map<Instant, Integer> intervalSummaries =
+                                liStartTimeTokensMap.computeIfAbsent(li, key -> new HashMap<>());
+                        liTokensSummaryMap.computeIfAbsent(li, key ->
+                                LineItemsTokensSummary.builder()
+                                        .bidderCode(ja.getString(0))
+                                        .extLineItemId(ja.getString(1))
+                                        .lineItemId(li)
+                                        .createdAt(createdAt)
+                                        .summaryWindowStartTimestamp(updatedAtOrAfter)
+                                        .summaryWindowEndTimestamp(updatedBefore)
+                                        .tokens(0)  // default
+                                        .build());
+
+                        if (!intervalSummaries.containsKey(startTimestamp)) {
+                            intervalSummaries.put(startTimestamp, total);
                         }
-                    }
+                    });
                 } catch (Exception e) {
-                    logger.error("Exception in creating line item top tokens::{0}", e.getCause().getMessage());
+                    logger.error("Exception in creating line item top tokens::{0}", e.getMessage());
                     throw new GeneralPlannerException(e);
                 }
             }
@@ -177,6 +210,87 @@ public class LineItemsHistoryClient {
         return new ArrayList<>(liTokensSummaryMap.values());
     }
 
+    /**
+     * Reads the totals of the class 1 tokens of each plan from the given line item, or from its delivery
+     * schedules alone, skipping all the other fields.
+     *
+     * @param json the line item, or the array of its delivery schedules
+     * @param consumer called with the start time of the plan and the total of each class 1 token of the plan
+     * @throws IOException if the JSON is malformed
+     */
+    static void readClassOneTokens(String json, BiConsumer<String, Integer> consumer) throws IOException {
+        if (json == null) {
+            return;
+        }
+        try (JsonParser parser = Json.mapper.getFactory().createParser(json)) {
+            final JsonToken root = parser.nextToken();
+            if (root == JsonToken.START_ARRAY) {
+                readPlans(parser, consumer);
+            } else if (root == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    final String field = parser.getCurrentName();
+                    if (parser.nextToken() == JsonToken.START_ARRAY && DELIVERY_SCHEDULES.equals(field)) {
+                        readPlans(parser, consumer);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+        }
+    }
+
+    private static void readPlans(JsonParser parser, BiConsumer<String, Integer> consumer) throws IOException {
+        final List<Integer> totals = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            String startTimestamp = null;
+            totals.clear();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                if (START_TIMESTAMP.equals(field)) {
+                    startTimestamp = parser.getValueAsString();
+                } else if (TOKENS.equals(field) && value == JsonToken.START_ARRAY) {
+                    readClassOneTotals(parser, totals);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            // the start time may follow the tokens
+            for (Integer total : totals) {
+                consumer.accept(startTimestamp, total);
+            }
+        }
+    }
+
+    private static void readClassOneTotals(JsonParser parser, List<Integer> totals) throws IOException {
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            int clazz = 0;
+            int total = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                parser.nextToken();
+                if (TOKEN_CLASS.equals(field)) {
+                    clazz = parser.getValueAsInt();
+                } else if (TOKEN_TOTAL.equals(field)) {
+                    total = parser.getValueAsInt();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (clazz == 1) {
+                totals.add(total);
+            }
+        }
+    }
+
     public Future<UpdateResult> updateSystemStateWithUTCTime(SystemState systemState) {
         return connect()
                 .compose(sqlConnection -> systemStateClient.updateSystemStateWithUTCTime(sqlConnection, systemState));
@@ -200,7 +314,7 @@ public class LineItemsHistoryClient {
 
     public Future<SQLConnection> connect() {
         final Future<SQLConnection> future = Future.future();
-        jdbcClient.getConnection(future);
+        sqlClient.getConnection(future);
         return future.recover(this::logConnectionError);
     }
 
@@ -4,26 +4,31 @@ import io.vertx.core.Future;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
-import io.vertx.ext.jdbc.JDBCClient;
 import io.vertx.ext.sql.ResultSet;
 import io.vertx.ext.sql.ResultSetType;
+import io.vertx.ext.sql.SQLClient;
 import io.vertx.ext.sql.SQLConnection;
 import io.vertx.ext.sql.SQLOptions;
 import io.vertx.ext.sql.UpdateResult;
 import org.prebid.pg.gp.server.http.AlertProxyHttpClient;
 import org.prebid.pg.gp.server.metric.Metrics;
 import org.prebid.pg.gp.server.model.AlertPriority;
+import org.prebid.pg.gp.server.model.LineItemIdentity;
+import org.prebid.pg.gp.server.model.LineItemPlanTokens;
 import org.prebid.pg.gp.server.model.LineItemsTokensSummary;
-import org.prebid.pg.gp.server.model.PageRequest;
 import org.prebid.pg.gp.server.util.Constants;
 import org.prebid.pg.gp.server.util.StringUtil;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * A client to access database for statistics information of line item tokens.
+ * <p>
+ * Besides the hourly summaries, it keeps the rollup of the class 1 tokens of each plan recorded as line items are
+ * retrieved, see {@code LineItemsTokensRollup}.
  */
 public class LineItemsTokensSummaryClient {
 
@@ -41,75 +46,71 @@ public class LineItemsTokensSummaryClient {
             + "FROM line_items_tokens_summary "
             + "WHERE summary_window_start_timestamp >= ? AND summary_window_end_timestamp < ? ";
 
-    private static final String GET_BY_START_END_TIMESTAMP_PAGEABLE_SQL =
-            GET_BY_START_END_TIMESTAMP_SQL + "LIMIT ? OFFSET ?";
+    private static final String AFTER_SQL =
+            "AND (summary_window_start_timestamp > ? OR (summary_window_start_timestamp = ? AND id > ?)) ";
 
-    private static final String GET_COUNT_BY_START_END_TIMESTAMP_SQL =
-            "SELECT count(*) "
-            + "FROM line_items_tokens_summary "
-            + "WHERE summary_window_start_timestamp >= ? AND summary_window_end_timestamp < ? ";
+    private static final String ORDER_BY_LIMIT_SQL = "ORDER BY summary_window_start_timestamp, id LIMIT ?";
+
+    private static final String REPLACE_PLAN_TOKENS_SQL =
+            "REPLACE INTO line_items_tokens_rollup ("
+            + "line_item_id, plan_start_timestamp, bidder_code, ext_line_item_id, tokens, updated_at) "
+            + "VALUES ";
+
+    private static final String GET_PLAN_TOKENS_SQL =
+            "SELECT line_item_id, plan_start_timestamp, bidder_code, ext_line_item_id, tokens "
+            + "FROM line_items_tokens_rollup "
+            + "WHERE plan_start_timestamp >= ? AND plan_start_timestamp < ?";
+
+    private static final String SUM_PLAN_TOKENS_SQL =
+            "SELECT line_item_id, bidder_code, ext_line_item_id, SUM(tokens) "
+            + "FROM line_items_tokens_rollup "
+            + "WHERE plan_start_timestamp >= ? AND plan_start_timestamp < ? ";
 
-    private static final String GET_BY_START_END_TIMESTAMP_AND_LINE_ITEM_ID_SQL =
-            GET_BY_START_END_TIMESTAMP_SQL + "AND line_item_id IN ";
+    private static final String SUM_PLAN_TOKENS_GROUP_BY_SQL =
+            "GROUP BY line_item_id, bidder_code, ext_line_item_id";
 
-    private static final String GET_COUNT_BY_START_END_TIMESTAMP_AND_LINE_ITEM_ID_SQL =
-            GET_COUNT_BY_START_END_TIMESTAMP_SQL + "AND line_item_id IN ";
+    private static final String DELETE_PLAN_TOKENS_SQL =
+            "DELETE FROM line_items_tokens_rollup WHERE plan_start_timestamp < ?";
 
-    private JDBCClient jdbcClient;
+    private SQLClient sqlClient;
 
     private Metrics metrics;
 
     private AlertProxyHttpClient alertHttpClient;
 
-    public LineItemsTokensSummaryClient(JDBCClient jdbcClient, Metrics metrics, AlertProxyHttpClient alertHttpClient) {
-        this.jdbcClient = jdbcClient;
+    public LineItemsTokensSummaryClient(SQLClient sqlClient, Metrics metrics, AlertProxyHttpClient alertHttpClient) {
+        this.sqlClient = sqlClient;
         this.metrics = metrics;
         this.alertHttpClient = alertHttpClient;
     }
 
-    Future<Integer> getLineItemsTokensSummaryCount(SQLConnection connection,
-            Instant startTime, Instant endTime, List<String> lineItemIds) {
-        if (startTime == null || endTime == null || !startTime.isBefore(endTime)) {
-            connection.close();
-            return Future.succeededFuture(0);
-        }
-        final Future<ResultSet> future = Future.future();
-        JsonArray params = new JsonArray()
-                .add(startTime)
-                .add(endTime);
-        final long start = System.currentTimeMillis();
-        final String method = "read-line-items-tokens-summary-count";
-        connection.setOptions(new SQLOptions().setResultSetType(ResultSetType.FORWARD_ONLY))
-                .queryWithParams(buildCountQuerySql(lineItemIds), params, ar -> {
-                    connection.close();
-                    metrics.updateTimer(metricName(method), System.currentTimeMillis() - start);
-                    if (!ar.succeeded()) {
-                        logger.error("Failure reading line_items_tokens_summary_count for {0}::{1}::{2} => {3}",
-                                startTime, endTime, lineItemIds, ar.cause().getMessage());
-                        metrics.incCounter(metricName(method + ".exc"));
-                    }
-                    future.handle(ar);
-                });
-        return future.map(this::mapToLineItemsTokensSummaryCount);
-    }
-
-    Future<List<LineItemsTokensSummary>> getLineItemsTokensSummary(SQLConnection connection,
-            Instant startTime, Instant endTime, List<String> lineItemIds, PageRequest page) {
+    /**
+     * Gets a page of the summaries with their windows in the given range, in the order of their window start
+     * and id. Pages are read by key rather than by offset, so reading deep pages costs as much as the first one.
+     *
+     * @param connection the connection to query on, closed when done
+     * @param startTime the earliest time for the start of summary time window
+     * @param endTime the latest time for the end of summary time window(exclusive)
+     * @param lineItemIds ids of line items, all line items if empty
+     * @param after the last summary of the previous page, null for the first page
+     * @param size maximum number of summaries of the page
+     * @return a future of the summaries of the page, empty after the last page
+     */
+    Future<List<LineItemsTokensSummary>> getLineItemsTokensSummary(SQLConnection connection, Instant startTime,
+            Instant endTime, List<String> lineItemIds, LineItemsTokensSummary after, int size) {
         if (startTime == null || endTime == null || !startTime.isBefore(endTime)) {
             connection.close();
             return Future.succeededFuture(new ArrayList<>());
         }
 
         final Future<ResultSet> future = Future.future();
-        JsonArray params = new JsonArray()
+        final JsonArray params = new JsonArray()
                 .add(startTime)
-                .add(endTime)
-                .add(page.getSize())
-                .add(page.getNumber() * page.getSize());
+                .add(endTime);
         final long start = System.currentTimeMillis();
         final String method = "read-line-items-tokens-summary";
         connection.setOptions(new SQLOptions().setResultSetType(ResultSetType.FORWARD_ONLY))
-                .queryWithParams(buildQuerySql(lineItemIds), params, ar -> {
+                .queryWithParams(buildQuerySql(lineItemIds, after, params, size), params, ar -> {
                     connection.close();
                     metrics.updateTimer(metricName(method), System.currentTimeMillis() - start);
                     if (!ar.succeeded()) {
@@ -122,28 +123,22 @@ public class LineItemsTokensSummaryClient {
         return future.map(this::mapToLineItemsTokensSummary);
     }
 
-    private String buildQuerySql(List<String> lineItemIds) {
-        if (lineItemIds.isEmpty()) {
-            return GET_BY_START_END_TIMESTAMP_PAGEABLE_SQL;
+    private String buildQuerySql(List<String> lineItemIds, LineItemsTokensSummary after, JsonArray params,
+            int size) {
+        final StringBuilder sb = new StringBuilder(GET_BY_START_END_TIMESTAMP_SQL);
+        if (!lineItemIds.isEmpty()) {
+            StringUtil.appendRepeatedly(sb.append("AND line_item_id IN ("), "?", ", ", lineItemIds.size())
+                    .append(") ");
+            lineItemIds.forEach(params::add);
         }
-        StringBuilder sb = new StringBuilder(GET_BY_START_END_TIMESTAMP_AND_LINE_ITEM_ID_SQL)
-                .append("('")
-                .append(String.join("','", lineItemIds))
-                .append("') ")
-                .append("LIMIT ? OFFSET ? ");
-
-        return sb.toString();
-    }
-
-    private String buildCountQuerySql(List<String> lineItemIds) {
-        if (lineItemIds.isEmpty()) {
-            return GET_COUNT_BY_START_END_TIMESTAMP_SQL;
+        if (after != null) {
+            sb.append(AFTER_SQL);
+            params.add(after.getSummaryWindowStartTimestamp())
+                    .add(after.getSummaryWindowStartTimestamp())
+                    .add(after.getId());
         }
-        StringBuilder sb = new StringBuilder(GET_COUNT_BY_START_END_TIMESTAMP_AND_LINE_ITEM_ID_SQL);
-        sb.append("('");
-        sb.append(String.join("','", lineItemIds));
-        sb.append("')");
-        return sb.toString();
+        params.add(size);
+        return sb.append(ORDER_BY_LIMIT_SQL).toString();
     }
 
     private List<LineItemsTokensSummary> mapToLineItemsTokensSummary(ResultSet resultSet) {
@@ -154,10 +149,10 @@ public class LineItemsTokensSummaryClient {
                         .lineItemId(row.getString(0))
                         .bidderCode(row.getString(1))
                         .extLineItemId(row.getString(2))
-                        .tokens(row.getInteger(3))
-                        .summaryWindowStartTimestamp(row.getInstant(4))
-                        .summaryWindowEndTimestamp(row.getInstant(5))
-                        .id(row.getInteger(6))
+                        .tokens(SqlRows.getInteger(row, 3))
+                        .summaryWindowStartTimestamp(SqlRows.getInstant(row, 4))
+                        .summaryWindowEndTimestamp(SqlRows.getInstant(row, 5))
+                        .id(SqlRows.getInteger(row, 6))
                         .build();
                 tokensSummaries.add(tokenSummary);
             }
@@ -165,40 +160,57 @@ public class LineItemsTokensSummaryClient {
         return tokensSummaries;
     }
 
-    private int mapToLineItemsTokensSummaryCount(ResultSet resultSet) {
-        int count = 0;
-        if (resultSet.getResults() != null && resultSet.getResults().size() == 1) {
-            count = resultSet.getResults().get(0).getInteger(0);
+    /**
+     * Saves the summaries of an interval in a transaction holding the given leader lease fence.
+     *
+     * @param tokensSummaries the summaries to save
+     * @param fence the leader lease fence of the summarizing job
+     * @return a future of the update result, failed if the lease has changed hands
+     */
+    public Future<UpdateResult> saveLineItemsTokenSummary(List<LineItemsTokensSummary> tokensSummaries,
+            LeaderLeaseFence fence) {
+        if (tokensSummaries.isEmpty()) {
+            return Future.succeededFuture();
         }
-        return count;
-    }
-
-    public Future<UpdateResult> saveLineItemsTokenSummary(List<LineItemsTokensSummary> tokensSummaries) {
         return connect()
-                .compose(sqlConnection -> saveLineItemsTokenSummary(sqlConnection, tokensSummaries));
+                .compose(sqlConnection -> saveLineItemsTokenSummary(sqlConnection, tokensSummaries, fence));
     }
 
     private Future<UpdateResult> saveLineItemsTokenSummary(SQLConnection connection,
-            List<LineItemsTokensSummary> tokensSummaries) {
-        if (tokensSummaries.isEmpty()) {
-            connection.close();
-            return Future.succeededFuture();
-        }
+            List<LineItemsTokensSummary> tokensSummaries, LeaderLeaseFence fence) {
         final Future<UpdateResult> future = Future.future();
         StringBuilder sb = StringUtil.appendRepeatedly(
                 new StringBuilder(INSERT_SQL), "(?, ?, ?, ?, ?, ?, ?)", ",", tokensSummaries.size());
         final String method = "save-line-items-tokens-summary";
 
         logger.info("Save line items summaries");
-        connection.updateWithParams(sb.toString(), fillInLineItemsTokensSummaryParams(tokensSummaries),
-                ar -> {
-                    connection.close();
+        final Future<Void> transactionStarted = Future.future();
+        connection.setAutoCommit(false, transactionStarted);
+        transactionStarted
+                .compose(ignored -> fence.hold(connection))
+                .compose(ignored -> {
+                    final Future<UpdateResult> inserted = Future.future();
+                    connection.updateWithParams(
+                            sb.toString(), fillInLineItemsTokensSummaryParams(tokensSummaries), inserted);
+                    return inserted;
+                })
+                .compose(updateResult -> {
+                    final Future<Void> committed = Future.future();
+                    connection.commit(committed);
+                    return committed.map(updateResult);
+                })
+                .setHandler(ar -> {
                     if (ar.succeeded()) {
+                        connection.close();
                         logger.info("Save line items summary succeeded.");
-                    } else {
-                        logAppError(method, "Failure in saving line items tokens summary", ar.cause());
+                        future.complete(ar.result());
+                        return;
                     }
-                    future.handle(ar);
+                    logAppError(method, "Failure in saving line items tokens summary", ar.cause());
+                    connection.rollback(rollback -> {
+                        connection.close();
+                        future.fail(ar.cause());
+                    });
                 });
         return future;
     }
@@ -217,9 +229,169 @@ public class LineItemsTokensSummaryClient {
         return params;
     }
 
+    /**
+     * Finds the rolled up tokens of the plans starting in the given window.
+     *
+     * @param startTime earliest plan start time(inclusive)
+     * @param endTime latest plan start time(exclusive)
+     * @return future of a list of {@link LineItemPlanTokens}s
+     */
+    public Future<List<LineItemPlanTokens>> findPlanTokens(Instant startTime, Instant endTime) {
+        final long start = System.currentTimeMillis();
+        final String method = "read-line-items-tokens-rollup";
+        return connect().compose(connection -> {
+            final Future<ResultSet> future = Future.future();
+            connection.queryWithParams(GET_PLAN_TOKENS_SQL, new JsonArray().add(startTime).add(endTime), ar -> {
+                connection.close();
+                metrics.updateTimer(metricName(method), System.currentTimeMillis() - start);
+                if (!ar.succeeded()) {
+                    logAppError(method, "Failure in reading line items tokens rollup", ar.cause());
+                }
+                future.handle(ar);
+            });
+            return future;
+        }).map(this::mapToLineItemPlanTokens);
+    }
+
+    /**
+     * Saves the given rolled up tokens, replacing the tokens of the same plans.
+     *
+     * @param planTokens tokens of the plans
+     * @return a future to indicate update result
+     */
+    public Future<UpdateResult> savePlanTokens(List<LineItemPlanTokens> planTokens) {
+        if (planTokens.isEmpty()) {
+            return Future.succeededFuture(new UpdateResult());
+        }
+        final long start = System.currentTimeMillis();
+        final String method = "save-line-items-tokens-rollup";
+        final StringBuilder sb = StringUtil.appendRepeatedly(new StringBuilder(REPLACE_PLAN_TOKENS_SQL),
+                "(?, ?, ?, ?, ?, CURRENT_TIMESTAMP)", ",", planTokens.size());
+        final JsonArray params = new JsonArray();
+        for (LineItemPlanTokens tokens : planTokens) {
+            params.add(tokens.getLineItemId())
+                    .add(tokens.getPlanStartTimestamp())
+                    .add(tokens.getBidderCode())
+                    .add(tokens.getExtLineItemId())
+                    .add(tokens.getTokens());
+        }
+        return connect().compose(connection -> {
+            final Future<UpdateResult> future = Future.future();
+            connection.updateWithParams(sb.toString(), params, ar -> {
+                connection.close();
+                metrics.updateTimer(metricName(method), System.currentTimeMillis() - start);
+                if (!ar.succeeded()) {
+                    logAppError(method, "Failure in saving line items tokens rollup", ar.cause());
+                }
+                future.handle(ar);
+            });
+            return future;
+        });
+    }
+
+    /**
+     * Sums the rolled up tokens of the plans starting in the given window by line item.
+     *
+     * @param startTime earliest plan start time(inclusive)
+     * @param endTime latest plan start time(exclusive)
+     * @return future of a list of {@link LineItemsTokensSummary}s of the window
+     */
+    public Future<List<LineItemsTokensSummary>> sumPlanTokens(Instant startTime, Instant endTime) {
+        return connect()
+                .compose(connection -> sumPlanTokens(connection, startTime, endTime, Collections.emptyList()));
+    }
+
+    Future<List<LineItemsTokensSummary>> sumPlanTokens(SQLConnection connection,
+            Instant startTime, Instant endTime, List<LineItemIdentity> lineItemIds) {
+        final JsonArray params = new JsonArray().add(startTime).add(endTime);
+        final StringBuilder sb = new StringBuilder(SUM_PLAN_TOKENS_SQL);
+        if (!lineItemIds.isEmpty()) {
+            StringUtil.appendRepeatedly(sb.append("AND line_item_id IN ("), "?", ", ", lineItemIds.size())
+                    .append(") ");
+            for (LineItemIdentity lineItemId : lineItemIds) {
+                params.add(String.format("%s-%s", lineItemId.getBidderCode(), lineItemId.getLineItemId()));
+            }
+        }
+        sb.append(SUM_PLAN_TOKENS_GROUP_BY_SQL);
+
+        final Future<ResultSet> future = Future.future();
+        final long start = System.currentTimeMillis();
+        final String method = "sum-line-items-tokens-rollup";
+        connection.queryWithParams(sb.toString(), params, ar -> {
+            connection.close();
+            metrics.updateTimer(metricName(method), System.currentTimeMillis() - start);
+            if (!ar.succeeded()) {
+                logger.error("Failure in summing line_items_tokens_rollup for {0}::{1}::{2} => {3}",
+                        startTime, endTime, lineItemIds, ar.cause().getMessage());
+                metrics.incCounter(metricName(method + ".exc"));
+            }
+            future.handle(ar);
+        });
+        final Instant createdAt = Instant.now();
+        return future.map(rs -> mapToRolledUpSummary(rs, startTime, endTime, createdAt));
+    }
+
+    /**
+     * Deletes the rolled up tokens of the plans starting before the given time.
+     *
+     * @param startTime latest plan start time(exclusive)
+     * @return a future to indicate update result
+     */
+    public Future<UpdateResult> deletePlanTokens(Instant startTime) {
+        final String method = "delete-line-items-tokens-rollup";
+        return connect().compose(connection -> {
+            final Future<UpdateResult> future = Future.future();
+            connection.updateWithParams(DELETE_PLAN_TOKENS_SQL, new JsonArray().add(startTime), ar -> {
+                connection.close();
+                if (!ar.succeeded()) {
+                    logger.error("Failure in deleting line_items_tokens_rollup before {0}::{1}",
+                            startTime, ar.cause().getMessage());
+                    metrics.incCounter(metricName(method + ".exc"));
+                }
+                future.handle(ar);
+            });
+            return future;
+        });
+    }
+
+    private List<LineItemPlanTokens> mapToLineItemPlanTokens(ResultSet resultSet) {
+        final List<LineItemPlanTokens> planTokens = new ArrayList<>();
+        if (resultSet.getResults() != null) {
+            for (JsonArray row : resultSet.getResults()) {
+                planTokens.add(LineItemPlanTokens.builder()
+                        .lineItemId(row.getString(0))
+                        .planStartTimestamp(SqlRows.getInstant(row, 1))
+                        .bidderCode(row.getString(2))
+                        .extLineItemId(row.getString(3))
+                        .tokens(SqlRows.getInteger(row, 4))
+                        .build());
+            }
+        }
+        return planTokens;
+    }
+
+    private List<LineItemsTokensSummary> mapToRolledUpSummary(ResultSet resultSet,
+            Instant startTime, Instant endTime, Instant createdAt) {
+        final List<LineItemsTokensSummary> tokensSummaries = new ArrayList<>();
+        if (resultSet.getResults() != null) {
+            for (JsonArray row : resultSet.getResults()) {
+                tokensSummaries.add(LineItemsTokensSummary.builder()
+                        .lineItemId(row.getString(0))
+                        .bidderCode(row.getString(1))
+                        .extLineItemId(row.getString(2))
+                        .tokens(SqlRows.getInteger(row, 3))
+                        .summaryWindowStartTimestamp(startTime)
+                        .summaryWindowEndTimestamp(endTime)
+                        .createdAt(createdAt)
+                        .build());
+            }
+        }
+        return tokensSummaries;
+    }
+
     public Future<SQLConnection> connect() {
         final Future<SQLConnection> future = Future.future();
-        jdbcClient.getConnection(future);
+        sqlClient.getConnection(future);
         return future.recover(this::logConnectionError);
     }
 
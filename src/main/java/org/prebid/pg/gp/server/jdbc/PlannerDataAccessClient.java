@@ -3,7 +3,7 @@ package org.prebid.pg.gp.server.jdbc;
 import io.vertx.core.Future;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
-import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.ext.sql.SQLClient;
 import io.vertx.ext.sql.SQLConnection;
 import io.vertx.ext.sql.UpdateResult;
 import org.javatuples.Pair;
@@ -15,7 +15,6 @@ import org.prebid.pg.gp.server.model.DeliveryTokenSpendSummary;
 import org.prebid.pg.gp.server.model.LineItem;
 import org.prebid.pg.gp.server.model.LineItemIdentity;
 import org.prebid.pg.gp.server.model.LineItemsTokensSummary;
-import org.prebid.pg.gp.server.model.PageRequest;
 import org.prebid.pg.gp.server.model.PbsHost;
 import org.prebid.pg.gp.server.model.ReallocatedPlan;
 import org.prebid.pg.gp.server.model.Registration;
@@ -30,7 +29,9 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.BiPredicate;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * A facade for {@code JDBC} layer to access database.
@@ -41,7 +42,10 @@ public class PlannerDataAccessClient {
 
     private final Metrics metrics;
 
-    private final JDBCClient jdbcClient;
+    private final SQLClient sqlClient;
+
+    // client of read-only queries tolerating replication lag, e.g. a read replica router
+    private final SQLClient readClient;
 
     private final LineItemsClient lineItemsClient;
 
@@ -61,10 +65,18 @@ public class PlannerDataAccessClient {
 
     private final AdminEventClient adminEventClient;
 
+    private final ChangeVersionClient changeVersionClient;
+
     private final LineItemsTokensSummaryConfiguration lineItemsTokensSummaryConfiguration;
 
+    // connection borrowed for a multi-query flow, null if every query checks out its own
+    private final SqlSession session;
+
+    // tells whether the rollup recorded every plan of an interval, null if tokens are only read from history
+    private final BiPredicate<Instant, Instant> tokensRollupComplete;
+
     public PlannerDataAccessClient(
-            JDBCClient jdbcClient,
+            SQLClient sqlClient,
             LineItemsClient lineItemsClient,
             TokenSpendClient tokenSpendClient,
             SystemStateClient systemStateClient,
@@ -73,12 +85,37 @@ public class PlannerDataAccessClient {
             LineItemsTokensSummaryClient lineItemsTokensSummaryClient,
             LineItemsHistoryClient lineItemsHistoryClient,
             AdminEventClient adminEventClient,
+            ChangeVersionClient changeVersionClient,
             Metrics metrics,
             AlertProxyHttpClient alertHttpClient,
             LineItemsTokensSummaryConfiguration lineItemsTokensSummaryConfiguration
     ) {
+        this(sqlClient, sqlClient, lineItemsClient, tokenSpendClient, systemStateClient, registrationClient,
+                reallocatedPlansClient, lineItemsTokensSummaryClient, lineItemsHistoryClient, adminEventClient,
+                changeVersionClient, metrics, alertHttpClient, lineItemsTokensSummaryConfiguration, null, null);
+    }
 
-        this.jdbcClient = Objects.requireNonNull(jdbcClient);
+    private PlannerDataAccessClient(
+            SQLClient sqlClient,
+            SQLClient readClient,
+            LineItemsClient lineItemsClient,
+            TokenSpendClient tokenSpendClient,
+            SystemStateClient systemStateClient,
+            RegistrationClient registrationClient,
+            ReallocatedPlansClient reallocatedPlansClient,
+            LineItemsTokensSummaryClient lineItemsTokensSummaryClient,
+            LineItemsHistoryClient lineItemsHistoryClient,
+            AdminEventClient adminEventClient,
+            ChangeVersionClient changeVersionClient,
+            Metrics metrics,
+            AlertProxyHttpClient alertHttpClient,
+            LineItemsTokensSummaryConfiguration lineItemsTokensSummaryConfiguration,
+            SqlSession session,
+            BiPredicate<Instant, Instant> tokensRollupComplete
+    ) {
+
+        this.sqlClient = Objects.requireNonNull(sqlClient);
+        this.readClient = Objects.requireNonNull(readClient);
         this.systemStateClient = Objects.requireNonNull(systemStateClient);
         this.registrationClient = Objects.requireNonNull(registrationClient);
         this.lineItemsClient = Objects.requireNonNull(lineItemsClient);
@@ -87,14 +124,133 @@ public class PlannerDataAccessClient {
         this.lineItemsTokensSummaryClient = Objects.requireNonNull(lineItemsTokensSummaryClient);
         this.lineItemsHistoryClient = Objects.requireNonNull(lineItemsHistoryClient);
         this.adminEventClient = Objects.requireNonNull(adminEventClient);
+        this.changeVersionClient = Objects.requireNonNull(changeVersionClient);
         this.metrics = Objects.requireNonNull(metrics);
         this.alertHttpClient = Objects.requireNonNull(alertHttpClient);
         this.lineItemsTokensSummaryConfiguration = Objects.requireNonNull(lineItemsTokensSummaryConfiguration);
+        this.session = session;
+        this.tokensRollupComplete = tokensRollupComplete;
+    }
+
+    /**
+     * Creates a client issuing its queries on the connections of the given {@code sqlClient}, e.g. the pool of
+     * another bulkhead or an asynchronous MySQL client. Line items history and token summaries keep their own
+     * client.
+     *
+     * @param sqlClient the client of the connection pool to use
+     * @return a new data access client
+     */
+    public PlannerDataAccessClient withSqlClient(SQLClient sqlClient) {
+        // read-only queries stay on a read replica if routed to one
+        return new PlannerDataAccessClient(sqlClient, readClient == this.sqlClient ? sqlClient : readClient,
+                lineItemsClient, tokenSpendClient, systemStateClient, registrationClient, reallocatedPlansClient,
+                lineItemsTokensSummaryClient, lineItemsHistoryClient, adminEventClient, changeVersionClient, metrics,
+                alertHttpClient, lineItemsTokensSummaryConfiguration, null, tokensRollupComplete);
+    }
+
+    /**
+     * Creates a client issuing the read-only queries tolerating replication lag on the connections of the given
+     * {@code readClient}, e.g. a {@link ReadReplicaRouter}.
+     *
+     * @param readClient the client to read with
+     * @return a new data access client
+     */
+    public PlannerDataAccessClient withReadClient(SQLClient readClient) {
+        return new PlannerDataAccessClient(sqlClient, readClient, lineItemsClient, tokenSpendClient,
+                systemStateClient, registrationClient, reallocatedPlansClient, lineItemsTokensSummaryClient,
+                lineItemsHistoryClient, adminEventClient, changeVersionClient, metrics, alertHttpClient,
+                lineItemsTokensSummaryConfiguration, null, tokensRollupComplete);
+    }
+
+    /**
+     * Creates a client summing the tokens of the current hour from the rollup recorded as line items are
+     * retrieved, instead of reading them back from {@code line_items_history}. Intervals the rollup did not record
+     * every plan of are still read from history.
+     *
+     * @param rollupComplete tells whether the rollup recorded every plan between a start and an end time
+     * @return a new data access client
+     */
+    public PlannerDataAccessClient withTokensRollup(BiPredicate<Instant, Instant> rollupComplete) {
+        return new PlannerDataAccessClient(sqlClient, readClient, lineItemsClient, tokenSpendClient,
+                systemStateClient, registrationClient, reallocatedPlansClient, lineItemsTokensSummaryClient,
+                lineItemsHistoryClient, adminEventClient, changeVersionClient, metrics, alertHttpClient,
+                lineItemsTokensSummaryConfiguration, null, Objects.requireNonNull(rollupComplete));
+    }
+
+    /**
+     * Borrows a connection from the pool for a multi-query flow, see {@link #inSession(SqlSession, Function)}.
+     *
+     * @return a future of the session, to be released by the caller
+     */
+    public Future<SqlSession> openSession() {
+        return connect().map(SqlSession::new);
+    }
+
+    /**
+     * Borrows a connection for a read-only multi-query flow tolerating replication lag, from a read replica if
+     * routed to one.
+     *
+     * @return a future of the session, to be released by the caller
+     */
+    public Future<SqlSession> openReadOnlySession() {
+        return connectForRead().map(SqlSession::new);
+    }
+
+    /**
+     * Runs a multi-query flow on the connection of the given session, then releases the session.
+     *
+     * @param session the session to run the queries on
+     * @param flow the queries to run, given a client issuing them on the session
+     * @param <T> type of the result of the flow
+     * @return a future of the result of the flow
+     */
+    public <T> Future<T> inSession(SqlSession session, Function<PlannerDataAccessClient, Future<T>> flow) {
+        final PlannerDataAccessClient sessionClient = new PlannerDataAccessClient(sqlClient, readClient,
+                lineItemsClient, tokenSpendClient, systemStateClient, registrationClient, reallocatedPlansClient,
+                lineItemsTokensSummaryClient, lineItemsHistoryClient, adminEventClient, changeVersionClient, metrics,
+                alertHttpClient, lineItemsTokensSummaryConfiguration, session, tokensRollupComplete);
+        final long start = System.currentTimeMillis();
+        Future<T> result;
+        try {
+            result = flow.apply(sessionClient);
+        } catch (Exception e) {
+            result = Future.failedFuture(e);
+        }
+        return result
+                .map(value -> {
+                    releaseSession(session, start);
+                    return value;
+                })
+                .recover(ex -> {
+                    releaseSession(session, start);
+                    return Future.failedFuture(ex);
+                });
+    }
+
+    private void releaseSession(SqlSession session, long start) {
+        session.release();
+        metrics.updateTimer(metricName("session"), System.currentTimeMillis() - start);
+        metrics.incCounter(metricName("session-queries"), session.getQueries());
     }
 
     public Future<SQLConnection> connect() {
+        return connectWith(sqlClient);
+    }
+
+    /**
+     * Connects for a read-only query tolerating replication lag. Within a session the query runs on the
+     * connection of the session.
+     */
+    private Future<SQLConnection> connectForRead() {
+        return connectWith(readClient);
+    }
+
+    private Future<SQLConnection> connectWith(SQLClient client) {
+        if (session != null) {
+            return Future.succeededFuture(session);
+        }
         final Future<SQLConnection> future = Future.future();
-        jdbcClient.getConnection(future);
+        client.getConnection(future);
         return future.recover(this::logConnectionError);
     }
 
@@ -123,7 +279,7 @@ public class PlannerDataAccessClient {
 
     Future<List<Map<String, Object>>> findRegistrations(
             Instant activeSince, String vendor, String region, String instanceId) {
-        return connect()
+        return connectForRead()
                 .compose(sqlConnection ->
                         registrationClient.findRegistrations(sqlConnection, activeSince, vendor, region, instanceId));
     }
@@ -176,45 +332,21 @@ public class PlannerDataAccessClient {
 
     private Future<List<LineItemsTokensSummary>> findLineItemTokens(
             Instant updatedAtOrAfter, Instant updatedBefore, List<LineItemIdentity> lineItemIds) {
-        return connect()
+        if (tokensRollupComplete != null && tokensRollupComplete.test(updatedAtOrAfter, updatedBefore)) {
+            return connectForRead()
+                    .compose(sqlConnection -> lineItemsTokensSummaryClient.sumPlanTokens(
+                            sqlConnection, updatedAtOrAfter, updatedBefore, lineItemIds));
+        }
+        return connectForRead()
                 .compose(sqlConnection -> lineItemsHistoryClient.findLineItemTokens(
                         sqlConnection, updatedAtOrAfter, updatedBefore, lineItemIds));
     }
 
     Future<List<LineItemsTokensSummary>> getLineItemsTokensSummary(Instant startTime, Instant endTime,
-            List<String> lineItemIds) {
-        final int size = lineItemsTokensSummaryConfiguration.getPageSize();
-        final PageRequest page = PageRequest.builder()
-                .number(0)
-                .size(size)
-                .build();
-        final List<LineItemsTokensSummary> tokenSummaries = new ArrayList<>();
-        return connect()
-                .compose(sqlConnection -> lineItemsTokensSummaryClient.getLineItemsTokensSummaryCount(
-                        sqlConnection, startTime, endTime, lineItemIds))
-                .compose(count -> {
-                    final int pages = (count + size - 1) / size;
-                    Future<List<LineItemsTokensSummary>> result =
-                            getLineItemsTokensSummary(startTime, endTime, lineItemIds, page);
-                    for (int i = 1; i < pages; i++) {
-                        result = result.compose(list -> {
-                            tokenSummaries.addAll(list);
-                            page.setNumber(page.getNumber() + 1);
-                            return getLineItemsTokensSummary(startTime, endTime, lineItemIds, page);
-                        });
-                    }
-                    return result.compose(list -> {
-                        tokenSummaries.addAll(list);
-                        return Future.succeededFuture(tokenSummaries);
-                    });
-                });
-    }
-
-    private Future<List<LineItemsTokensSummary>> getLineItemsTokensSummary(Instant startTime, Instant endTime,
-            List<String> lineItemIds, PageRequest page) {
-        return connect()
-                .compose(sqlConnection -> lineItemsTokensSummaryClient.getLineItemsTokensSummary(
-                        sqlConnection, startTime, endTime, lineItemIds, page));
+            List<String> lineItemIds, LineItemsTokensSummary after) {
+        return connectForRead()
+                .compose(sqlConnection -> lineItemsTokensSummaryClient.getLineItemsTokensSummary(sqlConnection,
+                        startTime, endTime, lineItemIds, after, lineItemsTokensSummaryConfiguration.getPageSize()));
     }
 
     Future<List<DeliveryTokenSpendSummary>> readTokenSpendData(
@@ -224,17 +356,18 @@ public class PlannerDataAccessClient {
                         sqlConnection, hostInstanceId, region, vendor, updatedSince));
     }
 
-    Future<Void> updateReallocatedPlans(List<ReallocatedPlan> reallocatedPlans, Integer batchSize) {
+    Future<Void> updateReallocatedPlans(List<ReallocatedPlan> reallocatedPlans, Integer batchSize,
+            LeaderLeaseFence fence) {
         if (reallocatedPlans.isEmpty()) {
             return Future.succeededFuture();
         }
         final List<List<ReallocatedPlan>> batches = buildBatches(reallocatedPlans, batchSize);
-        final Future<List<Integer>> init = updateReallocatedPlans(batches.get(0));
+        final Future<List<Integer>> init = updateReallocatedPlans(batches.get(0), fence);
         final List<Function<List<Integer>, Future<List<Integer>>>> handlers = new ArrayList<>();
         for (int i = 1; i < batches.size(); i++) {
             final int index = i;
             Function<List<Integer>, Future<List<Integer>>> handler =
-                    asyncResult -> updateReallocatedPlans(batches.get(index));
+                    asyncResult -> updateReallocatedPlans(batches.get(index), fence);
             handlers.add(handler);
         }
         final long start = System.currentTimeMillis();
@@ -246,14 +379,15 @@ public class PlannerDataAccessClient {
         });
     }
 
-    private Future<List<Integer>> updateReallocatedPlans(List<ReallocatedPlan> reallocatedPlans) {
+    private Future<List<Integer>> updateReallocatedPlans(List<ReallocatedPlan> reallocatedPlans,
+            LeaderLeaseFence fence) {
         return connect()
-                .compose(sqlConnection ->
-                        reallocatedPlansClient.updateReallocatedPlans(sqlConnection, reallocatedPlans));
+                .compose(sqlConnection -> writeAndBumpVersion(sqlConnection, ChangeVersionClient.REALLOCATED_PLANS,
+                        fence, () -> reallocatedPlansClient.writeReallocatedPlans(sqlConnection, reallocatedPlans)));
     }
 
     Future<List<PbsHost>> findActiveHosts(Instant activeSince) {
-        return connect()
+        return connectForRead()
                 .compose(sqlConnection -> registrationClient.findActiveHosts(sqlConnection, activeSince));
     }
 
@@ -268,6 +402,10 @@ public class PlannerDataAccessClient {
                                 sqlConnection, hostInstanceId, region, vendor));
     }
 
+    Future<List<ReallocatedPlan>> getReallocatedPlans(List<PbsHost> hosts) {
+        return connect().compose(sqlConnection -> reallocatedPlansClient.getReallocatedPlans(sqlConnection, hosts));
+    }
+
     Future<List<ReallocatedPlan>> getLatestReallocatedPlans(Instant updatedSince) {
         return connect().compose(
                 sqlConnection -> reallocatedPlansClient.getLatestReallocatedPlans(sqlConnection, updatedSince));
@@ -325,13 +463,55 @@ public class PlannerDataAccessClient {
         });
     }
 
-    Future<Void> updateLineItems(List<LineItem> lineItems, Integer batchSize) {
-        return updateInBatch(lineItems, batchSize, this::updateLineItems, "update-line-items-all-batches");
+    Future<Void> updateLineItems(List<LineItem> lineItems, Integer batchSize, LeaderLeaseFence fence) {
+        return updateInBatch(lineItems, batchSize, lineItemBatch -> updateLineItems(lineItemBatch, fence),
+                "update-line-items-all-batches");
     }
 
-    private Future<UpdateResult> updateLineItems(List<LineItem> lineItemBatch) {
+    private Future<UpdateResult> updateLineItems(List<LineItem> lineItemBatch, LeaderLeaseFence fence) {
         return connect()
-                .compose(sqlConnection -> lineItemsClient.updateLineItems(sqlConnection, lineItemBatch));
+                .compose(sqlConnection -> writeAndBumpVersion(sqlConnection, ChangeVersionClient.LINE_ITEMS,
+                        fence, () -> lineItemsClient.writeLineItems(sqlConnection, lineItemBatch)));
+    }
+
+    Future<Map<String, Long>> getChangeVersions() {
+        return connect().compose(changeVersionClient::getVersions);
+    }
+
+    /**
+     * Runs the write and bumps the change version of the written entity in one transaction holding the leader
+     * lease fence, then closes the connection.
+     */
+    private <T> Future<T> writeAndBumpVersion(SQLConnection sqlConnection, String entity, LeaderLeaseFence fence,
+            Supplier<Future<T>> write) {
+        final Future<T> result = Future.future();
+        final Future<Void> transactionStarted = Future.future();
+        sqlConnection.setAutoCommit(false, transactionStarted);
+        transactionStarted
+                .compose(ignored -> fence.hold(sqlConnection))
+                .compose(ignored -> write.get())
+                .compose(written -> changeVersionClient.bump(sqlConnection, entity)
+                        .compose(version -> {
+                            final Future<Void> committed = Future.future();
+                            sqlConnection.commit(committed);
+                            return committed.map(ignored -> {
+                                changeVersionClient.committed(entity, version);
+                                return written;
+                            });
+                        }))
+                .setHandler(ar -> {
+                    if (ar.succeeded()) {
+                        sqlConnection.close();
+                        result.complete(ar.result());
+                        return;
+                    }
+                    metrics.incCounter(metricName("rollback"));
+                    sqlConnection.rollback(rollback -> {
+                        sqlConnection.close();
+                        result.fail(ar.cause());
+                    });
+                });
+        return result;
     }
 
     private <T, R> Future<Void> updateInBatch(List<T> items, Integer batchSize, UpdateHandler<T, R> updateHandler,
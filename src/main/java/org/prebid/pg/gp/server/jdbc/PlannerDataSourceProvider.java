@@ -0,0 +1,44 @@
+package org.prebid.pg.gp.server.jdbc;
+
+import com.mchange.v2.c3p0.AbstractComboPooledDataSource;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.jdbc.spi.impl.C3P0DataSourceProvider;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+/**
+ * A c3p0 data source provider naming the pool after the {@value #POOL_NAME} configuration property, so the
+ * pool of each database bulkhead can be found in the c3p0 registry and reported on its own.
+ * <p>
+ * Connections are tested on checkout as set in {@code c3p0.properties}, unless the
+ * {@value #CONNECTION_VALIDATION} configuration property is {@value #VALIDATE_ON_CHECKIN}. They are then tested
+ * when returned to the pool instead, off the path of the query waiting for them, and while idle.
+ */
+public class PlannerDataSourceProvider extends C3P0DataSourceProvider {
+
+    public static final String POOL_NAME = "pool_name";
+
+    public static final String CONNECTION_VALIDATION = "connection_validation";
+
+    public static final String VALIDATE_ON_CHECKIN = "checkin";
+
+    @Override
+    public DataSource getDataSource(JsonObject config) throws SQLException {
+        final DataSource dataSource = super.getDataSource(config);
+        if (!(dataSource instanceof AbstractComboPooledDataSource)) {
+            return dataSource;
+        }
+        final AbstractComboPooledDataSource pooledDataSource = (AbstractComboPooledDataSource) dataSource;
+        final String poolName = config.getString(POOL_NAME);
+        if (poolName != null) {
+            pooledDataSource.setDataSourceName(poolName);
+        }
+        if (VALIDATE_ON_CHECKIN.equals(config.getString(CONNECTION_VALIDATION))) {
+            pooledDataSource.setTestConnectionOnCheckout(false);
+            pooledDataSource.setTestConnectionOnCheckin(true);
+        }
+        return dataSource;
+    }
+
+}
@@ -0,0 +1,179 @@
+package org.prebid.pg.gp.server.jdbc;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.sql.SQLClient;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.spring.config.app.PlannerDatabaseProperties;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Records latency, rows and bytes of each SQL statement per fingerprint, and logs statements slower than the
+ * threshold.
+ * <p>
+ * The fingerprint of a statement identifies its normalized text: literals are replaced by {@code ?}, and
+ * lists of values and repeated conditions, such as the line item filters built per request, collapse into one,
+ * so statements differing only by their arguments share metrics. Fingerprints read
+ * {@code <verb>-<table>-<hash>}, the normalized text of each is logged when first seen. Beyond the maximum
+ * number of fingerprints, statements are recorded as {@value #OTHER}.
+ */
+public class QueryInstrumentation {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryInstrumentation.class);
+
+    static final String OTHER = "other";
+
+    // raw statements whose fingerprint is kept, statements with inlined literals are fingerprinted every time
+    private static final int MAX_CACHED_STATEMENTS = 1024;
+
+    private static final Pattern STRING_LITERAL =
+            Pattern.compile("'(?:[^'\\\\]|\\\\.|'')*'");
+
+    private static final Pattern NUMBER_LITERAL =
+            Pattern.compile("(?<![\\w.])\\d+(?:\\.\\d+)?");
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static final Pattern VALUE_LIST =
+            Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+
+    private static final Pattern REPEATED_GROUP =
+            Pattern.compile("(\\([^()]*\\))(?:\\s*(?:,|or|and)\\s*\\1)+");
+
+    private static final Pattern TABLE =
+            Pattern.compile("\\b(?:from|into|update)\\s+([a-z0-9_.`]+)");
+
+    private final PlannerDatabaseProperties.QueryLog config;
+
+    private final Metrics metrics;
+
+    // normalized statement to fingerprint
+    private final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+
+    // raw statement to fingerprint
+    private final Map<String, String> statements = new ConcurrentHashMap<>();
+
+    public QueryInstrumentation(PlannerDatabaseProperties.QueryLog config, Metrics metrics) {
+        this.config = Objects.requireNonNull(config);
+        this.metrics = Objects.requireNonNull(metrics);
+        logger.info(config);
+    }
+
+    /**
+     * Instruments the statements run on connections of the given client.
+     *
+     * @param client the client to instrument
+     * @return the instrumented client, or the client itself if instrumentation is disabled
+     */
+    public SQLClient instrument(SQLClient client) {
+        return config.getEnabled() ? new InstrumentedSqlClient(client, this) : client;
+    }
+
+    void recordConnectionWait(long waitMs) {
+        metrics.updateTimer("db-query.connection-wait", waitMs);
+    }
+
+    void record(String sql, int params, long connectionWaitMs, long latencyMs, long rows, long bytes,
+                boolean failed) {
+        final String fingerprint = fingerprint(sql);
+        metrics.updateTimer(metricName(fingerprint, "latency"), latencyMs);
+        metrics.incCounter(metricName(fingerprint, "rows"), rows);
+        metrics.incCounter(metricName(fingerprint, "bytes"), bytes);
+        if (failed) {
+            metrics.incCounter(metricName(fingerprint, "failed"));
+        }
+        if (latencyMs >= config.getSlowQueryThresholdMs()) {
+            metrics.incCounter(metricName(fingerprint, "slow"));
+            logger.warn("slow-query::{0}", new JsonObject()
+                    .put("fingerprint", fingerprint)
+                    .put("sql", normalize(sql))
+                    .put("latencyMs", latencyMs)
+                    .put("rows", rows)
+                    .put("bytes", bytes)
+                    .put("params", params)
+                    .put("connectionWaitMs", connectionWaitMs)
+                    .put("failed", failed)
+                    .encode());
+        }
+    }
+
+    String fingerprint(String sql) {
+        final String cached = statements.get(sql);
+        if (cached != null) {
+            return cached;
+        }
+        final String normalized = normalize(sql);
+        String fingerprint = fingerprints.get(normalized);
+        if (fingerprint == null) {
+            if (fingerprints.size() >= config.getMaxFingerprints()) {
+                return OTHER;
+            }
+            fingerprint = fingerprints.computeIfAbsent(normalized, key -> {
+                final String id = fingerprintOf(key);
+                logger.info("Query fingerprint {0}::{1}", id, key);
+                return id;
+            });
+        }
+        if (statements.size() < MAX_CACHED_STATEMENTS) {
+            statements.put(sql, fingerprint);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Normalizes the given statement, so statements differing only by their arguments read the same.
+     *
+     * @param sql the statement
+     * @return the normalized statement
+     */
+    static String normalize(String sql) {
+        String normalized = STRING_LITERAL.matcher(sql).replaceAll("?");
+        normalized = NUMBER_LITERAL.matcher(normalized).replaceAll("?");
+        normalized = WHITESPACE.matcher(normalized).replaceAll(" ").trim().toLowerCase(Locale.ROOT);
+        normalized = VALUE_LIST.matcher(normalized).replaceAll("(?, ...)");
+        return REPEATED_GROUP.matcher(normalized).replaceAll("$1");
+    }
+
+    static long sizeOf(JsonArray values) {
+        if (values == null) {
+            return 0;
+        }
+        long size = 0;
+        for (final Object value : values) {
+            if (value instanceof CharSequence) {
+                size += ((CharSequence) value).length();
+            } else if (value instanceof Number) {
+                size += Long.BYTES;
+            } else if (value instanceof Boolean) {
+                size += 1;
+            } else if (value instanceof byte[]) {
+                size += ((byte[]) value).length;
+            } else if (value != null) {
+                size += value.toString().length();
+            }
+        }
+        return size;
+    }
+
+    private static String fingerprintOf(String normalized) {
+        final int verbEnd = normalized.indexOf(' ');
+        final String verb = verbEnd > 0 ? normalized.substring(0, verbEnd) : normalized;
+        final Matcher table = TABLE.matcher(normalized);
+        return table.find()
+                ? String.format("%s-%s-%08x", verb, table.group(1).replace("`", ""), normalized.hashCode())
+                : String.format("%s-%08x", verb, normalized.hashCode());
+    }
+
+    private static String metricName(String fingerprint, String tag) {
+        return String.format("db-query.%s.%s", fingerprint, tag);
+    }
+
+}
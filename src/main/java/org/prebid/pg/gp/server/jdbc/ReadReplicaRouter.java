@@ -0,0 +1,180 @@
+package org.prebid.pg.gp.server.jdbc;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.sql.ResultSet;
+import io.vertx.ext.sql.SQLClient;
+import io.vertx.ext.sql.SQLConnection;
+import io.vertx.ext.sql.UpdateResult;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.spring.config.app.PlannerDatabaseProperties;
+
+import java.util.Objects;
+
+/**
+ * A client routing read-only queries to a read replica while its replication lag is below the threshold,
+ * and to the primary otherwise.
+ * <p>
+ * Replication lag is measured with a heartbeat: the router periodically writes the time of its own row in
+ * {@code gp_replica_heartbeat} on the primary and reads its age back from the replica, with the resolution of
+ * the check period. Until a check succeeds, and whenever one fails or the lag exceeds the threshold, reads go
+ * to the primary. Without a replica configured, all reads go to the primary.
+ */
+public class ReadReplicaRouter implements SQLClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReadReplicaRouter.class);
+
+    private static final String BEAT_SQL =
+            "REPLACE INTO gp_replica_heartbeat (instance_id, beat_at) VALUES (?, CURRENT_TIMESTAMP)";
+
+    private static final String LAG_SQL =
+            "SELECT TIMESTAMPDIFF(SECOND, beat_at, CURRENT_TIMESTAMP) FROM gp_replica_heartbeat "
+            + "WHERE instance_id = ?";
+
+    private final Vertx vertx;
+
+    private final SQLClient primary;
+
+    private final SQLClient replica;
+
+    private final String instanceId;
+
+    private final PlannerDatabaseProperties.Replica config;
+
+    private final Metrics metrics;
+
+    private volatile boolean replicaUsable;
+
+    // seconds the replica is behind, -1 if unknown
+    private volatile long lagSec = -1;
+
+    private boolean checking;
+
+    private long timerId = -1;
+
+    public ReadReplicaRouter(
+            Vertx vertx,
+            SQLClient primary,
+            SQLClient replica, // null if no replica is configured
+            String instanceId,
+            PlannerDatabaseProperties.Replica config,
+            Metrics metrics
+    ) {
+        this.vertx = Objects.requireNonNull(vertx);
+        this.primary = Objects.requireNonNull(primary);
+        this.replica = replica;
+        this.instanceId = Objects.requireNonNull(instanceId);
+        this.config = Objects.requireNonNull(config);
+        this.metrics = Objects.requireNonNull(metrics);
+
+        metrics.registerGauge(metricName("lag-sec"), () -> lagSec);
+        metrics.registerGauge(metricName("usable"), () -> replicaUsable ? 1 : 0);
+        logger.info(config);
+    }
+
+    /**
+     * Starts checking the replication lag.
+     */
+    public void initialize() {
+        if (replica == null) {
+            return;
+        }
+        checkLag();
+        timerId = vertx.setPeriodic(config.getLagCheckPeriodSec() * 1000L, id -> checkLag());
+    }
+
+    public void close() {
+        if (timerId != -1) {
+            vertx.cancelTimer(timerId);
+            timerId = -1;
+        }
+    }
+
+    @Override
+    public void close(Handler<AsyncResult<Void>> handler) {
+        // the pools belong to the primary and replica clients
+        close();
+        handler.handle(Future.succeededFuture());
+    }
+
+    @Override
+    public SQLClient getConnection(Handler<AsyncResult<SQLConnection>> handler) {
+        if (replicaUsable) {
+            metrics.incCounter(metricName("reads"));
+            replica.getConnection(handler);
+        } else {
+            metrics.incCounter(metricName("primary-reads"));
+            primary.getConnection(handler);
+        }
+        return this;
+    }
+
+    public boolean isReplicaUsable() {
+        return replicaUsable;
+    }
+
+    public long getLagSec() {
+        return lagSec;
+    }
+
+    Future<Long> checkLag() {
+        if (checking) {
+            return Future.succeededFuture(lagSec);
+        }
+        checking = true;
+        final JsonArray params = new JsonArray().add(instanceId);
+        return this.<UpdateResult>run(primary, (connection, future) ->
+                        connection.updateWithParams(BEAT_SQL, params, future))
+                .compose(beat -> this.<ResultSet>run(replica, (connection, future) ->
+                        connection.queryWithParams(LAG_SQL, params, future)))
+                .map(rs -> rs.getNumRows() == 0 || rs.getResults().get(0).getValue(0) == null
+                        ? -1L
+                        : ((Number) rs.getResults().get(0).getValue(0)).longValue())
+                .map(lag -> {
+                    checked(lag, lag >= 0 && lag <= config.getMaxLagSec());
+                    return lag;
+                })
+                .recover(ex -> {
+                    logger.warn("Cannot check replication lag::{0}", ex.getMessage());
+                    checked(-1, false);
+                    return Future.failedFuture(ex);
+                });
+    }
+
+    private void checked(long lag, boolean usable) {
+        checking = false;
+        lagSec = lag;
+        if (usable != replicaUsable) {
+            logger.warn("Read replica {0}, lag {1} seconds", usable ? "in use" : "bypassed", lag);
+        }
+        replicaUsable = usable;
+    }
+
+    private <T> Future<T> run(SQLClient client, Statement<T> statement) {
+        final Future<SQLConnection> connected = Future.future();
+        client.getConnection(connected);
+        return connected.compose(connection -> {
+            final Future<T> future = Future.future();
+            statement.run(connection, ar -> {
+                connection.close();
+                future.handle(ar);
+            });
+            return future;
+        });
+    }
+
+    private String metricName(String tag) {
+        return String.format("db-replica.%s", tag);
+    }
+
+    @FunctionalInterface
+    private interface Statement<T> {
+        void run(SQLConnection connection, Handler<AsyncResult<T>> handler);
+    }
+
+}
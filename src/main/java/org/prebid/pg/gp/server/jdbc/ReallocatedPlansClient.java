@@ -10,10 +10,12 @@ import io.vertx.ext.sql.ResultSet;
 import io.vertx.ext.sql.ResultSetType;
 import io.vertx.ext.sql.SQLConnection;
 import io.vertx.ext.sql.SQLOptions;
+import org.prebid.pg.gp.server.breaker.ComputeExecutor;
 import org.prebid.pg.gp.server.exception.GeneralPlannerException;
 import org.prebid.pg.gp.server.metric.Metrics;
 import org.prebid.pg.gp.server.model.AdminTracer;
 import org.prebid.pg.gp.server.model.GPConstants;
+import org.prebid.pg.gp.server.model.PbsHost;
 import org.prebid.pg.gp.server.model.ReallocatedPlan;
 import org.prebid.pg.gp.server.model.ReallocationWeights;
 import org.prebid.pg.gp.server.model.Weightage;
@@ -22,6 +24,7 @@ import org.springframework.util.StringUtils;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.stream.Collectors;
@@ -45,6 +48,13 @@ public class ReallocatedPlansClient {
             + "FROM reallocated_plans "
             + "WHERE service_instance_id = ? AND updated_at >= ?";
 
+    private static final String GET_HOSTS_REALLOCATED_PLANS_SQL =
+            "SELECT instance_id, region, vendor, token_reallocation_weights, updated_at "
+            + "FROM reallocated_plans "
+            + "WHERE service_instance_id = ? AND (%s)";
+
+    private static final String HOST_CONDITION_SQL = "(vendor = ? AND region = ? AND instance_id = ?)";
+
     private static final String UPDATE_REALLOCATED_PLANS_SQL =
             "REPLACE INTO reallocated_plans "
             + "(service_instance_id, vendor, region, instance_id, token_reallocation_weights, updated_at) "
@@ -54,11 +64,15 @@ public class ReallocatedPlansClient {
 
     private final Metrics metrics;
 
-    public ReallocatedPlansClient(String hostInstanceId, Metrics metrics, AdminTracer adminTracer) {
+    private final ComputeExecutor computeExecutor;
+
+    public ReallocatedPlansClient(
+            String hostInstanceId, Metrics metrics, AdminTracer adminTracer, ComputeExecutor computeExecutor) {
         this.generalPlannerHostInstanceId = Validators.checkArgument(
                 hostInstanceId, !StringUtils.isEmpty(hostInstanceId), "hostInstanceId should not be blank.");
         this.metrics = Objects.requireNonNull(metrics);
         this.tracer = Objects.requireNonNull(adminTracer);
+        this.computeExecutor = Objects.requireNonNull(computeExecutor);
     }
 
     Future<List<ReallocatedPlan>> getLatestReallocatedPlans(SQLConnection sqlConnection, Instant updatedSince) {
@@ -84,7 +98,42 @@ public class ReallocatedPlansClient {
                             resultSetFuture.handle(ar);
                         });
 
-        return resultSetFuture.map(this::mapToReallocatedPlansBatch);
+        return computeExecutor.map(resultSetFuture, this::mapToReallocatedPlansBatch, "map-reallocated-plans");
+    }
+
+    Future<List<ReallocatedPlan>> getReallocatedPlans(SQLConnection sqlConnection, List<PbsHost> hosts) {
+        if (hosts.isEmpty()) {
+            sqlConnection.close();
+            return Future.succeededFuture(new ArrayList<>());
+        }
+        final long start = System.currentTimeMillis();
+        final Future<ResultSet> resultSetFuture = Future.future();
+        final String method = "read-hosts-reallocated-plans";
+        final JsonArray params = new JsonArray().add(generalPlannerHostInstanceId);
+        for (PbsHost host : hosts) {
+            params.add(host.getVendor()).add(host.getRegion()).add(host.getHostInstanceId());
+        }
+        final String sql = String.format(GET_HOSTS_REALLOCATED_PLANS_SQL,
+                String.join(" OR ", Collections.nCopies(hosts.size(), HOST_CONDITION_SQL)));
+
+        sqlConnection.setOptions(new SQLOptions().setResultSetType(ResultSetType.FORWARD_ONLY))
+                .queryWithParams(
+                        sql,
+                        params,
+                        ar -> {
+                            sqlConnection.close();
+                            metrics.updateTimer(metricName(method), System.currentTimeMillis() - start);
+                            if (!ar.succeeded()) {
+                                logger.error(
+                                        "Failure in reading reallocated_plans information for {0} hosts::{1}",
+                                        hosts.size(), ar.cause().getMessage()
+                                );
+                                metrics.incCounter(metricName(method + ".exc"));
+                            }
+                            resultSetFuture.handle(ar);
+                        });
+
+        return computeExecutor.map(resultSetFuture, this::mapToReallocatedPlansBatch, "map-reallocated-plans");
     }
 
     Future<ReallocatedPlan> getReallocatedPlan(
@@ -135,7 +184,7 @@ public class ReallocatedPlansClient {
                             .vendor(row.getString(2))
                             .reallocationWeights(
                                     new ObjectMapper().readValue(row.getString(3), ReallocationWeights.class))
-                            .updatedAt(row.getInstant(4))
+                            .updatedAt(SqlRows.getInstant(row, 4))
                             .build();
                     reallocatedPlans.add(reallocatedPlan);
                     if (tracer.checkActive()) {
@@ -173,7 +222,7 @@ public class ReallocatedPlansClient {
                         .vendor(row.getString(2))
                         .reallocationWeights(
                                 new ObjectMapper().readValue(row.getString(3), ReallocationWeights.class))
-                        .updatedAt(row.getInstant(4))
+                        .updatedAt(SqlRows.getInstant(row, 4))
                         .build();
 
                 if (tracer.checkActive()) {
@@ -200,6 +249,25 @@ public class ReallocatedPlansClient {
     }
 
     Future<List<Integer>> updateReallocatedPlans(SQLConnection sqlConnection, List<ReallocatedPlan> reallocatedPlans) {
+        return writeReallocatedPlans(sqlConnection, reallocatedPlans)
+                .map(updateResult -> {
+                    sqlConnection.close();
+                    return updateResult;
+                })
+                .recover(ex -> {
+                    sqlConnection.close();
+                    return Future.failedFuture(ex);
+                });
+    }
+
+    /**
+     * Writes reallocated plans without closing the connection, so the write can be part of a larger transaction.
+     *
+     * @param sqlConnection the connection
+     * @param reallocatedPlans plans to write
+     * @return a future of the update counts
+     */
+    Future<List<Integer>> writeReallocatedPlans(SQLConnection sqlConnection, List<ReallocatedPlan> reallocatedPlans) {
         final long start = System.currentTimeMillis();
 
         reallocatedPlans.stream().peek(logger::debug);
@@ -221,7 +289,6 @@ public class ReallocatedPlansClient {
         sqlConnection.batchWithParams(UPDATE_REALLOCATED_PLANS_SQL,
                 params,
                 ar -> {
-                    sqlConnection.close();
                     metrics.updateTimer(method, System.currentTimeMillis() - start);
                     if (ar.succeeded()) {
                         logger.debug("Persist reallocated plan successfully");
@@ -104,7 +104,7 @@ public class RegistrationClient {
             map.put("region", row.getString(1));
             map.put("vendor", row.getString(2));
             map.put("status", decodeStatus(row.getString(3)));
-            Instant createdAt = row.getInstant(4);
+            Instant createdAt = SqlRows.getInstant(row, 4);
             String timestamp = createdAt == null ? null : createdAt.toString().replace("Z", ".000Z");
             map.put("latestRegistrationTimeStamp", timestamp);
             registrations.add(map);
@@ -232,9 +232,9 @@ public class RegistrationClient {
                     .hostInstanceId(row.getString(index++))
                     .region(row.getString(index++))
                     .vendor(row.getString(index++))
-                    .healthIndex(row.getFloat(index++))
-                    .adReqsPerSec(row.getInteger(index++))
-                    .createdAt(row.getInstant(index))
+                    .healthIndex(SqlRows.getFloat(row, index++))
+                    .adReqsPerSec(SqlRows.getInteger(row, index++))
+                    .createdAt(SqlRows.getInstant(row, index))
                     .build();
             pbsHosts.add(pbsHost);
             if (tracer.checkActive()
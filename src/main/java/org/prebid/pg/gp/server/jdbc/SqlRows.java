@@ -0,0 +1,65 @@
+package org.prebid.pg.gp.server.jdbc;
+
+import io.vertx.core.json.JsonArray;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Reads the values of result rows alike from the JDBC client and from the asynchronous MySQL client.
+ * <p>
+ * The JDBC client returns timestamps as instants and decimals, e.g. sums, as numbers. The asynchronous MySQL client
+ * returns timestamps as local date-times of the session time zone, which is expected to be UTC, and decimals as
+ * strings.
+ */
+final class SqlRows {
+
+    private SqlRows() {
+    }
+
+    static Instant getInstant(JsonArray row, int pos) {
+        final Object value = row.getValue(pos);
+        if (value == null || value instanceof Instant) {
+            return (Instant) value;
+        }
+        final String text = value.toString().replace(' ', 'T');
+        if (text.endsWith("Z")) {
+            return Instant.parse(text);
+        }
+        return text.indexOf('+', 10) > 0 || text.indexOf('-', 10) > 0
+                ? OffsetDateTime.parse(text).toInstant()
+                : LocalDateTime.parse(text).toInstant(ZoneOffset.UTC);
+    }
+
+    static Integer getInteger(JsonArray row, int pos) {
+        final Object value = row.getValue(pos);
+        if (value == null || value instanceof Integer) {
+            return (Integer) value;
+        }
+        return value instanceof Number
+                ? ((Number) value).intValue()
+                : new BigDecimal(value.toString()).intValueExact();
+    }
+
+    static Long getLong(JsonArray row, int pos) {
+        final Object value = row.getValue(pos);
+        if (value == null || value instanceof Long) {
+            return (Long) value;
+        }
+        return value instanceof Number
+                ? ((Number) value).longValue()
+                : new BigDecimal(value.toString()).longValueExact();
+    }
+
+    static Float getFloat(JsonArray row, int pos) {
+        final Object value = row.getValue(pos);
+        if (value == null || value instanceof Float) {
+            return (Float) value;
+        }
+        return value instanceof Number ? ((Number) value).floatValue() : Float.parseFloat(value.toString());
+    }
+
+}
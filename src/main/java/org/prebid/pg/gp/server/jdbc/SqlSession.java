@@ -0,0 +1,205 @@
+package org.prebid.pg.gp.server.jdbc;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.sql.ResultSet;
+import io.vertx.ext.sql.SQLConnection;
+import io.vertx.ext.sql.SQLOptions;
+import io.vertx.ext.sql.SQLRowStream;
+import io.vertx.ext.sql.TransactionIsolation;
+import io.vertx.ext.sql.UpdateResult;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A connection borrowed from the pool for the duration of a multi-query flow, so the queries of the flow run
+ * back to back on it instead of checking out and validating a connection each.
+ * <p>
+ * Closing the session, as every client does after its query, does not return the connection to the pool,
+ * {@link #release()} does. Sessions are meant for reads and auto-commit updates, writes running in their own
+ * transaction leave auto-commit off and keep to connections of their own.
+ */
+public class SqlSession implements SQLConnection {
+
+    private final SQLConnection connection;
+
+    private int queries;
+
+    private boolean released;
+
+    SqlSession(SQLConnection connection) {
+        this.connection = Objects.requireNonNull(connection);
+    }
+
+    /**
+     * Returns the connection to the pool.
+     */
+    public void release() {
+        if (!released) {
+            released = true;
+            connection.close();
+        }
+    }
+
+    public boolean isReleased() {
+        return released;
+    }
+
+    /**
+     * Gets the number of statements run in this session so far.
+     *
+     * @return number of statements
+     */
+    public int getQueries() {
+        return queries;
+    }
+
+    @Override
+    public SQLConnection setOptions(SQLOptions options) {
+        connection.setOptions(options);
+        return this;
+    }
+
+    @Override
+    public SQLConnection setAutoCommit(boolean autoCommit, Handler<AsyncResult<Void>> resultHandler) {
+        connection.setAutoCommit(autoCommit, resultHandler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection execute(String sql, Handler<AsyncResult<Void>> resultHandler) {
+        queries++;
+        connection.execute(sql, resultHandler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection query(String sql, Handler<AsyncResult<ResultSet>> resultHandler) {
+        queries++;
+        connection.query(sql, resultHandler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection queryStream(String sql, Handler<AsyncResult<SQLRowStream>> handler) {
+        queries++;
+        connection.queryStream(sql, handler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection queryWithParams(String sql, JsonArray params,
+                                         Handler<AsyncResult<ResultSet>> resultHandler) {
+        queries++;
+        connection.queryWithParams(sql, params, resultHandler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection queryStreamWithParams(String sql, JsonArray params,
+                                               Handler<AsyncResult<SQLRowStream>> handler) {
+        queries++;
+        connection.queryStreamWithParams(sql, params, handler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection update(String sql, Handler<AsyncResult<UpdateResult>> resultHandler) {
+        queries++;
+        connection.update(sql, resultHandler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection updateWithParams(String sql, JsonArray params,
+                                          Handler<AsyncResult<UpdateResult>> resultHandler) {
+        queries++;
+        connection.updateWithParams(sql, params, resultHandler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection call(String sql, Handler<AsyncResult<ResultSet>> resultHandler) {
+        queries++;
+        connection.call(sql, resultHandler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection callWithParams(String sql, JsonArray params, JsonArray outputs,
+                                        Handler<AsyncResult<ResultSet>> resultHandler) {
+        queries++;
+        connection.callWithParams(sql, params, outputs, resultHandler);
+        return this;
+    }
+
+    @Override
+    public void close(Handler<AsyncResult<Void>> handler) {
+        // the connection goes back to the pool when the session is released
+        if (handler != null) {
+            handler.handle(Future.succeededFuture());
+        }
+    }
+
+    @Override
+    public void close() {
+        // the connection goes back to the pool when the session is released
+    }
+
+    @Override
+    public SQLConnection commit(Handler<AsyncResult<Void>> handler) {
+        connection.commit(handler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection rollback(Handler<AsyncResult<Void>> handler) {
+        connection.rollback(handler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection batch(List<String> sqlStatements, Handler<AsyncResult<List<Integer>>> handler) {
+        queries++;
+        connection.batch(sqlStatements, handler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection batchWithParams(String sqlStatement, List<JsonArray> args,
+                                         Handler<AsyncResult<List<Integer>>> handler) {
+        queries++;
+        connection.batchWithParams(sqlStatement, args, handler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection batchCallableWithParams(String sqlStatement, List<JsonArray> inArgs,
+                                                 List<JsonArray> outArgs,
+                                                 Handler<AsyncResult<List<Integer>>> handler) {
+        queries++;
+        connection.batchCallableWithParams(sqlStatement, inArgs, outArgs, handler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection setTransactionIsolation(TransactionIsolation isolation, Handler<AsyncResult<Void>> handler) {
+        connection.setTransactionIsolation(isolation, handler);
+        return this;
+    }
+
+    @Override
+    public SQLConnection getTransactionIsolation(Handler<AsyncResult<TransactionIsolation>> handler) {
+        connection.getTransactionIsolation(handler);
+        return this;
+    }
+
+    @Override
+    public <N> N unwrap() {
+        return connection.unwrap();
+    }
+
+}
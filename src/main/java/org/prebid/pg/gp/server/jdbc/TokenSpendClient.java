@@ -143,11 +143,11 @@ public class TokenSpendClient {
                         .region(region)
                         .instanceId(hostInstanceId)
                         .bidderCode(extractBidderCode(rs.getString(1), rs.getString(0)))
-                        .dataWindowStartTimestamp(rs.getInstant(4).toString())
-                        .dataWindowEndTimestamp(rs.getInstant(5).toString())
-                        .reportTimestamp(rs.getInstant(6).toString())
-                        .updatedAt(rs.getInstant(7))
-                        .reportTime(rs.getInstant(8))
+                        .dataWindowStartTimestamp(SqlRows.getInstant(rs, 4).toString())
+                        .dataWindowEndTimestamp(SqlRows.getInstant(rs, 5).toString())
+                        .reportTimestamp(SqlRows.getInstant(rs, 6).toString())
+                        .updatedAt(SqlRows.getInstant(rs, 7))
+                        .reportTime(SqlRows.getInstant(rs, 8))
                         .build();
 
                 if (statsMap.containsKey(summary)) {
@@ -0,0 +1,94 @@
+package org.prebid.pg.gp.server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JFR event for a fetch of delivery statistics of a vendor and region, disabled on a JVM without JFR.
+ */
+public final class DeliveryDataFetchEvent {
+
+    private static final DeliveryDataFetchEvent DISABLED = new DeliveryDataFetchEvent(null);
+
+    private final Recorded recorded;
+
+    private DeliveryDataFetchEvent(Recorded recorded) {
+        this.recorded = recorded;
+    }
+
+    /**
+     * Starts timing a fetch of delivery statistics.
+     *
+     * @param vendor the vendor
+     * @param region the region
+     * @return the started event
+     */
+    public static DeliveryDataFetchEvent start(String vendor, String region) {
+        return JfrSupport.isAvailable() ? new DeliveryDataFetchEvent(Recorded.start(vendor, region)) : DISABLED;
+    }
+
+    public void setResponseSize(long responseSize) {
+        if (recorded != null) {
+            recorded.responseSize = responseSize;
+        }
+    }
+
+    /**
+     * Ends timing the fetch and commits the event if recording is on.
+     *
+     * @param summaries number of valid token spend summaries
+     * @param succeeded whether the fetch succeeded
+     */
+    public void end(int summaries, boolean succeeded) {
+        if (recorded != null) {
+            recorded.end(summaries, succeeded);
+        }
+    }
+
+    @Name("org.prebid.pg.DeliveryDataFetch")
+    @Label("Delivery Data Fetch")
+    @Description("A fetch of delivery statistics of a vendor and region")
+    @Category({"General Planner", "Ingestion"})
+    @StackTrace(false)
+    static class Recorded extends Event {
+
+        @Label("Vendor")
+        private String vendor;
+
+        @Label("Region")
+        private String region;
+
+        @Label("Response Size")
+        @DataAmount
+        private long responseSize;
+
+        @Label("Summaries")
+        private int summaries;
+
+        @Label("Succeeded")
+        private boolean succeeded;
+
+        static Recorded start(String vendor, String region) {
+            final Recorded event = new Recorded();
+            event.vendor = vendor;
+            event.region = region;
+            event.begin();
+            return event;
+        }
+
+        void end(int summaries, boolean succeeded) {
+            end();
+            if (shouldCommit()) {
+                this.summaries = summaries;
+                this.succeeded = succeeded;
+                commit();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,35 @@
+package org.prebid.pg.gp.server.jfr;
+
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+/**
+ * A check that the JFR API is present in the running JVM.
+ * <p>
+ * The events of this package only load their JFR event classes when it is, so on a JVM without JFR the events
+ * are disabled rather than failing the code paths they time.
+ */
+final class JfrSupport {
+
+    private static final Logger logger = LoggerFactory.getLogger(JfrSupport.class);
+
+    private static final boolean AVAILABLE = isPresent();
+
+    private JfrSupport() {
+    }
+
+    static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    private static boolean isPresent() {
+        try {
+            Class.forName("jdk.jfr.Event", false, JfrSupport.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            logger.info("JFR is not available, general planner events are disabled");
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+package org.prebid.pg.gp.server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JFR event for a stage of serving a plan request, disabled on a JVM without JFR.
+ */
+public final class PlanRequestStageEvent {
+
+    private static final PlanRequestStageEvent DISABLED = new PlanRequestStageEvent(null);
+
+    private final Recorded recorded;
+
+    private PlanRequestStageEvent(Recorded recorded) {
+        this.recorded = recorded;
+    }
+
+    /**
+     * Starts timing a plan request stage.
+     *
+     * @param stage name of the stage
+     * @param host unique instance id of the PBS host
+     * @return the started event
+     */
+    public static PlanRequestStageEvent start(String stage, String host) {
+        return JfrSupport.isAvailable() ? new PlanRequestStageEvent(Recorded.start(stage, host)) : DISABLED;
+    }
+
+    /**
+     * Ends timing the stage and commits the event if recording is on.
+     *
+     * @param size number of items produced by the stage
+     */
+    public void end(long size) {
+        if (recorded != null) {
+            recorded.end(size);
+        }
+    }
+
+    @Name("org.prebid.pg.PlanRequestStage")
+    @Label("Plan Request Stage")
+    @Description("A stage of serving a plan request to a PBS host")
+    @Category({"General Planner", "Plans"})
+    @StackTrace(false)
+    static class Recorded extends Event {
+
+        @Label("Stage")
+        private String stage;
+
+        @Label("Host")
+        private String host;
+
+        @Label("Size")
+        @Description("Number of items produced by the stage, or number of bytes for the encode stage")
+        private long size;
+
+        static Recorded start(String stage, String host) {
+            final Recorded event = new Recorded();
+            event.stage = stage;
+            event.host = host;
+            event.begin();
+            return event;
+        }
+
+        void end(long size) {
+            end();
+            if (shouldCommit()) {
+                this.size = size;
+                commit();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+package org.prebid.pg.gp.server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JFR event for a refresh of line items from a planner adapter, disabled on a JVM without JFR.
+ */
+public final class PlannerAdapterRefreshEvent {
+
+    private static final PlannerAdapterRefreshEvent DISABLED = new PlannerAdapterRefreshEvent(null);
+
+    private final Recorded recorded;
+
+    private PlannerAdapterRefreshEvent(Recorded recorded) {
+        this.recorded = recorded;
+    }
+
+    /**
+     * Starts timing a refresh from the given planner adapter.
+     *
+     * @param plannerAdapter name of the planner adapter
+     * @return the started event
+     */
+    public static PlannerAdapterRefreshEvent start(String plannerAdapter) {
+        return JfrSupport.isAvailable() ? new PlannerAdapterRefreshEvent(Recorded.start(plannerAdapter)) : DISABLED;
+    }
+
+    /**
+     * Ends timing the refresh and commits the event if recording is on.
+     *
+     * @param lineItems number of line items saved
+     * @param succeeded whether the refresh succeeded
+     */
+    public void end(int lineItems, boolean succeeded) {
+        if (recorded != null) {
+            recorded.end(lineItems, succeeded);
+        }
+    }
+
+    @Name("org.prebid.pg.PlannerAdapterRefresh")
+    @Label("Planner Adapter Refresh")
+    @Description("A refresh of line items from a planner adapter")
+    @Category({"General Planner", "Ingestion"})
+    @StackTrace(false)
+    static class Recorded extends Event {
+
+        @Label("Planner Adapter")
+        private String plannerAdapter;
+
+        @Label("Line Items")
+        private int lineItems;
+
+        @Label("Succeeded")
+        private boolean succeeded;
+
+        static Recorded start(String plannerAdapter) {
+            final Recorded event = new Recorded();
+            event.plannerAdapter = plannerAdapter;
+            event.begin();
+            return event;
+        }
+
+        void end(int lineItems, boolean succeeded) {
+            end();
+            if (shouldCommit()) {
+                this.lineItems = lineItems;
+                this.succeeded = succeeded;
+                commit();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+package org.prebid.pg.gp.server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A JFR event for a cycle of host-based token reallocation, disabled on a JVM without JFR.
+ */
+public final class ReallocationCycleEvent {
+
+    private static final ReallocationCycleEvent DISABLED = new ReallocationCycleEvent(null);
+
+    private final Recorded recorded;
+
+    private ReallocationCycleEvent(Recorded recorded) {
+        this.recorded = recorded;
+    }
+
+    /**
+     * Starts timing a reallocation cycle.
+     *
+     * @return the started event
+     */
+    public static ReallocationCycleEvent start() {
+        return JfrSupport.isAvailable() ? new ReallocationCycleEvent(Recorded.start()) : DISABLED;
+    }
+
+    public void setInputSizes(int lineItems, int hosts) {
+        if (recorded != null) {
+            recorded.lineItems = lineItems;
+            recorded.hosts = hosts;
+        }
+    }
+
+    public void setComputed(int plans, long computeTime) {
+        if (recorded != null) {
+            recorded.plans = plans;
+            recorded.computeTime = computeTime;
+        }
+    }
+
+    public void setWriteTime(long writeTime) {
+        if (recorded != null) {
+            recorded.writeTime = writeTime;
+        }
+    }
+
+    /**
+     * Ends timing the cycle and commits the event if recording is on.
+     *
+     * @param succeeded whether the cycle succeeded
+     */
+    public void end(boolean succeeded) {
+        if (recorded != null) {
+            recorded.end(succeeded);
+        }
+    }
+
+    @Name("org.prebid.pg.ReallocationCycle")
+    @Label("Reallocation Cycle")
+    @Description("A cycle of host-based token reallocation")
+    @Category({"General Planner", "Reallocation"})
+    @StackTrace(false)
+    static class Recorded extends Event {
+
+        @Label("Line Items")
+        private int lineItems;
+
+        @Label("Hosts")
+        private int hosts;
+
+        @Label("Plans")
+        private int plans;
+
+        @Label("Compute Time")
+        @Timespan(Timespan.MILLISECONDS)
+        private long computeTime;
+
+        @Label("Write Time")
+        @Timespan(Timespan.MILLISECONDS)
+        private long writeTime;
+
+        @Label("Succeeded")
+        private boolean succeeded;
+
+        static Recorded start() {
+            final Recorded event = new Recorded();
+            event.begin();
+            return event;
+        }
+
+        void end(boolean succeeded) {
+            end();
+            if (shouldCommit()) {
+                this.succeeded = succeeded;
+                commit();
+            }
+        }
+    }
+
+}
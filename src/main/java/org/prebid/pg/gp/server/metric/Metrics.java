@@ -1,9 +1,11 @@
 package org.prebid.pg.gp.server.metric;
 
 import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
 
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * A client to provide metrics service for General Planner.
@@ -27,6 +29,18 @@ public class Metrics {
     public void updateTimer(String metricName, long millis) {
         metricRegistry.timer(metricName).update(millis, TimeUnit.MILLISECONDS);
     }
+
+    /**
+     * Registers a gauge reading its current value from the given {@code supplier}.
+     * Registering the same name again keeps the first gauge.
+     *
+     * @param metricName name of the gauge
+     * @param supplier supplier of the current value
+     */
+    public void registerGauge(String metricName, Supplier<? extends Number> supplier) {
+        final Gauge<Number> gauge = supplier::get;
+        metricRegistry.gauge(metricName, () -> gauge);
+    }
 }
 
 class ResettingCounter extends Counter {
@@ -0,0 +1,123 @@
+package org.prebid.pg.gp.server.metric;
+
+import io.vertx.core.VertxOptions;
+import io.vertx.core.spi.VertxMetricsFactory;
+import io.vertx.core.spi.metrics.PoolMetrics;
+import io.vertx.core.spi.metrics.VertxMetrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A Vert.x metrics factory recording queue wait and execute time of Vert.x worker pools,
+ * including the pool backing {@code JDBCClient} calls.
+ * <p>
+ * Only pool metrics are provided, all other Vert.x metrics stay disabled.
+ */
+public class PoolMetricsFactory implements VertxMetricsFactory {
+
+    private final Metrics metrics;
+
+    private final ConcurrentMap<String, PoolStats> pools = new ConcurrentHashMap<>();
+
+    public PoolMetricsFactory(Metrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    @Override
+    public VertxMetrics metrics(VertxOptions options) {
+        return new VertxMetrics() {
+            @Override
+            public PoolMetrics<?> createPoolMetrics(String poolType, String poolName, int maxPoolSize) {
+                return pools.computeIfAbsent(poolName, name -> new PoolStats(name, maxPoolSize));
+            }
+
+            @Override
+            public boolean isEnabled() {
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Gets a snapshot of the current usage of all worker pools.
+     *
+     * @return usage by pool name
+     */
+    public Map<String, Map<String, Object>> snapshot() {
+        final Map<String, Map<String, Object>> snapshot = new LinkedHashMap<>();
+        for (PoolStats pool : pools.values()) {
+            final Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("max-size", pool.maxPoolSize);
+            stats.put("queued", pool.queued.get());
+            stats.put("in-use", pool.inUse.get());
+            stats.put("rejected", pool.rejected.get());
+            snapshot.put(pool.name, stats);
+        }
+        return snapshot;
+    }
+
+    private static String metricName(String poolName, String tag) {
+        // graphite splits metric names on dots
+        return String.format("worker-pool.%s.%s", poolName.replace('.', '-'), tag);
+    }
+
+    private class PoolStats implements PoolMetrics<Long> {
+
+        private final String name;
+
+        private final int maxPoolSize;
+
+        private final AtomicInteger queued = new AtomicInteger();
+
+        private final AtomicInteger inUse = new AtomicInteger();
+
+        private final AtomicInteger rejected = new AtomicInteger();
+
+        PoolStats(String name, int maxPoolSize) {
+            this.name = name;
+            this.maxPoolSize = maxPoolSize;
+            metrics.registerGauge(metricName(name, "queued"), queued::get);
+            metrics.registerGauge(metricName(name, "in-use"), inUse::get);
+        }
+
+        @Override
+        public Long submitted() {
+            queued.incrementAndGet();
+            return System.nanoTime();
+        }
+
+        @Override
+        public void rejected(Long submittedAt) {
+            queued.decrementAndGet();
+            rejected.incrementAndGet();
+            metrics.incCounter(metricName(name, "rejected"));
+        }
+
+        @Override
+        public Long begin(Long submittedAt) {
+            final long now = System.nanoTime();
+            queued.decrementAndGet();
+            inUse.incrementAndGet();
+            if (submittedAt != null) {
+                metrics.updateTimer(metricName(name, "queue-time"), TimeUnit.NANOSECONDS.toMillis(now - submittedAt));
+            }
+            return now;
+        }
+
+        @Override
+        public void end(Long begunAt, boolean succeeded) {
+            inUse.decrementAndGet();
+            if (begunAt != null) {
+                metrics.updateTimer(metricName(name, "execute-time"),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begunAt));
+            }
+        }
+    }
+
+}
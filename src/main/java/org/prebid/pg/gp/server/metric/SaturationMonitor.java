@@ -0,0 +1,264 @@
+package org.prebid.pg.gp.server.metric;
+
+import com.mchange.v2.c3p0.C3P0Registry;
+import com.mchange.v2.c3p0.PooledDataSource;
+import io.netty.util.concurrent.EventExecutor;
+import io.vertx.circuitbreaker.CircuitBreakerState;
+import io.vertx.core.Vertx;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.prebid.pg.gp.server.breaker.PlannerCircuitBreaker;
+import org.prebid.pg.gp.server.spring.config.app.SaturationMonitorConfiguration;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A monitor telling thread starvation apart from database slowness.
+ * <p>
+ * It probes the lag of every event loop, and exposes as metrics and as a snapshot the usage of the c3p0
+ * connection pools, in total and per named pool, and the state transitions of circuit breakers.
+ * Worker pool usage is recorded by {@link PoolMetricsFactory}.
+ */
+public class SaturationMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(SaturationMonitor.class);
+
+    private final Metrics metrics;
+
+    private final PoolMetricsFactory poolMetricsFactory;
+
+    private final List<PlannerCircuitBreaker> breakers;
+
+    private final List<String> dbPoolNames;
+
+    private final List<EventLoopProbe> probes = new ArrayList<>();
+
+    private final ScheduledExecutorService scheduler;
+
+    public SaturationMonitor(
+            Vertx vertx,
+            SaturationMonitorConfiguration config,
+            Metrics metrics,
+            PoolMetricsFactory poolMetricsFactory,
+            Collection<PlannerCircuitBreaker> breakers,
+            Collection<String> dbPoolNames
+    ) {
+        this.metrics = Objects.requireNonNull(metrics);
+        this.poolMetricsFactory = Objects.requireNonNull(poolMetricsFactory);
+        this.breakers = new ArrayList<>(breakers);
+        this.dbPoolNames = new ArrayList<>(dbPoolNames);
+
+        registerDbPoolGauges();
+        registerBreakerGauges();
+
+        if (!config.getEnabled()) {
+            scheduler = null;
+            return;
+        }
+        int index = 0;
+        for (EventExecutor eventLoop : vertx.nettyEventLoopGroup()) {
+            probes.add(new EventLoopProbe(index++, eventLoop));
+        }
+        // probes are scheduled off the event loops, so a stalled event loop cannot delay its own probe
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "gp-saturation-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final long interval = config.getEventLoopProbeIntervalMs();
+        scheduler.scheduleAtFixedRate(this::probeEventLoops, interval, interval, TimeUnit.MILLISECONDS);
+        logger.info("Probing {0} event loops every {1}ms", probes.size(), interval);
+    }
+
+    private void probeEventLoops() {
+        for (EventLoopProbe probe : probes) {
+            probe.submit();
+        }
+    }
+
+    private void registerDbPoolGauges() {
+        metrics.registerGauge("db-pool.busy",
+                () -> sumOverDataSources(PooledDataSource::getNumBusyConnectionsDefaultUser));
+        metrics.registerGauge("db-pool.idle",
+                () -> sumOverDataSources(PooledDataSource::getNumIdleConnectionsDefaultUser));
+        metrics.registerGauge("db-pool.waiting",
+                () -> sumOverDataSources(PooledDataSource::getNumThreadsAwaitingCheckoutDefaultUser));
+        for (String poolName : dbPoolNames) {
+            metrics.registerGauge(dbPoolMetricName(poolName, "busy"),
+                    () -> ofDataSource(poolName, PooledDataSource::getNumBusyConnectionsDefaultUser));
+            metrics.registerGauge(dbPoolMetricName(poolName, "idle"),
+                    () -> ofDataSource(poolName, PooledDataSource::getNumIdleConnectionsDefaultUser));
+            metrics.registerGauge(dbPoolMetricName(poolName, "waiting"),
+                    () -> ofDataSource(poolName, PooledDataSource::getNumThreadsAwaitingCheckoutDefaultUser));
+        }
+    }
+
+    private void registerBreakerGauges() {
+        for (PlannerCircuitBreaker breaker : breakers) {
+            final String name = breaker.getBreaker().name();
+            metrics.registerGauge(breakerMetricName(name, "state"), () -> breaker.getBreaker().state().ordinal());
+            for (CircuitBreakerState state : CircuitBreakerState.values()) {
+                metrics.registerGauge(breakerMetricName(name, "transitions." + stateName(state)),
+                        () -> breaker.getTransitions(state));
+            }
+        }
+    }
+
+    private static int sumOverDataSources(DataSourceStat stat) {
+        int sum = 0;
+        for (Object dataSource : C3P0Registry.getPooledDataSources()) {
+            try {
+                sum += stat.applyAsInt((PooledDataSource) dataSource);
+            } catch (SQLException e) {
+                logger.warn("Cannot read c3p0 pool statistics::{0}", e.getMessage());
+            }
+        }
+        return sum;
+    }
+
+    private static int ofDataSource(String poolName, DataSourceStat stat) {
+        // pools are created on first use
+        final PooledDataSource dataSource = C3P0Registry.pooledDataSourceByName(poolName);
+        if (dataSource == null) {
+            return 0;
+        }
+        try {
+            return stat.applyAsInt(dataSource);
+        } catch (SQLException e) {
+            logger.warn("Cannot read c3p0 pool statistics of {0}::{1}", poolName, e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Gets a snapshot of event loop lags, worker pool, database pool and circuit breaker states.
+     *
+     * @return the snapshot
+     */
+    public Map<String, Object> snapshot() {
+        final Map<String, Object> snapshot = new LinkedHashMap<>();
+
+        final List<Map<String, Object>> eventLoops = new ArrayList<>();
+        for (EventLoopProbe probe : probes) {
+            final Map<String, Object> eventLoop = new LinkedHashMap<>();
+            eventLoop.put("index", probe.index);
+            eventLoop.put("last-lag-ms", probe.lastLagMs);
+            eventLoop.put("max-lag-ms", probe.maxLagMs.get());
+            eventLoop.put("pending-ms", probe.pendingMs());
+            eventLoops.add(eventLoop);
+        }
+        snapshot.put("event-loops", eventLoops);
+        snapshot.put("worker-pools", poolMetricsFactory.snapshot());
+
+        final Map<String, Object> dbPool = new LinkedHashMap<>();
+        dbPool.put("busy", sumOverDataSources(PooledDataSource::getNumBusyConnectionsDefaultUser));
+        dbPool.put("idle", sumOverDataSources(PooledDataSource::getNumIdleConnectionsDefaultUser));
+        dbPool.put("waiting", sumOverDataSources(PooledDataSource::getNumThreadsAwaitingCheckoutDefaultUser));
+        snapshot.put("db-pool", dbPool);
+
+        final Map<String, Object> dbPools = new LinkedHashMap<>();
+        for (String poolName : dbPoolNames) {
+            final Map<String, Object> pool = new LinkedHashMap<>();
+            pool.put("busy", ofDataSource(poolName, PooledDataSource::getNumBusyConnectionsDefaultUser));
+            pool.put("idle", ofDataSource(poolName, PooledDataSource::getNumIdleConnectionsDefaultUser));
+            pool.put("waiting", ofDataSource(poolName, PooledDataSource::getNumThreadsAwaitingCheckoutDefaultUser));
+            dbPools.put(poolName, pool);
+        }
+        snapshot.put("db-pools", dbPools);
+
+        final Map<String, Object> circuitBreakers = new LinkedHashMap<>();
+        for (PlannerCircuitBreaker breaker : breakers) {
+            final Map<String, Object> state = new LinkedHashMap<>();
+            state.put("state", breaker.getBreaker().state().name());
+            for (CircuitBreakerState transition : CircuitBreakerState.values()) {
+                state.put("transitions-" + stateName(transition), breaker.getTransitions(transition));
+            }
+            state.put("last-transition-at",
+                    breaker.getLastTransitionAt() == null ? null : breaker.getLastTransitionAt().toString());
+            circuitBreakers.put(breaker.getBreaker().name(), state);
+        }
+        snapshot.put("circuit-breakers", circuitBreakers);
+        return snapshot;
+    }
+
+    /**
+     * Stops probing event loops.
+     */
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private static String stateName(CircuitBreakerState state) {
+        return state.name().toLowerCase().replace('_', '-');
+    }
+
+    private static String dbPoolMetricName(String poolName, String tag) {
+        return String.format("db-pool.%s.%s", poolName, tag);
+    }
+
+    private static String breakerMetricName(String name, String tag) {
+        return String.format("circuit-breaker.%s.%s", name, tag);
+    }
+
+    @FunctionalInterface
+    private interface DataSourceStat {
+        int applyAsInt(PooledDataSource dataSource) throws SQLException;
+    }
+
+    private class EventLoopProbe {
+
+        private final int index;
+
+        private final EventExecutor eventLoop;
+
+        private final AtomicLong pendingSince = new AtomicLong();
+
+        private final AtomicLong maxLagMs = new AtomicLong();
+
+        private volatile long lastLagMs;
+
+        EventLoopProbe(int index, EventExecutor eventLoop) {
+            this.index = index;
+            this.eventLoop = eventLoop;
+        }
+
+        void submit() {
+            final long submittedAt = System.nanoTime();
+            // a probe still pending means the event loop is stalled, its lag shows up as pending time
+            if (!pendingSince.compareAndSet(0, submittedAt)) {
+                return;
+            }
+            try {
+                eventLoop.execute(() -> {
+                    final long lag = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - submittedAt);
+                    pendingSince.set(0);
+                    lastLagMs = lag;
+                    maxLagMs.accumulateAndGet(lag, Math::max);
+                    metrics.updateTimer("event-loop.lag", lag);
+                });
+            } catch (RejectedExecutionException e) {
+                // the event loop is shutting down
+                pendingSince.set(0);
+            }
+        }
+
+        long pendingMs() {
+            final long since = pendingSince.get();
+            return since == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - since);
+        }
+    }
+
+}
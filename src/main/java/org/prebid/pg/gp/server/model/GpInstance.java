@@ -0,0 +1,18 @@
+package org.prebid.pg.gp.server.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * A model to represent a live general planner instance of the cluster.
+ */
+
+@Value
+@Builder
+public class GpInstance {
+
+    private String instanceId;
+
+    private String baseUrl;
+
+}
@@ -0,0 +1,29 @@
+package org.prebid.pg.gp.server.model;
+
+import lombok.Builder;
+import lombok.Data;
+import lombok.ToString;
+
+import java.time.Instant;
+
+/**
+ * An entity to represent the class 1 tokens of a plan of a line item, as first seen in the summary window the
+ * plan starts in.
+ */
+
+@Data
+@Builder
+@ToString
+public class LineItemPlanTokens {
+
+    private String lineItemId;
+
+    private String bidderCode;
+
+    private String extLineItemId;
+
+    private Instant planStartTimestamp;
+
+    private int tokens;
+
+}
@@ -0,0 +1,29 @@
+package org.prebid.pg.gp.server.model;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.Builder;
+import lombok.Data;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * A model to represent the line item delivery plans of one PBS server in a bulk plan response.
+ */
+
+@Data
+@Builder
+@ToString(exclude = {"lineItems"})
+public class PbsHostPlan {
+
+    private String vendor;
+
+    private String region;
+
+    private String instanceId;
+
+    private String version;
+
+    private List<ObjectNode> lineItems;
+
+}
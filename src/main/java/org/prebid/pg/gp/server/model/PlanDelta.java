@@ -0,0 +1,38 @@
+package org.prebid.pg.gp.server.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.Builder;
+import lombok.Data;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * A model to represent the line item delivery plans of a PBS server relative to a plan version it already has.
+ * <p>
+ * Full responses carry all line items in {@code lineItems}, delta responses carry {@code added} and
+ * {@code changed} line items to upsert and the ids of {@code removed} line items.
+ */
+
+@Data
+@Builder
+@ToString
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PlanDelta {
+
+    private String version;
+
+    private String baseVersion;
+
+    private boolean full;
+
+    private List<ObjectNode> lineItems;
+
+    private List<ObjectNode> added;
+
+    private List<ObjectNode> changed;
+
+    private List<String> removed;
+
+}
@@ -19,5 +19,9 @@ public class PlanRequest {
 
     private String instanceId;
 
+    public String getUniqueInstanceId() {
+        return String.format("%s^^%s^^%s", vendor, region, instanceId);
+    }
+
 }
 
@@ -34,6 +34,9 @@ public class Registration {
 
     private ObjectNode status;
 
+    // opt-in to get the host's plan in the registration response
+    private Boolean includePlans;
+
     public List<String> validate() {
         List<String> missingFields = new ArrayList<>();
 
@@ -0,0 +1,22 @@
+package org.prebid.pg.gp.server.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Data;
+import lombok.ToString;
+
+/**
+ * A model to represent the response to a PBS registration request that opted in to include the host's plan.
+ */
+
+@Data
+@Builder
+@ToString
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class RegistrationResponse {
+
+    private AdminEvent.Directive directive;
+
+    private PbsHostPlan plan;
+
+}
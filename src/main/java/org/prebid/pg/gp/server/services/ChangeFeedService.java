@@ -0,0 +1,191 @@
+package org.prebid.pg.gp.server.services;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.prebid.pg.gp.server.jdbc.ChangeVersionClient;
+import org.prebid.pg.gp.server.jdbc.CircuitBreakerSecuredPlannerDataAccessClient;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.spring.config.app.ChangeFeedConfiguration;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A service following the line items and reallocated plans written by other general planner instances.
+ * <p>
+ * It polls the change versions, one tiny query, and on a change made elsewhere advances the
+ * {@link PlanVersionTracker}, so cached versions are invalidated and parked plan requests wake up on every
+ * instance, not only on the one that wrote. Changes made by this instance are skipped, as they were already
+ * tracked when written.
+ * <p>
+ * Whether polling or not, the change versions are read once at start-up to seed the {@link PlanVersionTracker}.
+ */
+public class ChangeFeedService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChangeFeedService.class);
+
+    private final Vertx vertx;
+
+    private final ChangeFeedConfiguration config;
+
+    private final CircuitBreakerSecuredPlannerDataAccessClient dataAccessClient;
+
+    private final ChangeVersionClient changeVersionClient;
+
+    private final PlanVersionTracker planVersionTracker;
+
+    private final LineItemCatalogHistory catalogHistory;
+
+    private final Metrics metrics;
+
+    private Long lineItemsVersion;
+
+    private Long plansVersion;
+
+    private Instant plansCheckedAt;
+
+    private boolean polling;
+
+    private long timerId = -1;
+
+    public ChangeFeedService(
+            Vertx vertx,
+            ChangeFeedConfiguration config,
+            CircuitBreakerSecuredPlannerDataAccessClient dataAccessClient,
+            ChangeVersionClient changeVersionClient,
+            PlanVersionTracker planVersionTracker,
+            LineItemCatalogHistory catalogHistory,
+            Metrics metrics
+    ) {
+        this.vertx = Objects.requireNonNull(vertx);
+        this.config = Objects.requireNonNull(config);
+        this.dataAccessClient = Objects.requireNonNull(dataAccessClient);
+        this.changeVersionClient = Objects.requireNonNull(changeVersionClient);
+        this.planVersionTracker = Objects.requireNonNull(planVersionTracker);
+        this.catalogHistory = Objects.requireNonNull(catalogHistory);
+        this.metrics = Objects.requireNonNull(metrics);
+        logger.info(config);
+    }
+
+    /**
+     * Starts polling the change versions.
+     */
+    public void initialize() {
+        if (!config.getEnabled()) {
+            seed();
+            return;
+        }
+        changeVersionClient.trackLocalVersions();
+        poll();
+        timerId = vertx.setPeriodic(config.getPollIntervalSec() * 1000L, id -> poll());
+    }
+
+    public void close() {
+        if (timerId != -1) {
+            vertx.cancelTimer(timerId);
+            timerId = -1;
+        }
+    }
+
+    void poll() {
+        if (polling) {
+            return;
+        }
+        polling = true;
+        final Instant pollStartedAt = Instant.now();
+        dataAccessClient.getChangeVersions()
+                .compose(versions -> apply(versions, pollStartedAt))
+                .setHandler(ar -> {
+                    polling = false;
+                    if (ar.failed()) {
+                        // versions not consumed are picked up by the next poll
+                        metrics.incCounter(metricName("poll-failed"));
+                    }
+                });
+    }
+
+    /**
+     * Seeds the plan versions, retrying until the change versions are read.
+     */
+    private void seed() {
+        dataAccessClient.getChangeVersions().setHandler(ar -> {
+            if (ar.succeeded()) {
+                planVersionTracker.seed(ar.result().getOrDefault(ChangeVersionClient.LINE_ITEMS, 0L),
+                        ar.result().getOrDefault(ChangeVersionClient.REALLOCATED_PLANS, 0L));
+                timerId = -1;
+                return;
+            }
+            metrics.incCounter(metricName("seed-failed"));
+            timerId = vertx.setTimer(config.getPollIntervalSec() * 1000L, id -> seed());
+        });
+    }
+
+    private Future<Void> apply(Map<String, Long> versions, Instant pollStartedAt) {
+        final long currentLineItemsVersion = versions.getOrDefault(ChangeVersionClient.LINE_ITEMS, 0L);
+        final long currentPlansVersion = versions.getOrDefault(ChangeVersionClient.REALLOCATED_PLANS, 0L);
+        if (lineItemsVersion == null) {
+            // the first poll only sets the baseline and seeds the tracker
+            planVersionTracker.seed(currentLineItemsVersion, currentPlansVersion);
+            consumeLocalChanges(ChangeVersionClient.LINE_ITEMS, 0L, currentLineItemsVersion);
+            consumeLocalChanges(ChangeVersionClient.REALLOCATED_PLANS, 0L, currentPlansVersion);
+            lineItemsVersion = currentLineItemsVersion;
+            plansVersion = currentPlansVersion;
+            plansCheckedAt = pollStartedAt;
+            return Future.succeededFuture();
+        }
+
+        if (currentLineItemsVersion != lineItemsVersion) {
+            final boolean changedElsewhere =
+                    consumeLocalChanges(ChangeVersionClient.LINE_ITEMS, lineItemsVersion, currentLineItemsVersion);
+            lineItemsVersion = currentLineItemsVersion;
+            if (changedElsewhere) {
+                logger.debug("Line items changed elsewhere, version {0}", currentLineItemsVersion);
+                metrics.incCounter(metricName("line-items-changed"));
+                // line items read at the superseded version may already be the ones written elsewhere
+                catalogHistory.forget(planVersionTracker.getCatalogVersion());
+                planVersionTracker.catalogChanged(currentLineItemsVersion);
+            }
+        }
+
+        if (currentPlansVersion == plansVersion) {
+            return Future.succeededFuture();
+        }
+        if (!consumeLocalChanges(ChangeVersionClient.REALLOCATED_PLANS, plansVersion, currentPlansVersion)) {
+            plansVersion = currentPlansVersion;
+            plansCheckedAt = pollStartedAt;
+            return Future.succeededFuture();
+        }
+        final Instant updatedSince = plansCheckedAt.minusSeconds(config.getPlanLookbackSec());
+        return dataAccessClient.getLatestReallocatedPlans(updatedSince)
+                .map(reallocatedPlans -> {
+                    logger.debug("{0} reallocated plans changed elsewhere, version {1}",
+                            reallocatedPlans.size(), currentPlansVersion);
+                    metrics.incCounter(metricName("plans-changed"));
+                    planVersionTracker.plansChanged(reallocatedPlans, currentPlansVersion);
+                    plansVersion = currentPlansVersion;
+                    plansCheckedAt = pollStartedAt;
+                    return null;
+                });
+    }
+
+    /**
+     * Forgets the versions bumped by this instance up to {@code current}.
+     *
+     * @return true if any version after {@code known} was bumped by another instance
+     */
+    private boolean consumeLocalChanges(String entity, long known, long current) {
+        if (current <= known) {
+            // versions went back, e.g. the table was recreated
+            return current != known;
+        }
+        return changeVersionClient.consumeLocalVersions(entity, known, current) < current - known;
+    }
+
+    private String metricName(String tag) {
+        return String.format("change-feed.%s", tag);
+    }
+
+}
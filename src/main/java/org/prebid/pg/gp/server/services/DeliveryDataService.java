@@ -13,6 +13,7 @@ import org.prebid.pg.gp.server.exception.GeneralPlannerException;
 import org.prebid.pg.gp.server.http.AlertProxyHttpClient;
 import org.prebid.pg.gp.server.http.CircuitBreakerSecuredDeliveryDataHttpClient;
 import org.prebid.pg.gp.server.jdbc.CircuitBreakerSecuredPlannerDataAccessClient;
+import org.prebid.pg.gp.server.jfr.DeliveryDataFetchEvent;
 import org.prebid.pg.gp.server.metric.Metrics;
 import org.prebid.pg.gp.server.model.AdminTracer;
 import org.prebid.pg.gp.server.model.AlertPriority;
@@ -68,6 +69,8 @@ public class DeliveryDataService {
 
     private final StatsCache statsCache;
 
+    private final LeaderElection leaderElection;
+
     private final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
 
     private final int pbsMaxIdlePeriodInSeconds;
@@ -84,7 +87,8 @@ public class DeliveryDataService {
             AdminTracer adminTracer,
             Shutdown shutdown,
             AlertProxyHttpClient alertHttpClient,
-            StatsCache statsCache
+            StatsCache statsCache,
+            LeaderElection leaderElection
     ) {
         this.vertx = Objects.requireNonNull(vertx);
         this.tracer = Objects.requireNonNull(adminTracer);
@@ -96,6 +100,7 @@ public class DeliveryDataService {
         this.alertHttpClient = alertHttpClient;
         this.shutdown = shutdown;
         this.statsCache = Objects.requireNonNull(statsCache);
+        this.leaderElection = Objects.requireNonNull(leaderElection);
 
         logger.info(deliveryDataConfig.toString());
         logger.info(tracer.toString());
@@ -106,13 +111,23 @@ public class DeliveryDataService {
             logger.info("algorithm_test, disabling periodic delivery data retrieval service");
             return;
         }
+        // a newly elected leader needs fresh stats before its first reallocation
+        leaderElection.onElected(fencingToken -> refreshDeliveryData(""));
         vertx.setTimer(deliveryDataConfig.getInitialDelaySec() * 1000L, id -> {
-            refreshDeliveryData("");
+            refreshDeliveryDataIfLeader();
             vertx.setPeriodic(deliveryDataConfig.getRefreshPeriodSec() * 1000L,
-                    timerId -> refreshDeliveryData(""));
+                    timerId -> refreshDeliveryDataIfLeader());
         });
     }
 
+    private void refreshDeliveryDataIfLeader() {
+        if (!leaderElection.isLeader()) {
+            logger.debug("DeliveryDataService::Not the leader, skipping delivery stats refresh");
+            return;
+        }
+        refreshDeliveryData("");
+    }
+
     protected Future<Void> refreshDeliveryData(String simTime) {
         if (shutdown.getInitiating() == Boolean.TRUE) {
             logger.info("refreshDeliveryData::Server shutdown has been initiated");
@@ -174,10 +189,24 @@ public class DeliveryDataService {
                 .append("?vendor=").append(vendorRegion.vendor)
                 .append("&region=").append(vendorRegion.region)
                 .toString();
+        final DeliveryDataFetchEvent fetchEvent =
+                DeliveryDataFetchEvent.start(vendorRegion.vendor, vendorRegion.region);
         return deliveryDataHttpClient
                 .request(HttpMethod.GET, url, deliveryDataConfig.getUsername(),
                         deliveryDataConfig.getPassword(), updateSince)
-                .compose(httpResponseContainer -> processHttpResponse(httpResponseContainer, simTime));
+                .compose(httpResponseContainer -> {
+                    final String body = httpResponseContainer.getBody();
+                    fetchEvent.setResponseSize(body == null ? 0 : body.length());
+                    return processHttpResponse(httpResponseContainer, simTime);
+                })
+                .map(stats -> {
+                    fetchEvent.end(stats == null ? 0 : stats.size(), true);
+                    return stats;
+                })
+                .recover(exception -> {
+                    fetchEvent.end(0, false);
+                    return Future.failedFuture(exception);
+                });
     }
 
     private Future<List<DeliveryTokenSpendSummary>> processHttpResponse(
@@ -0,0 +1,234 @@
+package org.prebid.pg.gp.server.services;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.javatuples.Pair;
+import org.prebid.pg.gp.server.jdbc.HistoryRetentionClient;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.model.Shutdown;
+import org.prebid.pg.gp.server.spring.config.app.HistoryRetentionConfiguration;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A service to purge the rows of the history tables older than their time to live.
+ * <p>
+ * Each run deletes the expired rows of one table after the other in chunks of consecutive ids, pausing between
+ * chunks so the purge neither holds locks for long nor builds up replication lag, and stops after the maximum
+ * number of chunks, leaving the rest to the next run. Only the leader purges.
+ */
+public class HistoryRetentionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistoryRetentionService.class);
+
+    private final Vertx vertx;
+
+    private final HistoryRetentionConfiguration config;
+
+    private final HistoryRetentionClient retentionClient;
+
+    private final LeaderElection leaderElection;
+
+    private final Metrics metrics;
+
+    private final Shutdown shutdown;
+
+    // estimated rows left to purge by table, from the id range still expired
+    private final Map<String, Long> backlogs = new ConcurrentHashMap<>();
+
+    // rows purged per second by table in the last run
+    private final Map<String, Long> throughputs = new ConcurrentHashMap<>();
+
+    private volatile boolean running;
+
+    private long timerId = -1;
+
+    public HistoryRetentionService(
+            Vertx vertx,
+            HistoryRetentionConfiguration config,
+            HistoryRetentionClient retentionClient,
+            LeaderElection leaderElection,
+            Metrics metrics,
+            Shutdown shutdown
+    ) {
+        this.vertx = Objects.requireNonNull(vertx);
+        this.config = Objects.requireNonNull(config);
+        this.retentionClient = Objects.requireNonNull(retentionClient);
+        this.leaderElection = Objects.requireNonNull(leaderElection);
+        this.metrics = Objects.requireNonNull(metrics);
+        this.shutdown = Objects.requireNonNull(shutdown);
+
+        for (Pair<String, Integer> table : tables()) {
+            metrics.registerGauge(metricName(table.getValue0(), "backlog"),
+                    () -> backlogs.getOrDefault(table.getValue0(), 0L));
+            metrics.registerGauge(metricName(table.getValue0(), "rows-per-sec"),
+                    () -> throughputs.getOrDefault(table.getValue0(), 0L));
+        }
+        logger.info(config);
+    }
+
+    /**
+     * Starts purging periodically.
+     */
+    public void initialize() {
+        if (!config.getEnabled()) {
+            logger.info("History retention is disabled, history tables are not purged");
+            return;
+        }
+        if (tables().stream().allMatch(table -> table.getValue1() <= 0)) {
+            logger.warn("History retention is enabled without any time to live, history tables are not purged");
+            return;
+        }
+        timerId = vertx.setTimer(config.getInitialDelaySec() * 1000L, id -> {
+            purgeIfLeader();
+            timerId = vertx.setPeriodic(config.getRunPeriodSec() * 1000L, periodicId -> purgeIfLeader());
+        });
+    }
+
+    public void close() {
+        if (timerId != -1) {
+            vertx.cancelTimer(timerId);
+            timerId = -1;
+        }
+    }
+
+    public long getBacklog(String table) {
+        return backlogs.getOrDefault(table, 0L);
+    }
+
+    private void purgeIfLeader() {
+        if (!leaderElection.isLeader()) {
+            logger.debug("HistoryRetentionService::Not the leader, skipping purge");
+            return;
+        }
+        purge();
+    }
+
+    /**
+     * Purges the expired rows of each history table with a time to live, up to the maximum number of chunks.
+     *
+     * @return a future completed when the run is over
+     */
+    Future<Void> purge() {
+        if (running) {
+            return Future.succeededFuture();
+        }
+        running = true;
+        final long start = System.currentTimeMillis();
+        Future<Integer> chunksLeft = Future.succeededFuture(config.getMaxChunksPerRun());
+        for (Pair<String, Integer> table : tables()) {
+            if (table.getValue1() > 0) {
+                chunksLeft = chunksLeft.compose(chunks -> purgeTable(
+                        table.getValue0(), (int) TimeUnit.DAYS.toSeconds(table.getValue1()), chunks));
+            }
+        }
+        return chunksLeft
+                .map(chunks -> {
+                    running = false;
+                    metrics.updateTimer(metricName("run-time"), System.currentTimeMillis() - start);
+                    return (Void) null;
+                })
+                .recover(ex -> {
+                    running = false;
+                    logger.error("History purge failed::{0}", ex.getMessage());
+                    metrics.incCounter(metricName("run-exc"));
+                    return Future.failedFuture(ex);
+                });
+    }
+
+    private Future<Integer> purgeTable(String table, int ttlSec, int chunksLeft) {
+        if (chunksLeft == 0) {
+            return Future.succeededFuture(0);
+        }
+        return retentionClient.findExpiredRange(table, ttlSec).compose(range -> {
+            backlogs.put(table, range.getValue1() - range.getValue0());
+            final Purge purge = new Purge(table, ttlSec, range.getValue1(), chunksLeft);
+            final Future<Purge> future = Future.future();
+            purgeChunks(purge, range.getValue0(), future);
+            return future.map(done -> {
+                final long elapsedMs = Math.max(1, System.currentTimeMillis() - done.start);
+                final long rowsPerSec = done.rows * 1000 / elapsedMs;
+                throughputs.put(table, rowsPerSec);
+                if (done.chunks > 0) {
+                    logger.info("Purged {0} rows of {1} in {2} chunks, {3} rows/sec, backlog {4} rows",
+                            done.rows, table, done.chunks, rowsPerSec, getBacklog(table));
+                }
+                return chunksLeft - done.chunks;
+            });
+        });
+    }
+
+    private void purgeChunks(Purge purge, long fromId, Future<Purge> future) {
+        if (fromId >= purge.toId || purge.chunks == purge.maxChunks || shutdown.getInitiating() == Boolean.TRUE
+                || !leaderElection.isLeader()) {
+            future.complete(purge);
+            return;
+        }
+        final long chunkEnd = Math.min(fromId + config.getChunkSize(), purge.toId);
+        final long start = System.currentTimeMillis();
+        retentionClient.purge(purge.table, fromId, chunkEnd, purge.ttlSec).setHandler(ar -> {
+            if (ar.failed()) {
+                future.fail(ar.cause());
+                return;
+            }
+            metrics.updateTimer(metricName(purge.table, "chunk-time"), System.currentTimeMillis() - start);
+            metrics.incCounter(metricName(purge.table, "purged"), ar.result());
+            purge.chunks++;
+            purge.rows += ar.result();
+            backlogs.put(purge.table, purge.toId - chunkEnd);
+            // the pause lets replicas apply the chunk and other writers take the locks
+            vertx.setTimer(Math.max(1, config.getChunkPauseMs()), id -> purgeChunks(purge, chunkEnd, future));
+        });
+    }
+
+    private List<Pair<String, Integer>> tables() {
+        return Arrays.asList(
+                Pair.with(HistoryRetentionClient.LINE_ITEMS_HISTORY, config.getLineItemsHistoryTtlDays()),
+                Pair.with(HistoryRetentionClient.REALLOCATED_PLANS_HISTORY, config.getReallocatedPlansHistoryTtlDays()),
+                Pair.with(HistoryRetentionClient.APP_REGISTRATION_HISTORY, config.getAppRegistrationHistoryTtlDays()));
+    }
+
+    private String metricName(String tag) {
+        return String.format("history-retention.%s", tag);
+    }
+
+    private String metricName(String table, String tag) {
+        return String.format("history-retention.%s.%s", table, tag);
+    }
+
+    /**
+     * Progress of purging one table in a run.
+     */
+    private static class Purge {
+
+        private final String table;
+
+        private final int ttlSec;
+
+        private final long toId;
+
+        private final int maxChunks;
+
+        private final long start = System.currentTimeMillis();
+
+        private int chunks;
+
+        private long rows;
+
+        Purge(String table, int ttlSec, long toId, int maxChunks) {
+            this.table = table;
+            this.ttlSec = ttlSec;
+            this.toId = toId;
+            this.maxChunks = maxChunks;
+        }
+
+    }
+
+}
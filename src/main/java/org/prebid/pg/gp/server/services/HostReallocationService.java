@@ -5,13 +5,17 @@ import io.vertx.core.Vertx;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import org.javatuples.Pair;
+import org.javatuples.Triplet;
+import org.prebid.pg.gp.server.breaker.ComputeExecutor;
 import org.prebid.pg.gp.server.jdbc.CircuitBreakerSecuredPlannerDataAccessClient;
+import org.prebid.pg.gp.server.jfr.ReallocationCycleEvent;
 import org.prebid.pg.gp.server.metric.Metrics;
 import org.prebid.pg.gp.server.model.DeliveryTokenSpendSummary;
 import org.prebid.pg.gp.server.model.LineItem;
 import org.prebid.pg.gp.server.model.PbsHost;
 import org.prebid.pg.gp.server.model.ReallocatedPlan;
 import org.prebid.pg.gp.server.model.Shutdown;
+import org.prebid.pg.gp.server.model.SystemState;
 import org.prebid.pg.gp.server.spring.config.app.HostReallocationConfiguration;
 import org.prebid.pg.gp.server.util.Constants;
 
@@ -26,6 +30,8 @@ import java.util.Objects;
  */
 public class HostReallocationService {
 
+    public static final String REALLOCATION_FINISH_TS = "host_reallocation_finish_ts";
+
     private static final Logger logger = LoggerFactory.getLogger(HostReallocationService.class);
 
     private final Vertx vertx;
@@ -44,6 +50,15 @@ public class HostReallocationService {
 
     private final int pbsMaxIdlePeriodInSeconds;
 
+    private final PlanVersionTracker planVersionTracker;
+
+    private final ComputeExecutor computeExecutor;
+
+    private final LeaderElection leaderElection;
+
+    // end of the last cycle, written by the leader and read back by the other instances
+    private volatile Instant lastCycleFinishedAt;
+
     public HostReallocationService(
             Vertx vertx,
             HostReallocationConfiguration reallocationConfig,
@@ -52,7 +67,10 @@ public class HostReallocationService {
             HostBasedTokenReallocation hostBasedReallocation,
             Metrics metrics,
             Shutdown shutdown,
-            StatsCache statsCache
+            StatsCache statsCache,
+            PlanVersionTracker planVersionTracker,
+            ComputeExecutor computeExecutor,
+            LeaderElection leaderElection
     ) {
         this.reallocationConfig = Objects.requireNonNull(reallocationConfig);
         this.vertx = Objects.requireNonNull(vertx);
@@ -62,6 +80,9 @@ public class HostReallocationService {
         this.shutdown = Objects.requireNonNull(shutdown);
         this.metrics = Objects.requireNonNull(metrics);
         this.statsCache = Objects.requireNonNull(statsCache);
+        this.planVersionTracker = Objects.requireNonNull(planVersionTracker);
+        this.computeExecutor = Objects.requireNonNull(computeExecutor);
+        this.leaderElection = Objects.requireNonNull(leaderElection);
         this.initialize();
     }
 
@@ -76,11 +97,54 @@ public class HostReallocationService {
             return;
         }
         vertx.setTimer(reallocationConfig.getInitialDelaySec() * 1000L, id -> {
-            calculate(null);
-            vertx.setPeriodic(reallocationConfig.getRefreshPeriodSec() * 1000L, timerId -> calculate(null));
+            calculateIfLeader();
+            vertx.setPeriodic(reallocationConfig.getRefreshPeriodSec() * 1000L, timerId -> calculateIfLeader());
         });
     }
 
+    private void calculateIfLeader() {
+        if (!leaderElection.isLeader()) {
+            logger.debug("HostReallocationService::Not the leader, skipping calculation");
+            refreshLastCycleFinish();
+            return;
+        }
+        calculate(null);
+    }
+
+    /**
+     * Reads when the leader last finished a cycle, so instances not running the reallocation can estimate the
+     * next one too.
+     */
+    Future<Void> refreshLastCycleFinish() {
+        return plannerDataAccessClient.getSystemState(REALLOCATION_FINISH_TS)
+                .map(val -> {
+                    final Instant finishedAt = Instant.parse(val);
+                    if (!Instant.EPOCH.equals(finishedAt)) {
+                        lastCycleFinishedAt = finishedAt;
+                    }
+                    return (Void) null;
+                })
+                .recover(ex -> {
+                    logger.warn("Failure in reading the end of the last reallocation cycle::{0}", ex.getMessage());
+                    return Future.succeededFuture();
+                });
+    }
+
+    private Future<Void> recordCycleFinish() {
+        final Instant finishedAt = Instant.now();
+        lastCycleFinishedAt = finishedAt;
+        final SystemState systemState = SystemState.builder()
+                .tag(REALLOCATION_FINISH_TS)
+                .val(finishedAt.toString())
+                .build();
+        return plannerDataAccessClient.updateSystemStateWithUTCTime(systemState)
+                .<Void>mapEmpty()
+                .recover(ex -> {
+                    logger.warn("Failure in recording the end of the reallocation cycle::{0}", ex.getMessage());
+                    return Future.succeededFuture();
+                });
+    }
+
     @SuppressWarnings({"squid:S1854", "squid:S1481"})
     protected Future<Void> calculate(Instant endTime) {
         if (shutdown.getInitiating() == Boolean.TRUE) {
@@ -92,27 +156,28 @@ public class HostReallocationService {
         Future<Void> future = Future.future();
         final long start = System.currentTimeMillis();
 
+        final ReallocationCycleEvent cycleEvent = ReallocationCycleEvent.start();
         Instant endTimestamp = endTime == null ? Instant.now() : endTime;
-        plannerDataAccessClient.getCompactLineItemsByStatus(Constants.LINE_ITEM_ACTIVE_STATUS, endTimestamp)
-                .compose(lineItems -> {
-                    if (lineItems.isEmpty()) {
-                        return Future.failedFuture("No active line items found.");
-                    }
-                    return plannerDataAccessClient
-                            .findActiveHosts(hostsActiveSince())
-                            .map(activeHosts -> new Pair<>(lineItems, activeHosts));
-                })
-                .compose(pair -> {
-                    if (pair.getValue1().isEmpty()) {
-                        return Future.failedFuture("No active hosts found.");
-                    }
-                    return reallocateShares(pair, endTimestamp);
+        // the inputs are read back to back on one connection, from a read replica if routed to one
+        plannerDataAccessClient.inReadOnlySession(sessionClient -> readInputs(sessionClient, endTimestamp))
+                .compose(inputs -> {
+                    cycleEvent.setInputSizes(inputs.getValue0().size(), inputs.getValue1().size());
+                    return reallocateShares(inputs, endTimestamp, cycleEvent);
                 })
-                .compose(reallocatedPlans -> {
+                .compose(reallocatedPlans -> leaderElection.fence().compose(fence -> {
                     logger.info("Starting update of reallocation plan tables");
+                    final long writeStart = System.currentTimeMillis();
                     return plannerDataAccessClient.updateReallocatedPlans(
-                                reallocatedPlans, reallocationConfig.getDbStoreBatchSize());
-                })
+                                reallocatedPlans, reallocationConfig.getDbStoreBatchSize(), fence)
+                            .map(v -> {
+                                final long writeTime = System.currentTimeMillis() - writeStart;
+                                metrics.updateTimer(metricName("write-time"), writeTime);
+                                cycleEvent.setWriteTime(writeTime);
+                                planVersionTracker.plansChanged(reallocatedPlans);
+                                return v;
+                            })
+                            .compose(v -> recordCycleFinish());
+                }))
                 .setHandler(
                         ar -> {
                             logger.info(
@@ -120,6 +185,7 @@ public class HostReallocationService {
                                     System.currentTimeMillis() - start
                             );
                             metrics.updateTimer(metricName("processing-time"), System.currentTimeMillis() - start);
+                            cycleEvent.end(ar.succeeded());
                             if (ar.succeeded()) {
                                 future.complete();
                             } else {
@@ -131,43 +197,88 @@ public class HostReallocationService {
         return future;
     }
 
+    /**
+     * Estimates when the next reallocation cycle will have written new plans, one refresh period after the last
+     * cycle finished. On instances other than the leader the last cycle is read from {@code system_state} once per
+     * refresh period, so the estimate may be one period behind, callers roll it forward by periods.
+     *
+     * @return estimated finish time of the next cycle, or {@code null} if no cycle is known to have run yet
+     */
+    public Instant nextCycleExpectedFinishAt() {
+        final Instant finishedAt = lastCycleFinishedAt;
+        if (finishedAt == null || !reallocationConfig.getEnabled()) {
+            return null;
+        }
+        return finishedAt.plusSeconds(reallocationConfig.getRefreshPeriodSec());
+    }
+
+    public int getRefreshPeriodSec() {
+        return reallocationConfig.getRefreshPeriodSec();
+    }
+
     protected Instant hostsActiveSince() {
         return Instant.now().minusSeconds(pbsMaxIdlePeriodInSeconds);
     }
 
+    private Future<Triplet<List<LineItem>, List<PbsHost>, List<ReallocatedPlan>>> readInputs(
+            CircuitBreakerSecuredPlannerDataAccessClient sessionClient, Instant now) {
+        return sessionClient.getCompactLineItemsByStatus(Constants.LINE_ITEM_ACTIVE_STATUS, now)
+                .compose(lineItems -> {
+                    if (lineItems.isEmpty()) {
+                        return Future.failedFuture("No active line items found.");
+                    }
+                    return sessionClient
+                            .findActiveHosts(hostsActiveSince())
+                            .map(activeHosts -> new Pair<>(lineItems, activeHosts));
+                })
+                .compose(pair -> {
+                    if (pair.getValue1().isEmpty()) {
+                        return Future.failedFuture("No active hosts found.");
+                    }
+                    final Instant updatedSince =
+                            now.minus(reallocationConfig.getReallocationUpdatedSinceMin(), ChronoUnit.MINUTES);
+                    return sessionClient.getLatestReallocatedPlans(updatedSince)
+                            .recover(ex -> Future.failedFuture("Error while retrieving relevant data."))
+                            .map(pair::add);
+                });
+    }
+
     private Future<List<ReallocatedPlan>> reallocateShares(
-            Pair<List<LineItem>, List<PbsHost>> lineItemsActiveHostsPair, Instant now
+            Triplet<List<LineItem>, List<PbsHost>, List<ReallocatedPlan>> inputs, Instant now,
+            ReallocationCycleEvent cycleEvent
     ) {
-        final List<LineItem> activeLineItems = lineItemsActiveHostsPair.getValue0();
-        final List<PbsHost> pbsHosts = lineItemsActiveHostsPair.getValue1();
+        final List<LineItem> activeLineItems = inputs.getValue0();
+        final List<PbsHost> pbsHosts = inputs.getValue1();
         logger.info("Reallocating shares among {0} PBS hosts", pbsHosts.size());
         metrics.incCounter("counts.active-pbs-hosts", pbsHosts.size());
 
-        Future<List<ReallocatedPlan>> future = Future.future();
         final List<DeliveryTokenSpendSummary> allStats = statsCache.get();
+        return computeExecutor.execute(inputs.getValue2(),
+                latestPlans -> {
+                    final long computeStart = System.currentTimeMillis();
+                    final List<ReallocatedPlan> reallocatedPlans =
+                            reallocate(allStats, latestPlans, activeLineItems, pbsHosts, now);
+                    final long computeTime = System.currentTimeMillis() - computeStart;
+                    metrics.updateTimer(metricName("compute-time"), computeTime);
+                    cycleEvent.setComputed(reallocatedPlans.size(), computeTime);
+                    return reallocatedPlans;
+                },
+                "reallocate-shares");
+    }
 
-        Instant updatedSince = now.minus(reallocationConfig.getReallocationUpdatedSinceMin(), ChronoUnit.MINUTES);
-        plannerDataAccessClient.getLatestReallocatedPlans(updatedSince)
-                .setHandler(ar -> {
-                    if (ar.succeeded()) {
-                        List<ReallocatedPlan> prePlans = new ArrayList<>(ar.result());
-                        if (prePlans.isEmpty() && !allStats.isEmpty()) {
-                            // extreme case: has stats without previous plan, first allocate average shares, then
-                            // migrate shares among slow and fast hosts based on stats, reduce algorithm complexity
-                            prePlans = reallocator.calculate(new ArrayList<>(), prePlans, activeLineItems, pbsHosts);
-                        }
-                        List<ReallocatedPlan> reallocatedPlans =
-                                reallocator.calculate(allStats, prePlans, activeLineItems, pbsHosts);
-                        for (ReallocatedPlan plan : reallocatedPlans) {
-                            plan.setUpdatedAt(now);
-                        }
-                        future.complete(reallocatedPlans);
-                    } else {
-                        future.fail("Error while retrieving relevant data.");
-                    }
-                });
-
-        return future;
+    private List<ReallocatedPlan> reallocate(List<DeliveryTokenSpendSummary> allStats,
+            List<ReallocatedPlan> latestPlans, List<LineItem> activeLineItems, List<PbsHost> pbsHosts, Instant now) {
+        List<ReallocatedPlan> prePlans = new ArrayList<>(latestPlans);
+        if (prePlans.isEmpty() && !allStats.isEmpty()) {
+            // extreme case: has stats without previous plan, first allocate average shares, then
+            // migrate shares among slow and fast hosts based on stats, reduce algorithm complexity
+            prePlans = reallocator.calculate(new ArrayList<>(), prePlans, activeLineItems, pbsHosts);
+        }
+        List<ReallocatedPlan> reallocatedPlans = reallocator.calculate(allStats, prePlans, activeLineItems, pbsHosts);
+        for (ReallocatedPlan plan : reallocatedPlans) {
+            plan.setUpdatedAt(now);
+        }
+        return reallocatedPlans;
     }
 
     private String metricName(String tag) {
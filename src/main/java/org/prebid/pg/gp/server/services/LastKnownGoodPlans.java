@@ -0,0 +1,236 @@
+package org.prebid.pg.gp.server.services;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import lombok.Value;
+import org.javatuples.Triplet;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.model.LineItem;
+import org.prebid.pg.gp.server.model.PbsHost;
+import org.prebid.pg.gp.server.model.ReallocatedPlan;
+import org.prebid.pg.gp.server.spring.config.app.PlanRequestConfiguration;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A store of the plan inputs last read from the database, to keep serving plans while the database is not
+ * reachable.
+ * <p>
+ * Plan requests record the line item catalog, the active hosts and the reallocated plan of the host they read.
+ * When reading them fails, e.g. while the circuit breaker is open, or takes longer than the latency budget,
+ * the recorded inputs of the host are served instead, unless older than the maximum staleness. Inputs read after
+ * the budget elapsed are still recorded, so the store is refreshed in the background as the database recovers.
+ * <p>
+ * Plans are rendered into the line item json in place, so the catalog is recorded as a copy, taken again only
+ * when the catalog version changes or the copy is older than the snapshot refresh period.
+ */
+public class LastKnownGoodPlans {
+
+    private static final Logger logger = LoggerFactory.getLogger(LastKnownGoodPlans.class);
+
+    private final Vertx vertx;
+
+    private final PlanRequestConfiguration.LastKnownGood config;
+
+    private final Metrics metrics;
+
+    private final ConcurrentMap<String, HostPlan> hostPlans = new ConcurrentHashMap<>();
+
+    private volatile Catalog catalog;
+
+    public LastKnownGoodPlans(Vertx vertx, PlanRequestConfiguration.LastKnownGood config, Metrics metrics) {
+        this.vertx = Objects.requireNonNull(vertx);
+        this.config = Objects.requireNonNull(config);
+        this.metrics = Objects.requireNonNull(metrics);
+
+        metrics.registerGauge(metricName("hosts"), hostPlans::size);
+        logger.info(config);
+    }
+
+    /**
+     * Guards the reading of the plan inputs of a PBS host, falling back to the recorded inputs when reading
+     * fails or exceeds the latency budget.
+     *
+     * @param hostKey unique instance id of the PBS host
+     * @param catalogVersion version of the line item catalog being read, {@code null} if unknown
+     * @param planInputs a future of the reallocated plan, line items and active hosts being read
+     * @return a future of the inputs to render the plan from
+     */
+    public Future<Snapshot> guard(String hostKey, Long catalogVersion,
+                                  Future<Triplet<ReallocatedPlan, List<LineItem>, List<PbsHost>>> planInputs) {
+        if (!config.getEnabled()) {
+            return planInputs.map(inputs -> new Snapshot(inputs, null));
+        }
+
+        final Future<Snapshot> result = Future.future();
+        final long timerId = config.getLatencyBudgetMs() > 0
+                ? vertx.setTimer(config.getLatencyBudgetMs(), id -> {
+                    if (!result.isComplete()) {
+                        metrics.incCounter(metricName("budget-exceeded"));
+                        // keep waiting for the database if there is nothing to fall back to
+                        final Snapshot stale = getStale(hostKey, Instant.now());
+                        if (stale != null) {
+                            served(hostKey, stale, result);
+                        }
+                    }
+                })
+                : -1;
+        planInputs.setHandler(ar -> {
+            if (timerId != -1) {
+                vertx.cancelTimer(timerId);
+            }
+            if (ar.succeeded()) {
+                record(hostKey, catalogVersion, ar.result(), Instant.now());
+                result.tryComplete(new Snapshot(ar.result(), null));
+            } else if (!result.isComplete()) {
+                final Snapshot stale = getStale(hostKey, Instant.now());
+                if (stale != null) {
+                    served(hostKey, stale, result);
+                } else {
+                    metrics.incCounter(metricName("unavailable"));
+                    result.fail(ar.cause());
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Records the plan inputs of a PBS host read from the database.
+     *
+     * @param hostKey unique instance id of the PBS host
+     * @param catalogVersion version of the line item catalog read, {@code null} if unknown
+     * @param inputs the reallocated plan, line items and active hosts read
+     * @param readAt time the inputs were read
+     */
+    void record(String hostKey, Long catalogVersion,
+                Triplet<ReallocatedPlan, List<LineItem>, List<PbsHost>> inputs, Instant readAt) {
+        hostPlans.put(hostKey, new HostPlan(inputs.getValue0(), readAt));
+        synchronized (this) {
+            final Catalog current = catalog;
+            if (current != null && current.version != null && current.version.equals(catalogVersion)
+                    && !current.copiedAt.plusSeconds(config.getSnapshotRefreshSec()).isBefore(readAt)) {
+                catalog = new Catalog(current.version, current.lineItems, inputs.getValue2(),
+                        current.copiedAt, readAt);
+                return;
+            }
+            catalog = new Catalog(catalogVersion, copyOf(inputs.getValue1()), inputs.getValue2(), readAt, readAt);
+        }
+        // hosts gone for longer than the maximum staleness are never served
+        final Instant expiredBefore = readAt.minusSeconds(config.getMaxStalenessSec());
+        hostPlans.values().removeIf(hostPlan -> hostPlan.readAt.isBefore(expiredBefore));
+    }
+
+    /**
+     * Gets the recorded plan inputs of a PBS host, unless older than the maximum staleness.
+     *
+     * @param hostKey unique instance id of the PBS host
+     * @param now current time
+     * @return the recorded inputs, or {@code null} if none are recorded or they are too old
+     */
+    Snapshot getStale(String hostKey, Instant now) {
+        final Catalog currentCatalog = catalog;
+        final HostPlan hostPlan = hostPlans.get(hostKey);
+        if (currentCatalog == null || hostPlan == null) {
+            return null;
+        }
+        final Instant readAt = currentCatalog.readAt.isBefore(hostPlan.readAt) ? currentCatalog.readAt
+                : hostPlan.readAt;
+        final long staleSec = Math.max(0, now.getEpochSecond() - readAt.getEpochSecond());
+        if (staleSec > config.getMaxStalenessSec()) {
+            return null;
+        }
+        return new Snapshot(
+                new Triplet<>(hostPlan.reallocatedPlan, currentCatalog.lineItems, currentCatalog.activeHosts),
+                staleSec);
+    }
+
+    private void served(String hostKey, Snapshot stale, Future<Snapshot> result) {
+        logger.warn("Serving plan of {0} last read {1} seconds ago", hostKey, stale.getStaleSec());
+        metrics.incCounter(metricName("stale-served"));
+        result.complete(stale);
+    }
+
+    private static List<LineItem> copyOf(List<LineItem> lineItems) {
+        final List<LineItem> copies = new ArrayList<>(lineItems.size());
+        for (LineItem lineItem : lineItems) {
+            copies.add(LineItem.builder()
+                    .lineItemId(lineItem.getLineItemId())
+                    .bidderCode(lineItem.getBidderCode())
+                    .status(lineItem.getStatus())
+                    .startTimeStamp(lineItem.getStartTimeStamp())
+                    .endTimeStamp(lineItem.getEndTimeStamp())
+                    .lineItemJson(lineItem.getLineItemJson() == null ? null : lineItem.getLineItemJson().deepCopy())
+                    .updatedAt(lineItem.getUpdatedAt())
+                    .build());
+        }
+        return Collections.unmodifiableList(copies);
+    }
+
+    private String metricName(String tag) {
+        return String.format("last-known-good.%s", tag);
+    }
+
+    /**
+     * Plan inputs of a PBS host, either just read from the database or recorded earlier.
+     * Line items of stale inputs are shared, and must be rendered as copies.
+     */
+    @Value
+    public static class Snapshot {
+
+        private Triplet<ReallocatedPlan, List<LineItem>, List<PbsHost>> inputs;
+
+        // seconds since the inputs were read, null if just read
+        private Long staleSec;
+
+        public boolean isStale() {
+            return staleSec != null;
+        }
+
+    }
+
+    private static class Catalog {
+
+        private final Long version;
+
+        private final List<LineItem> lineItems;
+
+        private final List<PbsHost> activeHosts;
+
+        private final Instant copiedAt;
+
+        private final Instant readAt;
+
+        Catalog(Long version, List<LineItem> lineItems, List<PbsHost> activeHosts, Instant copiedAt,
+                Instant readAt) {
+            this.version = version;
+            this.lineItems = lineItems;
+            this.activeHosts = activeHosts;
+            this.copiedAt = copiedAt;
+            this.readAt = readAt;
+        }
+
+    }
+
+    private static class HostPlan {
+
+        private final ReallocatedPlan reallocatedPlan;
+
+        private final Instant readAt;
+
+        HostPlan(ReallocatedPlan reallocatedPlan, Instant readAt) {
+            this.reallocatedPlan = reallocatedPlan;
+            this.readAt = readAt;
+        }
+
+    }
+
+}
@@ -0,0 +1,204 @@
+package org.prebid.pg.gp.server.services;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.prebid.pg.gp.server.exception.GeneralPlannerException;
+import org.prebid.pg.gp.server.jdbc.LeaderLeaseClient;
+import org.prebid.pg.gp.server.jdbc.LeaderLeaseFence;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.model.Shutdown;
+import org.prebid.pg.gp.server.spring.config.app.LeaderElectionConfiguration;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A lease based election of the general planner instance that runs the periodic jobs, i.e. retrieves line items,
+ * delivery stats, reallocates plans and summarizes tokens. The other instances only serve requests.
+ * <p>
+ * The leader renews its lease every renewal interval and considers itself leader until the lease would expire,
+ * counted from when the renewal was sent. Every change of hands increments the fencing token; jobs get the
+ * {@link LeaderLeaseFence} of their token with {@link #fence()} and write within a transaction holding it, which
+ * rolls the write back if the lease has changed hands since. A deposed leader may still compute in the meantime,
+ * but its writes fail once another instance has taken the lease over.
+ * When disabled, this instance is always the leader.
+ */
+public class LeaderElection {
+
+    private static final Logger logger = LoggerFactory.getLogger(LeaderElection.class);
+
+    private final Vertx vertx;
+
+    private final LeaderElectionConfiguration config;
+
+    private final LeaderLeaseClient leaseClient;
+
+    private final String holderId;
+
+    private final Metrics metrics;
+
+    private final Shutdown shutdown;
+
+    private final List<Handler<Long>> electedHandlers = new CopyOnWriteArrayList<>();
+
+    private volatile long fencingToken;
+
+    private volatile long leaseValidUntil;
+
+    private volatile boolean renewing;
+
+    private long timerId = -1;
+
+    public LeaderElection(
+            Vertx vertx,
+            LeaderElectionConfiguration config,
+            LeaderLeaseClient leaseClient,
+            String holderId,
+            Metrics metrics,
+            Shutdown shutdown
+    ) {
+        this.vertx = Objects.requireNonNull(vertx);
+        this.config = Objects.requireNonNull(config);
+        this.leaseClient = Objects.requireNonNull(leaseClient);
+        this.holderId = Objects.requireNonNull(holderId);
+        this.metrics = Objects.requireNonNull(metrics);
+        this.shutdown = Objects.requireNonNull(shutdown);
+
+        metrics.registerGauge(metricName("leader"), () -> isLeader() ? 1 : 0);
+        metrics.registerGauge(metricName("fencing-token"), this::getFencingToken);
+        logger.info("{0} with holderId={1}", config, holderId);
+    }
+
+    /**
+     * Starts contending for the lease, and keeps renewing it once acquired.
+     */
+    public void initialize() {
+        if (!config.getEnabled()) {
+            logger.info("Leader election is disabled, this instance runs all periodic jobs");
+            return;
+        }
+        renew();
+        timerId = vertx.setPeriodic(config.getRenewIntervalSec() * 1000L, id -> renew());
+    }
+
+    /**
+     * Registers a handler called with the fencing token each time this instance becomes the leader.
+     *
+     * @param handler the handler
+     */
+    public void onElected(Handler<Long> handler) {
+        electedHandlers.add(Objects.requireNonNull(handler));
+    }
+
+    /**
+     * Checks whether this instance should run the periodic jobs now.
+     *
+     * @return true if this instance holds a lease that has not expired yet
+     */
+    public boolean isLeader() {
+        return !config.getEnabled() || (fencingToken > 0 && System.currentTimeMillis() < leaseValidUntil);
+    }
+
+    public long getFencingToken() {
+        return config.getEnabled() ? fencingToken : 0;
+    }
+
+    public String getHolderId() {
+        return holderId;
+    }
+
+    /**
+     * Gets the fence of the lease currently held by this instance, to be held by the transactions of the writes of
+     * a job, see {@link LeaderLeaseFence#hold(io.vertx.ext.sql.SQLConnection)}.
+     *
+     * @return a future of the fence, {@link LeaderLeaseFence#NONE} if disabled, failed if this instance is not
+     *         the leader
+     */
+    public Future<LeaderLeaseFence> fence() {
+        if (!config.getEnabled()) {
+            return Future.succeededFuture(LeaderLeaseFence.NONE);
+        }
+        final long token = fencingToken;
+        if (!isLeader()) {
+            metrics.incCounter(metricName("fenced"));
+            return Future.failedFuture(notLeader());
+        }
+        return Future.succeededFuture(new LeaderLeaseFence(config.getLeaseName(), holderId, token));
+    }
+
+    /**
+     * Stops renewing and releases the lease if held, so another instance takes over right away.
+     */
+    public void close() {
+        if (timerId != -1) {
+            vertx.cancelTimer(timerId);
+            timerId = -1;
+        }
+        release();
+    }
+
+    void renew() {
+        if (renewing) {
+            return;
+        }
+        if (shutdown.getInitiating() == Boolean.TRUE) {
+            release();
+            return;
+        }
+        renewing = true;
+        final long start = System.currentTimeMillis();
+        leaseClient.tryAcquire(config.getLeaseName(), holderId, config.getLeaseSec()).setHandler(ar -> {
+            renewing = false;
+            if (ar.failed()) {
+                // keep leading until the lease would expire, the next renewal may still succeed
+                metrics.incCounter(metricName("renew-failed"));
+                return;
+            }
+            final Long token = ar.result();
+            if (token == null) {
+                stepDown(fencingToken);
+                return;
+            }
+            final boolean elected = token != fencingToken || !isLeader();
+            fencingToken = token;
+            leaseValidUntil = start + config.getLeaseSec() * 1000L;
+            if (elected) {
+                logger.info("Elected leader {0} with fencing token {1}", config.getLeaseName(), token);
+                metrics.incCounter(metricName("elected"));
+                electedHandlers.forEach(handler -> handler.handle(token));
+            }
+        });
+    }
+
+    private void release() {
+        final long token = fencingToken;
+        if (token == 0) {
+            return;
+        }
+        stepDown(token);
+        leaseClient.release(config.getLeaseName(), holderId);
+    }
+
+    private void stepDown(long token) {
+        if (token != 0 && fencingToken == token) {
+            fencingToken = 0;
+            leaseValidUntil = 0;
+            logger.info("Stepped down as leader {0} with fencing token {1}", config.getLeaseName(), token);
+            metrics.incCounter(metricName("deposed"));
+        }
+    }
+
+    private GeneralPlannerException notLeader() {
+        return new GeneralPlannerException(
+                String.format("Instance %s is not the leader %s", holderId, config.getLeaseName()));
+    }
+
+    private String metricName(String tag) {
+        return String.format("leader-election.%s", tag);
+    }
+
+}
@@ -0,0 +1,101 @@
+package org.prebid.pg.gp.server.services;
+
+import org.prebid.pg.gp.server.model.LineItem;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded ring of recent line item catalog versions.
+ * <p>
+ * For each catalog version it keeps the content digests of the line items by unique line item id,
+ * the oldest version is dropped once the configured number of versions is exceeded.
+ */
+public class LineItemCatalogHistory {
+
+    private final int maxVersions;
+
+    private final Map<Long, Map<String, String>> snapshots;
+
+    private long forgottenUpTo = Long.MIN_VALUE;
+
+    public LineItemCatalogHistory(int maxVersions) {
+        this.maxVersions = maxVersions;
+        this.snapshots = new LinkedHashMap<Long, Map<String, String>>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Map<String, String>> eldest) {
+                return size() > LineItemCatalogHistory.this.maxVersions;
+            }
+        };
+    }
+
+    /**
+     * Computes the content digests of the given line items, before they are rendered into plans.
+     * A digest is made of the update time and the SHA-256 digest of the status and serialized json, so a change
+     * is never mistaken for the same content.
+     *
+     * @param lineItems line items
+     * @return content digests by unique line item id
+     */
+    public static Map<String, String> contentDigests(List<LineItem> lineItems) {
+        final MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        final Base64.Encoder encoder = Base64.getEncoder();
+        final Map<String, String> digests = new HashMap<>();
+        for (LineItem lineItem : lineItems) {
+            final String content = lineItem.getStatus() + '\n' + lineItem.getLineItemJson();
+            final String digest = encoder.encodeToString(sha256.digest(content.getBytes(StandardCharsets.UTF_8)));
+            digests.put(lineItem.getUniqueLineItemId(), lineItem.getUpdatedAt() + "/" + digest);
+        }
+        return digests;
+    }
+
+    /**
+     * Records the line item content digests of a catalog version, unless already recorded or forgotten.
+     *
+     * @param version catalog version
+     * @param contentDigests content digests by unique line item id
+     */
+    public synchronized void record(long version, Map<String, String> contentDigests) {
+        if (maxVersions > 0 && version > forgottenUpTo && !snapshots.containsKey(version)) {
+            snapshots.put(version, Collections.unmodifiableMap(contentDigests));
+        }
+    }
+
+    /**
+     * Forgets the catalog versions up to the given one, which may have been recorded with line items written
+     * by another instance before this instance learned about the change.
+     *
+     * @param version catalog version
+     */
+    public synchronized void forget(long version) {
+        forgottenUpTo = Math.max(forgottenUpTo, version);
+        snapshots.keySet().removeIf(recorded -> recorded <= version);
+    }
+
+    /**
+     * Gets the line item content digests of a catalog version.
+     *
+     * @param version catalog version
+     * @return content digests by unique line item id, or {@code null} if the version is unknown or too old
+     */
+    public synchronized Map<String, String> get(Long version) {
+        return version == null ? null : snapshots.get(version);
+    }
+
+    public synchronized int size() {
+        return snapshots.size();
+    }
+
+}
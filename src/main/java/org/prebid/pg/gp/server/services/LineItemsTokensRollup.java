@@ -0,0 +1,219 @@
+package org.prebid.pg.gp.server.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.vertx.core.Future;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.javatuples.Pair;
+import org.prebid.pg.gp.server.jdbc.LineItemsTokensSummaryClient;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.model.LineItem;
+import org.prebid.pg.gp.server.model.LineItemPlanTokens;
+import org.prebid.pg.gp.server.spring.config.app.TokensSummaryConfiguration;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An accumulator of the class 1 tokens of line items as they are retrieved from the planner adapters.
+ * <p>
+ * Like the summary read from {@code line_items_history}, a plan counts with the tokens it has when first
+ * retrieved within the granular summary window it starts in. The plans recorded in the current window are kept
+ * in memory, loaded from {@code line_items_tokens_rollup} when the window begins, so each retrieval only writes
+ * the plans not seen yet, and a new leader carries on from what the previous one recorded.
+ * <p>
+ * The rollup of an hour is only trusted by {@link LineItemsTokensSummaryService} if this instance recorded every
+ * retrieval of the hour, see {@link #isComplete(Instant, Instant)}; other hours are summarized from
+ * {@code line_items_history}.
+ */
+public class LineItemsTokensRollup {
+
+    private static final Logger logger = LoggerFactory.getLogger(LineItemsTokensRollup.class);
+
+    private static final int INTERVAL_MINUTE = 60;
+
+    private final TokensSummaryConfiguration config;
+
+    private final LineItemsTokensSummaryClient tokensSummaryClient;
+
+    private final Metrics metrics;
+
+    // time of the first retrieval recorded since startup or since this instance was last elected leader
+    private final AtomicReference<Instant> recordingSince = new AtomicReference<>();
+
+    // starts of the windows a retrieval failed to be recorded in
+    private final NavigableSet<Instant> incompleteWindows = new ConcurrentSkipListSet<>();
+
+    private Instant windowStart;
+
+    // plans recorded in the current window, keyed by line item and plan start
+    private Future<Map<String, Integer>> windowTokens;
+
+    public LineItemsTokensRollup(
+            TokensSummaryConfiguration config,
+            LineItemsTokensSummaryClient tokensSummaryClient,
+            Metrics metrics,
+            LeaderElection leaderElection
+    ) {
+        this.config = Objects.requireNonNull(config);
+        this.tokensSummaryClient = Objects.requireNonNull(tokensSummaryClient);
+        this.metrics = Objects.requireNonNull(metrics);
+
+        // retrievals of the previous leader may not have been recorded
+        leaderElection.onElected(fencingToken -> recordingSince.set(null));
+    }
+
+    public boolean isEnabled() {
+        return config.getIncrementalRollup();
+    }
+
+    /**
+     * Checks whether every retrieval between the given times has been recorded by this instance, so the rollup of
+     * the plans starting in between is complete.
+     *
+     * @param startTime start time(inclusive)
+     * @param endTime end time(exclusive)
+     * @return true if the rollup can be summed instead of reading {@code line_items_history}
+     */
+    public boolean isComplete(Instant startTime, Instant endTime) {
+        final Instant since = recordingSince.get();
+        return since != null && !since.isAfter(startTime) && incompleteWindows.subSet(startTime, endTime).isEmpty();
+    }
+
+    /**
+     * Forgets the failed recordings of the windows before the given time, once summarized.
+     *
+     * @param endTime end time(exclusive) of the windows to forget
+     */
+    public void forget(Instant endTime) {
+        incompleteWindows.headSet(endTime).clear();
+    }
+
+    /**
+     * Records the tokens of the plans of the given line items starting in the window they are retrieved in.
+     * Failures are logged and mark the window incomplete, the plans left out are recorded by the next retrieval
+     * of the window if any.
+     *
+     * @param lineItems line items retrieved at the same time
+     * @return a future completed when the new plans are saved
+     */
+    public Future<Void> record(List<LineItem> lineItems) {
+        if (!isEnabled() || lineItems.isEmpty()) {
+            return Future.succeededFuture();
+        }
+        final Pair<Instant, Instant> window =
+                granularWindow(lineItems.get(0).getUpdatedAt(), config.getGranularSummaryMinute());
+        if (window == null) {
+            return Future.succeededFuture();
+        }
+        recordingSince.compareAndSet(null, lineItems.get(0).getUpdatedAt());
+        final long start = System.currentTimeMillis();
+        return windowTokens(window)
+                .compose(recorded -> {
+                    final Map<String, LineItemPlanTokens> added = new LinkedHashMap<>();
+                    for (LineItem lineItem : lineItems) {
+                        addPlanTokens(lineItem, window, recorded, added);
+                    }
+                    return tokensSummaryClient.savePlanTokens(new ArrayList<>(added.values()))
+                            .map(rs -> {
+                                // marked once saved only, so the plans of a failed retrieval are saved by the next
+                                added.forEach((key, tokens) -> recorded.putIfAbsent(key, tokens.getTokens()));
+                                metrics.incCounter(metricName("recorded"), added.size());
+                                metrics.updateTimer(metricName("processing-time"),
+                                        System.currentTimeMillis() - start);
+                                return (Void) null;
+                            });
+                })
+                .recover(ex -> {
+                    logger.error("Failure in recording tokens of line items::{0}", ex.getMessage());
+                    metrics.incCounter(metricName("exc"));
+                    incompleteWindows.add(window.getValue0());
+                    return Future.succeededFuture();
+                });
+    }
+
+    private void addPlanTokens(LineItem lineItem, Pair<Instant, Instant> window, Map<String, Integer> recorded,
+                               Map<String, LineItemPlanTokens> added) {
+        if (lineItem.getLineItemJson() == null) {
+            return;
+        }
+        for (JsonNode plan : lineItem.getLineItemJson().path("deliverySchedules")) {
+            final String startTimestamp = plan.path("startTimeStamp").asText(null);
+            if (startTimestamp == null) {
+                continue;
+            }
+            final Instant planStart = Instant.parse(startTimestamp);
+            if (planStart.isBefore(window.getValue0()) || !planStart.isBefore(window.getValue1())) {
+                continue;
+            }
+            for (JsonNode token : plan.path("tokens")) {
+                if (token.path("class").asInt() != 1) {
+                    continue;
+                }
+                final LineItemPlanTokens tokens = LineItemPlanTokens.builder()
+                        .lineItemId(lineItem.getUniqueLineItemId())
+                        .bidderCode(lineItem.getBidderCode())
+                        .extLineItemId(lineItem.getLineItemId())
+                        .planStartTimestamp(planStart)
+                        .tokens(token.path("total").asInt())
+                        .build();
+                if (!recorded.containsKey(key(tokens))) {
+                    added.putIfAbsent(key(tokens), tokens);
+                }
+            }
+        }
+    }
+
+    private synchronized Future<Map<String, Integer>> windowTokens(Pair<Instant, Instant> window) {
+        if (!window.getValue0().equals(windowStart)
+                || (windowTokens.isComplete() && windowTokens.failed())) {
+            windowStart = window.getValue0();
+            windowTokens = tokensSummaryClient.findPlanTokens(window.getValue0(), window.getValue1())
+                    .map(planTokens -> {
+                        final Map<String, Integer> recorded = new ConcurrentHashMap<>();
+                        planTokens.forEach(tokens -> recorded.put(key(tokens), tokens.getTokens()));
+                        return recorded;
+                    });
+        }
+        return windowTokens;
+    }
+
+    /**
+     * Finds the granular summary window the given time falls in, the hour being split from its start into windows
+     * of {@code granularMinute} minutes, the last one possibly shorter.
+     *
+     * @return the start(inclusive) and end(exclusive) of the window, null if the hour is not split
+     */
+    static Pair<Instant, Instant> granularWindow(Instant time, int granularMinute) {
+        final int count = INTERVAL_MINUTE / granularMinute;
+        if (count == 0) {
+            return null;
+        }
+        final Instant hour = time.truncatedTo(ChronoUnit.HOURS);
+        final long index = ChronoUnit.MINUTES.between(hour, time) / granularMinute;
+        if (index >= count) {
+            final Instant lastStart = hour.plus((long) count * granularMinute, ChronoUnit.MINUTES);
+            return Pair.with(lastStart, hour.plus(1, ChronoUnit.HOURS));
+        }
+        final Instant start = hour.plus(index * granularMinute, ChronoUnit.MINUTES);
+        return Pair.with(start, start.plus(granularMinute, ChronoUnit.MINUTES));
+    }
+
+    private static String key(LineItemPlanTokens tokens) {
+        return String.format("%s|%s", tokens.getLineItemId(), tokens.getPlanStartTimestamp());
+    }
+
+    private String metricName(String tag) {
+        return String.format("tokens-rollup.%s", tag);
+    }
+
+}
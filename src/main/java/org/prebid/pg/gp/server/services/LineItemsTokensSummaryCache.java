@@ -0,0 +1,183 @@
+package org.prebid.pg.gp.server.services;
+
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.model.LineItemsTokensSummary;
+import org.prebid.pg.gp.server.spring.config.app.LineItemsTokensSummaryConfiguration;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A least recently used cache of the tokens summaries of closed hours, by hour and line item filter.
+ * <p>
+ * Once {@link LineItemsTokensSummaryService} has summarized an hour, its rows in {@code line_items_tokens_summary}
+ * never change, so the summaries of the hour can be served from memory. The cache is bounded by the total number
+ * of rows it holds, an hour without rows counting as one, the least recently read hours being evicted first.
+ */
+public class LineItemsTokensSummaryCache {
+
+    private final LineItemsTokensSummaryConfiguration config;
+
+    private final Metrics metrics;
+
+    private final LinkedHashMap<String, List<LineItemsTokensSummary>> entries =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private long rows;
+
+    public LineItemsTokensSummaryCache(LineItemsTokensSummaryConfiguration config, Metrics metrics) {
+        this.config = Objects.requireNonNull(config);
+        this.metrics = Objects.requireNonNull(metrics);
+
+        metrics.registerGauge(metricName("entries"), this::size);
+        metrics.registerGauge(metricName("rows"), this::getRows);
+        metrics.registerGauge(metricName("hit-rate"), this::getHitRate);
+    }
+
+    public boolean isEnabled() {
+        return config.getCacheEnabled();
+    }
+
+    /**
+     * Gets the summaries of the given hour for the given line items.
+     *
+     * @param hour start of the hour
+     * @param lineItemIds ids of the line items of the report, all line items if empty
+     * @return the cached summaries, null if the hour is not cached
+     */
+    public synchronized List<LineItemsTokensSummary> get(Instant hour, List<String> lineItemIds) {
+        final List<LineItemsTokensSummary> summaries = entries.get(key(hour, lineItemIds));
+        if (summaries == null) {
+            misses.incrementAndGet();
+            metrics.incCounter(metricName("misses"));
+        } else {
+            hits.incrementAndGet();
+            metrics.incCounter(metricName("hits"));
+        }
+        return summaries;
+    }
+
+    /**
+     * Caches the summaries of the given closed hour, evicting the least recently read hours over the row limit.
+     * An hour with more rows than the limit is not cached.
+     *
+     * @param hour start of the hour
+     * @param lineItemIds ids of the line items of the report, all line items if empty
+     * @param summaries all the summaries of the hour for the line items
+     */
+    public synchronized void put(Instant hour, List<String> lineItemIds, List<LineItemsTokensSummary> summaries) {
+        if (summaries.size() > config.getCacheMaxRows()) {
+            return;
+        }
+        final List<LineItemsTokensSummary> previous = entries.put(
+                key(hour, lineItemIds), Collections.unmodifiableList(new ArrayList<>(summaries)));
+        rows += cost(summaries) - (previous == null ? 0 : cost(previous));
+        final Iterator<List<LineItemsTokensSummary>> eldest = entries.values().iterator();
+        while (rows > config.getCacheMaxRows() && eldest.hasNext()) {
+            rows -= cost(eldest.next());
+            eldest.remove();
+            metrics.incCounter(metricName("evictions"));
+        }
+    }
+
+    /**
+     * Starts collecting the summaries of consecutive closed hours as they are read in window start order, each hour
+     * being cached once the rows of a later hour are read.
+     *
+     * @param fromHour start of the first hour read
+     * @param lineItemIds ids of the line items of the report, all line items if empty
+     * @return a collector of the summaries read
+     */
+    public Collector collect(Instant fromHour, List<String> lineItemIds) {
+        return new Collector(fromHour, lineItemIds);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getRows() {
+        return rows;
+    }
+
+    /**
+     * Gets the percentage of the lookups served from the cache since startup.
+     */
+    public long getHitRate() {
+        final long hitCount = hits.get();
+        final long lookups = hitCount + misses.get();
+        return lookups == 0 ? 0 : hitCount * 100 / lookups;
+    }
+
+    private static int cost(List<LineItemsTokensSummary> summaries) {
+        // hours without rows are charged too, so that they are evicted as well
+        return Math.max(1, summaries.size());
+    }
+
+    private static String key(Instant hour, List<String> lineItemIds) {
+        final List<String> sortedIds = new ArrayList<>(lineItemIds);
+        Collections.sort(sortedIds);
+        return String.format("%s|%s", hour, String.join(",", sortedIds));
+    }
+
+    private String metricName(String tag) {
+        return String.format("line-items-tokens-summary-cache.%s", tag);
+    }
+
+    /**
+     * Groups the summaries read by hour, only holding the rows of the hour being read.
+     */
+    public class Collector {
+
+        private final List<String> lineItemIds;
+
+        private final List<LineItemsTokensSummary> hourRows = new ArrayList<>();
+
+        private Instant hour;
+
+        Collector(Instant fromHour, List<String> lineItemIds) {
+            this.hour = fromHour;
+            this.lineItemIds = lineItemIds;
+        }
+
+        public void accept(List<LineItemsTokensSummary> summaries) {
+            for (LineItemsTokensSummary summary : summaries) {
+                completeHoursBefore(summary.getSummaryWindowStartTimestamp().truncatedTo(ChronoUnit.HOURS));
+                // an hour over the limit is not cached, its rows are not kept
+                if (hourRows.size() <= config.getCacheMaxRows()) {
+                    hourRows.add(summary);
+                }
+            }
+        }
+
+        /**
+         * Caches the hours read before the given one, including the hours without rows.
+         *
+         * @param untilHour end of the last hour read
+         */
+        public void complete(Instant untilHour) {
+            completeHoursBefore(untilHour);
+        }
+
+        private void completeHoursBefore(Instant nextHour) {
+            while (hour.isBefore(nextHour)) {
+                put(hour, lineItemIds, hourRows);
+                hourRows.clear();
+                hour = hour.plus(1, ChronoUnit.HOURS);
+            }
+        }
+
+    }
+
+}
@@ -22,22 +22,29 @@ import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 /**
  * A service to do the line item tokens statistics calculation periodically.
+ * <p>
+ * With the incremental rollup, the tokens of an hour are summed from those recorded as line items were
+ * retrieved, see {@link LineItemsTokensRollup}, and read from {@code line_items_history} unless the rollup is
+ * complete for the hour, i.e. recorded every plan retrieved in it.
  */
 public class LineItemsTokensSummaryService {
 
+    public static final String LINE_ITEM_HISTORY_SUMMARY_TS = "li_history_summary_ts";
+
     private static final Logger logger = LoggerFactory.getLogger(LineItemsTokensSummaryService.class);
 
     private static final Integer INTERVAL_MINUTE = 60;
 
-    private static final String LINE_ITEM_HISTORY_SUMMARY_TS = "li_history_summary_ts";
-
     private final Vertx vertx;
 
     private final AlertProxyHttpClient alertHttpClient;
@@ -50,13 +57,19 @@ public class LineItemsTokensSummaryService {
 
     private final Shutdown shutdown;
 
+    private final LeaderElection leaderElection;
+
+    private final LineItemsTokensRollup tokensRollup;
+
     public LineItemsTokensSummaryService(
             Vertx vertx,
             LineItemsHistoryClient lineItemHistoryDataAccessClient,
             LineItemsTokensSummaryClient tokensSummaryClient,
             AlertProxyHttpClient alertHttpClient,
             TokensSummaryConfiguration tokensSummaryConfiguration,
-            Shutdown shutdown
+            Shutdown shutdown,
+            LeaderElection leaderElection,
+            LineItemsTokensRollup tokensRollup
     ) {
         this.vertx = Objects.requireNonNull(vertx);
         this.lineItemHistoryClient = Objects.requireNonNull(lineItemHistoryDataAccessClient);
@@ -64,6 +77,8 @@ public class LineItemsTokensSummaryService {
         this.alertHttpClient = Objects.requireNonNull(alertHttpClient);
         this.tokensSummaryConfiguration = Objects.requireNonNull(tokensSummaryConfiguration);
         this.shutdown = Objects.requireNonNull(shutdown);
+        this.leaderElection = Objects.requireNonNull(leaderElection);
+        this.tokensRollup = Objects.requireNonNull(tokensRollup);
     }
 
     /**
@@ -82,8 +97,15 @@ public class LineItemsTokensSummaryService {
             logger.info("Token Summary Service::Server shutdown has been initiated");
             return;
         }
-        logger.info("Tokens Summary Service started");
-        summarize().setHandler(ar -> {
+        final Future<Void> summarized;
+        if (leaderElection.isLeader()) {
+            logger.info("Tokens Summary Service started");
+            summarized = summarize();
+        } else {
+            logger.info("Tokens Summary Service skipped, not the leader");
+            summarized = Future.succeededFuture();
+        }
+        summarized.setHandler(ar -> {
             if (ar.succeeded()) {
                 logger.info("Tokens Summary Service completed successfully");
             } else {
@@ -127,16 +149,34 @@ public class LineItemsTokensSummaryService {
             logger.info("Tokens Summary Service completed with empty intervals");
             future.complete();
         } else {
-            final List<Function<Void, Future<Void>>> handlers = new ArrayList<>();
-            for (int i = 1; i < intervals.size(); i++) {
-                final int index = i;
-                handlers.add(async -> summarizeForInterval(intervals.get(index)));
-            }
-            final Future<Void> init = summarizeForInterval(intervals.get(0));
-            chain(init, handlers).setHandler(future::handle);
+            summarizeIntervals(intervals).setHandler(future::handle);
         }
     }
 
+    /**
+     * Summarizes the given hours in order, reading the history of the next hours while the summaries of the
+     * previous ones are saved. Summaries are saved, and the last summarized hour recorded, one hour after the
+     * other, so a failure leaves no gap.
+     */
+    private Future<Void> summarizeIntervals(List<Pair<Instant, Instant>> intervals) {
+        final int readAhead = Math.max(1, tokensSummaryConfiguration.getPipelinedHours());
+        final List<Future<List<LineItemsTokensSummary>>> reads = new ArrayList<>();
+        for (int i = 0; i < Math.min(readAhead, intervals.size()); i++) {
+            reads.add(readInterval(intervals.get(i)));
+        }
+        Future<Void> saved = Future.succeededFuture();
+        for (int i = 0; i < intervals.size(); i++) {
+            final int index = i;
+            saved = saved.compose(v -> reads.get(index).compose(summaries -> {
+                if (index + readAhead < intervals.size()) {
+                    reads.add(readInterval(intervals.get(index + readAhead)));
+                }
+                return saveInterval(intervals.get(index), summaries);
+            }));
+        }
+        return saved;
+    }
+
     private Future<List<LineItemsTokensSummary>> summarizeForGranularInterval(Instant startTime, Instant endTime) {
         Future<List<LineItemsTokensSummary>> future = Future.future();
         int count = INTERVAL_MINUTE / tokensSummaryConfiguration.getGranularSummaryMinute();
@@ -157,23 +197,18 @@ public class LineItemsTokensSummaryService {
             intervals.add(Pair.with(start, endTime));
         }
 
-        Future<List<LineItemsTokensSummary>> result = Future.succeededFuture(new ArrayList<>());
-        Map<String, LineItemsTokensSummary> liSummaries = new HashMap<>();
-        for (int i = 0; i < intervals.size(); i++) {
-            Pair<Instant, Instant> interval = intervals.get(i);
-            result = result.compose(rs -> {
-                accumulateGranularSummary(rs, liSummaries, startTime, endTime, createdAt);
-                return lineItemHistoryClient.findLineItemTokens(interval.getValue0(), interval.getValue1());
-            });
-        }
-        result.setHandler(async -> {
-            if (async.succeeded()) {
-                accumulateGranularSummary(async.result(), liSummaries, startTime, endTime, createdAt);
-                future.complete(new ArrayList(liSummaries.values()));
-            } else {
-                future.fail(async.cause());
-            }
-        });
+        final Map<String, LineItemsTokensSummary> liSummaries = new HashMap<>();
+        // windows are read concurrently, and accumulated as they complete
+        runConcurrently(intervals, tokensSummaryConfiguration.getMaxConcurrentQueries(),
+                interval -> lineItemHistoryClient.findLineItemTokens(interval.getValue0(), interval.getValue1()),
+                summaries -> accumulateGranularSummary(summaries, liSummaries, startTime, endTime, createdAt))
+                .setHandler(async -> {
+                    if (async.succeeded()) {
+                        future.complete(new ArrayList<>(liSummaries.values()));
+                    } else {
+                        future.fail(async.cause());
+                    }
+                });
         return future;
     }
 
@@ -200,14 +235,21 @@ public class LineItemsTokensSummaryService {
         }
     }
 
-    private Future<Void> summarizeForInterval(Pair<Instant, Instant> pair) {
-        Future<Void> future = Future.future();
-        final Instant startTime = pair.getValue0();
-        final Instant endTime = pair.getValue1();
-        String msg = String.format("Tokens Summary for interval: %s - %s", startTime, endTime);
-        logger.info(msg);
-        summarizeForGranularInterval(startTime, endTime)
-                .compose(tokensSummaryClient::saveLineItemsTokenSummary)
+    private Future<List<LineItemsTokensSummary>> readInterval(Pair<Instant, Instant> interval) {
+        logger.info("Reading tokens for interval: {0} - {1}", interval.getValue0(), interval.getValue1());
+        // hours not fully recorded, e.g. before the rollup was enabled or this instance elected, are read from history
+        final Future<List<LineItemsTokensSummary>> summaries = tokensSummaryConfiguration.getIncrementalRollup()
+                && tokensRollup.isComplete(interval.getValue0(), interval.getValue1())
+                ? tokensSummaryClient.sumPlanTokens(interval.getValue0(), interval.getValue1())
+                : summarizeForGranularInterval(interval.getValue0(), interval.getValue1());
+        return summaries.recover(ex -> intervalFailed(interval, ex));
+    }
+
+    private Future<Void> saveInterval(Pair<Instant, Instant> interval, List<LineItemsTokensSummary> summaries) {
+        final Instant endTime = interval.getValue1();
+        logger.info("Tokens Summary for interval: {0} - {1}", interval.getValue0(), endTime);
+        return leaderElection.fence()
+                .compose(fence -> tokensSummaryClient.saveLineItemsTokenSummary(summaries, fence))
                 .compose(rs -> {
                     SystemState systemState = SystemState.builder()
                             .tag(LINE_ITEM_HISTORY_SUMMARY_TS)
@@ -215,17 +257,23 @@ public class LineItemsTokensSummaryService {
                             .build();
                     return lineItemHistoryClient.updateSystemStateWithUTCTime(systemState);
                 })
-                .setHandler(ar -> {
-                    if (ar.succeeded()) {
-                        future.complete();
-                    } else {
-                        String error = "Error while " + msg;
-                        alertHttpClient.raiseEvent(Constants.GP_PLANNER_LINE_ITEMS_TOKENS_SUMMARY_SERVICE_ERROR,
-                                AlertPriority.HIGH, error);
-                        future.fail(ar.cause());
-                    }
-                });
-        return future;
+                .compose(rs -> tokensSummaryConfiguration.getIncrementalRollup()
+                        ? tokensSummaryClient.deletePlanTokens(interval.getValue0())
+                                .map(deleted -> {
+                                    tokensRollup.forget(endTime);
+                                    return deleted;
+                                })
+                        : Future.succeededFuture(rs))
+                .<Void>mapEmpty()
+                .recover(ex -> intervalFailed(interval, ex));
+    }
+
+    private <T> Future<T> intervalFailed(Pair<Instant, Instant> interval, Throwable cause) {
+        String error = String.format("Error while Tokens Summary for interval: %s - %s",
+                interval.getValue0(), interval.getValue1());
+        alertHttpClient.raiseEvent(Constants.GP_PLANNER_LINE_ITEMS_TOKENS_SUMMARY_SERVICE_ERROR,
+                AlertPriority.HIGH, error);
+        return Future.failedFuture(cause);
     }
 
     private List<Pair<Instant, Instant>> getIntervals(Instant startTime, Instant finalEndTime) {
@@ -253,12 +301,46 @@ public class LineItemsTokensSummaryService {
         return Instant.now().truncatedTo(ChronoUnit.HOURS);
     }
 
-    private <T> Future<T> chain(Future<T> init, List<Function<T, Future<T>>> handlers) {
-        Future<T> result = init;
-        for (Function<T, Future<T>> handler : handlers) {
-            result = result.compose(handler);
+    /**
+     * Runs the given task on each item, with at most {@code limit} tasks in flight, passing each result to
+     * the consumer as it completes.
+     */
+    private static <T, R> Future<Void> runConcurrently(List<T> items, int limit, Function<T, Future<R>> task,
+                                                      Consumer<R> consumer) {
+        final Future<Void> done = Future.future();
+        final Iterator<T> remaining = items.iterator();
+        final AtomicInteger running = new AtomicInteger();
+        for (int i = 0; i < Math.max(1, limit) && remaining.hasNext(); i++) {
+            runNext(remaining, running, task, consumer, done);
+        }
+        if (items.isEmpty()) {
+            done.complete();
+        }
+        return done;
+    }
+
+    private static <T, R> void runNext(Iterator<T> remaining, AtomicInteger running, Function<T, Future<R>> task,
+                                       Consumer<R> consumer, Future<Void> done) {
+        if (done.isComplete()) {
+            return;
         }
-        return result;
+        if (!remaining.hasNext()) {
+            if (running.get() == 0) {
+                done.complete();
+            }
+            return;
+        }
+        final T item = remaining.next();
+        running.incrementAndGet();
+        task.apply(item).setHandler(ar -> {
+            running.decrementAndGet();
+            if (ar.failed()) {
+                done.tryFail(ar.cause());
+                return;
+            }
+            consumer.accept(ar.result());
+            runNext(remaining, running, task, consumer, done);
+        });
     }
 
 }
@@ -0,0 +1,156 @@
+package org.prebid.pg.gp.server.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.prebid.pg.gp.server.model.AdminTracer;
+import org.prebid.pg.gp.server.model.GPConstants;
+import org.prebid.pg.gp.server.model.LineItem;
+import org.prebid.pg.gp.server.model.PlanRequest;
+import org.prebid.pg.gp.server.model.ReallocatedPlan;
+import org.prebid.pg.gp.server.model.Weightage;
+import org.prebid.pg.gp.server.util.Constants;
+import org.prebid.pg.gp.server.util.JsonUtil;
+import org.springframework.util.CollectionUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * Renders line items into the delivery plans of a PBS host, reallocating class 1 tokens
+ * according to the host's reallocated plan.
+ */
+public class PlanRenderer {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlanRenderer.class);
+
+    private final AdminTracer tracer;
+
+    private final Random random;
+
+    public PlanRenderer(AdminTracer tracer, Random random) {
+        this.tracer = Objects.requireNonNull(tracer);
+        this.random = Objects.requireNonNull(random);
+    }
+
+    /**
+     * Renders the given line items for a PBS host.
+     *
+     * @param reallocationMap reallocation weights of the host by unique line item id
+     * @param lineItems line items to render
+     * @param activeHosts number of active PBS hosts
+     * @param planRequest the PBS host
+     * @param copy true to render copies, leaving the line item json untouched so it can be rendered for other hosts
+     * @return rendered line items, empty if the host has no reallocated plan
+     */
+    public List<ObjectNode> render(Map<String, Double> reallocationMap, List<LineItem> lineItems,
+                                   int activeHosts, PlanRequest planRequest, boolean copy) {
+        List<ObjectNode> updatedLineItems = new ArrayList<>();
+        if (CollectionUtils.isEmpty(reallocationMap)) {
+            return updatedLineItems;
+        }
+
+        for (LineItem li : lineItems) {
+            ObjectNode liNode = copy ? li.getLineItemJson().deepCopy() : li.getLineItemJson();
+            JsonUtil.setValue(liNode, Constants.FIELD_EXT_LINE_ITEM_ID, li.getLineItemId());
+            JsonUtil.setValue(liNode, Constants.FIELD_LINE_ITEM_ID, li.getBidderCode() + "-" + li.getLineItemId());
+            JsonUtil.setValue(liNode, Constants.FIELD_SOURCE, li.getBidderCode());
+
+            checkAndUpdateDeliverySchedule(liNode, reallocationMap, li.getUniqueLineItemId(), activeHosts);
+            updatedLineItems.add(liNode);
+
+            String accountId = JsonUtil.optString(liNode, Constants.FIELD_ACCOUNT_ID);
+            if (tracer.checkActive()
+                    && tracer.matchLineItemId(li.getLineItemId())
+                    && tracer.matchBidderCode(li.getBidderCode())
+                    && tracer.matchAccount(accountId)) {
+                logger.info("{0}::{1}::{2}", GPConstants.TRACER, planRequest, liNode.toString());
+            }
+        }
+        return updatedLineItems;
+    }
+
+    /**
+     * Gets the reallocation weights of the given plan by unique line item id.
+     *
+     * @param reallocatedPlan reallocated plan of a PBS host
+     * @return weights by unique line item id, empty if there is no plan
+     */
+    public Map<String, Double> getReallocationMap(ReallocatedPlan reallocatedPlan) {
+        if (reallocatedPlan == null || reallocatedPlan.isEmpty()) {
+            return new HashMap<>();
+        }
+        return reallocatedPlan.getReallocationWeights().getWeights().stream()
+                .collect(Collectors.toMap(Weightage::getUniqueLineItemId, Weightage::getWeight));
+    }
+
+    private void checkAndUpdateDeliverySchedule(
+            ObjectNode liNode, Map<String, Double> reallocationMap, String uniqueLineItemId, int activeHosts) {
+
+        JsonNode schedulesJson = liNode.get(Constants.FIELD_DELIVERY_SCHEDULES);
+        if (!(schedulesJson instanceof ArrayNode)) {
+            return;
+        }
+
+        ArrayNode scheduleArray = (ArrayNode) schedulesJson;
+        if (scheduleArray.size() == 0) {
+            return;
+        }
+
+        Iterator<JsonNode> iterator = scheduleArray.elements();
+        while (iterator.hasNext()) {
+            JsonNode schedule = iterator.next();
+            if (schedule instanceof ObjectNode) {
+                ObjectNode scheduleObj = (ObjectNode) schedule;
+                JsonNode tokensJson = scheduleObj.get(Constants.FIELD_TOKENS);
+                if (tokensJson instanceof ArrayNode) {
+                    ArrayNode tokensArray = (ArrayNode) tokensJson;
+                    for (JsonNode token : tokensArray) {
+                        ObjectNode tokenNode = (ObjectNode) token;
+                        Integer clazz = JsonUtil.optInt(tokenNode, Constants.FIELD_CLASS);
+
+                        if (clazz == 1) {
+                            Integer oldTokens = JsonUtil.optInt(tokenNode, Constants.FIELD_TOTAL);
+                            if (oldTokens != null) {
+                                int reallocatedTokens = updatePlanTokens(oldTokens, reallocationMap,
+                                        uniqueLineItemId, activeHosts);
+                                JsonUtil.setValue(tokenNode, Constants.FIELD_TOTAL, reallocatedTokens);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    int updatePlanTokens(int planTokens, Map<String, Double> reallocationMap, String uniqueLineItemId,
+                         int activeHosts) {
+        if (planTokens == 0) {
+            return 0;
+        }
+        int intTokens = planTokens;
+        double tokens = planTokens;
+        if (reallocationMap.containsKey(uniqueLineItemId)) {
+            // already reallocated
+            tokens = (double) planTokens * reallocationMap.get(uniqueLineItemId) / 100;
+            intTokens = (int) tokens;
+        } else if (activeHosts > 0) {
+            // new line item without reallocation
+            tokens = (double) planTokens / activeHosts;
+            intTokens = (int) tokens;
+        }
+        if (tokens - intTokens < 0.00001) {
+            return intTokens;
+        }
+        return random.nextDouble() <= (tokens - intTokens) ? (intTokens + 1) : intTokens;
+    }
+
+}
@@ -0,0 +1,312 @@
+package org.prebid.pg.gp.server.services;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.prebid.pg.gp.server.jdbc.ChangeVersionClient;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.model.ReallocatedPlan;
+
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A tracker of line item catalog and per host plan versions.
+ * <p>
+ * The plan version of a PBS host is composed of the catalog version and the version of the host's reallocated plan.
+ * Both are the shared change versions of {@link ChangeVersionClient}, bumped in the transactions writing line
+ * items and reallocated plans, so all general planner instances hand out the same versions for the same data,
+ * and versions survive a restart.
+ * <p>
+ * Plan requests can park until the version of their host advances. Parked requests hold no thread and no
+ * database connection, just a timer and an entry in the waiter registry.
+ */
+public class PlanVersionTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlanVersionTracker.class);
+
+    public static final String PLAN_VERSION_HEADER = "pg-plan-version";
+
+    private final Vertx vertx;
+
+    private final ChangeVersionClient changeVersionClient;
+
+    private volatile boolean seeded;
+
+    private volatile long baseVersion;
+
+    private volatile long catalogVersion;
+
+    private final AtomicInteger catalogChangesInFlight = new AtomicInteger();
+
+    private final ConcurrentMap<String, Long> hostVersions = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Integer> hostWeightsHashes = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Set<Waiter>> waiters = new ConcurrentHashMap<>();
+
+    private final AtomicInteger parked = new AtomicInteger();
+
+    public PlanVersionTracker(Vertx vertx, ChangeVersionClient changeVersionClient, Metrics metrics) {
+        this.vertx = Objects.requireNonNull(vertx);
+        this.changeVersionClient = Objects.requireNonNull(changeVersionClient);
+        // until seeded, versions are negative and derived from the start-up time, so they never match
+        // the shared versions, nor the versions handed out before a restart
+        this.baseVersion = -System.currentTimeMillis();
+        this.catalogVersion = baseVersion;
+        metrics.registerGauge("plan-versions.parked", parked::get);
+    }
+
+    /**
+     * Gets the current plan version of the given host.
+     *
+     * @param hostKey unique instance id of the PBS host
+     * @return the version
+     */
+    public String currentVersion(String hostKey) {
+        return catalogVersion + "." + hostVersions.getOrDefault(hostKey, baseVersion);
+    }
+
+    public long getCatalogVersion() {
+        return catalogVersion;
+    }
+
+    /**
+     * Seeds the versions from the shared change versions read at start-up. The plan version of hosts whose plan
+     * was not seen changing yet is the reallocated plans version read.
+     *
+     * @param lineItemsVersion the change version of line items
+     * @param plansVersion the change version of reallocated plans
+     */
+    public void seed(long lineItemsVersion, long plansVersion) {
+        if (seeded) {
+            return;
+        }
+        seeded = true;
+        baseVersion = plansVersion;
+        advanceCatalog(lineItemsVersion);
+        wakeUpAll();
+    }
+
+    /**
+     * Marks line items as being written. Versions handed out while a write is in flight are never deemed stable.
+     */
+    public void beginCatalogChange() {
+        catalogChangesInFlight.incrementAndGet();
+    }
+
+    /**
+     * Advances the catalog version to the line items version last committed by this instance after line items
+     * were written, whether successfully or not, and wakes up all parked requests if it advanced.
+     */
+    public void endCatalogChange() {
+        final boolean advanced = advanceCatalog(changeVersionClient.getLastCommittedVersion(
+                ChangeVersionClient.LINE_ITEMS));
+        catalogChangesInFlight.decrementAndGet();
+        if (advanced) {
+            wakeUpAll();
+        }
+    }
+
+    /**
+     * Advances the catalog version to the line items version written by another instance,
+     * and wakes up all parked requests if it advanced.
+     *
+     * @param lineItemsVersion the change version of line items
+     */
+    public void catalogChanged(long lineItemsVersion) {
+        if (advanceCatalog(lineItemsVersion)) {
+            wakeUpAll();
+        }
+    }
+
+    /**
+     * Checks that no line items were written since the given catalog version was handed out,
+     * i.e. line items read in between belong to that version.
+     *
+     * @param version the catalog version
+     * @return true if the catalog is stable at the given version
+     */
+    public boolean isCatalogStable(long version) {
+        return catalogChangesInFlight.get() == 0 && catalogVersion == version;
+    }
+
+    /**
+     * Advances the plan versions of the hosts whose weights changed in the given plans, just written by this
+     * instance, to the reallocated plans version last committed by this instance and wakes up their parked requests.
+     *
+     * @param reallocatedPlans newly stored reallocated plans
+     */
+    public void plansChanged(Collection<ReallocatedPlan> reallocatedPlans) {
+        plansChanged(reallocatedPlans,
+                changeVersionClient.getLastCommittedVersion(ChangeVersionClient.REALLOCATED_PLANS));
+    }
+
+    /**
+     * Advances the plan versions of the hosts whose weights changed in the given plans to the given reallocated
+     * plans version and wakes up their parked requests.
+     *
+     * @param reallocatedPlans newly stored reallocated plans
+     * @param plansVersion the change version of reallocated plans the plans were read or written at
+     */
+    public void plansChanged(Collection<ReallocatedPlan> reallocatedPlans, long plansVersion) {
+        for (ReallocatedPlan plan : reallocatedPlans) {
+            if (plan.isEmpty()) {
+                continue;
+            }
+            final String hostKey = plan.getUniqueInstanceId();
+            final Integer weightsHash = Objects.hashCode(plan.getReallocationWeights());
+            if (weightsHash.equals(hostWeightsHashes.put(hostKey, weightsHash))) {
+                // same weights stored again, the host's plan did not change
+                continue;
+            }
+            hostVersions.put(hostKey, plansVersion);
+            wakeUp(hostKey);
+        }
+    }
+
+    /**
+     * Parks the caller until the plan version of the given host differs from the {@code knownVersion}.
+     * The {@code handler} is called exactly once on the caller's context, with {@code true} if the version
+     * advanced or {@code false} on timeout, unless the returned waiter is cancelled first.
+     *
+     * @param hostKey unique instance id of the PBS host
+     * @param knownVersion the version the caller already has
+     * @param timeoutMs maximum time to park in milliseconds
+     * @param handler the handler to call
+     * @return the parked waiter
+     */
+    public Waiter awaitChange(String hostKey, String knownVersion, long timeoutMs, Handler<Boolean> handler) {
+        final Waiter waiter = new Waiter(hostKey, vertx.getOrCreateContext(), handler);
+        waiters.compute(hostKey, (key, set) -> {
+            final Set<Waiter> hostWaiters = set == null ? ConcurrentHashMap.newKeySet() : set;
+            hostWaiters.add(waiter);
+            return hostWaiters;
+        });
+        parked.incrementAndGet();
+        waiter.timerId = vertx.setTimer(Math.max(1, timeoutMs), id -> complete(waiter, false));
+
+        // re-check after registering so an advance racing with parking is not missed
+        if (!currentVersion(hostKey).equals(knownVersion)) {
+            complete(waiter, true);
+        }
+        return waiter;
+    }
+
+    /**
+     * Removes the waiter without calling its handler, e.g. when the client went away.
+     *
+     * @param waiter the waiter to cancel
+     */
+    public void cancel(Waiter waiter) {
+        if (waiter.done.compareAndSet(false, true)) {
+            remove(waiter);
+        }
+    }
+
+    /**
+     * Extracts the catalog version from a plan version.
+     *
+     * @param version the plan version
+     * @return the catalog version, or {@code null} if the plan version is malformed
+     */
+    public static Long catalogVersionOf(String version) {
+        final int separator = version == null ? -1 : version.indexOf('.');
+        if (separator <= 0) {
+            return null;
+        }
+        try {
+            return Long.parseLong(version.substring(0, separator));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks that two plan versions share the same host plan version.
+     *
+     * @param version a plan version
+     * @param otherVersion another plan version
+     * @return true if the reallocated plans of both versions are the same
+     */
+    public static boolean isSameHostPlan(String version, String otherVersion) {
+        final int separator = version == null ? -1 : version.indexOf('.');
+        final int otherSeparator = otherVersion == null ? -1 : otherVersion.indexOf('.');
+        return separator > 0 && otherSeparator > 0
+                && version.substring(separator).equals(otherVersion.substring(otherSeparator));
+    }
+
+    public int getParked() {
+        return parked.get();
+    }
+
+    private synchronized boolean advanceCatalog(long lineItemsVersion) {
+        if (lineItemsVersion <= catalogVersion) {
+            return false;
+        }
+        catalogVersion = lineItemsVersion;
+        logger.debug("Line item catalog version advanced to {0}", catalogVersion);
+        return true;
+    }
+
+    private void wakeUpAll() {
+        for (String hostKey : waiters.keySet()) {
+            wakeUp(hostKey);
+        }
+    }
+
+    private void wakeUp(String hostKey) {
+        final Set<Waiter> hostWaiters = waiters.get(hostKey);
+        if (hostWaiters != null) {
+            for (Waiter waiter : hostWaiters) {
+                complete(waiter, true);
+            }
+        }
+    }
+
+    private void complete(Waiter waiter, boolean changed) {
+        if (waiter.done.compareAndSet(false, true)) {
+            remove(waiter);
+            waiter.context.runOnContext(v -> waiter.handler.handle(changed));
+        }
+    }
+
+    private void remove(Waiter waiter) {
+        vertx.cancelTimer(waiter.timerId);
+        waiters.computeIfPresent(waiter.hostKey, (key, set) -> {
+            set.remove(waiter);
+            return set.isEmpty() ? null : set;
+        });
+        parked.decrementAndGet();
+    }
+
+    /**
+     * A parked plan request.
+     */
+    public static class Waiter {
+
+        private final String hostKey;
+
+        private final Context context;
+
+        private final Handler<Boolean> handler;
+
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        private volatile long timerId = -1;
+
+        Waiter(String hostKey, Context context, Handler<Boolean> handler) {
+            this.hostKey = hostKey;
+            this.context = context;
+            this.handler = handler;
+        }
+    }
+
+}
@@ -12,6 +12,8 @@ import io.vertx.ext.sql.UpdateResult;
 import org.prebid.pg.gp.server.http.AlertProxyHttpClient;
 import org.prebid.pg.gp.server.http.CircuitBreakerSecuredPlannerAdapterHttpClient;
 import org.prebid.pg.gp.server.jdbc.CircuitBreakerSecuredPlannerDataAccessClient;
+import org.prebid.pg.gp.server.jdbc.LeaderLeaseFence;
+import org.prebid.pg.gp.server.jfr.PlannerAdapterRefreshEvent;
 import org.prebid.pg.gp.server.metric.Metrics;
 import org.prebid.pg.gp.server.model.AdminTracer;
 import org.prebid.pg.gp.server.model.AlertPriority;
@@ -64,6 +66,12 @@ public class PlannerAdapterService {
 
     private final AlertProxyHttpClient alertProxyHttpClient;
 
+    private final PlanVersionTracker planVersionTracker;
+
+    private final LeaderElection leaderElection;
+
+    private final LineItemsTokensRollup tokensRollup;
+
     private int futurePlanHours;
 
     private Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
@@ -78,7 +86,10 @@ public class PlannerAdapterService {
             Metrics metrics,
             AdminTracer adminTracer,
             Shutdown shutdown,
-            AlertProxyHttpClient alertProxyHttpClient
+            AlertProxyHttpClient alertProxyHttpClient,
+            PlanVersionTracker planVersionTracker,
+            LeaderElection leaderElection,
+            LineItemsTokensRollup tokensRollup
     ) {
         this.vertx = Objects.requireNonNull(vertx);
         this.plannerAdapterConfig = Objects.requireNonNull(plannerAdapterConfig);
@@ -91,6 +102,9 @@ public class PlannerAdapterService {
         this.metrics = Objects.requireNonNull(metrics);
         this.alertProxyHttpClient = Objects.requireNonNull(alertProxyHttpClient);
         this.shutdown = Objects.requireNonNull(shutdown);
+        this.planVersionTracker = Objects.requireNonNull(planVersionTracker);
+        this.leaderElection = Objects.requireNonNull(leaderElection);
+        this.tokensRollup = Objects.requireNonNull(tokensRollup);
 
         logger.info(plannerAdapterConfig.toString());
     }
@@ -104,11 +118,20 @@ public class PlannerAdapterService {
             return;
         }
         vertx.setTimer(plannerAdapterConfig.getInitialDelaySec() * 1000L, id -> {
-            refreshPlans();
-            vertx.setPeriodic(plannerAdapterConfig.getRefreshPeriodSec() * 1000L, timerId -> refreshPlans());
+            refreshPlansIfLeader();
+            vertx.setPeriodic(plannerAdapterConfig.getRefreshPeriodSec() * 1000L, timerId -> refreshPlansIfLeader());
         });
     }
 
+    private void refreshPlansIfLeader() {
+        if (!leaderElection.isLeader()) {
+            logger.debug("PlannerAdapterService::Not the leader, skipping refresh of {0}",
+                    plannerAdapterConfig.getName());
+            return;
+        }
+        refreshPlans();
+    }
+
     public Future<UpdateResult> refreshPlans() {
         return refreshPlans(null);
     }
@@ -133,11 +156,21 @@ public class PlannerAdapterService {
                 .val(StringUtils.isEmpty(sinceTime) ? now.toString() : sinceTime)
                 .build();
         Instant updatedAt = StringUtils.isEmpty(sinceTime) ? now : Instant.parse(sinceTime);
+        final PlannerAdapterRefreshEvent refreshEvent =
+                PlannerAdapterRefreshEvent.start(plannerAdapterConfig.getName());
         return getPlans(sinceTime, updatedAt)
+                .map(lineItemCount -> {
+                    refreshEvent.end(lineItemCount, true);
+                    return lineItemCount;
+                })
+                .recover(exception -> {
+                    refreshEvent.end(0, false);
+                    return Future.failedFuture(exception);
+                })
                 .compose(v -> plannerDataAccessClient.updateSystemStateWithUTCTime(systemState));
     }
 
-    private Future<Void> getPlans(String since, Instant updatedAt) {
+    private Future<Integer> getPlans(String since, Instant updatedAt) {
         String url = plannerAdapterConfig.getUrl() + queryStrings(since);
         logger.info("URL=" + url);
         final long start = System.currentTimeMillis();
@@ -163,7 +196,7 @@ public class PlannerAdapterService {
         return String.format("?since=%s&hours=%s", since, futurePlanHours);
     }
 
-    private Future<Void> processHttpResponse(HttpResponseContainer httpResponseContainer,
+    private Future<Integer> processHttpResponse(HttpResponseContainer httpResponseContainer,
             long startTime, Instant now) {
         final int statusCode = httpResponseContainer.getStatusCode();
 
@@ -188,7 +221,7 @@ public class PlannerAdapterService {
                 logger.warn("Empty plans::{0}::{1}", statusCode, plannerAdapterConfig.getUrl());
                 metrics.updateTimer(metricName(PROCESSING_TIME), System.currentTimeMillis() - startTime);
                 metrics.incCounter(metricName("line-item-count"), 0);
-                return Future.succeededFuture();
+                return Future.succeededFuture(0);
             }
         }
 
@@ -254,23 +287,30 @@ public class PlannerAdapterService {
             return Future.failedFuture("Error parsing json plans");
         }
 
-        Future<Void> future = Future.future();
-        if (!lineItems.isEmpty()) {
-            plannerDataAccessClient.updateLineItems(lineItems, batchSize)
-                    .setHandler(ar -> {
-                        if (ar.succeeded()) {
-                            logger.info("Saved {0} line items to DB.", lineItems.size());
-                            metrics.updateTimer(metricName(PROCESSING_TIME), System.currentTimeMillis() - startTime);
-                            future.complete();
-                        } else {
-                            future.fail("Received plans are all empty.");
-                        }
-                    });
-        } else {
+        if (lineItems.isEmpty()) {
             metrics.updateTimer(metricName(PROCESSING_TIME), System.currentTimeMillis() - startTime);
-            return Future.succeededFuture();
+            return Future.succeededFuture(0);
         }
 
+        return leaderElection.fence().compose(fence -> saveLineItems(lineItems, startTime, fence));
+    }
+
+    private Future<Integer> saveLineItems(List<LineItem> lineItems, long startTime, LeaderLeaseFence fence) {
+        Future<Integer> future = Future.future();
+        planVersionTracker.beginCatalogChange();
+        plannerDataAccessClient.updateLineItems(lineItems, batchSize, fence)
+                .setHandler(ar -> {
+                    planVersionTracker.endCatalogChange();
+                    if (ar.succeeded()) {
+                        logger.info("Saved {0} line items to DB.", lineItems.size());
+                        tokensRollup.record(lineItems).setHandler(recorded -> {
+                            metrics.updateTimer(metricName(PROCESSING_TIME), System.currentTimeMillis() - startTime);
+                            future.complete(lineItems.size());
+                        });
+                    } else {
+                        future.fail("Received plans are all empty.");
+                    }
+                });
         return future;
     }
 
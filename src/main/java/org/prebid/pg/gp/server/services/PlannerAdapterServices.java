@@ -45,6 +45,9 @@ public class PlannerAdapterServices {
      * @param adminTracer an administration tracer
      * @param shutdown server shutdown status object
      * @param alertProxyHttpClient a http client to send system alerts to
+     * @param planVersionTracker a tracker of line item catalog versions
+     * @param leaderElection the election of the instance that retrieves line items
+     * @param tokensRollup the accumulator of the tokens of retrieved line items
      */
     public void initialize(
             String hostName,
@@ -54,7 +57,10 @@ public class PlannerAdapterServices {
             Metrics metrics,
             AdminTracer adminTracer,
             Shutdown shutdown,
-            AlertProxyHttpClient alertProxyHttpClient
+            AlertProxyHttpClient alertProxyHttpClient,
+            PlanVersionTracker planVersionTracker,
+            LeaderElection leaderElection,
+            LineItemsTokensRollup tokensRollup
     ) {
         Objects.requireNonNull(hostName);
         Objects.requireNonNull(paCfgs);
@@ -64,6 +70,9 @@ public class PlannerAdapterServices {
         Objects.requireNonNull(adminTracer);
         Objects.requireNonNull(shutdown);
         Objects.requireNonNull(alertProxyHttpClient);
+        Objects.requireNonNull(planVersionTracker);
+        Objects.requireNonNull(leaderElection);
+        Objects.requireNonNull(tokensRollup);
 
         for (PlannerAdapterConfiguration paCfg : paCfgs.getPlanners()) {
             PlannerAdapterService service = new PlannerAdapterService(
@@ -76,7 +85,10 @@ public class PlannerAdapterServices {
                     metrics,
                     adminTracer,
                     shutdown,
-                    alertProxyHttpClient
+                    alertProxyHttpClient,
+                    planVersionTracker,
+                    leaderElection,
+                    tokensRollup
             );
             plannerAdapterServiceList.add(service);
         }
@@ -0,0 +1,103 @@
+package org.prebid.pg.gp.server.services;
+
+import org.prebid.pg.gp.server.breaker.AdmissionController;
+import org.prebid.pg.gp.server.spring.config.app.PollHintConfiguration;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * A service to compute when a PBS host should next poll the general planner.
+ * <p>
+ * Each host gets a stable offset derived from its identity, so polls spread evenly over the interval.
+ * Plan fetches are aligned right after the next host reallocation cycle is expected to finish,
+ * and all hints are stretched as the load on the general planner grows.
+ */
+public class PollHintService {
+
+    public static final String NEXT_POLL_HEADER = "pg-next-poll-sec";
+
+    private final PollHintConfiguration config;
+
+    private final HostReallocationService reallocationService;
+
+    private final AdmissionController admissionController;
+
+    public PollHintService(
+            PollHintConfiguration config,
+            HostReallocationService reallocationService,
+            AdmissionController admissionController) {
+        this.config = Objects.requireNonNull(config);
+        this.reallocationService = Objects.requireNonNull(reallocationService);
+        this.admissionController = Objects.requireNonNull(admissionController);
+    }
+
+    /**
+     * Computes the delay before the host should fetch plans again.
+     *
+     * @param vendor PBS hosting vendor
+     * @param region PBS region
+     * @param instanceId PBS instance identifier
+     * @param now current time
+     * @return delay in seconds, or {@code null} if hints are disabled
+     */
+    public Integer nextPlansPollSec(String vendor, String region, String instanceId, Instant now) {
+        if (!config.getEnabled()) {
+            return null;
+        }
+        final long nowMs = now.toEpochMilli();
+        final long earliest = nowMs + config.getPlansMinDelaySec() * 1000L;
+        final long periodMs = Math.max(1, reallocationService.getRefreshPeriodSec()) * 1000L;
+        final Instant nextCycleFinish = reallocationService.nextCycleExpectedFinishAt();
+
+        long target = (nextCycleFinish == null ? nowMs : nextCycleFinish.toEpochMilli())
+                + config.getPlansSettleSec() * 1000L
+                + offset(vendor, region, instanceId, config.getPlansSpreadSec() * 1000L);
+        if (target < earliest) {
+            target += ((earliest - target + periodMs - 1) / periodMs) * periodMs;
+        }
+        return toSeconds(target - nowMs + loadBackoffMs(),
+                config.getPlansMinDelaySec(), config.getPlansMaxDelaySec());
+    }
+
+    /**
+     * Computes the delay before the host should register again.
+     *
+     * @param vendor PBS hosting vendor
+     * @param region PBS region
+     * @param instanceId PBS instance identifier
+     * @param now current time
+     * @return delay in seconds, or {@code null} if hints are disabled
+     */
+    public Integer nextRegistrationSec(String vendor, String region, String instanceId, Instant now) {
+        if (!config.getEnabled()) {
+            return null;
+        }
+        final long nowMs = now.toEpochMilli();
+        final long intervalMs = config.getRegistrationIntervalSec() * 1000L;
+        long slot = Math.floorDiv(nowMs, intervalMs) * intervalMs + offset(vendor, region, instanceId, intervalMs);
+        if (slot <= nowMs) {
+            slot += intervalMs;
+        }
+        return toSeconds(slot - nowMs + loadBackoffMs(), 1,
+                config.getRegistrationIntervalSec() + config.getMaxLoadBackoffSec());
+    }
+
+    private long loadBackoffMs() {
+        return Math.round(admissionController.getUtilization() * config.getMaxLoadBackoffSec() * 1000L);
+    }
+
+    static long offset(String vendor, String region, String instanceId, long windowMs) {
+        if (windowMs <= 0) {
+            return 0;
+        }
+        final int hash = String.format("%s^^%s^^%s", vendor, region, instanceId).hashCode() * 0x9E3779B9;
+        return Math.floorMod(Integer.toUnsignedLong(hash), windowMs);
+    }
+
+    private static int toSeconds(long delayMs, int minSec, int maxSec) {
+        final long sec = (delayMs + 999) / 1000;
+        return (int) Math.max(minSec, Math.min(maxSec, sec));
+    }
+
+}
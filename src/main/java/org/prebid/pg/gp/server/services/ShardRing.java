@@ -0,0 +1,70 @@
+package org.prebid.pg.gp.server.services;
+
+import org.prebid.pg.gp.server.model.GpInstance;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * An immutable consistent-hash ring of general planner instances.
+ * <p>
+ * Each instance is placed on the ring at a number of virtual nodes, so keys spread evenly and only about
+ * 1/N of the keys move when an instance joins or leaves.
+ */
+public class ShardRing {
+
+    private final TreeMap<Long, GpInstance> ring = new TreeMap<>();
+
+    private final List<GpInstance> instances;
+
+    public ShardRing(Collection<GpInstance> instances, int virtualNodes) {
+        this.instances = Collections.unmodifiableList(instances.stream()
+                .sorted((a, b) -> a.getInstanceId().compareTo(b.getInstanceId()))
+                .collect(Collectors.toList()));
+        for (GpInstance instance : this.instances) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(instance.getInstanceId() + "#" + i), instance);
+            }
+        }
+    }
+
+    /**
+     * Gets the instance owning the given key.
+     *
+     * @param key the key, e.g. the unique instance id of a PBS host
+     * @return the owner, or {@code null} if the ring is empty
+     */
+    public GpInstance ownerOf(String key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        final Map.Entry<Long, GpInstance> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    public List<GpInstance> getInstances() {
+        return instances;
+    }
+
+    static long hash(String key) {
+        final byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        long hash = 0;
+        for (int i = 0; i < 8; i++) {
+            hash = (hash << 8) | (digest[i] & 0xFF);
+        }
+        return hash;
+    }
+
+}
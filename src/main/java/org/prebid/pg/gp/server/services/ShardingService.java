@@ -0,0 +1,182 @@
+package org.prebid.pg.gp.server.services;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.prebid.pg.gp.server.jdbc.InstanceHeartbeatClient;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.model.GpInstance;
+import org.prebid.pg.gp.server.model.Shutdown;
+import org.prebid.pg.gp.server.spring.config.app.ShardingConfiguration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A service to shard PBS hosts across the general planner instances sharing the database.
+ * <p>
+ * Every instance records a heartbeat periodically and rebuilds a consistent-hash ring of the live instances,
+ * so each PBS host is served by one instance, which holds its parked long-poll requests. This instance is
+ * always on its own ring, and the last ring is kept while the database is not reachable.
+ * When disabled, this instance owns all the hosts.
+ */
+public class ShardingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardingService.class);
+
+    // heartbeats older than this many TTLs are left behind by crashed instances
+    private static final int STALE_TTL_MULTIPLIER = 10;
+
+    private final Vertx vertx;
+
+    private final ShardingConfiguration config;
+
+    private final InstanceHeartbeatClient heartbeatClient;
+
+    private final Metrics metrics;
+
+    private final Shutdown shutdown;
+
+    private final GpInstance self;
+
+    private volatile ShardRing ring;
+
+    private volatile boolean refreshing;
+
+    private boolean removed;
+
+    private long timerId = -1;
+
+    public ShardingService(
+            Vertx vertx,
+            ShardingConfiguration config,
+            InstanceHeartbeatClient heartbeatClient,
+            Metrics metrics,
+            Shutdown shutdown,
+            GpInstance self
+    ) {
+        this.vertx = Objects.requireNonNull(vertx);
+        this.config = Objects.requireNonNull(config);
+        this.heartbeatClient = Objects.requireNonNull(heartbeatClient);
+        this.metrics = Objects.requireNonNull(metrics);
+        this.shutdown = Objects.requireNonNull(shutdown);
+        this.self = Objects.requireNonNull(self);
+        this.ring = new ShardRing(Collections.singletonList(self), config.getVirtualNodes());
+
+        metrics.registerGauge(metricName("live-instances"), () -> ring.getInstances().size());
+        logger.info("{0} with {1}", config, self);
+    }
+
+    /**
+     * Starts recording heartbeats and refreshing the ring of live instances.
+     */
+    public void initialize() {
+        if (!config.getEnabled()) {
+            logger.info("Sharding is disabled, this instance serves all PBS hosts");
+            return;
+        }
+        refresh();
+        timerId = vertx.setPeriodic(config.getHeartbeatIntervalSec() * 1000L, id -> refresh());
+    }
+
+    public boolean isEnabled() {
+        return config.getEnabled();
+    }
+
+    public GpInstance getSelf() {
+        return self;
+    }
+
+    /**
+     * Checks whether this instance serves the given PBS host.
+     *
+     * @param hostKey unique instance id of the PBS host
+     * @return true if this instance owns the host
+     */
+    public boolean isOwner(String hostKey) {
+        return !config.getEnabled() || self.equals(ring.ownerOf(hostKey));
+    }
+
+    /**
+     * Gets the instance serving the given PBS host.
+     *
+     * @param hostKey unique instance id of the PBS host
+     * @return the owner
+     */
+    public GpInstance ownerOf(String hostKey) {
+        return config.getEnabled() ? ring.ownerOf(hostKey) : self;
+    }
+
+    /**
+     * Stops recording heartbeats and removes the heartbeat of this instance, so the others take over its hosts
+     * right away.
+     */
+    public void close() {
+        if (timerId != -1) {
+            vertx.cancelTimer(timerId);
+            timerId = -1;
+        }
+        if (config.getEnabled()) {
+            remove();
+        }
+    }
+
+    void refresh() {
+        if (refreshing) {
+            return;
+        }
+        if (shutdown.getInitiating() == Boolean.TRUE) {
+            remove();
+            return;
+        }
+        removed = false;
+        refreshing = true;
+        heartbeatClient.beat(self)
+                .compose(updateResult -> heartbeatClient.findLive(config.getInstanceTtlSec()))
+                .map(instances -> {
+                    updateRing(instances);
+                    return instances;
+                })
+                .compose(instances -> heartbeatClient.removeStale(config.getInstanceTtlSec() * STALE_TTL_MULTIPLIER))
+                .setHandler(ar -> {
+                    refreshing = false;
+                    if (ar.failed()) {
+                        // keep the last ring, hosts stay where they are until the database is back
+                        metrics.incCounter(metricName("refresh-failed"));
+                    }
+                });
+    }
+
+    ShardRing getRing() {
+        return ring;
+    }
+
+    private void updateRing(List<GpInstance> instances) {
+        final List<GpInstance> live = new ArrayList<>(instances);
+        if (!live.contains(self)) {
+            live.add(self);
+        }
+        final ShardRing current = ring;
+        final ShardRing next = new ShardRing(live, config.getVirtualNodes());
+        if (!next.getInstances().equals(current.getInstances())) {
+            ring = next;
+            logger.info("Sharding ring changed to {0}", next.getInstances());
+            metrics.incCounter(metricName("ring-changed"));
+        }
+    }
+
+    private void remove() {
+        if (removed) {
+            return;
+        }
+        removed = true;
+        heartbeatClient.remove(self.getInstanceId());
+    }
+
+    private String metricName(String tag) {
+        return String.format("sharding.%s", tag);
+    }
+
+}
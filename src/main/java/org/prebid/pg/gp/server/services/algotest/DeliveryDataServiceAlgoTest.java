@@ -11,6 +11,7 @@ import org.prebid.pg.gp.server.metric.Metrics;
 import org.prebid.pg.gp.server.model.AdminTracer;
 import org.prebid.pg.gp.server.model.Shutdown;
 import org.prebid.pg.gp.server.services.DeliveryDataService;
+import org.prebid.pg.gp.server.services.LeaderElection;
 import org.prebid.pg.gp.server.services.StatsCache;
 import org.prebid.pg.gp.server.spring.config.app.DeliveryDataConfiguration;
 
@@ -31,6 +32,7 @@ public class DeliveryDataServiceAlgoTest extends DeliveryDataService {
             Shutdown shutdown,
             AlertProxyHttpClient alertHttpClient,
             StatsCache statsCache,
+            LeaderElection leaderElection,
             int startTimeInPastSec
     ) {
         super(
@@ -43,7 +45,8 @@ public class DeliveryDataServiceAlgoTest extends DeliveryDataService {
                 adminTracer,
                 shutdown,
                 alertHttpClient,
-                statsCache
+                statsCache,
+                leaderElection
         );
         setStartTimeInPastSec(startTimeInPastSec);
     }
@@ -5,11 +5,14 @@ import io.vertx.core.Future;
 import io.vertx.core.Vertx;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
+import org.prebid.pg.gp.server.breaker.ComputeExecutor;
 import org.prebid.pg.gp.server.jdbc.CircuitBreakerSecuredPlannerDataAccessClient;
 import org.prebid.pg.gp.server.metric.Metrics;
 import org.prebid.pg.gp.server.model.Shutdown;
 import org.prebid.pg.gp.server.services.HostBasedTokenReallocation;
 import org.prebid.pg.gp.server.services.HostReallocationService;
+import org.prebid.pg.gp.server.services.LeaderElection;
+import org.prebid.pg.gp.server.services.PlanVersionTracker;
 import org.prebid.pg.gp.server.services.StatsCache;
 import org.prebid.pg.gp.server.spring.config.app.HostReallocationConfiguration;
 
@@ -28,7 +31,10 @@ public class HostAllocationServiceAlgoTest extends HostReallocationService {
             CircuitBreakerSecuredPlannerDataAccessClient circuitBreakerSecuredPlannerDataAccessClient,
             HostBasedTokenReallocation hostBasedReallocation,
             Shutdown shutdown,
-            StatsCache statsCache
+            StatsCache statsCache,
+            PlanVersionTracker planVersionTracker,
+            ComputeExecutor computeExecutor,
+            LeaderElection leaderElection
     ) {
         super(
                 vertx,
@@ -38,7 +44,10 @@ public class HostAllocationServiceAlgoTest extends HostReallocationService {
                 hostBasedReallocation,
                 new Metrics(new MetricRegistry()),
                 shutdown,
-                statsCache
+                statsCache,
+                planVersionTracker,
+                computeExecutor,
+                leaderElection
         );
     }
 
@@ -7,7 +7,10 @@ import org.prebid.pg.gp.server.jdbc.CircuitBreakerSecuredPlannerDataAccessClient
 import org.prebid.pg.gp.server.metric.Metrics;
 import org.prebid.pg.gp.server.model.AdminTracer;
 import org.prebid.pg.gp.server.model.Shutdown;
+import org.prebid.pg.gp.server.services.LeaderElection;
+import org.prebid.pg.gp.server.services.LineItemsTokensRollup;
 import org.prebid.pg.gp.server.services.PlannerAdapterService;
+import org.prebid.pg.gp.server.services.PlanVersionTracker;
 import org.prebid.pg.gp.server.services.PlannerAdapterServices;
 import org.prebid.pg.gp.server.spring.config.app.PlannerAdapterConfigurations;
 
@@ -28,6 +31,9 @@ public class PlannerAdapterServicesAlgoTest extends PlannerAdapterServices {
             AdminTracer adminTracer,
             Shutdown shutdown,
             AlertProxyHttpClient alertProxyHttpClient,
+            PlanVersionTracker planVersionTracker,
+            LeaderElection leaderElection,
+            LineItemsTokensRollup tokensRollup,
             int simFuturePlanHours) {
         super.initialize(hostName,
                 paCfgs,
@@ -36,7 +42,10 @@ public class PlannerAdapterServicesAlgoTest extends PlannerAdapterServices {
                 metrics,
                 adminTracer,
                 shutdown,
-                alertProxyHttpClient);
+                alertProxyHttpClient,
+                planVersionTracker,
+                leaderElection,
+                tokensRollup);
         for (PlannerAdapterService service : getPlannerAdapterServiceList()) {
             service.setFuturePlanHours(simFuturePlanHours);
         }
@@ -5,30 +5,46 @@ import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.ext.sql.SQLClient;
+import org.prebid.pg.gp.server.breaker.ComputeExecutor;
 import org.prebid.pg.gp.server.breaker.PlannerCircuitBreaker;
 import org.prebid.pg.gp.server.exception.GeneralPlannerException;
 import org.prebid.pg.gp.server.handler.AppHealthCheckHandler;
 import org.prebid.pg.gp.server.http.AlertProxyHttpClient;
 import org.prebid.pg.gp.server.jdbc.AdminEventClient;
+import org.prebid.pg.gp.server.jdbc.AsyncMySqlClients;
+import org.prebid.pg.gp.server.jdbc.ChangeVersionClient;
 import org.prebid.pg.gp.server.jdbc.CircuitBreakerSecuredPlannerDataAccessClient;
+import org.prebid.pg.gp.server.jdbc.HistoryRetentionClient;
+import org.prebid.pg.gp.server.jdbc.InstanceHeartbeatClient;
+import org.prebid.pg.gp.server.jdbc.LeaderLeaseClient;
 import org.prebid.pg.gp.server.jdbc.LineItemsClient;
 import org.prebid.pg.gp.server.jdbc.LineItemsHistoryClient;
 import org.prebid.pg.gp.server.jdbc.LineItemsTokensSummaryClient;
+import org.prebid.pg.gp.server.jdbc.PlannerDataSourceProvider;
 import org.prebid.pg.gp.server.jdbc.PlannerDataAccessClient;
+import org.prebid.pg.gp.server.jdbc.QueryInstrumentation;
+import org.prebid.pg.gp.server.jdbc.ReadReplicaRouter;
 import org.prebid.pg.gp.server.jdbc.ReallocatedPlansClient;
 import org.prebid.pg.gp.server.jdbc.RegistrationClient;
 import org.prebid.pg.gp.server.jdbc.SystemStateClient;
 import org.prebid.pg.gp.server.jdbc.TokenSpendClient;
 import org.prebid.pg.gp.server.metric.Metrics;
 import org.prebid.pg.gp.server.model.AdminTracer;
+import org.prebid.pg.gp.server.services.LineItemsTokensRollup;
 import org.prebid.pg.gp.server.spring.config.app.LineItemsTokensSummaryConfiguration;
 import org.prebid.pg.gp.server.spring.config.app.DeploymentConfiguration;
+import org.prebid.pg.gp.server.spring.config.app.LeaderElectionConfiguration;
 import org.prebid.pg.gp.server.spring.config.app.PlannerDatabaseProperties;
+import org.prebid.pg.gp.server.spring.config.app.TokensSummaryConfiguration;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 
 import java.net.Inet4Address;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Configuration for database access, data persistence and retrieval related objects.
@@ -43,11 +59,21 @@ class DatabaseConfiguration {
 
     private static final String NA_SERVICE_INSTANCE_ID = "NA";
 
+    static final String BACKGROUND_POOL_NAME = "gp-background";
+
+    static final String SERVING_POOL_NAME = "gp-serving";
+
+    static final String REPLICA_POOL_NAME = "gp-replica";
+
     @Bean(name = "serviceInstanceId")
-    String serviceInstanceId(DeploymentConfiguration deployment) {
+    String serviceInstanceId(DeploymentConfiguration deployment, LeaderElectionConfiguration leaderElectionConfig) {
         if (INFRA_ECS.equals(deployment.getInfra())) {
             return NA_SERVICE_INSTANCE_ID;
         }
+        if (leaderElectionConfig.getEnabled()) {
+            // the leader writes line items and plans that all instances serve
+            return leaderElectionConfig.getLeaseName();
+        }
         try {
             return Inet4Address.getLocalHost().getHostName();
         } catch (Exception e) {
@@ -56,6 +82,7 @@ class DatabaseConfiguration {
     }
 
     @Bean
+    @Primary
     CircuitBreakerSecuredPlannerDataAccessClient plannerCircuitBreakerSecuredJdbcClient(
             Vertx vertx, PlannerDataAccessClient plannerDataAccessClient,
             PlannerDatabaseProperties plannerDatabaseProperties,
@@ -68,41 +95,144 @@ class DatabaseConfiguration {
         return dataAccessClient;
     }
 
+    @Bean(name = "servingDataAccessClient")
+    CircuitBreakerSecuredPlannerDataAccessClient servingDataAccessClient(
+            Vertx vertx, PlannerDataAccessClient plannerDataAccessClient,
+            @Qualifier("servingSqlClient") SQLClient servingSqlClient,
+            CircuitBreakerSecuredPlannerDataAccessClient plannerCircuitBreakerSecuredJdbcClient,
+            PlannerDatabaseProperties plannerDatabaseProperties) {
+        final PlannerDatabaseProperties.Bulkhead serving = plannerDatabaseProperties.getServing();
+        if (!serving.getEnabled()) {
+            return plannerCircuitBreakerSecuredJdbcClient;
+        }
+        // plans and registrations neither wait for connections held by background writers nor trip with them
+        final PlannerCircuitBreaker breaker = new PlannerCircuitBreaker(
+                "gp-jdbc-serving-circuit-breaker", vertx, serving.getCircuitBreaker());
+        return new CircuitBreakerSecuredPlannerDataAccessClient(
+                plannerDataAccessClient.withSqlClient(servingSqlClient), breaker);
+    }
+
     @Bean
-    JDBCClient jdbcClient(Vertx vertx, PlannerDatabaseProperties plannerDatabaseProperties) {
+    QueryInstrumentation queryInstrumentation(PlannerDatabaseProperties plannerDatabaseProperties, Metrics metrics) {
+        return new QueryInstrumentation(plannerDatabaseProperties.getQueryLog(), metrics);
+    }
+
+    @Bean
+    @Primary
+    SQLClient jdbcClient(Vertx vertx, PlannerDatabaseProperties plannerDatabaseProperties,
+                         QueryInstrumentation queryInstrumentation) {
+        return queryInstrumentation.instrument(createJdbcClient(vertx, plannerDatabaseProperties,
+                BACKGROUND_POOL_NAME,
+                plannerDatabaseProperties.getInitialPoolSize(),
+                plannerDatabaseProperties.getMinPoolSize(),
+                plannerDatabaseProperties.getMaxPoolSize()));
+    }
+
+    @Bean(name = "servingSqlClient")
+    SQLClient servingSqlClient(
+            Vertx vertx, SQLClient jdbcClient, PlannerDatabaseProperties plannerDatabaseProperties,
+            QueryInstrumentation queryInstrumentation) {
+        final PlannerDatabaseProperties.Bulkhead serving = plannerDatabaseProperties.getServing();
+        if (!serving.getEnabled()) {
+            return jdbcClient;
+        }
+        if (serving.isAsyncMySqlClient()) {
+            logger.info("servingSqlClient::asynchronous MySQL client::max-pool-size={0}", serving.getMaxPoolSize());
+            return queryInstrumentation.instrument(AsyncMySqlClients.createShared(vertx, AsyncMySqlClients.config(
+                    plannerDatabaseProperties.getHost(),
+                    plannerDatabaseProperties.getPort(),
+                    plannerDatabaseProperties.getDbname(),
+                    plannerDatabaseProperties.getUser(),
+                    plannerDatabaseProperties.getPassword(),
+                    serving.getMaxPoolSize()), SERVING_POOL_NAME));
+        }
+        return queryInstrumentation.instrument(createJdbcClient(vertx, plannerDatabaseProperties, SERVING_POOL_NAME,
+                serving.getInitialPoolSize(), serving.getMinPoolSize(), serving.getMaxPoolSize()));
+    }
+
+    @Bean(destroyMethod = "close")
+    ReadReplicaRouter readReplicaRouter(
+            Vertx vertx, SQLClient jdbcClient, PlannerDatabaseProperties plannerDatabaseProperties,
+            @Qualifier("gpInstanceId") String gpInstanceId, Metrics metrics,
+            QueryInstrumentation queryInstrumentation) {
+        final PlannerDatabaseProperties.Replica replica = plannerDatabaseProperties.getReplica();
+        final SQLClient replicaClient = replica.getEnabled()
+                ? queryInstrumentation.instrument(createJdbcClient(vertx, plannerDatabaseProperties,
+                        replica.getHost(), replica.getPort(), REPLICA_POOL_NAME, replica.getInitialPoolSize(),
+                        replica.getMinPoolSize(), replica.getMaxPoolSize()))
+                : null;
+        final ReadReplicaRouter router =
+                new ReadReplicaRouter(vertx, jdbcClient, replicaClient, gpInstanceId, replica, metrics);
+        router.initialize();
+        return router;
+    }
+
+    /**
+     * Gets the names of the c3p0 connection pools, the asynchronous MySQL client keeps a pool of its own.
+     */
+    static List<String> poolNames(PlannerDatabaseProperties plannerDatabaseProperties) {
+        final PlannerDatabaseProperties.Bulkhead serving = plannerDatabaseProperties.getServing();
+        final List<String> poolNames = new ArrayList<>();
+        poolNames.add(BACKGROUND_POOL_NAME);
+        if (serving.getEnabled() && !serving.isAsyncMySqlClient()) {
+            poolNames.add(SERVING_POOL_NAME);
+        }
+        if (plannerDatabaseProperties.getReplica().getEnabled()) {
+            poolNames.add(REPLICA_POOL_NAME);
+        }
+        return poolNames;
+    }
+
+    private static JDBCClient createJdbcClient(Vertx vertx, PlannerDatabaseProperties plannerDatabaseProperties,
+                                               String poolName, int initialPoolSize, int minPoolSize,
+                                               int maxPoolSize) {
+        return createJdbcClient(vertx, plannerDatabaseProperties, plannerDatabaseProperties.getHost(),
+                plannerDatabaseProperties.getPort(), poolName, initialPoolSize, minPoolSize, maxPoolSize);
+    }
+
+    private static JDBCClient createJdbcClient(Vertx vertx, PlannerDatabaseProperties plannerDatabaseProperties,
+                                               String host, int port, String poolName, int initialPoolSize,
+                                               int minPoolSize, int maxPoolSize) {
         final String jdbcDriver = "com.mysql.cj.jdbc.Driver";
         final String jdbcUrlPrefix = "jdbc:mysql:";
         final String jdbcUrlSuffix = "useSSL=false&tcpKeepAlive=true";
 
         final String jdbcUrl = String.format("%s//%s:%d/%s?%s",
                 jdbcUrlPrefix,
-                plannerDatabaseProperties.getHost(),
-                plannerDatabaseProperties.getPort(),
+                host,
+                port,
                 plannerDatabaseProperties.getDbname(),
                 jdbcUrlSuffix);
 
+        logger.info("plannerDataAccessClient::pool={0}", poolName);
         logger.info("plannerDataAccessClient::jdbcUrl={0}", jdbcUrl);
         logger.info("plannerDataAccessClient::user={0}", plannerDatabaseProperties.getUser());
-        logger.info("plannerDataAccessClient::initial-pool-size={0}", plannerDatabaseProperties.getInitialPoolSize());
-        logger.info("plannerDataAccessClient::min-pool-size={0}", plannerDatabaseProperties.getMinPoolSize());
-        logger.info("plannerDataAccessClient::max-pool-size={0}", plannerDatabaseProperties.getMaxPoolSize());
+        logger.info("plannerDataAccessClient::initial-pool-size={0}", initialPoolSize);
+        logger.info("plannerDataAccessClient::min-pool-size={0}", minPoolSize);
+        logger.info("plannerDataAccessClient::max-pool-size={0}", maxPoolSize);
         logger.info("plannerDataAccessClient::max-idle-time-secs={0}", plannerDatabaseProperties.getMaxIdleTimeSec());
+        logger.info("plannerDataAccessClient::connection-validation={0}",
+                plannerDatabaseProperties.getConnectionValidation());
 
         return JDBCClient.createShared(vertx, new JsonObject()
+                .put("provider_class", PlannerDataSourceProvider.class.getName())
+                .put(PlannerDataSourceProvider.POOL_NAME, poolName)
+                .put(PlannerDataSourceProvider.CONNECTION_VALIDATION,
+                        plannerDatabaseProperties.getConnectionValidation())
                 .put("url", jdbcUrl)
                 .put("user", plannerDatabaseProperties.getUser())
                 .put("password", plannerDatabaseProperties.getPassword())
                 .put("driver_class", jdbcDriver)
-                .put("initial_pool_size", plannerDatabaseProperties.getInitialPoolSize())
-                .put("min_pool_size", plannerDatabaseProperties.getMinPoolSize())
-                .put("max_pool_size", plannerDatabaseProperties.getMaxPoolSize())
-                .put("max_idle_time", plannerDatabaseProperties.getMaxIdleTimeSec() * 1000));
+                .put("initial_pool_size", initialPoolSize)
+                .put("min_pool_size", minPoolSize)
+                .put("max_pool_size", maxPoolSize)
+                .put("max_idle_time", plannerDatabaseProperties.getMaxIdleTimeSec() * 1000), poolName);
     }
 
     @Bean
     PlannerDataAccessClient plannerDataAccessClient(
             Vertx vertx,
-            JDBCClient jdbcClient,
+            SQLClient jdbcClient,
             LineItemsClient lineItemsClient,
             TokenSpendClient tokenSpendClient,
             SystemStateClient systemStateClient,
@@ -112,11 +242,16 @@ class DatabaseConfiguration {
             LineItemsHistoryClient lineItemsHistoryClient,
             DeploymentConfiguration deployment,
             AdminEventClient adminCommandClient,
+            ChangeVersionClient changeVersionClient,
             Metrics metrics,
             AlertProxyHttpClient alertHttpClient,
-            LineItemsTokensSummaryConfiguration lineItemsTokensSummaryConfiguration
+            LineItemsTokensSummaryConfiguration lineItemsTokensSummaryConfiguration,
+            ReadReplicaRouter readReplicaRouter,
+            PlannerDatabaseProperties plannerDatabaseProperties,
+            TokensSummaryConfiguration tokensSummaryConfiguration,
+            LineItemsTokensRollup lineItemsTokensRollup
     ) {
-        return new PlannerDataAccessClient(
+        final PlannerDataAccessClient plannerDataAccessClient = new PlannerDataAccessClient(
                 jdbcClient,
                 lineItemsClient,
                 tokenSpendClient,
@@ -126,25 +261,35 @@ class DatabaseConfiguration {
                 lineItemsTokensSummaryClient,
                 lineItemsHistoryClient,
                 adminCommandClient,
+                changeVersionClient,
                 metrics,
                 alertHttpClient,
                 lineItemsTokensSummaryConfiguration
         );
+        final PlannerDataAccessClient routedClient = plannerDatabaseProperties.getReplica().getEnabled()
+                ? plannerDataAccessClient.withReadClient(readReplicaRouter)
+                : plannerDataAccessClient;
+        return tokensSummaryConfiguration.getIncrementalRollup()
+                ? routedClient.withTokensRollup(lineItemsTokensRollup::isComplete)
+                : routedClient;
     }
 
     @Bean
     LineItemsHistoryClient lineItemsHistoryClient(
-            JDBCClient jdbcClient,
+            SQLClient jdbcClient,
             Metrics metrics,
             SystemStateClient systemStateClient,
-            AlertProxyHttpClient alertHttpClient
+            AlertProxyHttpClient alertHttpClient,
+            ComputeExecutor computeExecutor,
+            TokensSummaryConfiguration tokensSummaryConfiguration
     ) {
-        return new LineItemsHistoryClient(jdbcClient, metrics, systemStateClient, alertHttpClient);
+        return new LineItemsHistoryClient(jdbcClient, metrics, systemStateClient, alertHttpClient, computeExecutor,
+                tokensSummaryConfiguration.getExtractSchedulesInDatabase());
     }
 
     @Bean
     LineItemsTokensSummaryClient tokensSummaryClient(
-            JDBCClient jdbcClient,
+            SQLClient jdbcClient,
             Metrics metrics,
             AlertProxyHttpClient alertHttpClient) {
         return new LineItemsTokensSummaryClient(jdbcClient, metrics, alertHttpClient);
@@ -152,10 +297,13 @@ class DatabaseConfiguration {
 
     @Bean
     LineItemsClient lineItemsClient(
-            @Qualifier("serviceInstanceId") String serviceInstanceId, Metrics metrics, AdminTracer adminTracer
+            @Qualifier("serviceInstanceId") String serviceInstanceId,
+            Metrics metrics,
+            AdminTracer adminTracer,
+            ComputeExecutor computeExecutor
     ) {
         logger.info("serviceInstanceId::{0}", serviceInstanceId);
-        return new LineItemsClient(serviceInstanceId, metrics, adminTracer);
+        return new LineItemsClient(serviceInstanceId, metrics, adminTracer, computeExecutor);
     }
 
     @Bean
@@ -177,9 +325,12 @@ class DatabaseConfiguration {
 
     @Bean
     ReallocatedPlansClient reallocatedPlansClient(
-            @Qualifier("serviceInstanceId") String serviceInstanceId, Metrics metrics, AdminTracer adminTracer
+            @Qualifier("serviceInstanceId") String serviceInstanceId,
+            Metrics metrics,
+            AdminTracer adminTracer,
+            ComputeExecutor computeExecutor
     ) {
-        return new ReallocatedPlansClient(serviceInstanceId, metrics, adminTracer);
+        return new ReallocatedPlansClient(serviceInstanceId, metrics, adminTracer, computeExecutor);
     }
 
     @Bean
@@ -187,4 +338,24 @@ class DatabaseConfiguration {
         return new AdminEventClient(metrics);
     }
 
+    @Bean
+    ChangeVersionClient changeVersionClient(Metrics metrics) {
+        return new ChangeVersionClient(metrics);
+    }
+
+    @Bean
+    LeaderLeaseClient leaderLeaseClient(SQLClient jdbcClient, Metrics metrics) {
+        return new LeaderLeaseClient(jdbcClient, metrics);
+    }
+
+    @Bean
+    InstanceHeartbeatClient instanceHeartbeatClient(SQLClient jdbcClient, Metrics metrics) {
+        return new InstanceHeartbeatClient(jdbcClient, metrics);
+    }
+
+    @Bean
+    HistoryRetentionClient historyRetentionClient(SQLClient jdbcClient, Metrics metrics) {
+        return new HistoryRetentionClient(jdbcClient, metrics);
+    }
+
 }
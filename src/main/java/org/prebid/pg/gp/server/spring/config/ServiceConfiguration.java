@@ -3,39 +3,69 @@ package org.prebid.pg.gp.server.spring.config;
 import com.mysql.cj.core.util.StringUtils;
 import io.vertx.core.Vertx;
 import org.prebid.pg.gp.server.auth.BasicAuthProvider;
+import org.prebid.pg.gp.server.breaker.ComputeExecutor;
+import org.prebid.pg.gp.server.breaker.PlannerCircuitBreaker;
 import org.prebid.pg.gp.server.exception.GeneralPlannerException;
 import org.prebid.pg.gp.server.handler.AppHealthCheckHandler;
 import org.prebid.pg.gp.server.http.AlertProxyHttpClient;
 import org.prebid.pg.gp.server.http.CircuitBreakerSecuredDeliveryDataHttpClient;
 import org.prebid.pg.gp.server.http.CircuitBreakerSecuredPlannerAdapterHttpClient;
+import org.prebid.pg.gp.server.jdbc.ChangeVersionClient;
 import org.prebid.pg.gp.server.jdbc.CircuitBreakerSecuredPlannerDataAccessClient;
+import org.prebid.pg.gp.server.jdbc.HistoryRetentionClient;
+import org.prebid.pg.gp.server.jdbc.InstanceHeartbeatClient;
+import org.prebid.pg.gp.server.jdbc.LeaderLeaseClient;
 import org.prebid.pg.gp.server.jdbc.LineItemsHistoryClient;
 import org.prebid.pg.gp.server.jdbc.LineItemsTokensSummaryClient;
 import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.metric.PoolMetricsFactory;
+import org.prebid.pg.gp.server.metric.SaturationMonitor;
 import org.prebid.pg.gp.server.model.AdminTracer;
+import org.prebid.pg.gp.server.model.GpInstance;
 import org.prebid.pg.gp.server.model.Shutdown;
+import org.prebid.pg.gp.server.services.ChangeFeedService;
 import org.prebid.pg.gp.server.services.DeliveryDataService;
+import org.prebid.pg.gp.server.services.HistoryRetentionService;
 import org.prebid.pg.gp.server.services.HostBasedTokenReallocation;
 import org.prebid.pg.gp.server.services.HostReallocationService;
+import org.prebid.pg.gp.server.services.LastKnownGoodPlans;
+import org.prebid.pg.gp.server.services.LeaderElection;
+import org.prebid.pg.gp.server.services.LineItemCatalogHistory;
+import org.prebid.pg.gp.server.services.LineItemsTokensRollup;
+import org.prebid.pg.gp.server.services.LineItemsTokensSummaryCache;
 import org.prebid.pg.gp.server.services.LineItemsTokensSummaryService;
+import org.prebid.pg.gp.server.services.PlanVersionTracker;
 import org.prebid.pg.gp.server.services.PlannerAdapterServices;
+import org.prebid.pg.gp.server.services.ShardingService;
 import org.prebid.pg.gp.server.services.StatsCache;
 import org.prebid.pg.gp.server.services.algotest.DeliveryDataServiceAlgoTest;
 import org.prebid.pg.gp.server.services.algotest.HostAllocationServiceAlgoTest;
 import org.prebid.pg.gp.server.services.algotest.PlannerAdapterServicesAlgoTest;
 import org.prebid.pg.gp.server.spring.config.app.AlgorithmConfiguration;
+import org.prebid.pg.gp.server.spring.config.app.ChangeFeedConfiguration;
 import org.prebid.pg.gp.server.spring.config.app.DeliveryDataConfiguration;
+import org.prebid.pg.gp.server.spring.config.app.HistoryRetentionConfiguration;
 import org.prebid.pg.gp.server.spring.config.app.HostReallocationConfiguration;
+import org.prebid.pg.gp.server.spring.config.app.LeaderElectionConfiguration;
+import org.prebid.pg.gp.server.spring.config.app.LineItemsTokensSummaryConfiguration;
+import org.prebid.pg.gp.server.spring.config.app.PlanRequestConfiguration;
 import org.prebid.pg.gp.server.spring.config.app.PlannerAdapterConfigurations;
+import org.prebid.pg.gp.server.spring.config.app.PlannerDatabaseProperties;
+import org.prebid.pg.gp.server.spring.config.app.SaturationMonitorConfiguration;
 import org.prebid.pg.gp.server.spring.config.app.ServerAuthDataConfiguration;
 import org.prebid.pg.gp.server.spring.config.app.ServerAuthDataConfiguration.Principal;
+import org.prebid.pg.gp.server.spring.config.app.ShardingConfiguration;
 import org.prebid.pg.gp.server.spring.config.app.TokensSummaryConfiguration;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.net.Inet4Address;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 /**
  * Configuration for service layer related objects.
@@ -49,6 +79,129 @@ class ServiceConfiguration {
         return new StatsCache();
     }
 
+    @Bean(destroyMethod = "close")
+    SaturationMonitor saturationMonitor(
+            Vertx vertx,
+            SaturationMonitorConfiguration saturationMonitorConfiguration,
+            Metrics metrics,
+            PoolMetricsFactory poolMetricsFactory,
+            CircuitBreakerSecuredPlannerDataAccessClient plannerDataAccessClient,
+            @Qualifier("servingDataAccessClient") CircuitBreakerSecuredPlannerDataAccessClient servingDataAccessClient,
+            CircuitBreakerSecuredDeliveryDataHttpClient deliveryDataHttpClient,
+            Map<String, CircuitBreakerSecuredPlannerAdapterHttpClient> plannerAdapterHttpClients,
+            PlannerDatabaseProperties plannerDatabaseProperties) {
+        final List<PlannerCircuitBreaker> breakers = new ArrayList<>();
+        breakers.add(plannerDataAccessClient.getPlannerCircuitBreaker());
+        if (servingDataAccessClient != plannerDataAccessClient) {
+            breakers.add(servingDataAccessClient.getPlannerCircuitBreaker());
+        }
+        breakers.add(deliveryDataHttpClient.getPlannerCircuitBreaker());
+        plannerAdapterHttpClients.values().forEach(client -> breakers.add(client.getPlannerCircuitBreaker()));
+        return new SaturationMonitor(vertx, saturationMonitorConfiguration, metrics, poolMetricsFactory, breakers,
+                DatabaseConfiguration.poolNames(plannerDatabaseProperties));
+    }
+
+    @Bean(name = "gpInstanceId")
+    String gpInstanceId() {
+        String hostName;
+        try {
+            hostName = Inet4Address.getLocalHost().getHostName();
+        } catch (Exception e) {
+            hostName = "unknown";
+        }
+        // unique per process, so a restarted instance never renews a lease or heartbeat it held before
+        return String.format("%s-%s", hostName, UUID.randomUUID());
+    }
+
+    @Bean(destroyMethod = "close")
+    LeaderElection leaderElection(
+            Vertx vertx,
+            LeaderElectionConfiguration leaderElectionConfiguration,
+            LeaderLeaseClient leaderLeaseClient,
+            @Qualifier("gpInstanceId") String gpInstanceId,
+            Metrics metrics,
+            Shutdown shutdown) {
+        final LeaderElection leaderElection = new LeaderElection(
+                vertx, leaderElectionConfiguration, leaderLeaseClient, gpInstanceId, metrics, shutdown);
+        leaderElection.initialize();
+        return leaderElection;
+    }
+
+    @Bean(destroyMethod = "close")
+    HistoryRetentionService historyRetentionService(
+            Vertx vertx,
+            HistoryRetentionConfiguration historyRetentionConfiguration,
+            HistoryRetentionClient historyRetentionClient,
+            LeaderElection leaderElection,
+            Metrics metrics,
+            Shutdown shutdown) {
+        final HistoryRetentionService historyRetentionService = new HistoryRetentionService(
+                vertx, historyRetentionConfiguration, historyRetentionClient, leaderElection, metrics, shutdown);
+        historyRetentionService.initialize();
+        return historyRetentionService;
+    }
+
+    @Bean(destroyMethod = "close")
+    ShardingService shardingService(
+            Vertx vertx,
+            ShardingConfiguration shardingConfiguration,
+            InstanceHeartbeatClient instanceHeartbeatClient,
+            @Qualifier("gpInstanceId") String gpInstanceId,
+            @Value("${http.port}") int httpPort,
+            Metrics metrics,
+            Shutdown shutdown) {
+        String baseUrl = shardingConfiguration.getAdvertisedUrl();
+        if (StringUtils.isNullOrEmpty(baseUrl)) {
+            try {
+                baseUrl = String.format("http://%s:%d", Inet4Address.getLocalHost().getHostAddress(), httpPort);
+            } catch (Exception e) {
+                throw new GeneralPlannerException("Exception in reading host address", e);
+            }
+        }
+        final GpInstance self = GpInstance.builder().instanceId(gpInstanceId).baseUrl(baseUrl).build();
+        final ShardingService shardingService = new ShardingService(
+                vertx, shardingConfiguration, instanceHeartbeatClient, metrics, shutdown, self);
+        shardingService.initialize();
+        return shardingService;
+    }
+
+    @Bean
+    PlanVersionTracker planVersionTracker(Vertx vertx, ChangeVersionClient changeVersionClient, Metrics metrics) {
+        return new PlanVersionTracker(vertx, changeVersionClient, metrics);
+    }
+
+    @Bean(destroyMethod = "close")
+    ChangeFeedService changeFeedService(
+            Vertx vertx,
+            ChangeFeedConfiguration changeFeedConfiguration,
+            CircuitBreakerSecuredPlannerDataAccessClient plannerDataAccessClient,
+            ChangeVersionClient changeVersionClient,
+            PlanVersionTracker planVersionTracker,
+            LineItemCatalogHistory lineItemCatalogHistory,
+            Metrics metrics) {
+        final ChangeFeedService changeFeedService = new ChangeFeedService(vertx, changeFeedConfiguration,
+                plannerDataAccessClient, changeVersionClient, planVersionTracker, lineItemCatalogHistory, metrics);
+        changeFeedService.initialize();
+        return changeFeedService;
+    }
+
+    @Bean
+    LineItemCatalogHistory lineItemCatalogHistory(PlanRequestConfiguration planRequestConfiguration) {
+        return new LineItemCatalogHistory(planRequestConfiguration.getDelta().getMaxVersions());
+    }
+
+    @Bean
+    LineItemsTokensSummaryCache lineItemsTokensSummaryCache(
+            LineItemsTokensSummaryConfiguration lineItemsTokensSummaryConfiguration, Metrics metrics) {
+        return new LineItemsTokensSummaryCache(lineItemsTokensSummaryConfiguration, metrics);
+    }
+
+    @Bean
+    LastKnownGoodPlans lastKnownGoodPlans(
+            Vertx vertx, PlanRequestConfiguration planRequestConfiguration, Metrics metrics) {
+        return new LastKnownGoodPlans(vertx, planRequestConfiguration.getLastKnownGood(), metrics);
+    }
+
     @SuppressWarnings({"squid:S00112"})
     @Bean
     HostBasedTokenReallocation hostBasedAllocation(HostReallocationConfiguration hostReallocationConfig)
@@ -67,7 +220,10 @@ class ServiceConfiguration {
             HostBasedTokenReallocation hostBasedAllocation,
             Metrics metrics,
             Shutdown shutdown,
-            StatsCache statsCache) {
+            StatsCache statsCache,
+            PlanVersionTracker planVersionTracker,
+            ComputeExecutor computeExecutor,
+            LeaderElection leaderElection) {
         return new HostReallocationService(
                 vertx,
                 hostReallocationConfiguration,
@@ -76,7 +232,10 @@ class ServiceConfiguration {
                 hostBasedAllocation,
                 metrics,
                 shutdown,
-                statsCache);
+                statsCache,
+                planVersionTracker,
+                computeExecutor,
+                leaderElection);
     }
 
     @Bean
@@ -89,7 +248,10 @@ class ServiceConfiguration {
             Metrics metrics,
             AdminTracer adminTracer,
             Shutdown shutdown,
-            AlertProxyHttpClient alertProxyHttpClient
+            AlertProxyHttpClient alertProxyHttpClient,
+            PlanVersionTracker planVersionTracker,
+            LeaderElection leaderElection,
+            LineItemsTokensRollup tokensRollup
     ) {
         PlannerAdapterServices plannerAdapterServices = new PlannerAdapterServices(vertx);
         plannerAdapterServices.initialize(
@@ -100,7 +262,10 @@ class ServiceConfiguration {
                 metrics,
                 adminTracer,
                 shutdown,
-                alertProxyHttpClient
+                alertProxyHttpClient,
+                planVersionTracker,
+                leaderElection,
+                tokensRollup
         );
         return plannerAdapterServices;
     }
@@ -116,7 +281,8 @@ class ServiceConfiguration {
             AdminTracer adminTracer,
             Shutdown shutdown,
             AlertProxyHttpClient alertProxyHttpClient,
-            StatsCache statsCache
+            StatsCache statsCache,
+            LeaderElection leaderElection
     ) {
 
         DeliveryDataService deliveryDataService = new DeliveryDataService(
@@ -129,7 +295,8 @@ class ServiceConfiguration {
                 adminTracer,
                 shutdown,
                 alertProxyHttpClient,
-                statsCache);
+                statsCache,
+                leaderElection);
 
         deliveryDataService.initialize();
         return deliveryDataService;
@@ -150,6 +317,16 @@ class ServiceConfiguration {
         return new BasicAuthProvider(serverAuthDataConfig);
     }
 
+    @Bean
+    LineItemsTokensRollup lineItemsTokensRollup(
+            TokensSummaryConfiguration tokensSummaryConfiguration,
+            LineItemsTokensSummaryClient tokensSummaryClient,
+            Metrics metrics,
+            LeaderElection leaderElection
+    ) {
+        return new LineItemsTokensRollup(tokensSummaryConfiguration, tokensSummaryClient, metrics, leaderElection);
+    }
+
     @Bean
     LineItemsTokensSummaryService lineItemHistorySummaryService(
             Vertx vertx,
@@ -157,7 +334,9 @@ class ServiceConfiguration {
             LineItemsTokensSummaryClient tokensSummaryClient,
             AlertProxyHttpClient alertHttpClient,
             TokensSummaryConfiguration tokensSummaryConfiguration,
-            Shutdown shutdown
+            Shutdown shutdown,
+            LeaderElection leaderElection,
+            LineItemsTokensRollup lineItemsTokensRollup
     ) {
         LineItemsTokensSummaryService lineItemHistorySummaryService =
                 new LineItemsTokensSummaryService(
@@ -166,7 +345,9 @@ class ServiceConfiguration {
                         tokensSummaryClient,
                         alertHttpClient,
                         tokensSummaryConfiguration,
-                        shutdown);
+                        shutdown,
+                        leaderElection,
+                        lineItemsTokensRollup);
         lineItemHistorySummaryService.initialize();
         return lineItemHistorySummaryService;
     }
@@ -179,7 +360,10 @@ class ServiceConfiguration {
             CircuitBreakerSecuredPlannerDataAccessClient plannerDataAccessClient,
             HostBasedTokenReallocation hostBasedAllocation,
             Shutdown shutdown,
-            StatsCache statsCache) {
+            StatsCache statsCache,
+            PlanVersionTracker planVersionTracker,
+            ComputeExecutor computeExecutor,
+            LeaderElection leaderElection) {
         return new HostAllocationServiceAlgoTest(
                 vertx,
                 hostReallocationConfiguration,
@@ -187,7 +371,10 @@ class ServiceConfiguration {
                 plannerDataAccessClient,
                 hostBasedAllocation,
                 shutdown,
-                statsCache);
+                statsCache,
+                planVersionTracker,
+                computeExecutor,
+                leaderElection);
     }
 
     @Bean
@@ -202,6 +389,7 @@ class ServiceConfiguration {
             Shutdown shutdown,
             AlertProxyHttpClient alertProxyHttpClient,
             StatsCache statsCache,
+            LeaderElection leaderElection,
             @Value("${services.algotest.delivery-data.start-time-in-past-sec}") int startTimeInPastSec) {
         return new DeliveryDataServiceAlgoTest(
                 vertx,
@@ -214,6 +402,7 @@ class ServiceConfiguration {
                 shutdown,
                 alertProxyHttpClient,
                 statsCache,
+                leaderElection,
                 startTimeInPastSec);
     }
 
@@ -229,6 +418,9 @@ class ServiceConfiguration {
             AdminTracer adminTracer,
             Shutdown shutdown,
             AlertProxyHttpClient alertProxyHttpClient,
+            PlanVersionTracker planVersionTracker,
+            LeaderElection leaderElection,
+            LineItemsTokensRollup tokensRollup,
             @Value("${services.algotest.planner-adapters.future-plan-hours}") int simFuturePlanHours
     ) {
         PlannerAdapterServicesAlgoTest plannerAdapterServices = new PlannerAdapterServicesAlgoTest(vertx);
@@ -241,10 +433,12 @@ class ServiceConfiguration {
                 adminTracer,
                 shutdown,
                 alertProxyHttpClient,
+                planVersionTracker,
+                leaderElection,
+                tokensRollup,
                 simFuturePlanHours
         );
         return plannerAdapterServices;
     }
 
 }
-
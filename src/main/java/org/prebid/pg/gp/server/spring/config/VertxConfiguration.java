@@ -2,6 +2,11 @@ package org.prebid.pg.gp.server.spring.config;
 
 import io.vertx.core.Vertx;
 import io.vertx.core.VertxOptions;
+import io.vertx.core.metrics.MetricsOptions;
+import org.prebid.pg.gp.server.breaker.ComputeExecutor;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.metric.PoolMetricsFactory;
+import org.prebid.pg.gp.server.spring.config.app.ComputeExecutorConfiguration;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -14,8 +19,25 @@ import org.springframework.context.annotation.Configuration;
 class VertxConfiguration {
 
     @Bean
-    Vertx vertx(@Value("${vertx.worker-pool-size:20}") int workerPoolSize) {
-        return Vertx.vertx(new VertxOptions().setWorkerPoolSize(workerPoolSize));
+    Vertx vertx(@Value("${vertx.worker-pool-size:20}") int workerPoolSize,
+            @Value("${metrics.saturation.enabled:false}") boolean saturationEnabled,
+            PoolMetricsFactory poolMetricsFactory) {
+        final VertxOptions options = new VertxOptions().setWorkerPoolSize(workerPoolSize);
+        if (saturationEnabled) {
+            options.setMetricsOptions(new MetricsOptions().setEnabled(true).setFactory(poolMetricsFactory));
+        }
+        return Vertx.vertx(options);
+    }
+
+    @Bean
+    PoolMetricsFactory poolMetricsFactory(Metrics metrics) {
+        return new PoolMetricsFactory(metrics);
+    }
+
+    @Bean
+    ComputeExecutor computeExecutor(Vertx vertx, ComputeExecutorConfiguration computeExecutorConfiguration,
+            Metrics metrics) {
+        return new ComputeExecutor(vertx, computeExecutorConfiguration, metrics);
     }
 
 }
@@ -3,11 +3,14 @@ package org.prebid.pg.gp.server.spring.config;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.dataformat.csv.CsvGenerator;
 import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClientOptions;
 import io.vertx.core.http.HttpServerOptions;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.handler.AuthHandler;
 import io.vertx.ext.web.handler.BasicAuthHandler;
 import io.vertx.ext.web.handler.BodyHandler;
@@ -15,8 +18,12 @@ import io.vertx.ext.web.handler.CookieHandler;
 import io.vertx.ext.web.handler.SessionHandler;
 import io.vertx.ext.web.sstore.LocalSessionStore;
 import org.prebid.pg.gp.server.auth.BasicAuthProvider;
+import org.prebid.pg.gp.server.auth.StatelessBasicAuthHandler;
+import org.prebid.pg.gp.server.breaker.AdmissionController;
+import org.prebid.pg.gp.server.breaker.ComputeExecutor;
 import org.prebid.pg.gp.server.handler.AdminHandler;
 import org.prebid.pg.gp.server.handler.AppHealthCheckHandler;
+import org.prebid.pg.gp.server.handler.BulkPlanRequestHandler;
 import org.prebid.pg.gp.server.handler.CeaseShutdownHandler;
 import org.prebid.pg.gp.server.handler.GeneralHealthCheckHandler;
 import org.prebid.pg.gp.server.handler.LineItemsTokensSummaryHandler;
@@ -24,27 +31,48 @@ import org.prebid.pg.gp.server.handler.PbsHealthHandler;
 import org.prebid.pg.gp.server.handler.PbsRegistrationHandler;
 import org.prebid.pg.gp.server.handler.PlanRequestHandler;
 import org.prebid.pg.gp.server.handler.PrepShutdownHandler;
+import org.prebid.pg.gp.server.handler.SaturationHandler;
+import org.prebid.pg.gp.server.handler.ShardRoutingHandler;
 import org.prebid.pg.gp.server.handler.TrxIdHandler;
 import org.prebid.pg.gp.server.handler.algotest.HostAllocationAlgoTestHandler;
 import org.prebid.pg.gp.server.handler.algotest.PlannerAdaptersUpdateAlgoTestHandler;
 import org.prebid.pg.gp.server.http.AlertProxyHttpClient;
 import org.prebid.pg.gp.server.jdbc.CircuitBreakerSecuredPlannerDataAccessClient;
 import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.metric.SaturationMonitor;
 import org.prebid.pg.gp.server.model.AdminTracer;
 import org.prebid.pg.gp.server.model.Shutdown;
+import org.prebid.pg.gp.server.services.HostReallocationService;
+import org.prebid.pg.gp.server.services.LastKnownGoodPlans;
+import org.prebid.pg.gp.server.services.LineItemCatalogHistory;
+import org.prebid.pg.gp.server.services.LineItemsTokensSummaryCache;
+import org.prebid.pg.gp.server.services.PlanRenderer;
+import org.prebid.pg.gp.server.services.PlanVersionTracker;
+import org.prebid.pg.gp.server.services.PollHintService;
+import org.prebid.pg.gp.server.services.ShardingService;
 import org.prebid.pg.gp.server.services.algotest.DeliveryDataServiceAlgoTest;
 import org.prebid.pg.gp.server.services.algotest.HostAllocationServiceAlgoTest;
 import org.prebid.pg.gp.server.services.algotest.PlannerAdapterServicesAlgoTest;
 import org.prebid.pg.gp.server.spring.config.app.DeploymentConfiguration;
 import org.prebid.pg.gp.server.spring.config.app.HostReallocationConfiguration;
+import org.prebid.pg.gp.server.spring.config.app.HttpClientConfiguration;
+import org.prebid.pg.gp.server.spring.config.app.PlanRequestConfiguration;
+import org.prebid.pg.gp.server.spring.config.app.PollHintConfiguration;
+import org.prebid.pg.gp.server.spring.config.app.ServerAuthDataConfiguration;
+import org.prebid.pg.gp.server.spring.config.app.ShardingConfiguration;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.annotation.Order;
 
 import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Random;
+import java.util.Set;
 
 /**
  * Configuration for http request routing and handlers to serve http request.
@@ -97,6 +125,8 @@ public class WebConfiguration {
                   @Value("${http.admin-base-url}") String baseAdminURL,
                   PbsRegistrationHandler pbsRegistrationHandler,
                   PlanRequestHandler planRequestHandler,
+                  BulkPlanRequestHandler bulkPlanRequestHandler,
+                  PlanRequestConfiguration planRequestConfiguration,
                   GeneralHealthCheckHandler generalHealthCheckHandler,
                   BasicAuthProvider basicAuthProvider,
                   HostAllocationAlgoTestHandler hostAllocationAlgoTestHandler,
@@ -106,39 +136,79 @@ public class WebConfiguration {
                   AdminHandler adminHandler,
                   PbsHealthHandler pbsHealthHandler,
                   PrepShutdownHandler prepShutdownHandler,
-                  CeaseShutdownHandler ceaseShutdownHandler
+                  CeaseShutdownHandler ceaseShutdownHandler,
+                  SaturationHandler saturationHandler,
+                  ShardingService shardingService,
+                  ShardRoutingHandler shardRoutingHandler
     ) {
         final Router appRouter = Router.router(vertx);
         final boolean isAlgoTestEnabled = "algotest".equals(deploymentConfiguration.getProfile());
         logger.info("Base URL::{0}", baseURL);
 
-        appRouter.route().handler(CookieHandler.create());
-        appRouter.route().handler(SessionHandler.create(LocalSessionStore.create(vertx)));
+        final ServerAuthDataConfiguration authConfig = basicAuthProvider.getServerAuthDataConfiguration();
+        // machine to machine routes authenticate every request and never use a session
+        final Set<String> statelessPaths = authConfig.isStatelessEnabled()
+                ? new HashSet<>(Arrays.asList(
+                        String.format("%s/plans", baseURL),
+                        String.format("%s/plans/bulk", baseURL),
+                        String.format("%s/register", baseURL),
+                        String.format("%s/pbs-health", baseURL)))
+                : Collections.emptySet();
+        final Handler<RoutingContext> cookieHandler = CookieHandler.create();
+        final Handler<RoutingContext> sessionHandler = SessionHandler.create(LocalSessionStore.create(vertx));
+        appRouter.route().handler(routingContext -> {
+            if (statelessPaths.contains(routingContext.normalisedPath())) {
+                routingContext.next();
+            } else {
+                cookieHandler.handle(routingContext);
+            }
+        });
+        appRouter.route().handler(routingContext -> {
+            if (statelessPaths.contains(routingContext.normalisedPath())) {
+                routingContext.next();
+            } else {
+                sessionHandler.handle(routingContext);
+            }
+        });
         appRouter.route().handler(BodyHandler.create());
 
         if (isAlgoTestEnabled) {
             logger.info("algotest enabled");
             appRouter.route(baseURL + "/e2eAdmin/hostAlloc").handler(hostAllocationAlgoTestHandler);
             appRouter.route(baseURL + "/e2eAdmin/updatePlan").handler(adaptersUpdateAlgoTestHandler);
-        } else if (basicAuthProvider.getServerAuthDataConfiguration().isAuthenticationEnabled()) {
+        } else if (authConfig.isAuthenticationEnabled()) {
             AuthHandler basicAuthHandler = BasicAuthHandler.create(basicAuthProvider);
-            appRouter.route(String.format("%s/register", baseURL)).handler(basicAuthHandler);
-            appRouter.route(String.format("%s/plans", baseURL)).handler(basicAuthHandler);
+            Handler<RoutingContext> pbsAuthHandler = authConfig.isStatelessEnabled()
+                    ? new StatelessBasicAuthHandler(basicAuthProvider, BasicAuthHandler.DEFAULT_REALM)
+                    : basicAuthHandler;
+            appRouter.route(String.format("%s/register", baseURL)).handler(pbsAuthHandler);
+            appRouter.route(String.format("%s/plans", baseURL)).handler(pbsAuthHandler);
+            appRouter.post(String.format("%s/plans/bulk", baseURL)).handler(pbsAuthHandler);
             appRouter.post(String.format("%s/prep-for-shutdown", baseURL)).handler(basicAuthHandler);
             appRouter.post(String.format("%s/cease-shutdown", baseURL)).handler(basicAuthHandler);
             appRouter.post(String.format("%s/admin", baseURL)).handler(basicAuthHandler);
-            appRouter.get(String.format("%s/pbs-health", baseURL)).handler(basicAuthHandler);
+            appRouter.get(String.format("%s/saturation", baseURL)).handler(basicAuthHandler);
+            appRouter.get(String.format("%s/pbs-health", baseURL)).handler(pbsAuthHandler);
             appRouter.route(String.format("%s/line-items-tokens-summary", baseURL)).handler(basicAuthHandler);
         }
 
         TrxIdHandler trxIdHandler = new TrxIdHandler();
         appRouter.route(baseURL + "/*").handler(trxIdHandler);
 
+        if (shardingService.isEnabled()) {
+            appRouter.get(String.format("%s/plans", baseURL)).handler(shardRoutingHandler);
+            appRouter.post(String.format("%s/register", baseURL)).handler(shardRoutingHandler);
+        }
+
         appRouter.get(String.format("%s/plans", baseURL)).handler(planRequestHandler);
+        if (planRequestConfiguration.getBulk().getEnabled()) {
+            appRouter.post(String.format("%s/plans/bulk", baseURL)).handler(bulkPlanRequestHandler);
+        }
         appRouter.post(String.format("%s/register", baseURL)).handler(pbsRegistrationHandler);
         appRouter.post(String.format("%s/prep-for-shutdown", baseURL)).handler(prepShutdownHandler);
         appRouter.post(String.format("%s/cease-shutdown", baseURL)).handler(ceaseShutdownHandler);
         appRouter.post(String.format("%s/admin", baseURL)).handler(adminHandler);
+        appRouter.get(String.format("%s/saturation", baseURL)).handler(saturationHandler);
         appRouter.get(String.format("%s/pbs-health", baseURL)).handler(pbsHealthHandler);
         appRouter.get(String.format("%s/line-items-tokens-summary", baseURL)).handler(lineItemsTokensSummaryHandler);
 
@@ -175,7 +245,7 @@ public class WebConfiguration {
 
     @Bean
     PlanRequestHandler planRequestHandler(
-            CircuitBreakerSecuredPlannerDataAccessClient plannerDataAccessClient,
+            @Qualifier("servingDataAccessClient") CircuitBreakerSecuredPlannerDataAccessClient plannerDataAccessClient,
             @Value("${error.message}") String maskedErrorMessage,
             @Value("${server-api-roles.plan-request}") String resourceRole,
             @Value("${server-auth.authentication-enabled}") boolean securityEnabled,
@@ -185,7 +255,13 @@ public class WebConfiguration {
             DeploymentConfiguration deploymentConfiguration,
             AdminTracer adminTracer,
             Shutdown shutdown,
-            AlertProxyHttpClient alertProxyHttpClient
+            AlertProxyHttpClient alertProxyHttpClient,
+            AdmissionController planRequestAdmissionController,
+            PollHintService pollHintService,
+            PlanVersionTracker planVersionTracker,
+            LineItemCatalogHistory lineItemCatalogHistory,
+            PlanRequestConfiguration planRequestConfiguration,
+            LastKnownGoodPlans lastKnownGoodPlans
     ) {
         return new PlanRequestHandler(
                 plannerDataAccessClient,
@@ -199,19 +275,93 @@ public class WebConfiguration {
                 adminTracer,
                 shutdown,
                 alertProxyHttpClient,
-                new Random());
+                new Random(),
+                planRequestAdmissionController,
+                pollHintService,
+                planVersionTracker,
+                lineItemCatalogHistory,
+                planRequestConfiguration,
+                lastKnownGoodPlans);
+    }
+
+    @Bean
+    BulkPlanRequestHandler bulkPlanRequestHandler(
+            @Qualifier("servingDataAccessClient") CircuitBreakerSecuredPlannerDataAccessClient plannerDataAccessClient,
+            @Value("${error.message}") String maskedErrorMessage,
+            @Value("${server-api-roles.plan-request}") String resourceRole,
+            @Value("${server-auth.authentication-enabled}") boolean securityEnabled,
+            @Value("${services.pbs-max-idle-period-sec}") int pbsMaxIdlePeriodInSeconds,
+            HostReallocationConfiguration hostReallocationConfig,
+            Metrics metrics,
+            DeploymentConfiguration deploymentConfiguration,
+            AdminTracer adminTracer,
+            Shutdown shutdown,
+            AlertProxyHttpClient alertProxyHttpClient,
+            ComputeExecutor computeExecutor,
+            AdmissionController planRequestAdmissionController,
+            PlanVersionTracker planVersionTracker,
+            PlanRequestConfiguration planRequestConfiguration
+    ) {
+        return new BulkPlanRequestHandler(
+                plannerDataAccessClient,
+                maskedErrorMessage,
+                resourceRole,
+                securityEnabled && !isAlgoTest(deploymentConfiguration),
+                hostReallocationConfig,
+                pbsMaxIdlePeriodInSeconds,
+                metrics,
+                shutdown,
+                alertProxyHttpClient,
+                new PlanRenderer(adminTracer, new Random()),
+                computeExecutor,
+                planRequestAdmissionController,
+                planVersionTracker,
+                planRequestConfiguration);
+    }
+
+    @Bean
+    ShardRoutingHandler shardRoutingHandler(
+            ShardingService shardingService,
+            ShardingConfiguration shardingConfiguration,
+            HttpClientConfiguration httpClientConfiguration,
+            Metrics metrics) {
+        final HttpClientOptions options = new HttpClientOptions()
+                .setMaxPoolSize(shardingConfiguration.getProxyMaxPoolSize())
+                .setConnectTimeout(httpClientConfiguration.getConnectTimeoutSec() * 1000);
+        return new ShardRoutingHandler(
+                shardingService, shardingConfiguration, vertx.createHttpClient(options), metrics);
+    }
+
+    @Bean
+    PollHintService pollHintService(
+            PollHintConfiguration pollHintConfiguration,
+            @Qualifier("hostReallocationService") HostReallocationService hostReallocationService,
+            AdmissionController planRequestAdmissionController) {
+        return new PollHintService(pollHintConfiguration, hostReallocationService, planRequestAdmissionController);
+    }
+
+    @Bean
+    AdmissionController planRequestAdmissionController(
+            PlanRequestConfiguration planRequestConfiguration, Metrics metrics) {
+        return new AdmissionController("plans", vertx, planRequestConfiguration.getAdmissionControl(), metrics);
     }
 
     @Bean
     PbsRegistrationHandler pbsRegistrationHandler(
-            CircuitBreakerSecuredPlannerDataAccessClient plannerDataAccessClient,
+            @Qualifier("servingDataAccessClient") CircuitBreakerSecuredPlannerDataAccessClient plannerDataAccessClient,
             @Value("${error.message}") String maskedErrorMessage,
             Metrics metrics,
             @Value("${server-api-roles.registration}") String resourceRole,
             @Value("${server-auth.authentication-enabled}") boolean securityEnabled,
             DeploymentConfiguration deploymentConfiguration,
             AdminTracer adminTracer,
-            Shutdown shutdown
+            Shutdown shutdown,
+            PollHintService pollHintService,
+            @Value("${services.pbs-max-idle-period-sec}") int pbsMaxIdlePeriodInSeconds,
+            HostReallocationConfiguration hostReallocationConfig,
+            AdmissionController planRequestAdmissionController,
+            PlanVersionTracker planVersionTracker,
+            PlanRequestConfiguration planRequestConfiguration
     ) {
         return new PbsRegistrationHandler(plannerDataAccessClient,
                 maskedErrorMessage,
@@ -220,7 +370,14 @@ public class WebConfiguration {
                 metrics,
                 isAlgoTest(deploymentConfiguration),
                 adminTracer,
-                shutdown
+                shutdown,
+                pollHintService,
+                hostReallocationConfig,
+                pbsMaxIdlePeriodInSeconds,
+                new PlanRenderer(adminTracer, new Random()),
+                planRequestAdmissionController,
+                planVersionTracker,
+                planRequestConfiguration.getIncludeInRegistration()
         );
     }
 
@@ -244,6 +401,24 @@ public class WebConfiguration {
                 shutdown);
     }
 
+    @Bean
+    SaturationHandler saturationHandler(
+            SaturationMonitor saturationMonitor,
+            @Value("${error.message}") String maskedErrorMessage,
+            Metrics metrics,
+            @Value("${server-api-roles.tracer}") String resourceRole,
+            @Value("${server-auth.authentication-enabled}") boolean securityEnabled,
+            AlertProxyHttpClient alertProxyHttpClient,
+            Shutdown shutdown) {
+        return new SaturationHandler(saturationMonitor,
+                maskedErrorMessage,
+                metrics,
+                resourceRole,
+                securityEnabled,
+                alertProxyHttpClient,
+                shutdown);
+    }
+
     @Bean
     LineItemsTokensSummaryHandler lineItemsTokensSummaryHandler(
             CircuitBreakerSecuredPlannerDataAccessClient plannerDataAccessClient,
@@ -252,7 +427,8 @@ public class WebConfiguration {
             @Value("${server-auth.authentication-enabled}") boolean securityEnabled,
             Metrics metrics,
             AlertProxyHttpClient alertHttpClient,
-            Shutdown shutdown) {
+            Shutdown shutdown,
+            LineItemsTokensSummaryCache lineItemsTokensSummaryCache) {
         return new LineItemsTokensSummaryHandler(
                 plannerDataAccessClient,
                 csvMapperFactory,
@@ -260,7 +436,8 @@ public class WebConfiguration {
                 securityEnabled,
                 metrics,
                 alertHttpClient,
-                shutdown);
+                shutdown,
+                lineItemsTokensSummaryCache);
     }
 
     @Bean
@@ -0,0 +1,33 @@
+package org.prebid.pg.gp.server.spring.config.app;
+
+import lombok.Data;
+import lombok.ToString;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * Configuration properties for admission control of an endpoint.
+ */
+
+@Data
+@Validated
+@ToString
+public class AdmissionControlConfiguration {
+
+    @NotNull
+    private Boolean enabled;
+
+    @NotNull
+    private Integer maxInFlight;
+
+    @NotNull
+    private Integer maxQueued;
+
+    @NotNull
+    private Integer maxQueueTimeMs;
+
+    @NotNull
+    private Integer retryAfterSec;
+
+}
@@ -0,0 +1,29 @@
+package org.prebid.pg.gp.server.spring.config.app;
+
+import lombok.Data;
+import lombok.ToString;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * Configuration properties for following the changes made by other general planner instances.
+ */
+
+@Configuration
+@Data
+@ToString
+@ConfigurationProperties(prefix = "services.change-feed")
+public class ChangeFeedConfiguration {
+
+    @NotNull
+    private Boolean enabled;
+
+    @NotNull
+    private Integer pollIntervalSec;
+
+    @NotNull
+    private Integer planLookbackSec;
+
+}
@@ -0,0 +1,32 @@
+package org.prebid.pg.gp.server.spring.config.app;
+
+import lombok.Data;
+import lombok.ToString;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * Configuration properties for the executor of CPU-bound work kept off the event loop.
+ */
+
+@Configuration
+@Data
+@ToString
+@ConfigurationProperties(prefix = "vertx.compute")
+public class ComputeExecutorConfiguration {
+
+    @NotNull
+    private Boolean enabled;
+
+    @NotNull
+    private Integer poolSize;
+
+    @NotNull
+    private Integer maxQueued;
+
+    @NotNull
+    private Integer maxExecuteTimeMs;
+
+}
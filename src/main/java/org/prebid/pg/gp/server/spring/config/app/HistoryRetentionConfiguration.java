@@ -0,0 +1,48 @@
+package org.prebid.pg.gp.server.spring.config.app;
+
+import lombok.Data;
+import lombok.ToString;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * Configuration properties for purging expired rows of the history tables.
+ */
+
+@Configuration
+@Data
+@ToString
+@ConfigurationProperties(prefix = "services.history-retention")
+public class HistoryRetentionConfiguration {
+
+    @NotNull
+    private Boolean enabled;
+
+    @NotNull
+    private Integer initialDelaySec;
+
+    @NotNull
+    private Integer runPeriodSec;
+
+    @NotNull
+    private Integer chunkSize;
+
+    @NotNull
+    private Integer chunkPauseMs;
+
+    @NotNull
+    private Integer maxChunksPerRun;
+
+    // 0 keeps the rows forever
+    @NotNull
+    private Integer lineItemsHistoryTtlDays;
+
+    @NotNull
+    private Integer reallocatedPlansHistoryTtlDays;
+
+    @NotNull
+    private Integer appRegistrationHistoryTtlDays;
+
+}
@@ -0,0 +1,32 @@
+package org.prebid.pg.gp.server.spring.config.app;
+
+import lombok.Data;
+import lombok.ToString;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * Configuration properties for electing the instance that runs the periodic jobs.
+ */
+
+@Configuration
+@Data
+@ToString
+@ConfigurationProperties(prefix = "services.leader-election")
+public class LeaderElectionConfiguration {
+
+    @NotNull
+    private Boolean enabled;
+
+    @NotNull
+    private String leaseName;
+
+    @NotNull
+    private Integer leaseSec;
+
+    @NotNull
+    private Integer renewIntervalSec;
+
+}
@@ -20,4 +20,10 @@ public class LineItemsTokensSummaryConfiguration {
     @NotNull
     private Integer pageSize;
 
+    @NotNull
+    private Boolean cacheEnabled;
+
+    @NotNull
+    private Integer cacheMaxRows;
+
 }
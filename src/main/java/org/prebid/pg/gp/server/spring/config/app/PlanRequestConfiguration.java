@@ -0,0 +1,99 @@
+package org.prebid.pg.gp.server.spring.config.app;
+
+import lombok.Data;
+import lombok.ToString;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Configuration properties for serving line item delivery plans to PBS hosts.
+ */
+
+@Configuration
+@Validated
+@Data
+@ToString
+@ConfigurationProperties(prefix = "api.plans")
+public class PlanRequestConfiguration {
+
+    @NotNull
+    @Valid
+    private AdmissionControlConfiguration admissionControl;
+
+    @NotNull
+    @Valid
+    private LongPoll longPoll;
+
+    @NotNull
+    @Valid
+    private Delta delta;
+
+    @NotNull
+    @Valid
+    private Bulk bulk;
+
+    @NotNull
+    @Valid
+    private LastKnownGood lastKnownGood;
+
+    @NotNull
+    private Boolean includeInRegistration;
+
+    @Data
+    public static class LongPoll {
+
+        @NotNull
+        private Boolean enabled;
+
+        @NotNull
+        private Integer defaultWaitSec;
+
+        @NotNull
+        private Integer maxWaitSec;
+
+    }
+
+    @Data
+    public static class Delta {
+
+        @NotNull
+        private Boolean enabled;
+
+        @NotNull
+        private Integer maxVersions;
+
+    }
+
+    @Data
+    public static class Bulk {
+
+        @NotNull
+        private Boolean enabled;
+
+        @NotNull
+        private Integer maxHosts;
+
+    }
+
+    @Data
+    public static class LastKnownGood {
+
+        @NotNull
+        private Boolean enabled;
+
+        @NotNull
+        private Integer maxStalenessSec;
+
+        @NotNull
+        private Integer latencyBudgetMs;
+
+        @NotNull
+        private Integer snapshotRefreshSec;
+
+    }
+
+}
@@ -8,6 +8,7 @@ import org.springframework.validation.annotation.Validated;
 
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
 
 /**
  * Configuration properties for database access in General Planner.
@@ -20,6 +21,10 @@ import javax.validation.constraints.NotNull;
 @ConfigurationProperties(prefix = "database.general-planner")
 public class PlannerDatabaseProperties {
 
+    public static final String JDBC_CLIENT = "jdbc";
+
+    public static final String ASYNC_MYSQL_CLIENT = "mysql-async";
+
     @NotBlank
     String host;
 
@@ -47,7 +52,100 @@ public class PlannerDatabaseProperties {
     @NotNull
     Integer maxIdleTimeSec;
 
+    // when connections are tested, on checkout or on checkin
+    @NotNull
+    @Pattern(regexp = "checkout|checkin")
+    String connectionValidation;
+
     @NotNull
     CircuitBreakerConfiguration circuitBreaker;
 
+    @NotNull
+    Bulkhead serving;
+
+    @NotNull
+    Replica replica;
+
+    @NotNull
+    QueryLog queryLog;
+
+    /**
+     * A connection pool and circuit breaker of its own for latency-critical reads.
+     */
+    @Data
+    public static class Bulkhead {
+
+        @NotNull
+        private Boolean enabled;
+
+        @NotNull
+        private Integer initialPoolSize;
+
+        @NotNull
+        private Integer minPoolSize;
+
+        @NotNull
+        private Integer maxPoolSize;
+
+        @NotNull
+        private CircuitBreakerConfiguration circuitBreaker;
+
+        // jdbc or mysql-async
+        @NotNull
+        @Pattern(regexp = JDBC_CLIENT + "|" + ASYNC_MYSQL_CLIENT)
+        private String client;
+
+        public boolean isAsyncMySqlClient() {
+            return ASYNC_MYSQL_CLIENT.equals(client);
+        }
+
+    }
+
+    /**
+     * A read replica for the read-only queries tolerating replication lag.
+     */
+    @Data
+    public static class Replica {
+
+        @NotNull
+        private Boolean enabled;
+
+        private String host;
+
+        private Integer port;
+
+        @NotNull
+        private Integer initialPoolSize;
+
+        @NotNull
+        private Integer minPoolSize;
+
+        @NotNull
+        private Integer maxPoolSize;
+
+        @NotNull
+        private Integer maxLagSec;
+
+        @NotNull
+        private Integer lagCheckPeriodSec;
+
+    }
+
+    /**
+     * Per-fingerprint statement metrics and the slow-query log.
+     */
+    @Data
+    public static class QueryLog {
+
+        @NotNull
+        private Boolean enabled;
+
+        @NotNull
+        private Long slowQueryThresholdMs;
+
+        @NotNull
+        private Integer maxFingerprints;
+
+    }
+
 }
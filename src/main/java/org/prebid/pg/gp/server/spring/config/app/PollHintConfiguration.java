@@ -0,0 +1,41 @@
+package org.prebid.pg.gp.server.spring.config.app;
+
+import lombok.Data;
+import lombok.ToString;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * Configuration properties for next-poll hints returned to PBS hosts.
+ */
+
+@Configuration
+@Data
+@ToString
+@ConfigurationProperties(prefix = "api.poll-hint")
+public class PollHintConfiguration {
+
+    @NotNull
+    private Boolean enabled;
+
+    @NotNull
+    private Integer plansMinDelaySec;
+
+    @NotNull
+    private Integer plansMaxDelaySec;
+
+    @NotNull
+    private Integer plansSettleSec;
+
+    @NotNull
+    private Integer plansSpreadSec;
+
+    @NotNull
+    private Integer registrationIntervalSec;
+
+    @NotNull
+    private Integer maxLoadBackoffSec;
+
+}
@@ -0,0 +1,26 @@
+package org.prebid.pg.gp.server.spring.config.app;
+
+import lombok.Data;
+import lombok.ToString;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * Configuration properties for event-loop, worker pool and database pool saturation instrumentation.
+ */
+
+@Configuration
+@Data
+@ToString
+@ConfigurationProperties(prefix = "metrics.saturation")
+public class SaturationMonitorConfiguration {
+
+    @NotNull
+    private Boolean enabled;
+
+    @NotNull
+    private Integer eventLoopProbeIntervalMs;
+
+}
@@ -22,6 +22,8 @@ public class ServerAuthDataConfiguration {
 
     boolean authenticationEnabled;
 
+    boolean statelessEnabled;
+
     @Data
     public static class Principal {
 
@@ -0,0 +1,48 @@
+package org.prebid.pg.gp.server.spring.config.app;
+
+import lombok.Data;
+import lombok.ToString;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * Configuration properties for sharding PBS hosts across the general planner instances.
+ */
+
+@Configuration
+@Data
+@ToString
+@ConfigurationProperties(prefix = "services.sharding")
+public class ShardingConfiguration {
+
+    public static final String FORWARD_MODE_PROXY = "proxy";
+
+    public static final String FORWARD_MODE_REDIRECT = "redirect";
+
+    @NotNull
+    private Boolean enabled;
+
+    @NotNull
+    private Integer heartbeatIntervalSec;
+
+    @NotNull
+    private Integer instanceTtlSec;
+
+    @NotNull
+    private Integer virtualNodes;
+
+    @NotNull
+    private String forwardMode;
+
+    // blank to advertise http://<host address>:<http.port>
+    private String advertisedUrl;
+
+    @NotNull
+    private Integer proxyTimeoutSec;
+
+    @NotNull
+    private Integer proxyMaxPoolSize;
+
+}
@@ -29,4 +29,20 @@ public class TokensSummaryConfiguration {
     @NotNull
     private Integer granularSummaryMinute;
 
+    // granular windows of an hour read at the same time
+    @NotNull
+    private Integer maxConcurrentQueries;
+
+    // hours read ahead of the hour being saved when catching up
+    @NotNull
+    private Integer pipelinedHours;
+
+    // reads only the delivery schedules of the history rows, with MySQL JSON_EXTRACT
+    @NotNull
+    private Boolean extractSchedulesInDatabase;
+
+    // records tokens as line items are retrieved, instead of reading them back from history
+    @NotNull
+    private Boolean incrementalRollup;
+
 }
@@ -0,0 +1,122 @@
+package org.prebid.pg.gp.server.auth;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.auth.User;
+import io.vertx.ext.web.RoutingContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.prebid.pg.gp.server.spring.config.app.ServerAuthDataConfiguration;
+import org.prebid.pg.gp.server.spring.config.app.ServerAuthDataConfiguration.Principal;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class StatelessBasicAuthHandlerTest {
+
+    @Mock
+    private RoutingContext routingContext;
+
+    @Mock
+    private HttpServerRequest httpRequest;
+
+    @Mock
+    private HttpServerResponse httpResponse;
+
+    private BasicAuthProvider authProvider;
+
+    private StatelessBasicAuthHandler handler;
+
+    @BeforeEach
+    void setUp() {
+        ServerAuthDataConfiguration config = new ServerAuthDataConfiguration();
+        config.setAuthenticationEnabled(true);
+        Principal principal = new Principal();
+        principal.setUsername("user1");
+        principal.setPassword("password1");
+        principal.setRoles("pbs, other");
+        config.setPrincipals(Collections.singletonList(principal));
+        authProvider = spy(new BasicAuthProvider(config));
+        handler = new StatelessBasicAuthHandler(authProvider, "test");
+
+        lenient().when(routingContext.request()).thenReturn(httpRequest);
+    }
+
+    @Test
+    void shouldAuthenticateOnceAndServeRepeatedHeadersFromCache() {
+        given(httpRequest.getHeader(HttpHeaders.AUTHORIZATION)).willReturn(basic("user1:password1"));
+
+        handler.handle(routingContext);
+        handler.handle(routingContext);
+
+        verify(authProvider, times(1)).authenticate(any(), any());
+        ArgumentCaptor<User> userCaptor = ArgumentCaptor.forClass(User.class);
+        verify(routingContext, times(2)).setUser(userCaptor.capture());
+        verify(routingContext, times(2)).next();
+        assertThat(userCaptor.getAllValues().get(1).principal().getString("username"), equalTo("user1"));
+        // users are not shared between requests
+        assertThat(userCaptor.getAllValues().get(0), not(sameInstance(userCaptor.getAllValues().get(1))));
+    }
+
+    @Test
+    void shouldAuthorizeWithPrecomputedRoles() {
+        BasicAuthUser user = new BasicAuthUser(authProvider, "user1", "pbs, other");
+
+        user.isAuthorized("other", ar -> assertThat(ar.result(), equalTo(true)));
+        user.isAuthorized("admin-only", ar -> assertThat(ar.result(), equalTo(false)));
+        authProvider.authorize("unknown", "pbs", ar -> assertThat(ar.result(), equalTo(false)));
+    }
+
+    @Test
+    void shouldRespondWith401OnWrongPassword() {
+        given(httpRequest.getHeader(HttpHeaders.AUTHORIZATION)).willReturn(basic("user1:wrong"));
+        given(routingContext.response()).willReturn(httpResponse);
+        given(httpResponse.putHeader(any(CharSequence.class), any(CharSequence.class))).willReturn(httpResponse);
+        given(httpResponse.setStatusCode(anyInt())).willReturn(httpResponse);
+
+        handler.handle(routingContext);
+
+        verify(httpResponse).setStatusCode(HttpResponseStatus.UNAUTHORIZED.code());
+        verify(httpResponse).putHeader(HttpHeaderNames.WWW_AUTHENTICATE, "Basic realm=\"test\"");
+        verify(routingContext, never()).next();
+    }
+
+    @Test
+    void shouldRespondWith401OnMissingHeader() {
+        given(routingContext.response()).willReturn(httpResponse);
+        given(httpResponse.putHeader(any(CharSequence.class), any(CharSequence.class))).willReturn(httpResponse);
+        given(httpResponse.setStatusCode(anyInt())).willReturn(httpResponse);
+
+        handler.handle(routingContext);
+
+        verify(httpResponse).setStatusCode(HttpResponseStatus.UNAUTHORIZED.code());
+        verify(routingContext, never()).next();
+    }
+
+    private String basic(String credentials) {
+        return "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
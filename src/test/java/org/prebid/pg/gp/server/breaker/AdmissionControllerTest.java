@@ -0,0 +1,104 @@
+package org.prebid.pg.gp.server.breaker;
+
+import com.codahale.metrics.MetricRegistry;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.prebid.pg.gp.server.exception.ServiceOverloadedException;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.spring.config.app.AdmissionControlConfiguration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AdmissionControllerTest {
+
+    private Vertx vertx;
+
+    private MetricRegistry registry;
+
+    private AdmissionController controller;
+
+    @BeforeEach
+    void setUp() {
+        vertx = mock(Vertx.class);
+        when(vertx.setTimer(anyLong(), any())).thenReturn(1L);
+        registry = new MetricRegistry();
+
+        AdmissionControlConfiguration config = new AdmissionControlConfiguration();
+        config.setEnabled(true);
+        config.setMaxInFlight(1);
+        config.setMaxQueued(1);
+        config.setMaxQueueTimeMs(50);
+        config.setRetryAfterSec(3);
+        controller = new AdmissionController("test", vertx, config, new Metrics(registry));
+    }
+
+    @Test
+    void shouldQueueOverLimitAndAdmitOnRelease() {
+        Future<String> first = Future.future();
+        Future<String> firstResult = controller.executeCommand(future -> first.setHandler(future));
+        Future<String> secondResult = controller.executeCommand(future -> future.complete("second"));
+
+        assertThat(controller.getInFlight(), equalTo(1));
+        assertThat(controller.getQueued(), equalTo(1));
+        assertThat(secondResult.isComplete(), is(false));
+
+        first.complete("first");
+
+        assertThat(firstResult.result(), equalTo("first"));
+        assertThat(secondResult.result(), equalTo("second"));
+        assertThat(controller.getInFlight(), equalTo(0));
+        assertThat(controller.getQueued(), equalTo(0));
+        verify(vertx).cancelTimer(1L);
+    }
+
+    @Test
+    void shouldShedWhenQueueIsFull() {
+        controller.executeCommand(future -> { });
+        controller.executeCommand(future -> { });
+        Future<Void> shed = controller.executeCommand(future -> future.complete());
+
+        assertThat(shed.failed(), is(true));
+        assertThat(shed.cause(), instanceOf(ServiceOverloadedException.class));
+        assertThat(((ServiceOverloadedException) shed.cause()).getRetryAfterSec(), equalTo(3));
+        assertThat(registry.counter("admission.test.shed").getCount(), equalTo(1L));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void shouldShedWhenQueueTimeBudgetIsExceeded() {
+        controller.executeCommand(future -> { });
+        Future<Void> queued = controller.executeCommand(future -> future.complete());
+
+        ArgumentCaptor<Handler<Long>> timerCaptor = ArgumentCaptor.forClass(Handler.class);
+        verify(vertx).setTimer(eq(50L), timerCaptor.capture());
+        timerCaptor.getValue().handle(1L);
+
+        assertThat(queued.failed(), is(true));
+        assertThat(queued.cause(), instanceOf(ServiceOverloadedException.class));
+        assertThat(controller.getQueued(), equalTo(0));
+    }
+
+    @Test
+    void shouldReleasePermitWhenCommandThrows() {
+        Future<Void> result = controller.executeCommand(future -> {
+            throw new IllegalStateException("boom");
+        });
+
+        assertThat(result.failed(), is(true));
+        assertThat(controller.getInFlight(), equalTo(0));
+    }
+
+}
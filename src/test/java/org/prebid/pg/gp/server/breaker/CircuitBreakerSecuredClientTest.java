@@ -1,12 +1,21 @@
 package org.prebid.pg.gp.server.breaker;
 
+import io.vertx.circuitbreaker.CircuitBreakerState;
+import io.vertx.core.Future;
 import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.prebid.pg.gp.server.exception.ServiceOverloadedException;
 import org.prebid.pg.gp.server.spring.config.app.CircuitBreakerConfiguration;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.isA;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
 
+@ExtendWith(VertxExtension.class)
 public class CircuitBreakerSecuredClientTest {
 
     @Test
@@ -18,4 +27,21 @@ public class CircuitBreakerSecuredClientTest {
         CircuitBreakerSecuredClient client = new CircuitBreakerSecuredClient(plannerCircuitBreaker);
         assertThat(client, isA(CircuitBreakerSecuredClient.class));
     }
+
+    @Test
+    void shouldNotOpenBreakerOnShedCommands(Vertx vertx, VertxTestContext context) {
+        CircuitBreakerConfiguration config = new CircuitBreakerConfiguration();
+        config.setClosingIntervalSec(1);
+        config.setOpeningThreshold(1);
+        PlannerCircuitBreaker plannerCircuitBreaker = new PlannerCircuitBreaker("foo", vertx, config);
+
+        Future<Object> result = plannerCircuitBreaker.executeCommand(
+                future -> future.fail(new ServiceOverloadedException("overloaded", 1)));
+
+        result.setHandler(context.failing(cause -> context.verify(() -> {
+            assertThat(cause, instanceOf(ServiceOverloadedException.class));
+            assertThat(plannerCircuitBreaker.getBreaker().state(), equalTo(CircuitBreakerState.CLOSED));
+            context.completeNow();
+        })));
+    }
 }
@@ -0,0 +1,107 @@
+package org.prebid.pg.gp.server.breaker;
+
+import com.codahale.metrics.MetricRegistry;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.prebid.pg.gp.server.exception.ServiceOverloadedException;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.spring.config.app.ComputeExecutorConfiguration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.hamcrest.core.StringStartsWith.startsWith;
+import static org.mockito.Mockito.mock;
+
+@ExtendWith(VertxExtension.class)
+class ComputeExecutorTest {
+
+    private Vertx vertx;
+
+    private MetricRegistry registry;
+
+    private ComputeExecutorConfiguration config;
+
+    @BeforeEach
+    void setUp() {
+        vertx = Vertx.vertx();
+        registry = new MetricRegistry();
+        config = new ComputeExecutorConfiguration();
+        config.setEnabled(true);
+        config.setPoolSize(2);
+        config.setMaxQueued(8);
+        config.setMaxExecuteTimeMs(1000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        vertx.close();
+    }
+
+    @Test
+    void shouldRunOffEventLoopAndCompleteOnCallerContext(VertxTestContext context) {
+        ComputeExecutor executor = new ComputeExecutor(vertx, config, new Metrics(registry));
+
+        vertx.runOnContext(v -> {
+            final Thread eventLoop = Thread.currentThread();
+            executor.map(Future.succeededFuture("abc"), value -> {
+                assertThat(Thread.currentThread().getName(), startsWith("gp-compute"));
+                return value.length();
+            }, "test").setHandler(ar -> context.verify(() -> {
+                assertThat(ar.result(), equalTo(3));
+                assertThat(Thread.currentThread(), is(eventLoop));
+                assertThat(registry.timer("compute.test.run-time").getCount(), equalTo(1L));
+                assertThat(registry.timer("compute.test.queue-time").getCount(), equalTo(1L));
+                assertThat(executor.getRunning(), equalTo(0));
+                assertThat(executor.getQueued(), equalTo(0));
+                context.completeNow();
+            }));
+        });
+    }
+
+    @Test
+    void shouldFailWhenMappingThrows(VertxTestContext context) {
+        ComputeExecutor executor = new ComputeExecutor(vertx, config, new Metrics(registry));
+
+        executor.<String, Integer>execute("abc", value -> {
+            throw new IllegalStateException("boom");
+        }, "test").setHandler(ar -> context.verify(() -> {
+            assertThat(ar.failed(), is(true));
+            assertThat(ar.cause(), instanceOf(IllegalStateException.class));
+            assertThat(registry.counter("compute.test.exc").getCount(), equalTo(1L));
+            context.completeNow();
+        }));
+    }
+
+    @Test
+    void shouldRunOnCallerWhenDisabled() {
+        config.setEnabled(false);
+        ComputeExecutor executor = new ComputeExecutor(mock(Vertx.class), config, new Metrics(registry));
+
+        Future<Integer> result = executor.execute("abc", String::length, "test");
+
+        assertThat(result.result(), equalTo(3));
+        assertThat(registry.timer("compute.test.run-time").getCount(), equalTo(1L));
+    }
+
+    @Test
+    void shouldRejectWhenQueueIsFull() {
+        config.setMaxQueued(0);
+        ComputeExecutor executor = new ComputeExecutor(vertx, config, new Metrics(registry));
+
+        Future<Integer> result = executor.execute("abc", String::length, "test");
+
+        assertThat(result.failed(), is(true));
+        assertThat(result.cause(), instanceOf(ServiceOverloadedException.class));
+        assertThat(executor.getQueued(), equalTo(0));
+        assertThat(registry.counter("compute.rejected").getCount(), equalTo(1L));
+    }
+
+}
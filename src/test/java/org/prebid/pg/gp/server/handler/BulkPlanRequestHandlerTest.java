@@ -0,0 +1,219 @@
+package org.prebid.pg.gp.server.handler;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.web.RoutingContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.prebid.pg.gp.server.breaker.AdmissionController;
+import org.prebid.pg.gp.server.breaker.ComputeExecutor;
+import org.prebid.pg.gp.server.http.AlertProxyHttpClient;
+import org.prebid.pg.gp.server.jdbc.ChangeVersionClient;
+import org.prebid.pg.gp.server.jdbc.CircuitBreakerSecuredPlannerDataAccessClient;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.model.AdminTracer;
+import org.prebid.pg.gp.server.model.LineItem;
+import org.prebid.pg.gp.server.model.PbsHost;
+import org.prebid.pg.gp.server.model.ReallocatedPlan;
+import org.prebid.pg.gp.server.model.ReallocationWeights;
+import org.prebid.pg.gp.server.model.Shutdown;
+import org.prebid.pg.gp.server.model.Weightage;
+import org.prebid.pg.gp.server.services.PlanRenderer;
+import org.prebid.pg.gp.server.services.PlanVersionTracker;
+import org.prebid.pg.gp.server.spring.config.app.AdmissionControlConfiguration;
+import org.prebid.pg.gp.server.spring.config.app.ComputeExecutorConfiguration;
+import org.prebid.pg.gp.server.spring.config.app.HostReallocationConfiguration;
+import org.prebid.pg.gp.server.spring.config.app.PlanRequestConfiguration;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+@ExtendWith(MockitoExtension.class)
+class BulkPlanRequestHandlerTest {
+
+    @Mock
+    private RoutingContext routingContext;
+
+    @Mock
+    private HttpServerResponse httpResponse;
+
+    @Mock
+    private CircuitBreakerSecuredPlannerDataAccessClient dataAccessClient;
+
+    @Mock
+    private Shutdown shutdown;
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    private BulkPlanRequestHandler handler;
+
+    @BeforeEach
+    void setUp() {
+        HostReallocationConfiguration reallocationConfig = new HostReallocationConfiguration();
+        reallocationConfig.setLineItemHasExpiredMin(20);
+        PlanRequestConfiguration planRequestConfig = new PlanRequestConfiguration();
+        PlanRequestConfiguration.Bulk bulk = new PlanRequestConfiguration.Bulk();
+        bulk.setEnabled(true);
+        bulk.setMaxHosts(3);
+        planRequestConfig.setBulk(bulk);
+        AdmissionControlConfiguration admissionConfig = new AdmissionControlConfiguration();
+        admissionConfig.setEnabled(false);
+        Metrics metrics = new Metrics(new MetricRegistry());
+        ComputeExecutorConfiguration computeConfig = new ComputeExecutorConfiguration();
+        computeConfig.setEnabled(false);
+
+        handler = new BulkPlanRequestHandler(dataAccessClient, "masked", "pbs", false,
+                reallocationConfig, 180, metrics, shutdown, mock(AlertProxyHttpClient.class),
+                new PlanRenderer(new AdminTracer(), new Random()),
+                new ComputeExecutor(mock(Vertx.class), computeConfig, metrics),
+                new AdmissionController("plans", mock(Vertx.class), admissionConfig, metrics),
+                new PlanVersionTracker(mock(Vertx.class), new ChangeVersionClient(metrics), metrics),
+                planRequestConfig);
+
+        given(routingContext.response()).willReturn(httpResponse);
+    }
+
+    @Test
+    void shouldStreamOneSectionPerHostSharingLineItems() throws Exception {
+        LineItem lineItem = lineItem();
+        given(dataAccessClient.getLineItemsByStatus(any(), any()))
+                .willReturn(Future.succeededFuture(Collections.singletonList(lineItem)));
+        given(dataAccessClient.findActiveHosts(any()))
+                .willReturn(Future.succeededFuture(Arrays.asList(host("host1"), host("host2"))));
+        given(dataAccessClient.getReallocatedPlans(argThat(hosts -> hosts.size() == 2)))
+                .willReturn(Future.succeededFuture(Arrays.asList(plan("host1", 50.0), plan("host2", 25.0))));
+        given(routingContext.getBody()).willReturn(Buffer.buffer("["
+                + "{\"vendor\":\"vendor1\",\"region\":\"us-east\",\"instanceId\":\"host1\"},"
+                + "{\"vendor\":\"vendor1\",\"region\":\"us-east\",\"instanceId\":\"host2\"},"
+                + "{\"vendor\":\"vendor1\",\"region\":\"us-east\",\"instanceId\":\"host3\"}]"));
+        given(httpResponse.setChunked(anyBoolean())).willReturn(httpResponse);
+        given(httpResponse.setStatusCode(anyInt())).willReturn(httpResponse);
+        given(httpResponse.putHeader(any(CharSequence.class), any(CharSequence.class))).willReturn(httpResponse);
+
+        handler.handle(routingContext);
+
+        ArgumentCaptor<String> sectionsCaptor = ArgumentCaptor.forClass(String.class);
+        verify(httpResponse, times(3)).write(sectionsCaptor.capture());
+        ArgumentCaptor<String> endCaptor = ArgumentCaptor.forClass(String.class);
+        verify(httpResponse).end(endCaptor.capture());
+        verify(httpResponse).setStatusCode(HttpResponseStatus.OK.code());
+
+        JsonNode sections = objectMapper.readTree(String.join("", sectionsCaptor.getAllValues()) + endCaptor.getValue());
+        assertThat(sections.size(), equalTo(3));
+        assertThat(sections.get(0).get("instanceId").asText(), equalTo("host1"));
+        assertThat(total(sections.get(0)), equalTo(500));
+        assertThat(total(sections.get(1)), equalTo(250));
+        assertThat(sections.get(2).get("lineItems").size(), equalTo(0));
+        // the shared line item is rendered from copies
+        assertThat(lineItem.getLineItemJson().get("deliverySchedules").get(0).get("tokens").get(0)
+                .get("total").asInt(), equalTo(1000));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldStopStreamingAndDropDrainWaitWhenClientCloses() throws Exception {
+        given(dataAccessClient.getLineItemsByStatus(any(), any()))
+                .willReturn(Future.succeededFuture(Collections.singletonList(lineItem())));
+        given(dataAccessClient.findActiveHosts(any()))
+                .willReturn(Future.succeededFuture(Arrays.asList(host("host1"), host("host2"))));
+        given(dataAccessClient.getReallocatedPlans(any()))
+                .willReturn(Future.succeededFuture(Arrays.asList(plan("host1", 50.0), plan("host2", 25.0))));
+        given(routingContext.getBody()).willReturn(Buffer.buffer("["
+                + "{\"vendor\":\"vendor1\",\"region\":\"us-east\",\"instanceId\":\"host1\"},"
+                + "{\"vendor\":\"vendor1\",\"region\":\"us-east\",\"instanceId\":\"host2\"}]"));
+        given(httpResponse.setChunked(anyBoolean())).willReturn(httpResponse);
+        given(httpResponse.setStatusCode(anyInt())).willReturn(httpResponse);
+        given(httpResponse.putHeader(any(CharSequence.class), any(CharSequence.class))).willReturn(httpResponse);
+        given(httpResponse.writeQueueFull()).willReturn(false, true);
+
+        handler.handle(routingContext);
+
+        ArgumentCaptor<Handler<Void>> closeCaptor = ArgumentCaptor.forClass(Handler.class);
+        verify(httpResponse).closeHandler(closeCaptor.capture());
+        verify(httpResponse).drainHandler(any());
+        closeCaptor.getValue().handle(null);
+
+        verify(httpResponse).drainHandler(null);
+        verify(httpResponse, times(1)).write(any(String.class));
+        verify(httpResponse, never()).end(any(String.class));
+    }
+
+    @Test
+    void shouldRespondWithBadRequestForTooManyHosts() {
+        given(routingContext.getBody()).willReturn(Buffer.buffer("["
+                + "{\"vendor\":\"v\",\"region\":\"r\",\"instanceId\":\"1\"},"
+                + "{\"vendor\":\"v\",\"region\":\"r\",\"instanceId\":\"2\"},"
+                + "{\"vendor\":\"v\",\"region\":\"r\",\"instanceId\":\"3\"},"
+                + "{\"vendor\":\"v\",\"region\":\"r\",\"instanceId\":\"4\"}]"));
+        given(httpResponse.setStatusCode(anyInt())).willReturn(httpResponse);
+        given(httpResponse.putHeader(any(CharSequence.class), any(CharSequence.class))).willReturn(httpResponse);
+
+        handler.handle(routingContext);
+
+        verify(httpResponse).setStatusCode(HttpResponseStatus.BAD_REQUEST.code());
+        verifyZeroInteractions(dataAccessClient);
+    }
+
+    @Test
+    void shouldRespondWithBadRequestForHostWithoutInstanceId() {
+        given(routingContext.getBody()).willReturn(Buffer.buffer("[{\"vendor\":\"v\",\"region\":\"r\"}]"));
+        given(httpResponse.setStatusCode(anyInt())).willReturn(httpResponse);
+        given(httpResponse.putHeader(any(CharSequence.class), any(CharSequence.class))).willReturn(httpResponse);
+
+        handler.handle(routingContext);
+
+        verify(httpResponse).setStatusCode(HttpResponseStatus.BAD_REQUEST.code());
+        verifyZeroInteractions(dataAccessClient);
+    }
+
+    private int total(JsonNode section) {
+        return section.get("lineItems").get(0).get("deliverySchedules").get(0).get("tokens").get(0)
+                .get("total").asInt();
+    }
+
+    private LineItem lineItem() throws Exception {
+        ObjectNode json = (ObjectNode) objectMapper.readTree("{\"lineItemId\":\"1111\",\"status\":\"active\","
+                + "\"deliverySchedules\":[{\"tokens\":[{\"class\":1,\"total\":1000}]}]}");
+        return LineItem.builder().lineItemId("1111").bidderCode("pgbidder1").status("active")
+                .lineItemJson(json).build();
+    }
+
+    private PbsHost host(String instanceId) {
+        return PbsHost.builder().vendor("vendor1").region("us-east").hostInstanceId(instanceId).build();
+    }
+
+    private ReallocatedPlan plan(String instanceId, double weight) {
+        List<Weightage> weights = Collections.singletonList(
+                Weightage.builder().bidderCode("pgbidder1").lineItemId("1111").weight(weight).build());
+        return ReallocatedPlan.builder().vendor("vendor1").region("us-east").instanceId(instanceId)
+                .reallocationWeights(ReallocationWeights.builder().weights(weights).build()).build();
+    }
+
+}
@@ -3,13 +3,16 @@ package org.prebid.pg.gp.server.handler;
 import com.codahale.metrics.MetricRegistry;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.vertx.core.Future;
+import io.vertx.core.Handler;
 import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.http.HttpServerResponse;
 import io.vertx.ext.web.RoutingContext;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.prebid.pg.gp.server.auth.BasicAuthUser;
@@ -18,18 +21,26 @@ import org.prebid.pg.gp.server.jdbc.CircuitBreakerSecuredPlannerDataAccessClient
 import org.prebid.pg.gp.server.metric.Metrics;
 import org.prebid.pg.gp.server.model.LineItemsTokensSummary;
 import org.prebid.pg.gp.server.model.Shutdown;
+import org.prebid.pg.gp.server.services.LineItemsTokensSummaryCache;
 import org.prebid.pg.gp.server.spring.config.WebConfiguration.CsvMapperFactory;
+import org.prebid.pg.gp.server.spring.config.app.LineItemsTokensSummaryConfiguration;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Function;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 @ExtendWith(MockitoExtension.class)
@@ -59,10 +70,15 @@ public class LineItemsTokensSummaryHandlerTest extends HandlerTestBase {
 
     private AlertProxyHttpClient alertHttpClientMock;
 
+    private LineItemsTokensSummaryConfiguration summaryConfiguration;
+
     @BeforeEach
     void setUp() {
         alertHttpClientMock = mock(AlertProxyHttpClient.class);
         csvMapperFactory = new CsvMapperFactory();
+        summaryConfiguration = new LineItemsTokensSummaryConfiguration();
+        summaryConfiguration.setCacheEnabled(false);
+        summaryConfiguration.setCacheMaxRows(100);
 
         tokensSummaryHandler = new LineItemsTokensSummaryHandler(
                 plannerDataAccessClientMock,
@@ -71,7 +87,8 @@ public class LineItemsTokensSummaryHandlerTest extends HandlerTestBase {
                 true,
                 new Metrics(new MetricRegistry()),
                 alertHttpClientMock,
-                shutdownMock);
+                shutdownMock,
+                new LineItemsTokensSummaryCache(summaryConfiguration, new Metrics(new MetricRegistry())));
 
         given(routingContext.response()).willReturn(httpResponse);
     }
@@ -148,8 +165,7 @@ public class LineItemsTokensSummaryHandlerTest extends HandlerTestBase {
         Instant now = Instant.now();
         given(params.get("startTime")).willReturn(now.minus(2, ChronoUnit.HOURS).toString());
         given(params.get("lineItemIds")).willReturn("vendor1-l1");
-        given(plannerDataAccessClientMock.getLineItemsTokensSummary(any(), any(), any()))
-                .willReturn(Future.succeededFuture(summaries));
+        givenSummaryPages(summaries);
         given(plannerDataAccessClientMock.getHourlyLineItemTokens(any(), any(), any()))
                 .willReturn(Future.succeededFuture(thisHourSummaries));
         given(httpResponse.setStatusCode(anyInt())).willReturn(httpResponse);
@@ -160,6 +176,104 @@ public class LineItemsTokensSummaryHandlerTest extends HandlerTestBase {
         verify(httpResponse).end(csv);
     }
 
+    @Test
+    void shouldServeSummarizedHoursFromCache() {
+        summaryConfiguration.setCacheEnabled(true);
+        given(routingContext.request()).willReturn(httpRequest);
+        given(routingContext.request().params()).willReturn(params);
+        given(routingContext.user()).willReturn(
+                new BasicAuthUser(getBasicAuthProvider("admin", "admin", "admin"), "admin", "admin"));
+        Instant currentHour = Instant.now().truncatedTo(ChronoUnit.HOURS);
+        Instant startTime = currentHour.minus(2, ChronoUnit.HOURS);
+        given(params.get("startTime")).willReturn(startTime.toString());
+        given(params.get("lineItemIds")).willReturn("vendor1-l1");
+        given(plannerDataAccessClientMock.getSystemState(anyString()))
+                .willReturn(Future.succeededFuture(currentHour.toString()));
+        List<LineItemsTokensSummary> summaries = buildTokensSummaries(startTime, 1);
+        summaries.addAll(buildTokensSummaries(startTime.plus(1, ChronoUnit.HOURS), 2));
+        givenSummaryPages(summaries);
+        given(plannerDataAccessClientMock.getHourlyLineItemTokens(any(), any(), any()))
+                .willReturn(Future.succeededFuture(buildTokensSummaries(currentHour, 3)));
+        given(httpResponse.setStatusCode(anyInt())).willReturn(httpResponse);
+
+        tokensSummaryHandler.handle(routingContext);
+        tokensSummaryHandler.handle(routingContext);
+
+        ArgumentCaptor<String> csv = ArgumentCaptor.forClass(String.class);
+        verify(httpResponse, times(2)).end(csv.capture());
+        assertThat(csv.getAllValues().get(1), equalTo(csv.getAllValues().get(0)));
+        assertThat(csv.getAllValues().get(0).split("\n").length, equalTo(4));
+        verify(plannerDataAccessClientMock).streamLineItemsTokensSummary(
+                eq(startTime), eq(currentHour.plusSeconds(1)), any(), any());
+        verify(plannerDataAccessClientMock, times(2)).getHourlyLineItemTokens(eq(currentHour), any(), any());
+    }
+
+    @Test
+    void shouldStreamLargeReportInChunks() {
+        given(routingContext.request()).willReturn(httpRequest);
+        given(routingContext.request().params()).willReturn(params);
+        given(routingContext.user()).willReturn(
+                new BasicAuthUser(getBasicAuthProvider("admin", "admin", "admin"), "admin", "admin"));
+        given(params.get("startTime")).willReturn(Instant.now().minus(2, ChronoUnit.HOURS).toString());
+        List<LineItemsTokensSummary> summaries = new ArrayList<>();
+        Instant startTime = Instant.parse("2020-03-02T00:00:00.000Z");
+        for (int id = 1; id <= 2000; id++) {
+            summaries.addAll(buildTokensSummaries(startTime, id));
+        }
+        givenSummaryPages(summaries);
+        given(plannerDataAccessClientMock.getHourlyLineItemTokens(any(), any(), any()))
+                .willReturn(Future.succeededFuture(new ArrayList<>()));
+        final StringBuilder body = new StringBuilder();
+        given(httpResponse.write(any(Buffer.class))).willAnswer(invocation -> {
+            body.append(invocation.<Buffer>getArgument(0).toString());
+            return httpResponse;
+        });
+
+        tokensSummaryHandler.handle(routingContext);
+
+        verify(httpResponse).setStatusCode(HttpResponseStatus.OK.code());
+        verify(httpResponse).setChunked(true);
+        ArgumentCaptor<String> lastChunk = ArgumentCaptor.forClass(String.class);
+        verify(httpResponse).end(lastChunk.capture());
+        body.append(lastChunk.getValue());
+        String[] lines = body.toString().split("\n");
+        assertThat(lines.length, equalTo(2001));
+        assertThat(lines[2000], equalTo("2000,2020-03-02T00:00:00.000Z,2020-03-02T01:00:00.000Z,vendor1-l1,10,"
+                + "vendor1,l1"));
+    }
+
+    @Test
+    void shouldCloseResponseWhenClientDisconnectsWhileDraining() {
+        given(routingContext.request()).willReturn(httpRequest);
+        given(routingContext.request().params()).willReturn(params);
+        given(routingContext.user()).willReturn(
+                new BasicAuthUser(getBasicAuthProvider("admin", "admin", "admin"), "admin", "admin"));
+        given(params.get("startTime")).willReturn(Instant.now().minus(2, ChronoUnit.HOURS).toString());
+        List<LineItemsTokensSummary> summaries = new ArrayList<>();
+        for (int id = 1; id <= 2000; id++) {
+            summaries.addAll(buildTokensSummaries(Instant.parse("2020-03-02T00:00:00.000Z"), id));
+        }
+        givenSummaryPages(summaries);
+        given(httpResponse.writeQueueFull()).willReturn(true);
+        ArgumentCaptor<Handler<Void>> closeHandler = ArgumentCaptor.forClass(Handler.class);
+
+        tokensSummaryHandler.handle(routingContext);
+
+        verify(httpResponse).closeHandler(closeHandler.capture());
+        verify(httpResponse, never()).close();
+        closeHandler.getValue().handle(null);
+        verify(httpResponse).close();
+        verify(httpResponse, never()).end(anyString());
+    }
+
+    private void givenSummaryPages(List<LineItemsTokensSummary> summaries) {
+        given(plannerDataAccessClientMock.streamLineItemsTokensSummary(any(), any(), any(), any()))
+                .willAnswer(invocation -> {
+                    Function<List<LineItemsTokensSummary>, Future<Void>> pageHandler = invocation.getArgument(3);
+                    return summaries.isEmpty() ? Future.succeededFuture() : pageHandler.apply(summaries);
+                });
+    }
+
     private List<LineItemsTokensSummary> buildTokensSummaries(Instant startTime, int id) {
         List<LineItemsTokensSummary> summaries = new ArrayList<>();
         Instant endTime = startTime.plus(1, ChronoUnit.HOURS);
@@ -2,8 +2,12 @@ package org.prebid.pg.gp.server.handler;
 
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.io.Resources;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.vertx.core.Future;
+import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpServerResponse;
 import io.vertx.ext.sql.UpdateResult;
@@ -17,20 +21,34 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.prebid.pg.gp.server.auth.BasicAuthProvider;
 import org.prebid.pg.gp.server.auth.BasicAuthUser;
+import org.prebid.pg.gp.server.breaker.AdmissionController;
+import org.prebid.pg.gp.server.jdbc.ChangeVersionClient;
 import org.prebid.pg.gp.server.jdbc.CircuitBreakerSecuredPlannerDataAccessClient;
 import org.prebid.pg.gp.server.metric.Metrics;
 import org.prebid.pg.gp.server.model.AdminEvent;
 import org.prebid.pg.gp.server.model.AdminTracer;
+import org.prebid.pg.gp.server.model.LineItem;
+import org.prebid.pg.gp.server.model.ReallocatedPlan;
+import org.prebid.pg.gp.server.model.ReallocationWeights;
 import org.prebid.pg.gp.server.model.Registration;
 import org.prebid.pg.gp.server.model.Shutdown;
 import org.prebid.pg.gp.server.model.TracerFilters;
+import org.prebid.pg.gp.server.model.Weightage;
+import org.prebid.pg.gp.server.services.PlanRenderer;
+import org.prebid.pg.gp.server.services.PlanVersionTracker;
+import org.prebid.pg.gp.server.services.PollHintService;
+import org.prebid.pg.gp.server.spring.config.app.AdmissionControlConfiguration;
+import org.prebid.pg.gp.server.spring.config.app.HostReallocationConfiguration;
 import org.prebid.pg.gp.server.spring.config.app.ServerAuthDataConfiguration;
 
 import java.io.File;
 import java.net.URL;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
@@ -38,7 +56,12 @@ import static org.hamcrest.core.IsEqual.equalTo;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.prebid.pg.gp.server.handler.PbsRegistrationHandler.REG_REQUEST_KEY;
 
@@ -57,6 +80,9 @@ class PbsRegistrationHandlerTest {
     @Mock
     private CircuitBreakerSecuredPlannerDataAccessClient dataAccessClient;
 
+    @Mock
+    private PollHintService pollHintService;
+
     private PbsRegistrationHandler pbsRegistrationHandler;
 
     private AdminTracer tracer;
@@ -73,14 +99,27 @@ class PbsRegistrationHandlerTest {
         filters.setVendor("vendor1");
         tracer.setFilters(filters);
 
+        Metrics metrics = new Metrics(new MetricRegistry());
+        HostReallocationConfiguration reallocationConfig = new HostReallocationConfiguration();
+        reallocationConfig.setLineItemHasExpiredMin(20);
+        AdmissionControlConfiguration admissionConfig = new AdmissionControlConfiguration();
+        admissionConfig.setEnabled(false);
+
         pbsRegistrationHandler = new PbsRegistrationHandler(
                 dataAccessClient,
                 "Service is temporarily unavailable, please try again later",
-                "pbs", true, new Metrics(new MetricRegistry()), false, tracer, shutdown
+                "pbs", true, metrics, false, tracer, shutdown, pollHintService,
+                reallocationConfig, 180, new PlanRenderer(tracer, new Random()),
+                new AdmissionController("plans", mock(Vertx.class), admissionConfig, metrics),
+                new PlanVersionTracker(mock(Vertx.class), new ChangeVersionClient(metrics), metrics), true
         );
 
         given(routingContext.response()).willReturn(httpResponse);
         given(httpResponse.setStatusCode(anyInt())).willReturn(httpResponse);
+        lenient().when(dataAccessClient.inSession(any()))
+                .thenAnswer(invocation -> invocation
+                        .<Function<CircuitBreakerSecuredPlannerDataAccessClient, Future<?>>>getArgument(0)
+                        .apply(dataAccessClient));
     }
 
     private BasicAuthProvider getBasicAuthProvider(String roles) {
@@ -129,6 +168,8 @@ class PbsRegistrationHandlerTest {
 
         given(dataAccessClient.updateRegistration(any()))
                 .willReturn(Future.succeededFuture(new UpdateResult()));
+        given(dataAccessClient.findEarliestActiveAdminEvent(any(), any(), any()))
+                .willReturn(Future.succeededFuture());
         given(routingContext.user()).willReturn(
                 new BasicAuthUser(getBasicAuthProvider("pbs"), "user1", "pbs")
         );
@@ -179,6 +220,81 @@ class PbsRegistrationHandlerTest {
         verify(httpResponse).setStatusCode(HttpResponseStatus.OK.code());
     }
 
+    @Test
+    void shouldIncludeNextPollHint() throws Exception {
+        String baseDir = "pbs-register/sunny-day";
+        URL url = Resources.getResource(String.format("%s/input/%s", baseDir, "register.json"));
+        String body = FileUtils.readFileToString(new File(url.toURI()), "UTF-8");
+        given(routingContext.getBody()).willReturn(Buffer.buffer(body));
+        Registration registration = Registration.builder()
+                .region("east")
+                .vendor(vendor)
+                .instanceId("foo")
+                .build();
+        given(routingContext.get(REG_REQUEST_KEY)).willReturn(registration);
+        given(dataAccessClient.updateRegistration(any()))
+                .willReturn(Future.succeededFuture(new UpdateResult()));
+        given(dataAccessClient.findEarliestActiveAdminEvent(any(), any(), any()))
+                .willReturn(Future.succeededFuture());
+        given(pollHintService.nextRegistrationSec(eq(vendor), eq("east"), eq("foo"), any())).willReturn(42);
+        given(routingContext.user()).willReturn(
+                new BasicAuthUser(getBasicAuthProvider("pbs"), "user1", "pbs")
+        );
+
+        pbsRegistrationHandler.handle(routingContext);
+
+        verify(httpResponse).putHeader(PollHintService.NEXT_POLL_HEADER, "42");
+        verify(httpResponse).end();
+    }
+
+    @Test
+    void shouldIncludePlansWithoutLookingUpHostAgainWhenRequested() throws Exception {
+        given(routingContext.getBody()).willReturn(Buffer.buffer("{\"healthIndex\":0.9,\"hostInstanceId\":\"foo\","
+                + "\"region\":\"east\",\"vendor\":\"vendor1\",\"includePlans\":true}"));
+        Registration registration = Registration.builder()
+                .region("east")
+                .vendor(vendor)
+                .instanceId("foo")
+                .includePlans(true)
+                .build();
+        ObjectNode lineItemJson = (ObjectNode) new ObjectMapper().readTree("{\"lineItemId\":\"1111\","
+                + "\"deliverySchedules\":[{\"tokens\":[{\"class\":1,\"total\":1000}]}]}");
+        LineItem lineItem = LineItem.builder().lineItemId("1111").bidderCode("pgbidder1").status("active")
+                .lineItemJson(lineItemJson).build();
+        ReallocatedPlan reallocatedPlan = ReallocatedPlan.builder().vendor(vendor).region("east").instanceId("foo")
+                .reallocationWeights(ReallocationWeights.builder().weights(Collections.singletonList(
+                        Weightage.builder().bidderCode("pgbidder1").lineItemId("1111").weight(50.0).build()))
+                        .build())
+                .build();
+        given(routingContext.get(REG_REQUEST_KEY)).willReturn(registration);
+        given(dataAccessClient.updateRegistration(any()))
+                .willReturn(Future.succeededFuture(new UpdateResult()));
+        given(dataAccessClient.findEarliestActiveAdminEvent(any(), any(), any()))
+                .willReturn(Future.succeededFuture());
+        given(dataAccessClient.getReallocatedPlan(any())).willReturn(Future.succeededFuture(reallocatedPlan));
+        given(dataAccessClient.getLineItemsByStatus(any(), any()))
+                .willReturn(Future.succeededFuture(Collections.singletonList(lineItem)));
+        given(dataAccessClient.findActiveHosts(any())).willReturn(Future.succeededFuture(Collections.emptyList()));
+        given(routingContext.user()).willReturn(
+                new BasicAuthUser(getBasicAuthProvider("pbs"), "user1", "pbs")
+        );
+
+        pbsRegistrationHandler.handle(routingContext);
+
+        final ArgumentCaptor<String> responseCaptor = ArgumentCaptor.forClass(String.class);
+        verify(httpResponse).end(responseCaptor.capture());
+        verify(httpResponse).setStatusCode(HttpResponseStatus.OK.code());
+        verify(dataAccessClient, never()).findActiveHost(any(), any());
+        // the plan is read on the connection of the registration
+        verify(dataAccessClient, times(1)).inSession(any());
+
+        JsonNode response = new ObjectMapper().readTree(responseCaptor.getValue());
+        assertThat(response.has("directive"), equalTo(false));
+        assertThat(response.get("plan").get("instanceId").asText(), equalTo("foo"));
+        assertThat(response.get("plan").get("lineItems").get(0).get("deliverySchedules").get(0).get("tokens").get(0)
+                .get("total").asInt(), equalTo(500));
+    }
+
     @Test
     void shouldRespondWithHttpStatus500OnBackendError() throws Exception {
         String baseDir = "pbs-register/sunny-day";
@@ -8,6 +8,8 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.vertx.core.Future;
 import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.http.HttpServerResponse;
 import io.vertx.ext.web.RoutingContext;
@@ -20,27 +22,40 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.prebid.pg.gp.server.auth.BasicAuthProvider;
 import org.prebid.pg.gp.server.auth.BasicAuthUser;
+import org.prebid.pg.gp.server.breaker.AdmissionController;
 import org.prebid.pg.gp.server.http.AlertProxyHttpClient;
+import org.prebid.pg.gp.server.jdbc.ChangeVersionClient;
 import org.prebid.pg.gp.server.jdbc.CircuitBreakerSecuredPlannerDataAccessClient;
 import org.prebid.pg.gp.server.metric.Metrics;
 import org.prebid.pg.gp.server.model.*;
+import org.prebid.pg.gp.server.services.LastKnownGoodPlans;
+import org.prebid.pg.gp.server.services.LineItemCatalogHistory;
+import org.prebid.pg.gp.server.services.PlanVersionTracker;
+import org.prebid.pg.gp.server.services.PollHintService;
+import org.prebid.pg.gp.server.spring.config.app.AdmissionControlConfiguration;
 import org.prebid.pg.gp.server.spring.config.app.HostReallocationConfiguration;
+import org.prebid.pg.gp.server.spring.config.app.PlanRequestConfiguration;
 import org.prebid.pg.gp.server.spring.config.app.ServerAuthDataConfiguration;
 import org.prebid.pg.gp.server.util.Constants;
 
 import java.io.File;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.function.Function;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.matches;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 @ExtendWith(MockitoExtension.class)
@@ -64,6 +79,9 @@ class PlanRequestHandlerTest {
     @Mock
     private CircuitBreakerSecuredPlannerDataAccessClient circuitBreakerSecuredPlannerDataAccessClient;
 
+    @Mock
+    private PollHintService pollHintService;
+
     private PlanRequestHandler planRequestHandler;
 
     private ObjectMapper objectMapper = new ObjectMapper();
@@ -76,6 +94,16 @@ class PlanRequestHandlerTest {
 
     private String vendor = "vendor1";
 
+    private Metrics metrics;
+
+    private ChangeVersionClient changeVersionClient;
+
+    private PlanVersionTracker planVersionTracker;
+
+    private PlanRequestConfiguration planRequestConfig;
+
+    private LastKnownGoodPlans lastKnownGoodPlans;
+
     @BeforeEach
     void setUp() {
         HostReallocationConfiguration config = new HostReallocationConfiguration();
@@ -93,12 +121,35 @@ class PlanRequestHandlerTest {
         tracer.setFilters(filters);
 
         alertHttpClientMock = mock(AlertProxyHttpClient.class);
-        
+        metrics = new Metrics(new MetricRegistry());
+        changeVersionClient = new ChangeVersionClient(metrics);
+        planVersionTracker = new PlanVersionTracker(mock(Vertx.class), changeVersionClient, metrics);
+        planRequestConfig = new PlanRequestConfiguration();
+        PlanRequestConfiguration.LongPoll longPoll = new PlanRequestConfiguration.LongPoll();
+        longPoll.setEnabled(true);
+        longPoll.setDefaultWaitSec(30);
+        longPoll.setMaxWaitSec(60);
+        planRequestConfig.setLongPoll(longPoll);
+        PlanRequestConfiguration.Delta delta = new PlanRequestConfiguration.Delta();
+        delta.setEnabled(true);
+        delta.setMaxVersions(4);
+        planRequestConfig.setDelta(delta);
+        PlanRequestConfiguration.LastKnownGood lastKnownGood = new PlanRequestConfiguration.LastKnownGood();
+        lastKnownGood.setEnabled(true);
+        lastKnownGood.setMaxStalenessSec(900);
+        lastKnownGood.setLatencyBudgetMs(0);
+        lastKnownGood.setSnapshotRefreshSec(60);
+        planRequestConfig.setLastKnownGood(lastKnownGood);
+        lastKnownGoodPlans = new LastKnownGoodPlans(mock(Vertx.class), lastKnownGood, metrics);
+
         planRequestHandler = new PlanRequestHandler(
                 circuitBreakerSecuredPlannerDataAccessClient,
                 "Service is temporarily unavailable, please try again later", "pbs", true,
-                config, pbsMaxIdlePeriodInSeconds, new Metrics(new MetricRegistry()), false, tracer, shutdown,
-                alertHttpClientMock, new FakeRandom());
+                config, pbsMaxIdlePeriodInSeconds, metrics, false, tracer, shutdown,
+                alertHttpClientMock, new FakeRandom(),
+                new AdmissionController("plans", mock(Vertx.class), admissionConfig(false), metrics),
+                pollHintService, planVersionTracker, new LineItemCatalogHistory(4), planRequestConfig,
+                lastKnownGoodPlans);
 
         given(routingContext.request()).willReturn(httpRequest);
         given(routingContext.request().params()).willReturn(params);
@@ -106,6 +157,20 @@ class PlanRequestHandlerTest {
 
         lenient().when(httpResponse.setStatusCode(anyInt())).thenReturn(httpResponse);
         lenient().when(httpResponse.putHeader(any(CharSequence.class), any(CharSequence.class))).thenReturn(httpResponse);
+        lenient().when(circuitBreakerSecuredPlannerDataAccessClient.inSession(any()))
+                .thenAnswer(invocation -> invocation
+                        .<Function<CircuitBreakerSecuredPlannerDataAccessClient, Future<?>>>getArgument(0)
+                        .apply(circuitBreakerSecuredPlannerDataAccessClient));
+    }
+
+    private AdmissionControlConfiguration admissionConfig(boolean enabled) {
+        AdmissionControlConfiguration admissionConfig = new AdmissionControlConfiguration();
+        admissionConfig.setEnabled(enabled);
+        admissionConfig.setMaxInFlight(0);
+        admissionConfig.setMaxQueued(0);
+        admissionConfig.setMaxQueueTimeMs(100);
+        admissionConfig.setRetryAfterSec(7);
+        return admissionConfig;
     }
 
     private BasicAuthProvider getBasicAuthProvider(String roles) {
@@ -355,6 +420,165 @@ class PlanRequestHandlerTest {
         );
     }
 
+    @Test
+    void shouldRespondWith503AndRetryAfterWhenRequestIsShed() {
+        planRequestHandler = new PlanRequestHandler(
+                circuitBreakerSecuredPlannerDataAccessClient,
+                "Service is temporarily unavailable, please try again later", "pbs", true,
+                new HostReallocationConfiguration(), 180, metrics, false, tracer, shutdown,
+                alertHttpClientMock, new FakeRandom(),
+                new AdmissionController("plans", mock(Vertx.class), admissionConfig(true), metrics),
+                pollHintService, planVersionTracker, new LineItemCatalogHistory(4), planRequestConfig,
+                lastKnownGoodPlans);
+
+        MultiMap queryParams = MultiMap.caseInsensitiveMultiMap()
+                .add("region", "us-east")
+                .add("vendor", vendor)
+                .add("instanceId", "fhbp-pbs0000.iad3.fanops.net");
+        given(routingContext.request().params()).willReturn(queryParams);
+        given(routingContext.user()).willReturn(
+                new BasicAuthUser(getBasicAuthProvider("pbs"), "user1", "pbs")
+        );
+
+        planRequestHandler.handle(routingContext);
+
+        final ArgumentCaptor<String> responseCaptor = ArgumentCaptor.forClass(String.class);
+        verify(httpResponse).end(responseCaptor.capture());
+        verify(httpResponse).setStatusCode(HttpResponseStatus.SERVICE_UNAVAILABLE.code());
+        verify(httpResponse).putHeader(HttpHeaders.RETRY_AFTER, "7");
+        assertThat(responseCaptor.getValue(),
+                equalTo("[\"Service is temporarily unavailable, please try again later\"]"));
+    }
+
+    @Test
+    void shouldRespondWith304WhenPlanVersionIsUnchangedAndNoWait() {
+        String hostKey = "vendor1^^us-east^^fhbp-pbs0000.iad3.fanops.net";
+        MultiMap queryParams = MultiMap.caseInsensitiveMultiMap()
+                .add("region", "us-east")
+                .add("vendor", vendor)
+                .add("instanceId", "fhbp-pbs0000.iad3.fanops.net");
+        given(routingContext.request().params()).willReturn(queryParams);
+        given(httpRequest.getParam(PlanRequestHandler.VERSION_PARAM))
+                .willReturn(planVersionTracker.currentVersion(hostKey));
+        given(httpRequest.getParam(PlanRequestHandler.WAIT_PARAM)).willReturn("0");
+        given(routingContext.user()).willReturn(
+                new BasicAuthUser(getBasicAuthProvider("pbs"), "user1", "pbs")
+        );
+
+        planRequestHandler.handle(routingContext);
+
+        verify(httpResponse).setStatusCode(HttpResponseStatus.NOT_MODIFIED.code());
+        verify(httpResponse).putHeader(PlanVersionTracker.PLAN_VERSION_HEADER,
+                planVersionTracker.currentVersion(hostKey));
+        verify(httpResponse).end();
+    }
+
+    @Test
+    void shouldRespondWithDeltaRelativeToKnownPlanVersion() throws Exception {
+        String baseDir = "plan-request-handler/sunny-day-1";
+        String hostKey = "vendor1^^us-east^^fhbp-pbs0000.iad3.fanops.net";
+        PbsHost pbsHost = PbsHost.builder().vendor(vendor).region("us-east")
+                .hostInstanceId("fhbp-pbs0000.iad3.fanops.net").build();
+        ReallocatedPlan reallocatedPlan = objectMapper.readValue(
+                new File(classLoader.getResource(baseDir + "/input/reallocated-plan-1.json").getFile()),
+                ReallocatedPlan.class);
+        List<ObjectNode> nodes = objectMapper.readValue(
+                new File(classLoader.getResource(baseDir + "/input/lineitem-1.json").getFile()),
+                new TypeReference<ArrayList<ObjectNode>>() {});
+        List<LineItem> lineItems = new ArrayList<>();
+        lineItems.add(LineItem.from(nodes.get(0), "bidder1", "pg"));
+
+        given(circuitBreakerSecuredPlannerDataAccessClient.findActiveHost(any(), any()))
+                .willReturn(Future.succeededFuture(pbsHost));
+        given(circuitBreakerSecuredPlannerDataAccessClient.findActiveHosts(any()))
+                .willReturn(Future.succeededFuture(Collections.singletonList(pbsHost)));
+        given(circuitBreakerSecuredPlannerDataAccessClient.getReallocatedPlan(any()))
+                .willReturn(Future.succeededFuture(reallocatedPlan));
+        given(circuitBreakerSecuredPlannerDataAccessClient.getLineItemsByStatus(any(), any()))
+                .willReturn(Future.succeededFuture(lineItems), Future.succeededFuture(new ArrayList<>()));
+        given(routingContext.request().params()).willReturn(MultiMap.caseInsensitiveMultiMap()
+                .add("region", "us-east")
+                .add("vendor", vendor)
+                .add("instanceId", "fhbp-pbs0000.iad3.fanops.net"));
+        lenient().when(httpRequest.getParam(PlanRequestHandler.DELTA_PARAM)).thenReturn("true");
+        given(routingContext.user()).willReturn(
+                new BasicAuthUser(getBasicAuthProvider("pbs"), "user1", "pbs")
+        );
+
+        // unknown version, full plan in delta form
+        String baseVersion = planVersionTracker.currentVersion(hostKey);
+        planRequestHandler.handle(routingContext);
+
+        // the line item is gone in the next catalog version
+        changeVersionClient.committed(ChangeVersionClient.LINE_ITEMS, 1L);
+        planVersionTracker.beginCatalogChange();
+        planVersionTracker.endCatalogChange();
+        lenient().when(httpRequest.getParam(PlanRequestHandler.VERSION_PARAM)).thenReturn(baseVersion);
+        planRequestHandler.handle(routingContext);
+
+        ArgumentCaptor<String> responseCaptor = ArgumentCaptor.forClass(String.class);
+        verify(httpResponse, times(2)).end(responseCaptor.capture());
+
+        JsonNode full = objectMapper.readTree(responseCaptor.getAllValues().get(0));
+        assertThat(full.get("full").asBoolean(), equalTo(true));
+        assertThat(full.get("version").asText(), equalTo(baseVersion));
+        assertThat(full.get("lineItems").size(), equalTo(1));
+
+        JsonNode delta = objectMapper.readTree(responseCaptor.getAllValues().get(1));
+        assertThat(delta.get("full").asBoolean(), equalTo(false));
+        assertThat(delta.get("baseVersion").asText(), equalTo(baseVersion));
+        assertThat(delta.get("version").asText(), equalTo(planVersionTracker.currentVersion(hostKey)));
+        assertThat(delta.get("added").size(), equalTo(0));
+        assertThat(delta.get("changed").size(), equalTo(0));
+        assertThat(delta.get("removed").get(0).asText(), equalTo("pgbidder1-1111"));
+        assertThat(delta.has("lineItems"), equalTo(false));
+    }
+
+    @Test
+    void shouldRespondWithLastKnownGoodPlanWhenDatabaseFails() throws Exception {
+        String baseDir = "plan-request-handler/sunny-day-1";
+        String hostKey = "vendor1^^us-east^^fhbp-pbs0000.iad3.fanops.net";
+        PbsHost pbsHost = PbsHost.builder().vendor(vendor).region("us-east")
+                .hostInstanceId("fhbp-pbs0000.iad3.fanops.net").build();
+        ReallocatedPlan reallocatedPlan = objectMapper.readValue(
+                new File(classLoader.getResource(baseDir + "/input/reallocated-plan-1.json").getFile()),
+                ReallocatedPlan.class);
+        List<ObjectNode> nodes = objectMapper.readValue(
+                new File(classLoader.getResource(baseDir + "/input/lineitem-1.json").getFile()),
+                new TypeReference<ArrayList<ObjectNode>>() {});
+        List<LineItem> lineItems = new ArrayList<>();
+        lineItems.add(LineItem.from(nodes.get(0), "bidder1", "pg"));
+
+        given(circuitBreakerSecuredPlannerDataAccessClient.findActiveHost(any(), any()))
+                .willReturn(Future.succeededFuture(pbsHost), Future.failedFuture("circuit open"));
+        given(circuitBreakerSecuredPlannerDataAccessClient.findActiveHosts(any()))
+                .willReturn(Future.succeededFuture(Collections.singletonList(pbsHost)));
+        given(circuitBreakerSecuredPlannerDataAccessClient.getReallocatedPlan(any()))
+                .willReturn(Future.succeededFuture(reallocatedPlan));
+        given(circuitBreakerSecuredPlannerDataAccessClient.getLineItemsByStatus(any(), any()))
+                .willReturn(Future.succeededFuture(lineItems));
+        given(routingContext.request().params()).willReturn(MultiMap.caseInsensitiveMultiMap()
+                .add("region", "us-east")
+                .add("vendor", vendor)
+                .add("instanceId", "fhbp-pbs0000.iad3.fanops.net"));
+        given(routingContext.user()).willReturn(
+                new BasicAuthUser(getBasicAuthProvider("pbs"), "user1", "pbs")
+        );
+
+        planRequestHandler.handle(routingContext);
+        planRequestHandler.handle(routingContext);
+
+        ArgumentCaptor<String> responseCaptor = ArgumentCaptor.forClass(String.class);
+        verify(httpResponse, times(2)).end(responseCaptor.capture());
+        verify(httpResponse, times(2)).setStatusCode(HttpResponseStatus.OK.code());
+        verify(httpResponse).putHeader(PlanVersionTracker.PLAN_VERSION_HEADER,
+                planVersionTracker.currentVersion(hostKey));
+        // the stale plan is served within the second it was cached, or the next one on a slow run
+        verify(httpResponse).putHeader(eq(PlanRequestHandler.PLAN_STALE_HEADER), matches("[01]"));
+        assertThat(objectMapper.readTree(responseCaptor.getAllValues().get(1)),
+                equalTo(objectMapper.readTree(responseCaptor.getAllValues().get(0))));
+    }
+
     @Test
     void shouldRespondWith500ErrorOnFindActiveHostFailure() throws Exception {
         MultiMap queryParams = MultiMap.caseInsensitiveMultiMap()
@@ -0,0 +1,133 @@
+package org.prebid.pg.gp.server.handler;
+
+import com.codahale.metrics.MetricRegistry;
+import io.vertx.core.http.CaseInsensitiveHeaders;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.model.GpInstance;
+import org.prebid.pg.gp.server.services.ShardingService;
+import org.prebid.pg.gp.server.spring.config.app.ShardingConfiguration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+@ExtendWith(MockitoExtension.class)
+class ShardRoutingHandlerTest {
+
+    private static final String HOST_KEY = "vendor1^^us-east^^host1";
+
+    @Mock
+    private RoutingContext routingContext;
+
+    @Mock
+    private HttpServerRequest request;
+
+    @Mock
+    private HttpServerResponse response;
+
+    @Mock
+    private ShardingService shardingService;
+
+    @Mock
+    private HttpClient httpClient;
+
+    private ShardingConfiguration config;
+
+    private CaseInsensitiveHeaders requestHeaders;
+
+    @BeforeEach
+    void setUp() {
+        config = new ShardingConfiguration();
+        config.setForwardMode(ShardingConfiguration.FORWARD_MODE_REDIRECT);
+        config.setProxyTimeoutSec(130);
+        requestHeaders = new CaseInsensitiveHeaders();
+        given(routingContext.request()).willReturn(request);
+        lenient().when(request.headers()).thenReturn(requestHeaders);
+    }
+
+    @Test
+    void shouldServeOwnedHostLocally() {
+        givenPlanRequest();
+        given(shardingService.isOwner(HOST_KEY)).willReturn(true);
+
+        handler().handle(routingContext);
+
+        verify(routingContext).next();
+        verify(routingContext, never()).response();
+    }
+
+    @Test
+    void shouldServeForwardedRequestLocally() {
+        givenPlanRequest();
+        requestHeaders.add(ShardRoutingHandler.FORWARDED_HEADER, "gp2");
+
+        handler().handle(routingContext);
+
+        verify(routingContext).next();
+        verify(shardingService, never()).isOwner(any());
+    }
+
+    @Test
+    void shouldRedirectToOwner() {
+        givenPlanRequest();
+        given(request.uri()).willReturn("/general-planner/api/v1/plans?vendor=vendor1");
+        given(shardingService.isOwner(HOST_KEY)).willReturn(false);
+        given(shardingService.ownerOf(HOST_KEY))
+                .willReturn(GpInstance.builder().instanceId("gp2").baseUrl("http://gp2:8080").build());
+        given(routingContext.response()).willReturn(response);
+        given(response.setStatusCode(anyInt())).willReturn(response);
+        given(response.putHeader(any(CharSequence.class), any(CharSequence.class))).willReturn(response);
+
+        handler().handle(routingContext);
+
+        verify(response).setStatusCode(307);
+        verify(response).putHeader(HttpHeaders.LOCATION,
+                "http://gp2:8080/general-planner/api/v1/plans?vendor=vendor1");
+        verify(routingContext, never()).next();
+        verifyZeroInteractions(httpClient);
+    }
+
+    @Test
+    void shouldReadHostKeyFromRegistrationBody() {
+        given(routingContext.getBodyAsJson()).willReturn(new JsonObject()
+                .put("vendor", "vendor1").put("region", "us-east").put("hostInstanceId", "host1"));
+
+        assertThat(ShardRoutingHandler.hostKeyOf(routingContext), equalTo(HOST_KEY));
+    }
+
+    @Test
+    void shouldNotRouteRequestWithoutHostKey() {
+        given(routingContext.getBodyAsJson()).willReturn(null);
+
+        assertThat(ShardRoutingHandler.hostKeyOf(routingContext), nullValue());
+    }
+
+    private void givenPlanRequest() {
+        given(request.getParam("vendor")).willReturn("vendor1");
+        given(request.getParam("region")).willReturn("us-east");
+        given(request.getParam("instanceId")).willReturn("host1");
+    }
+
+    private ShardRoutingHandler handler() {
+        return new ShardRoutingHandler(shardingService, config, httpClient, new Metrics(new MetricRegistry()));
+    }
+
+}
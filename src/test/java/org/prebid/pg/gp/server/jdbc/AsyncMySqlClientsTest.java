@@ -0,0 +1,233 @@
+package org.prebid.pg.gp.server.jdbc;
+
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+import com.codahale.metrics.MetricRegistry;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.ext.sql.SQLClient;
+import io.vertx.ext.sql.SQLConnection;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.prebid.pg.gp.server.breaker.ComputeExecutor;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.model.AdminEvent;
+import org.prebid.pg.gp.server.model.AdminTracer;
+import org.prebid.pg.gp.server.model.LineItemIdentity;
+import org.prebid.pg.gp.server.model.Registration;
+import org.prebid.pg.gp.server.spring.config.app.ComputeExecutorConfiguration;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Runs the queries of the serving connections with the asynchronous MySQL client against an embedded MariaDB
+ * created with the schema of the planner. Skipped where MariaDB cannot be started.
+ */
+@ExtendWith(VertxExtension.class)
+class AsyncMySqlClientsTest {
+
+    private static final String HOST_NAME = "gp-1";
+
+    private static DB db;
+
+    private static Vertx vertx;
+
+    private static SQLClient sqlClient;
+
+    private Metrics metrics;
+
+    @BeforeAll
+    static void startDatabase() throws Exception {
+        final DBConfigurationBuilder config = DBConfigurationBuilder.newBuilder()
+                .setPort(0)
+                .addArg("--default-time-zone=+00:00");
+        if ("root".equals(System.getProperty("user.name"))) {
+            config.addArg("--user=root");
+        }
+        try {
+            db = DB.newEmbeddedDB(config.build());
+            db.start();
+        } catch (Exception e) {
+            assumeTrue(false, "MariaDB cannot be started: " + e.getMessage());
+        }
+        vertx = Vertx.vertx();
+        sqlClient = AsyncMySqlClients.createShared(vertx, AsyncMySqlClients.config(
+                "localhost", db.getConfiguration().getPort(), "test", "root", "", 2), "gp-async-test");
+        final String schema = FileUtils.readFileToString(new File("sql/pg-gp-init-db.sql"), StandardCharsets.UTF_8);
+        for (String statement : schema.split(";\\s*\\n")) {
+            final String sql = statement.replaceAll("(?m)^--.*$", "").trim();
+            // the embedded database runs without grant tables and creates the schema in its test database
+            if (!sql.isEmpty() && !sql.startsWith("GRANT") && !sql.startsWith("CREATE DATABASE")
+                    && !sql.startsWith("USE")) {
+                await(update(sql));
+            }
+        }
+    }
+
+    @AfterAll
+    static void stopDatabase() throws Exception {
+        if (vertx != null) {
+            sqlClient.close();
+            vertx.close();
+        }
+        if (db != null) {
+            db.stop();
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        metrics = new Metrics(new MetricRegistry());
+        await(update("DELETE FROM app_registration"));
+        await(update("DELETE FROM reallocated_plans"));
+        await(update("DELETE FROM line_items_tokens_rollup"));
+        await(update("DELETE FROM admin_event"));
+    }
+
+    @Test
+    void shouldWriteAndReadRegistrations(VertxTestContext context) {
+        final RegistrationClient client = new RegistrationClient(metrics, new AdminTracer());
+        final Registration registration = Registration.builder()
+                .instanceId("pbs-1").region("us-east").vendor("vendor1").healthIndex(.5f).adReqsPerSec(110).build();
+        final Instant start = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+
+        connect().compose(connection -> client.updateRegistration(connection, registration))
+                .compose(ignored -> connect())
+                .compose(connection -> client.findActiveHosts(connection, start.minusSeconds(60)))
+                .setHandler(context.succeeding(hosts -> context.verify(() -> {
+                    assertThat(hosts, hasSize(1));
+                    assertThat(hosts.get(0).getHostInstanceId(), equalTo("pbs-1"));
+                    assertThat(hosts.get(0).getHealthIndex(), equalTo(.5f));
+                    assertThat(hosts.get(0).getAdReqsPerSec(), equalTo(110));
+                    assertThat(Duration.between(start, hosts.get(0).getCreatedAt()).abs().getSeconds(),
+                            lessThan(60L));
+                    context.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldReadReallocatedPlanForwardOnly(VertxTestContext context) throws Exception {
+        final ReallocatedPlansClient client =
+                new ReallocatedPlansClient(HOST_NAME, metrics, new AdminTracer(), inlineComputeExecutor());
+        await(update("INSERT INTO reallocated_plans (service_instance_id, vendor, region, instance_id, "
+                + "token_reallocation_weights, updated_at) VALUES ('gp-1', 'vendor1', 'us-east', 'pbs-1', "
+                + "'{\"weights\":[]}', '2020-01-02 03:04:05')"));
+
+        connect().compose(connection -> client.getReallocatedPlan(connection, "pbs-1", "us-east", "vendor1"))
+                .setHandler(context.succeeding(plan -> context.verify(() -> {
+                    assertThat(plan.getInstanceId(), equalTo("pbs-1"));
+                    assertThat(plan.getUpdatedAt(), equalTo(Instant.parse("2020-01-02T03:04:05Z")));
+                    context.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldSumRolledUpTokens(VertxTestContext context) throws Exception {
+        final LineItemsTokensSummaryClient client = new LineItemsTokensSummaryClient(sqlClient, metrics, null);
+        await(update("INSERT INTO line_items_tokens_rollup (line_item_id, plan_start_timestamp, bidder_code, "
+                + "ext_line_item_id, tokens) VALUES "
+                + "('bidder1-1', '2020-01-02 03:00:00', 'bidder1', '1', 20), "
+                + "('bidder1-1', '2020-01-02 03:05:00', 'bidder1', '1', 22)"));
+        final Instant start = Instant.parse("2020-01-02T03:00:00Z");
+        final LineItemIdentity lineItem = LineItemIdentity.builder().bidderCode("bidder1").lineItemId("1").build();
+
+        connect().compose(connection -> client.sumPlanTokens(connection, start, start.plus(1, ChronoUnit.HOURS),
+                Collections.singletonList(lineItem)))
+                .setHandler(context.succeeding(summaries -> context.verify(() -> {
+                    assertThat(summaries, hasSize(1));
+                    assertThat(summaries.get(0).getTokens(), equalTo(42));
+                    context.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldWriteAndReadAdminEvents(VertxTestContext context) {
+        final AdminEventClient client = new AdminEventClient(metrics);
+        final Instant createdAt = Instant.parse("2020-01-02T03:04:05Z");
+        final AdminEvent event = AdminEvent.builder()
+                .id("event-1").app("PBS").vendor("vendor1").region("us-east").instanceId("pbs-1")
+                .directive(AdminEvent.Directive.builder().build())
+                .createdAt(createdAt)
+                .expiryAt(createdAt.plus(1000, ChronoUnit.DAYS))
+                .build();
+        final Registration registration =
+                Registration.builder().instanceId("pbs-1").region("us-east").vendor("vendor1").build();
+
+        connect().compose(connection -> client.updateAdminEvents(connection, Collections.singletonList(event)))
+                .compose(ignored -> connect())
+                .compose(connection -> client.findEarliestActiveAdminEvent(connection, "PBS", registration,
+                        createdAt))
+                .setHandler(context.succeeding(found -> context.verify(() -> {
+                    assertThat(found.getId(), equalTo("event-1"));
+                    assertThat(found.getCreatedAt(), equalTo(createdAt));
+                    assertThat(found.getExpiryAt(), equalTo(event.getExpiryAt()));
+                    context.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldReadChangeVersions(VertxTestContext context) {
+        connect().compose(new ChangeVersionClient(metrics)::getVersions)
+                .setHandler(context.succeeding(versions -> context.verify(() -> {
+                    assertThat(versions.get(ChangeVersionClient.LINE_ITEMS), equalTo(0L));
+                    assertThat(versions.get(ChangeVersionClient.REALLOCATED_PLANS), equalTo(0L));
+                    context.completeNow();
+                })));
+    }
+
+    private static Future<SQLConnection> connect() {
+        final Future<SQLConnection> future = Future.future();
+        sqlClient.getConnection(future);
+        return future;
+    }
+
+    private static Future<Void> update(String sql) {
+        return connect().compose(connection -> {
+            final Future<Void> future = Future.future();
+            connection.execute(sql, ar -> {
+                connection.close();
+                future.handle(ar);
+            });
+            return future;
+        });
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        future.setHandler(ar -> {
+            if (ar.succeeded()) {
+                result.complete(ar.result());
+            } else {
+                result.completeExceptionally(ar.cause());
+            }
+        });
+        return result.get(30, TimeUnit.SECONDS);
+    }
+
+    private static ComputeExecutor inlineComputeExecutor() {
+        ComputeExecutorConfiguration config = new ComputeExecutorConfiguration();
+        config.setEnabled(false);
+        return new ComputeExecutor(mock(Vertx.class), config, new Metrics(new MetricRegistry()));
+    }
+
+}
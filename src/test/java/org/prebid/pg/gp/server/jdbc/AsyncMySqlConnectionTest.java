@@ -0,0 +1,50 @@
+package org.prebid.pg.gp.server.jdbc;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.sql.ResultSetType;
+import io.vertx.ext.sql.SQLConnection;
+import io.vertx.ext.sql.SQLOptions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+class AsyncMySqlConnectionTest {
+
+    @Test
+    void shouldSendInstantsAsUtcDateTimes() {
+        SQLConnection delegate = mock(SQLConnection.class);
+        SQLConnection connection = new AsyncMySqlConnection(delegate);
+
+        connection.updateWithParams("UPDATE t SET a = ?, b = ?, c = ?, d = ?", new JsonArray()
+                .add(Instant.parse("2020-01-02T03:04:05Z"))
+                .add(Instant.parse("2020-01-02T03:04:05.120Z"))
+                .add("2020-01-02")
+                .addNull(), ar -> { });
+
+        verify(delegate).updateWithParams(eq("UPDATE t SET a = ?, b = ?, c = ?, d = ?"), eq(new JsonArray()
+                .add("2020-01-02 03:04:05")
+                .add("2020-01-02 03:04:05.120")
+                .add("2020-01-02")
+                .addNull()), any());
+    }
+
+    @Test
+    void shouldIgnoreOptions() {
+        SQLConnection delegate = mock(SQLConnection.class);
+        SQLConnection connection = new AsyncMySqlConnection(delegate);
+
+        assertThat(connection.setOptions(new SQLOptions().setResultSetType(ResultSetType.FORWARD_ONLY)),
+                sameInstance(connection));
+        verifyZeroInteractions(delegate);
+    }
+
+}
@@ -0,0 +1,140 @@
+package org.prebid.pg.gp.server.jdbc;
+
+import com.codahale.metrics.MetricRegistry;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.ext.sql.SQLConnection;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.prebid.pg.gp.server.metric.Metrics;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+@ExtendWith(VertxExtension.class)
+class ChangeVersionClientTest {
+
+    private static final String JDBC_URL = "jdbc:h2:mem:change-version";
+
+    private static Vertx vertx;
+
+    private static JDBCClient jdbcClient;
+
+    private Connection connection;
+
+    private ChangeVersionClient changeVersionClient;
+
+    @BeforeAll
+    static void prepare() {
+        vertx = Vertx.vertx();
+        jdbcClient = JDBCClient.createShared(vertx, new JsonObject()
+                .put("url", JDBC_URL)
+                .put("driver_class", "org.h2.Driver")
+                .put("max_pool_size", 10));
+    }
+
+    @AfterAll
+    static void cleanUp() {
+        vertx.close();
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        changeVersionClient = new ChangeVersionClient(new Metrics(new MetricRegistry()));
+        connection = DriverManager.getConnection(JDBC_URL);
+        connection.createStatement().execute(
+                "CREATE TABLE change_version (entity varchar(64) NOT NULL, version bigint NOT NULL, "
+                        + "PRIMARY KEY (entity));");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        try {
+            connection.createStatement().execute("DROP TABLE change_version;");
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    void shouldCreateAndBumpVersions(VertxTestContext context) {
+        bump(ChangeVersionClient.LINE_ITEMS)
+                .compose(version -> {
+                    context.verify(() -> assertThat(version, equalTo(1L)));
+                    return bump(ChangeVersionClient.LINE_ITEMS);
+                })
+                .compose(version -> {
+                    context.verify(() -> assertThat(version, equalTo(2L)));
+                    return bump(ChangeVersionClient.REALLOCATED_PLANS);
+                })
+                .compose(version -> connect().compose(changeVersionClient::getVersions))
+                .setHandler(context.succeeding(versions -> context.verify(() -> {
+                    assertThat(versions.get(ChangeVersionClient.LINE_ITEMS), equalTo(2L));
+                    assertThat(versions.get(ChangeVersionClient.REALLOCATED_PLANS), equalTo(1L));
+                    context.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldCountCommittedLocalVersionsOnce() {
+        changeVersionClient.trackLocalVersions();
+        changeVersionClient.committed(ChangeVersionClient.LINE_ITEMS, 3L);
+        changeVersionClient.committed(ChangeVersionClient.LINE_ITEMS, 5L);
+        changeVersionClient.committed(ChangeVersionClient.LINE_ITEMS, 8L);
+
+        assertThat(changeVersionClient.consumeLocalVersions(ChangeVersionClient.LINE_ITEMS, 2L, 6L), equalTo(2));
+        assertThat(changeVersionClient.consumeLocalVersions(ChangeVersionClient.LINE_ITEMS, 2L, 6L), equalTo(0));
+        assertThat(changeVersionClient.consumeLocalVersions(ChangeVersionClient.LINE_ITEMS, 6L, 8L), equalTo(1));
+        assertThat(changeVersionClient.consumeLocalVersions(ChangeVersionClient.REALLOCATED_PLANS, 0L, 8L),
+                equalTo(0));
+    }
+
+    @Test
+    void shouldNotRememberLocalVersionsUnlessTracked() {
+        changeVersionClient.committed(ChangeVersionClient.LINE_ITEMS, 3L);
+
+        assertThat(changeVersionClient.getLastCommittedVersion(ChangeVersionClient.LINE_ITEMS), equalTo(3L));
+        assertThat(changeVersionClient.consumeLocalVersions(ChangeVersionClient.LINE_ITEMS, 2L, 3L), equalTo(0));
+    }
+
+    @Test
+    void shouldBoundLocalVersionsNotConsumed() {
+        changeVersionClient.trackLocalVersions();
+        changeVersionClient.consumeLocalVersions(ChangeVersionClient.LINE_ITEMS, 0L, 5L);
+
+        // versions already consumed are not remembered again
+        changeVersionClient.committed(ChangeVersionClient.LINE_ITEMS, 5L);
+        for (long version = 6L; version <= 20_005L; version++) {
+            changeVersionClient.committed(ChangeVersionClient.LINE_ITEMS, version);
+        }
+
+        assertThat(changeVersionClient.consumeLocalVersions(ChangeVersionClient.LINE_ITEMS, 0L, 20_005L),
+                equalTo(10_000));
+    }
+
+    private Future<Long> bump(String entity) {
+        return connect().compose(sqlConnection -> changeVersionClient.bump(sqlConnection, entity)
+                .map(version -> {
+                    sqlConnection.close();
+                    return version;
+                }));
+    }
+
+    private Future<SQLConnection> connect() {
+        final Future<SQLConnection> future = Future.future();
+        jdbcClient.getConnection(future);
+        return future;
+    }
+
+}
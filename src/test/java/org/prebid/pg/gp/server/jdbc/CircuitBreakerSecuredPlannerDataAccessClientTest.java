@@ -22,15 +22,21 @@ import org.prebid.pg.gp.server.util.Constants;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 
 @ExtendWith(VertxExtension.class)
@@ -76,9 +82,9 @@ public class CircuitBreakerSecuredPlannerDataAccessClientTest {
     @Test
     void shouldUpdateLineItems() {
         List<LineItem> lis = Arrays.asList(LineItem.builder().build());
-        given(plannerClientMock.updateLineItems(any(), any())).willReturn(Future.succeededFuture());
-        dataAccessClient.updateLineItems(lis, 1);
-        verify(plannerClientMock).updateLineItems(any(), any());
+        given(plannerClientMock.updateLineItems(any(), any(), any())).willReturn(Future.succeededFuture());
+        dataAccessClient.updateLineItems(lis, 1, LeaderLeaseFence.NONE);
+        verify(plannerClientMock).updateLineItems(any(), any(), any());
     }
 
     @Test
@@ -99,12 +105,21 @@ public class CircuitBreakerSecuredPlannerDataAccessClientTest {
     }
 
     @Test
-    void shouldGetLineItemsTokenSummary() {
-        given(plannerClientMock.getLineItemsTokensSummary(any(), any(), any()))
-                .willReturn(Future.succeededFuture(Arrays.asList(LineItemsTokensSummary.builder().build())));
+    void shouldStreamLineItemsTokenSummaryPages() {
+        LineItemsTokensSummary last = LineItemsTokensSummary.builder().id(1).build();
+        given(plannerClientMock.getLineItemsTokensSummary(any(), any(), any(), isNull()))
+                .willReturn(Future.succeededFuture(Arrays.asList(last)));
+        given(plannerClientMock.getLineItemsTokensSummary(any(), any(), any(), eq(last)))
+                .willReturn(Future.succeededFuture(Collections.emptyList()));
+        List<LineItemsTokensSummary> rows = new ArrayList<>();
         Instant end = Instant.now();
-        dataAccessClient.getLineItemsTokensSummary(end.minus(2, ChronoUnit.HOURS), end, Collections.emptyList());
-        verify(plannerClientMock).getLineItemsTokensSummary(any(), any(), any());
+        dataAccessClient.streamLineItemsTokensSummary(end.minus(2, ChronoUnit.HOURS), end, Collections.emptyList(),
+                page -> {
+                    rows.addAll(page);
+                    return Future.succeededFuture();
+                });
+        verify(plannerClientMock, timeout(1000)).getLineItemsTokensSummary(any(), any(), any(), eq(last));
+        assertThat(rows, equalTo(Arrays.asList(last)));
     }
 
     @Test
@@ -197,9 +212,9 @@ public class CircuitBreakerSecuredPlannerDataAccessClientTest {
     @Test
     void shouldUpdateReallocatedPlans() {
         List<ReallocatedPlan> plans = Arrays.asList(ReallocatedPlan.builder().build());
-        given(plannerClientMock.updateReallocatedPlans(any(), anyInt())).willReturn(Future.succeededFuture());
-        dataAccessClient.updateReallocatedPlans(plans, 2);
-        verify(plannerClientMock).updateReallocatedPlans(any(), anyInt());
+        given(plannerClientMock.updateReallocatedPlans(any(), anyInt(), any())).willReturn(Future.succeededFuture());
+        dataAccessClient.updateReallocatedPlans(plans, 2, LeaderLeaseFence.NONE);
+        verify(plannerClientMock).updateReallocatedPlans(any(), anyInt(), any());
     }
 
 }
@@ -0,0 +1,110 @@
+package org.prebid.pg.gp.server.jdbc;
+
+import com.codahale.metrics.MetricRegistry;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.model.GpInstance;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+@ExtendWith(VertxExtension.class)
+class InstanceHeartbeatClientTest {
+
+    private static final String JDBC_URL = "jdbc:h2:mem:instance-heartbeat";
+
+    private static Vertx vertx;
+
+    private static JDBCClient jdbcClient;
+
+    private Connection connection;
+
+    private InstanceHeartbeatClient heartbeatClient;
+
+    @BeforeAll
+    static void prepare() {
+        vertx = Vertx.vertx();
+        jdbcClient = JDBCClient.createShared(vertx, new JsonObject()
+                .put("url", JDBC_URL)
+                .put("driver_class", "org.h2.Driver")
+                .put("max_pool_size", 10));
+    }
+
+    @AfterAll
+    static void cleanUp() {
+        vertx.close();
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        heartbeatClient = new InstanceHeartbeatClient(jdbcClient, new Metrics(new MetricRegistry()));
+        connection = DriverManager.getConnection(JDBC_URL);
+        connection.createStatement().execute(
+                "CREATE TABLE gp_instance_heartbeat (instance_id varchar(128) NOT NULL, "
+                        + "base_url varchar(256) NOT NULL, heartbeat_at timestamp NOT NULL, "
+                        + "PRIMARY KEY (instance_id));");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        try {
+            connection.createStatement().execute("DROP TABLE gp_instance_heartbeat;");
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    void shouldFindLiveInstancesOnly(VertxTestContext context) throws Exception {
+        connection.createStatement().execute("INSERT INTO gp_instance_heartbeat VALUES "
+                + "('gp0', 'http://gp0:8080', TIMESTAMPADD(SECOND, -60, CURRENT_TIMESTAMP));");
+
+        heartbeatClient.beat(instance("gp2"))
+                .compose(updateResult -> heartbeatClient.beat(instance("gp1")))
+                .compose(updateResult -> heartbeatClient.beat(instance("gp1")))
+                .compose(updateResult -> heartbeatClient.findLive(15))
+                .setHandler(context.succeeding(instances -> context.verify(() -> {
+                    assertThat(instances, equalTo(Arrays.asList(instance("gp1"), instance("gp2"))));
+                    context.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldRemoveInstanceAndStaleHeartbeats(VertxTestContext context) throws Exception {
+        connection.createStatement().execute("INSERT INTO gp_instance_heartbeat VALUES "
+                + "('gp0', 'http://gp0:8080', TIMESTAMPADD(SECOND, -600, CURRENT_TIMESTAMP));");
+
+        heartbeatClient.beat(instance("gp1"))
+                .compose(updateResult -> heartbeatClient.beat(instance("gp2")))
+                .compose(updateResult -> heartbeatClient.remove("gp2"))
+                .compose(updateResult -> heartbeatClient.removeStale(150))
+                .compose(updateResult -> {
+                    context.verify(() -> assertThat(updateResult.getUpdated(), equalTo(1)));
+                    return heartbeatClient.findLive(3600);
+                })
+                .setHandler(context.succeeding(instances -> context.verify(() -> {
+                    assertThat(instances, equalTo(Collections.singletonList(instance("gp1"))));
+                    context.completeNow();
+                })));
+    }
+
+    private static GpInstance instance(String instanceId) {
+        return GpInstance.builder().instanceId(instanceId).baseUrl("http://" + instanceId + ":8080").build();
+    }
+
+}
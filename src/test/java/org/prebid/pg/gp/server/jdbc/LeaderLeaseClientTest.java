@@ -0,0 +1,173 @@
+package org.prebid.pg.gp.server.jdbc;
+
+import com.codahale.metrics.MetricRegistry;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.ext.sql.SQLConnection;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.prebid.pg.gp.server.exception.GeneralPlannerException;
+import org.prebid.pg.gp.server.metric.Metrics;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.hamcrest.core.IsNull.nullValue;
+
+@ExtendWith(VertxExtension.class)
+class LeaderLeaseClientTest {
+
+    private static final String JDBC_URL = "jdbc:h2:mem:leader-lease";
+
+    private static final String LEASE = "general-planner";
+
+    private static Vertx vertx;
+
+    private static JDBCClient jdbcClient;
+
+    private Connection connection;
+
+    private LeaderLeaseClient leaseClient;
+
+    @BeforeAll
+    static void prepare() {
+        vertx = Vertx.vertx();
+        jdbcClient = JDBCClient.createShared(vertx, new JsonObject()
+                .put("url", JDBC_URL)
+                .put("driver_class", "org.h2.Driver")
+                .put("max_pool_size", 10));
+    }
+
+    @AfterAll
+    static void cleanUp() {
+        vertx.close();
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        leaseClient = new LeaderLeaseClient(jdbcClient, new Metrics(new MetricRegistry()));
+        connection = DriverManager.getConnection(JDBC_URL);
+        connection.createStatement().execute(
+                "CREATE TABLE leader_lease (name varchar(64) NOT NULL, holder varchar(128) NOT NULL, "
+                        + "fencing_token bigint NOT NULL, expires_at timestamp NOT NULL, PRIMARY KEY (name));");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        try {
+            connection.createStatement().execute("DROP TABLE leader_lease;");
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    void shouldCreateLeaseAndRenewWithSameToken(VertxTestContext context) {
+        leaseClient.tryAcquire(LEASE, "gp1", 30)
+                .compose(token -> {
+                    context.verify(() -> assertThat(token, equalTo(1L)));
+                    return leaseClient.tryAcquire(LEASE, "gp1", 30);
+                })
+                .setHandler(context.succeeding(token -> context.verify(() -> {
+                    assertThat(token, equalTo(1L));
+                    context.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldNotAcquireLeaseHeldByAnotherInstance(VertxTestContext context) {
+        leaseClient.tryAcquire(LEASE, "gp1", 30)
+                .compose(token -> leaseClient.tryAcquire(LEASE, "gp2", 30))
+                .compose(token -> {
+                    context.verify(() -> assertThat(token, nullValue()));
+                    return hold(new LeaderLeaseFence(LEASE, "gp2", 1));
+                })
+                .setHandler(context.failing(cause -> context.verify(() -> {
+                    assertThat(cause, instanceOf(GeneralPlannerException.class));
+                    context.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldTakeOverReleasedLeaseWithNextToken(VertxTestContext context) {
+        leaseClient.tryAcquire(LEASE, "gp1", 30)
+                .compose(token -> hold(new LeaderLeaseFence(LEASE, "gp1", token)))
+                .compose(held -> leaseClient.release(LEASE, "gp1"))
+                .compose(updateResult -> leaseClient.tryAcquire(LEASE, "gp2", 30))
+                .compose(token -> {
+                    context.verify(() -> assertThat(token, equalTo(2L)));
+                    return hold(new LeaderLeaseFence(LEASE, "gp1", 1));
+                })
+                .setHandler(context.failing(cause -> context.verify(() -> {
+                    assertThat(cause, instanceOf(GeneralPlannerException.class));
+                    context.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldBlockTakeOverWhileFenceIsHeld(VertxTestContext context) {
+        leaseClient.tryAcquire(LEASE, "gp1", 1)
+                .compose(token -> {
+                    final Future<SQLConnection> connected = Future.future();
+                    jdbcClient.getConnection(connected);
+                    return connected.compose(sqlConnection -> {
+                        final Future<Void> transactionStarted = Future.future();
+                        sqlConnection.setAutoCommit(false, transactionStarted);
+                        return transactionStarted
+                                .compose(ignored -> new LeaderLeaseFence(LEASE, "gp1", token).hold(sqlConnection))
+                                .compose(ignored -> {
+                                    final Future<Void> expired = Future.future();
+                                    vertx.setTimer(1500, id -> expired.complete());
+                                    return expired;
+                                })
+                                .compose(ignored -> {
+                                    // the lease has expired, but cannot be taken over before the write commits
+                                    final Future<Long> takenOver = leaseClient.tryAcquire(LEASE, "gp2", 30);
+                                    final Future<Void> committed = Future.future();
+                                    vertx.setTimer(200, id -> {
+                                        context.verify(() -> assertThat(takenOver.isComplete(), is(false)));
+                                        sqlConnection.commit(committed);
+                                    });
+                                    return committed.compose(ignored2 -> takenOver)
+                                            .map(newToken -> {
+                                                sqlConnection.close();
+                                                return newToken;
+                                            });
+                                });
+                    });
+                })
+                .setHandler(context.succeeding(token -> context.verify(() -> {
+                    assertThat(token, equalTo(2L));
+                    context.completeNow();
+                })));
+    }
+
+    private Future<Void> hold(LeaderLeaseFence fence) {
+        final Future<SQLConnection> connected = Future.future();
+        jdbcClient.getConnection(connected);
+        return connected.compose(sqlConnection -> {
+            final Future<Void> transactionStarted = Future.future();
+            sqlConnection.setAutoCommit(false, transactionStarted);
+            final Future<Void> held = transactionStarted.compose(ignored -> fence.hold(sqlConnection));
+            final Future<Void> result = Future.future();
+            held.setHandler(ar -> sqlConnection.rollback(rollback -> {
+                sqlConnection.close();
+                result.handle(ar);
+            }));
+            return result;
+        });
+    }
+
+}
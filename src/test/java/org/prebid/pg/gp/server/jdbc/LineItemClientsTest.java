@@ -5,6 +5,7 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.io.Resources;
 import io.vertx.core.Future;
+import io.vertx.core.Vertx;
 import io.vertx.core.json.Json;
 import io.vertx.ext.sql.UpdateResult;
 import io.vertx.junit5.VertxExtension;
@@ -13,10 +14,12 @@ import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.prebid.pg.gp.server.breaker.ComputeExecutor;
 import org.prebid.pg.gp.server.metric.Metrics;
 import org.prebid.pg.gp.server.model.AdminTracer;
 import org.prebid.pg.gp.server.model.LineItem;
 import org.prebid.pg.gp.server.model.TracerFilters;
+import org.prebid.pg.gp.server.spring.config.app.ComputeExecutorConfiguration;
 import org.prebid.pg.gp.server.util.Constants;
 
 import java.io.File;
@@ -72,7 +75,7 @@ public class LineItemClientsTest extends DataAccessClientTestBase {
         tracer.setEnabled(true);
         tracer.setExpiresAt(Instant.now().plusSeconds(86400));
         tracer.setFilters(filters);
-        dbClient = new LineItemsClient(HOST_NAME, new Metrics(new MetricRegistry()), tracer);
+        dbClient = new LineItemsClient(HOST_NAME, new Metrics(new MetricRegistry()), tracer, inlineComputeExecutor());
     }
 
     @AfterEach
@@ -286,4 +289,11 @@ public class LineItemClientsTest extends DataAccessClientTestBase {
         li.setUpdatedAt(Instant.now());
         return li;
     }
+
+    private static ComputeExecutor inlineComputeExecutor() {
+        ComputeExecutorConfiguration config = new ComputeExecutorConfiguration();
+        config.setEnabled(false);
+        return new ComputeExecutor(mock(Vertx.class), config, new Metrics(new MetricRegistry()));
+    }
+
 }
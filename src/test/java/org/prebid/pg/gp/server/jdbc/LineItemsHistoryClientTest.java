@@ -2,18 +2,22 @@ package org.prebid.pg.gp.server.jdbc;
 
 import com.codahale.metrics.MetricRegistry;
 import io.vertx.core.Future;
+import io.vertx.core.Vertx;
 import io.vertx.junit5.VertxExtension;
 import io.vertx.junit5.VertxTestContext;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.prebid.pg.gp.server.breaker.ComputeExecutor;
 import org.prebid.pg.gp.server.http.AlertProxyHttpClient;
 import org.prebid.pg.gp.server.metric.Metrics;
 import org.prebid.pg.gp.server.model.LineItemIdentity;
 import org.prebid.pg.gp.server.model.LineItemsTokensSummary;
+import org.prebid.pg.gp.server.spring.config.app.ComputeExecutorConfiguration;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -60,7 +64,8 @@ public class LineItemsHistoryClientTest extends DataAccessClientTestBase {
         Metrics metrics = new Metrics(new MetricRegistry());
         systemStateClient = new SystemStateClient(metrics);
         alertHttpClientMock = mock(AlertProxyHttpClient.class);
-        historyClient = new LineItemsHistoryClient(jdbcClient, metrics, systemStateClient, alertHttpClientMock);
+        historyClient = new LineItemsHistoryClient(
+                jdbcClient, metrics, systemStateClient, alertHttpClientMock, inlineComputeExecutor());
     }
 
     @Test
@@ -141,6 +146,43 @@ public class LineItemsHistoryClientTest extends DataAccessClientTestBase {
         assertThat(sql, equalTo(expectedSQL));
     }
 
+    @Test
+    void shouldBuildQuerySqlExtractingSchedules() {
+        historyClient = new LineItemsHistoryClient(jdbcClient, new Metrics(new MetricRegistry()), systemStateClient,
+                alertHttpClientMock, inlineComputeExecutor(), true);
+
+        assertThat(historyClient.buildQuerySql(new ArrayList<>()), equalTo(
+                "SELECT bidder_code, line_item_id, JSON_EXTRACT(line_item, '$.deliverySchedules'), updated_at "
+                + "FROM line_items_history WHERE updated_at >= ? AND updated_at < ? ORDER BY updated_at ASC"));
+    }
+
+    @Test
+    void shouldReadClassOneTokensSkippingOtherFields() throws Exception {
+        final String lineItem = "{\"lineItemId\": \"22\", \"targeting\": {\"$and\": [{\"tokens\": []}]},"
+                + " \"deliverySchedules\": ["
+                + "{\"tokens\": [{\"class\": 1, \"total\": 40}, {\"class\": 2, \"total\": 7}],"
+                + " \"priority\": 5, \"startTimeStamp\": \"2019-10-03T11:50:00Z\"},"
+                + "{\"startTimeStamp\": \"2019-10-03T11:55:00Z\", \"tokens\": [{\"total\": 10, \"class\": 1}]}"
+                + "], \"status\": \"active\"}";
+        final List<String> tokens = new ArrayList<>();
+
+        LineItemsHistoryClient.readClassOneTokens(lineItem, (start, total) -> tokens.add(start + "=" + total));
+
+        assertThat(tokens, equalTo(Arrays.asList("2019-10-03T11:50:00Z=40", "2019-10-03T11:55:00Z=10")));
+    }
+
+    @Test
+    void shouldReadClassOneTokensFromExtractedSchedules() throws Exception {
+        final String schedules = "[{\"planId\": \"1\", \"startTimeStamp\": \"2019-10-03T11:50:00Z\","
+                + " \"tokens\": [{\"class\": 1, \"total\": 40}]}]";
+        final List<String> tokens = new ArrayList<>();
+
+        LineItemsHistoryClient.readClassOneTokens(schedules, (start, total) -> tokens.add(start + "=" + total));
+        LineItemsHistoryClient.readClassOneTokens(null, (start, total) -> tokens.add(start + "=" + total));
+
+        assertThat(tokens, equalTo(Arrays.asList("2019-10-03T11:50:00Z=40")));
+    }
+
     private void saveRecord(String start, String end, String updatedAt) throws Exception {
         String sqlFormat = "replace into line_items_history ("
                 + "audit_id, general_planner_host_instance_id, line_item_id, bidder_code, status, "
@@ -169,4 +211,10 @@ public class LineItemsHistoryClientTest extends DataAccessClientTestBase {
         connection.createStatement().execute(sql);
     }
 
-}
\ No newline at end of file
+    private static ComputeExecutor inlineComputeExecutor() {
+        ComputeExecutorConfiguration config = new ComputeExecutorConfiguration();
+        config.setEnabled(false);
+        return new ComputeExecutor(mock(Vertx.class), config, new Metrics(new MetricRegistry()));
+    }
+
+}
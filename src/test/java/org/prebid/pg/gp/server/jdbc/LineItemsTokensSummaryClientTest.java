@@ -11,11 +11,11 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.prebid.pg.gp.server.http.AlertProxyHttpClient;
 import org.prebid.pg.gp.server.metric.Metrics;
 import org.prebid.pg.gp.server.model.LineItemsTokensSummary;
-import org.prebid.pg.gp.server.model.PageRequest;
 
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -63,35 +63,56 @@ public class LineItemsTokensSummaryClientTest extends DataAccessClientTestBase {
     }
 
     @Test
-    void shouldGetLineItemsTokensSummaryCount(VertxTestContext context) throws Exception {
+    void shouldGetFirstPageOfLineItemsTokensSummary(VertxTestContext context) throws Exception {
         String lineItemId = "l1";
         populateTableData(lineItemId);
-        Instant start = Instant.parse("2020-03-01T07:00:00.000Z");
-        Instant end = Instant.parse("2020-03-01T09:00:00.000Z");
-        List<String> ids = Arrays.asList(lineItemId);
-        Future<Integer> future = connect().compose(sqlConnection ->
-                tokensSummaryClient.getLineItemsTokensSummaryCount(sqlConnection, start, end, ids));
+        Instant start = Instant.parse("2020-03-01T06:00:00.000Z");
+        Instant end = Instant.parse("2020-03-01T10:00:00.000Z");
+        Future<List<LineItemsTokensSummary>> future = connect().compose(sqlConnection ->
+                tokensSummaryClient.getLineItemsTokensSummary(sqlConnection, start, end, Collections.emptyList(), null, 2));
         future.setHandler(context.succeeding(actual -> {
             context.verify(() -> {
-                assertThat(actual.intValue(), equalTo(1));
+                assertThat(actual.size(), equalTo(2));
+                assertThat(actual.get(0).getId(), equalTo(1));
+                assertThat(actual.get(1).getId(), equalTo(2));
                 context.completeNow();
             });
         }));
     }
 
     @Test
-    void shouldGetLineItemsTokensSummary(VertxTestContext context) throws Exception {
+    void shouldGetLineItemsTokensSummaryAfterLastRow(VertxTestContext context) throws Exception {
+        String lineItemId = "l1";
+        populateTableData(lineItemId);
+        Instant start = Instant.parse("2020-03-01T06:00:00.000Z");
+        Instant end = Instant.parse("2020-03-01T10:00:00.000Z");
+        LineItemsTokensSummary after = LineItemsTokensSummary.builder()
+                .id(2)
+                .summaryWindowStartTimestamp(Instant.parse("2020-03-01T07:00:00.000Z"))
+                .build();
+        Future<List<LineItemsTokensSummary>> future = connect().compose(sqlConnection ->
+                tokensSummaryClient.getLineItemsTokensSummary(sqlConnection, start, end, Collections.emptyList(), after, 2));
+        future.setHandler(context.succeeding(actual -> {
+            context.verify(() -> {
+                assertThat(actual.size(), equalTo(1));
+                assertThat(actual.get(0).getId(), equalTo(3));
+                context.completeNow();
+            });
+        }));
+    }
+
+    @Test
+    void shouldGetLineItemsTokensSummaryOfLineItems(VertxTestContext context) throws Exception {
         String lineItemId = "l1";
         populateTableData(lineItemId);
         Instant start = Instant.parse("2020-03-01T07:00:00.000Z");
         Instant end = Instant.parse("2020-03-01T09:00:00.000Z");
-        List<String> ids = Arrays.asList(lineItemId);
-        PageRequest pageRequest = PageRequest.builder().number(0).size(1).build();
         Future<List<LineItemsTokensSummary>> future = connect().compose(sqlConnection ->
-                tokensSummaryClient.getLineItemsTokensSummary(sqlConnection, start, end, ids, pageRequest));
+                tokensSummaryClient.getLineItemsTokensSummary(
+                        sqlConnection, start, end, Arrays.asList("l2"), null, 10));
         future.setHandler(context.succeeding(actual -> {
             context.verify(() -> {
-                assertThat(actual.size(), equalTo(1));
+                assertThat(actual.size(), equalTo(0));
                 context.completeNow();
             });
         }));
@@ -110,7 +131,7 @@ public class LineItemsTokensSummaryClientTest extends DataAccessClientTestBase {
                 .createdAt(Instant.parse("2020-03-01T08:00:00.000Z"))
                 .build());
         Future<UpdateResult> future = connect().compose(
-                sqlConnection -> tokensSummaryClient.saveLineItemsTokenSummary(summaries));
+                sqlConnection -> tokensSummaryClient.saveLineItemsTokenSummary(summaries, LeaderLeaseFence.NONE));
         future.setHandler(context.succeeding(rs -> {
             context.verify(() -> {
                 assertThat(rs.getUpdated(), equalTo(1));
@@ -131,7 +152,7 @@ public class LineItemsTokensSummaryClientTest extends DataAccessClientTestBase {
                 .lineItemId("l1")
                 .build());
         Future<UpdateResult> future = connect().compose(
-                sqlConnection -> tokensSummaryClient.saveLineItemsTokenSummary(summaries));
+                sqlConnection -> tokensSummaryClient.saveLineItemsTokenSummary(summaries, LeaderLeaseFence.NONE));
         future.setHandler(context.failing(actual -> {
             context.verify(() -> {
                 assertThat(actual.getClass().getName(), IsEqual.equalTo("org.h2.jdbc.JdbcSQLException"));
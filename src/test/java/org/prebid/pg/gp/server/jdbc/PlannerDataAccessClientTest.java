@@ -10,6 +10,7 @@ import io.vertx.ext.sql.SQLConnection;
 import io.vertx.ext.sql.UpdateResult;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
 import org.prebid.pg.gp.server.http.AlertProxyHttpClient;
 import org.prebid.pg.gp.server.metric.Metrics;
 import org.prebid.pg.gp.server.model.*;
@@ -26,9 +27,12 @@ import java.util.Map;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsSame.sameInstance;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -48,6 +52,8 @@ public class PlannerDataAccessClientTest {
 
     private AdminEventClient adminEventClientMock;
 
+    private ChangeVersionClient changeVersionClientMock;
+
     private LineItemsHistoryClient lineItemsHistoryClientMock;
 
     private AlertProxyHttpClient alertHttpClientMock;
@@ -70,6 +76,7 @@ public class PlannerDataAccessClientTest {
         lineItemsTokensSummaryClientMock = mock(LineItemsTokensSummaryClient.class);
         lineItemsHistoryClientMock = mock(LineItemsHistoryClient.class);
         adminEventClientMock = mock(AdminEventClient.class);
+        changeVersionClientMock = mock(ChangeVersionClient.class);
         alertHttpClientMock = mock(AlertProxyHttpClient.class);
         tokenSummaryConfigurationMock = mock(LineItemsTokensSummaryConfiguration.class);
         jdbcClientStub = new JDBCClientStub();
@@ -83,6 +90,7 @@ public class PlannerDataAccessClientTest {
                 lineItemsTokensSummaryClientMock,
                 lineItemsHistoryClientMock,
                 adminEventClientMock,
+                changeVersionClientMock,
                 new Metrics(new MetricRegistry()),
                 alertHttpClientMock,
                 tokenSummaryConfigurationMock
@@ -172,11 +180,14 @@ public class PlannerDataAccessClientTest {
     @Test
     void shouldUpdateReallocatedPlans() {
         Future<List<Integer>> future = Future.succeededFuture(Arrays.asList(1, 2));
-        given(reallocatedPlansClientMock.updateReallocatedPlans(any(), any())).willReturn(future);
+        given(reallocatedPlansClientMock.writeReallocatedPlans(any(), any())).willReturn(future);
+        given(changeVersionClientMock.bump(any(), any())).willReturn(Future.succeededFuture(1L));
         ReallocatedPlan plan = ReallocatedPlan.builder().build();
         List<ReallocatedPlan> plans = Arrays.asList(plan, plan, plan, plan);
-        dataAccessClient.updateReallocatedPlans(plans, 2);
-        verify(reallocatedPlansClientMock, times(2)).updateReallocatedPlans(any(), any());
+        dataAccessClient.updateReallocatedPlans(plans, 2, LeaderLeaseFence.NONE);
+        verify(reallocatedPlansClientMock, times(2)).writeReallocatedPlans(any(), any());
+        verify(changeVersionClientMock, times(2)).bump(any(), eq(ChangeVersionClient.REALLOCATED_PLANS));
+        verify(changeVersionClientMock, times(2)).committed(ChangeVersionClient.REALLOCATED_PLANS, 1L);
     }
 
     @Test
@@ -184,15 +195,13 @@ public class PlannerDataAccessClientTest {
         List<LineItemsTokensSummary> summaries = Arrays.asList(LineItemsTokensSummary.builder().build(),
                 LineItemsTokensSummary.builder().build());
         given(tokenSummaryConfigurationMock.getPageSize()).willReturn(2);
-        given(lineItemsTokensSummaryClientMock.getLineItemsTokensSummaryCount(any(), any(), any(), any()))
-                .willReturn(Future.succeededFuture(4));
-        given(lineItemsTokensSummaryClientMock.getLineItemsTokensSummary(any(), any(), any(), any(), any()))
+        given(lineItemsTokensSummaryClientMock.getLineItemsTokensSummary(any(), any(), any(), any(), any(), eq(2)))
                 .willReturn(Future.succeededFuture(summaries));
         Instant now = Instant.now();
-        dataAccessClient.getLineItemsTokensSummary(now.minus(1, ChronoUnit.HOURS), now, new ArrayList<>());
+        dataAccessClient.getLineItemsTokensSummary(now.minus(1, ChronoUnit.HOURS), now, new ArrayList<>(), null);
 
-        verify(lineItemsTokensSummaryClientMock, times(2))
-                .getLineItemsTokensSummary(any(), any(), any(), any(), any());
+        verify(lineItemsTokensSummaryClientMock)
+                .getLineItemsTokensSummary(any(), any(), any(), any(), any(), eq(2));
     }
 
     @Test
@@ -256,10 +265,24 @@ public class PlannerDataAccessClientTest {
     void shouldUpdateLineItems() {
         LineItem li = LineItem.builder().build();
         List<LineItem> lis = Arrays.asList(li, li, li, li);
-        given(lineItemsClientMock.updateLineItems(any(), any()))
+        given(lineItemsClientMock.writeLineItems(any(), any()))
                 .willReturn(Future.succeededFuture(new  UpdateResult()));
-        dataAccessClient.updateLineItems(lis, 2);
-        verify(lineItemsClientMock, times(2)).updateLineItems(any(), any());
+        given(changeVersionClientMock.bump(any(), any())).willReturn(Future.succeededFuture(1L));
+        dataAccessClient.updateLineItems(lis, 2, LeaderLeaseFence.NONE);
+        verify(lineItemsClientMock, times(2)).writeLineItems(any(), any());
+        verify(changeVersionClientMock, times(2)).bump(any(), eq(ChangeVersionClient.LINE_ITEMS));
+    }
+
+    @Test
+    void shouldRollbackLineItemsWhenVersionIsNotBumped() {
+        LineItem li = LineItem.builder().build();
+        given(lineItemsClientMock.writeLineItems(any(), any()))
+                .willReturn(Future.succeededFuture(new  UpdateResult()));
+        given(changeVersionClientMock.bump(any(), any())).willReturn(Future.failedFuture("failed"));
+        Future<Void> result = dataAccessClient.updateLineItems(Arrays.asList(li, li), 1, LeaderLeaseFence.NONE);
+        assertThat(result.failed(), equalTo(true));
+        verify(lineItemsClientMock, times(1)).writeLineItems(any(), any());
+        verify(changeVersionClientMock, never()).committed(any(), anyLong());
     }
 
     @Test
@@ -280,10 +303,86 @@ public class PlannerDataAccessClientTest {
         assertThat(batches.get(3).size(), equalTo(1));
     }
 
+    @Test
+    void shouldReadTokensFromHistoryWhereRollupIsIncomplete() {
+        Instant start = Instant.parse("2020-01-02T03:00:00Z");
+        Instant end = start.plus(2, ChronoUnit.HOURS);
+        LineItemsTokensSummary rolledUp = LineItemsTokensSummary.builder().lineItemId("1").tokens(1).build();
+        LineItemsTokensSummary fromHistory = LineItemsTokensSummary.builder().lineItemId("1").tokens(2).build();
+        given(lineItemsTokensSummaryClientMock.sumPlanTokens(any(), any(), any(), any()))
+                .willReturn(Future.succeededFuture(Collections.singletonList(rolledUp)));
+        given(lineItemsHistoryClientMock.findLineItemTokens(any(), any(), any(), any()))
+                .willReturn(Future.succeededFuture(Collections.singletonList(fromHistory)));
+
+        Future<List<LineItemsTokensSummary>> result = dataAccessClient
+                .withTokensRollup((startTime, endTime) -> startTime.equals(start))
+                .getHourlyLineItemTokens(start, end, Collections.emptyList());
+
+        assertThat(result.result(), equalTo(Arrays.asList(rolledUp, fromHistory)));
+        verify(lineItemsTokensSummaryClientMock)
+                .sumPlanTokens(any(), eq(start), eq(start.plus(1, ChronoUnit.HOURS)), any());
+        verify(lineItemsHistoryClientMock)
+                .findLineItemTokens(any(), eq(start.plus(1, ChronoUnit.HOURS)), eq(end), any());
+    }
+
+    @Test
+    void shouldRunSessionQueriesOnOneConnection() {
+        List<SQLConnection> connections = new ArrayList<>();
+        given(registrationClientMock.updateRegistration(any(), any())).willAnswer(invocation -> {
+            SQLConnection sqlConnection = invocation.getArgument(0);
+            connections.add(sqlConnection);
+            sqlConnection.close();
+            return Future.succeededFuture(new UpdateResult());
+        });
+        given(adminEventClientMock.findEarliestActiveAdminEvent(any(), any(), any(), any())).willAnswer(invocation -> {
+            SQLConnection sqlConnection = invocation.getArgument(0);
+            connections.add(sqlConnection);
+            sqlConnection.close();
+            return Future.succeededFuture(AdminEvent.builder().build());
+        });
+        SQLConnection connection = mock(SQLConnection.class);
+        SqlSession session = new SqlSession(connection);
+        Registration registration = Registration.builder().build();
+
+        Future<AdminEvent> result = dataAccessClient.inSession(session, client -> client.updateRegistration(registration)
+                .compose(rs -> client.findEarliestActiveAdminEvent(Constants.APP_PBS, registration, Instant.now())));
+
+        assertThat(result.succeeded(), equalTo(true));
+        assertThat(connections.size(), equalTo(2));
+        assertThat(connections.get(0), sameInstance(session));
+        assertThat(connections.get(1), sameInstance(session));
+        assertThat(session.isReleased(), equalTo(true));
+        verify(connection).close();
+    }
+
+    @Test
+    void shouldReleaseSessionWhenFlowFails() {
+        given(registrationClientMock.updateRegistration(any(), any())).willReturn(Future.failedFuture("failed"));
+        SQLConnection connection = mock(SQLConnection.class);
+        SqlSession session = new SqlSession(connection);
+
+        Future<UpdateResult> result =
+                dataAccessClient.inSession(session, client -> client.updateRegistration(Registration.builder().build()));
+
+        assertThat(result.failed(), equalTo(true));
+        assertThat(session.isReleased(), equalTo(true));
+        verify(connection).close();
+    }
+
     public static class JDBCClientStub implements JDBCClient {
         @Override
         public SQLClient getConnection(Handler<AsyncResult<SQLConnection>> handler) {
-            handler.handle(Future.succeededFuture(mock(SQLConnection.class)));
+            SQLConnection connection = mock(SQLConnection.class);
+            Answer<SQLConnection> succeed = invocation -> {
+                Handler<AsyncResult<Void>> resultHandler =
+                        invocation.getArgument(invocation.getArguments().length - 1);
+                resultHandler.handle(Future.succeededFuture());
+                return connection;
+            };
+            doAnswer(succeed).when(connection).setAutoCommit(anyBoolean(), any());
+            doAnswer(succeed).when(connection).commit(any());
+            doAnswer(succeed).when(connection).rollback(any());
+            handler.handle(Future.succeededFuture(connection));
             return null;
         }
 
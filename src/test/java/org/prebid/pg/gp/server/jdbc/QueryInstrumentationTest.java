@@ -0,0 +1,181 @@
+package org.prebid.pg.gp.server.jdbc;
+
+import com.codahale.metrics.MetricRegistry;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.ext.sql.ResultSet;
+import io.vertx.ext.sql.SQLClient;
+import io.vertx.ext.sql.SQLConnection;
+import io.vertx.ext.sql.UpdateResult;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.prebid.pg.gp.server.breaker.ComputeExecutor;
+import org.prebid.pg.gp.server.http.AlertProxyHttpClient;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.model.LineItemIdentity;
+import org.prebid.pg.gp.server.spring.config.app.PlannerDatabaseProperties;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.hamcrest.core.StringStartsWith.startsWith;
+import static org.mockito.Mockito.mock;
+
+@ExtendWith(VertxExtension.class)
+class QueryInstrumentationTest {
+
+    private static final String JDBC_URL = "jdbc:h2:mem:query-instrumentation";
+
+    private static Vertx vertx;
+
+    private static JDBCClient jdbcClient;
+
+    private Connection connection;
+
+    private MetricRegistry metricRegistry;
+
+    private QueryInstrumentation instrumentation;
+
+    @BeforeAll
+    static void prepare() {
+        vertx = Vertx.vertx();
+        jdbcClient = JDBCClient.createShared(vertx, new JsonObject()
+                .put("url", JDBC_URL)
+                .put("driver_class", "org.h2.Driver")
+                .put("max_pool_size", 4), JDBC_URL);
+    }
+
+    @AfterAll
+    static void cleanUp() {
+        vertx.close();
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        connection = DriverManager.getConnection(JDBC_URL);
+        connection.createStatement().execute(
+                "CREATE TABLE bidders (code varchar(64) NOT NULL, name varchar(64), PRIMARY KEY (code));");
+        metricRegistry = new MetricRegistry();
+        instrumentation = new QueryInstrumentation(config(true, 0L, 10), new Metrics(metricRegistry));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        try {
+            connection.createStatement().execute("DROP TABLE IF EXISTS bidders;");
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    void shouldNormalizeLineItemFiltersOfAnyLength() {
+        final LineItemsHistoryClient historyClient = new LineItemsHistoryClient(
+                jdbcClient, new Metrics(metricRegistry), mock(SystemStateClient.class),
+                mock(AlertProxyHttpClient.class), mock(ComputeExecutor.class));
+
+        final String one = historyClient.buildQuerySql(Arrays.asList(identity("bidderA", "1")));
+        final String three = historyClient.buildQuerySql(Arrays.asList(
+                identity("bidderA", "1"), identity("bidderB", "22"), identity("bidderC", "333")));
+
+        assertThat(QueryInstrumentation.normalize(one), equalTo(QueryInstrumentation.normalize(three)));
+        assertThat(instrumentation.fingerprint(one), equalTo(instrumentation.fingerprint(three)));
+        assertThat(instrumentation.fingerprint(one), startsWith("select-line_items_history-"));
+    }
+
+    @Test
+    void shouldNormalizeValueListsAndTuples() {
+        assertThat(QueryInstrumentation.normalize("SELECT * FROM t WHERE id IN ('a', 'b',  'c') AND n = 12"),
+                equalTo("select * from t where id in (?, ...) and n = ?"));
+        assertThat(QueryInstrumentation.normalize("INSERT INTO t (a, b) VALUES (?, ?), (?, ?), (?, ?)"),
+                equalTo(QueryInstrumentation.normalize("insert into t (a, b) values (?, ?)")));
+        assertThat(QueryInstrumentation.normalize("SELECT col1 FROM t2 WHERE x = 1.5"),
+                equalTo("select col1 from t2 where x = ?"));
+    }
+
+    @Test
+    void shouldFallBackToOtherBeyondMaxFingerprints() {
+        instrumentation = new QueryInstrumentation(config(true, 0L, 1), new Metrics(metricRegistry));
+
+        final String first = instrumentation.fingerprint("SELECT * FROM a");
+
+        assertThat(first, not(equalTo(QueryInstrumentation.OTHER)));
+        assertThat(instrumentation.fingerprint("SELECT * FROM b"), equalTo(QueryInstrumentation.OTHER));
+        assertThat(instrumentation.fingerprint("SELECT * FROM a"), equalTo(first));
+    }
+
+    @Test
+    void shouldNotInstrumentWhenDisabled() {
+        instrumentation = new QueryInstrumentation(config(false, 0L, 10), new Metrics(metricRegistry));
+
+        assertThat(instrumentation.instrument(jdbcClient), sameInstance(jdbcClient));
+    }
+
+    @Test
+    void shouldRecordRowsAndBytesPerFingerprint(VertxTestContext context) {
+        final SQLClient client = instrumentation.instrument(jdbcClient);
+        final String insertSql = "INSERT INTO bidders (code, name) VALUES (?, ?)";
+        final String selectSql = "SELECT code, name FROM bidders WHERE code IN ('bidderA', 'bidderB')";
+
+        this.<SQLConnection>run(future -> client.getConnection(future))
+                .compose(connection -> this.<UpdateResult>run(future -> connection.updateWithParams(insertSql,
+                        new JsonArray().add("bidderA").add("Bidder"), future))
+                        .compose(updated -> this.<UpdateResult>run(future -> connection.updateWithParams(insertSql,
+                                new JsonArray().add("bidderB").add("Bidder"), future)))
+                        .compose(updated -> this.<ResultSet>run(future -> connection.query(selectSql, future)))
+                        .map(rs -> {
+                            connection.close();
+                            return rs;
+                        }))
+                .setHandler(context.succeeding(rs -> context.verify(() -> {
+                    final String insert = instrumentation.fingerprint(insertSql);
+                    final String select = instrumentation.fingerprint(selectSql);
+                    assertThat(metricRegistry.timer(metricName(insert, "latency")).getCount(), equalTo(2L));
+                    assertThat(metricRegistry.counter(metricName(insert, "rows")).getCount(), equalTo(2L));
+                    assertThat(metricRegistry.counter(metricName(insert, "bytes")).getCount(), equalTo(26L));
+                    assertThat(metricRegistry.counter(metricName(select, "rows")).getCount(), equalTo(2L));
+                    assertThat(metricRegistry.counter(metricName(select, "bytes")).getCount(), equalTo(26L));
+                    assertThat(metricRegistry.counter(metricName(select, "slow")).getCount(), equalTo(1L));
+                    assertThat(metricRegistry.timer("db-query.connection-wait").getCount(), equalTo(1L));
+                    context.completeNow();
+                })));
+    }
+
+    private <T> Future<T> run(Consumer<Future<T>> statement) {
+        final Future<T> future = Future.future();
+        statement.accept(future);
+        return future;
+    }
+
+    private static String metricName(String fingerprint, String tag) {
+        return String.format("db-query.%s.%s", fingerprint, tag);
+    }
+
+    private static LineItemIdentity identity(String bidderCode, String lineItemId) {
+        return LineItemIdentity.builder().bidderCode(bidderCode).lineItemId(lineItemId).build();
+    }
+
+    private static PlannerDatabaseProperties.QueryLog config(boolean enabled, long thresholdMs, int maxFingerprints) {
+        final PlannerDatabaseProperties.QueryLog config = new PlannerDatabaseProperties.QueryLog();
+        config.setEnabled(enabled);
+        config.setSlowQueryThresholdMs(thresholdMs);
+        config.setMaxFingerprints(maxFingerprints);
+        return config;
+    }
+
+}
@@ -0,0 +1,159 @@
+package org.prebid.pg.gp.server.jdbc;
+
+import com.codahale.metrics.MetricRegistry;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.spring.config.app.PlannerDatabaseProperties;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.CombinableMatcher.both;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.number.OrderingComparison.greaterThanOrEqualTo;
+import static org.hamcrest.number.OrderingComparison.lessThanOrEqualTo;
+
+@ExtendWith(VertxExtension.class)
+class ReadReplicaRouterTest {
+
+    private static final String PRIMARY_URL = "jdbc:h2:mem:router-primary";
+
+    private static final String REPLICA_URL = "jdbc:h2:mem:router-replica";
+
+    private static final String CREATE_TABLE_SQL = "CREATE TABLE gp_replica_heartbeat ("
+            + "instance_id varchar(128) NOT NULL, beat_at timestamp NOT NULL, PRIMARY KEY (instance_id));";
+
+    private static Vertx vertx;
+
+    private static JDBCClient primaryClient;
+
+    private static JDBCClient replicaClient;
+
+    private Connection primary;
+
+    private Connection replica;
+
+    private ReadReplicaRouter router;
+
+    @BeforeAll
+    static void prepare() {
+        vertx = Vertx.vertx();
+        primaryClient = jdbcClient(PRIMARY_URL);
+        replicaClient = jdbcClient(REPLICA_URL);
+    }
+
+    @AfterAll
+    static void cleanUp() {
+        vertx.close();
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        primary = DriverManager.getConnection(PRIMARY_URL);
+        replica = DriverManager.getConnection(REPLICA_URL);
+        primary.createStatement().execute(CREATE_TABLE_SQL);
+        replica.createStatement().execute(CREATE_TABLE_SQL);
+
+        PlannerDatabaseProperties.Replica config = new PlannerDatabaseProperties.Replica();
+        config.setEnabled(true);
+        config.setMaxLagSec(5);
+        config.setLagCheckPeriodSec(1);
+        router = new ReadReplicaRouter(vertx, primaryClient, replicaClient, "gp1", config,
+                new Metrics(new MetricRegistry()));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        try {
+            primary.createStatement().execute("DROP TABLE IF EXISTS gp_replica_heartbeat;");
+            replica.createStatement().execute("DROP TABLE IF EXISTS gp_replica_heartbeat;");
+        } finally {
+            primary.close();
+            replica.close();
+        }
+    }
+
+    @Test
+    void shouldUseReplicaWhenLagIsBelowThreshold(VertxTestContext context) throws Exception {
+        replicate(-2);
+
+        router.checkLag().setHandler(context.succeeding(lag -> context.verify(() -> {
+            assertThat(router.isReplicaUsable(), equalTo(true));
+            assertThat(lag, both(greaterThanOrEqualTo(2L)).and(lessThanOrEqualTo(3L)));
+            assertThat(primaryBeats(), equalTo(1));
+            context.completeNow();
+        })));
+    }
+
+    @Test
+    void shouldBypassReplicaWhenLagExceedsThreshold(VertxTestContext context) throws Exception {
+        replicate(-60);
+
+        router.checkLag().setHandler(context.succeeding(lag -> context.verify(() -> {
+            assertThat(router.isReplicaUsable(), equalTo(false));
+            assertThat(lag, both(greaterThanOrEqualTo(60L)).and(lessThanOrEqualTo(61L)));
+            context.completeNow();
+        })));
+    }
+
+    @Test
+    void shouldBypassReplicaWhenHeartbeatIsNotReplicated(VertxTestContext context) {
+        router.checkLag().setHandler(context.succeeding(lag -> context.verify(() -> {
+            assertThat(router.isReplicaUsable(), equalTo(false));
+            assertThat(lag, equalTo(-1L));
+            context.completeNow();
+        })));
+    }
+
+    @Test
+    void shouldBypassReplicaWhenReplicaFails(VertxTestContext context) throws Exception {
+        replicate(-2);
+        router.checkLag()
+                .compose(lag -> {
+                    try {
+                        replica.createStatement().execute("DROP TABLE gp_replica_heartbeat;");
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return router.checkLag();
+                })
+                .setHandler(context.failing(ex -> context.verify(() -> {
+                    assertThat(router.isReplicaUsable(), equalTo(false));
+                    assertThat(router.getLagSec(), equalTo(-1L));
+                    context.completeNow();
+                })));
+    }
+
+    // the lag counts second boundaries crossed, so it may read one more than the offset
+    private void replicate(int offsetSec) throws Exception {
+        replica.createStatement().execute(String.format("INSERT INTO gp_replica_heartbeat VALUES "
+                + "('gp1', TIMESTAMPADD(SECOND, %d, CURRENT_TIMESTAMP));", offsetSec));
+    }
+
+    private int primaryBeats() throws Exception {
+        ResultSet rs = primary.createStatement().executeQuery(
+                "SELECT COUNT(*) FROM gp_replica_heartbeat WHERE instance_id = 'gp1'");
+        rs.next();
+        return rs.getInt(1);
+    }
+
+    private static JDBCClient jdbcClient(String url) {
+        return JDBCClient.createShared(vertx, new JsonObject()
+                .put("url", url)
+                .put("driver_class", "org.h2.Driver")
+                .put("max_pool_size", 4), url);
+    }
+
+}
@@ -2,22 +2,28 @@ package org.prebid.pg.gp.server.jdbc;
 
 import com.codahale.metrics.MetricRegistry;
 import io.vertx.core.Future;
+import io.vertx.core.Vertx;
 import io.vertx.core.json.Json;
 import io.vertx.junit5.VertxExtension;
 import io.vertx.junit5.VertxTestContext;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.prebid.pg.gp.server.breaker.ComputeExecutor;
 import org.prebid.pg.gp.server.metric.Metrics;
 import org.prebid.pg.gp.server.model.AdminTracer;
+import org.prebid.pg.gp.server.model.PbsHost;
 import org.prebid.pg.gp.server.model.ReallocatedPlan;
 import org.prebid.pg.gp.server.model.TracerFilters;
+import org.prebid.pg.gp.server.spring.config.app.ComputeExecutorConfiguration;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.IsEqual.equalTo;
+import static org.mockito.Mockito.mock;
 
 @ExtendWith(VertxExtension.class)
 public class ReallocatedPlansClientTest extends DataAccessClientTestBase {
@@ -55,7 +61,7 @@ public class ReallocatedPlansClientTest extends DataAccessClientTestBase {
         tracer.setEnabled(true);
         tracer.setExpiresAt(Instant.now().plusSeconds(86400));
         tracer.setFilters(filters);
-        dbClient =  new ReallocatedPlansClient(HOST_NAME, new Metrics(new MetricRegistry()), tracer);
+        dbClient =  new ReallocatedPlansClient(HOST_NAME, new Metrics(new MetricRegistry()), tracer, inlineComputeExecutor());
     }
 
     private ReallocatedPlan prepareTableData() throws Exception {
@@ -154,4 +160,34 @@ public class ReallocatedPlansClientTest extends DataAccessClientTestBase {
                 })
         ));
     }
- }
+
+    @Test
+    void shouldGetReallocatedPlansOfRequestedHostsOnly(VertxTestContext ctx) throws Exception {
+        ReallocatedPlan plan = prepareTableData();
+        List<PbsHost> hosts = Arrays.asList(
+                PbsHost.builder().vendor(plan.getVendor()).region(plan.getRegion())
+                        .hostInstanceId(plan.getInstanceId()).build(),
+                PbsHost.builder().vendor(plan.getVendor()).region(plan.getRegion()).hostInstanceId("other").build());
+        Future<List<ReallocatedPlan>> future = connect()
+                .compose(sqlConnection -> dbClient.getReallocatedPlans(sqlConnection, hosts.subList(1, 2)))
+                .compose(plans -> {
+                    assertThat(plans.size(), equalTo(0));
+                    return connect().compose(sqlConnection -> dbClient.getReallocatedPlans(sqlConnection, hosts));
+                });
+
+        future.setHandler(ctx.succeeding(rs ->
+                ctx.verify(() -> {
+                    assertThat(rs.size(), equalTo(1));
+                    assertThat(rs.get(0).getUniqueInstanceId(), equalTo(plan.getUniqueInstanceId()));
+                    ctx.completeNow();
+                })
+        ));
+    }
+
+    private static ComputeExecutor inlineComputeExecutor() {
+        ComputeExecutorConfiguration config = new ComputeExecutorConfiguration();
+        config.setEnabled(false);
+        return new ComputeExecutor(mock(Vertx.class), config, new Metrics(new MetricRegistry()));
+    }
+
+}
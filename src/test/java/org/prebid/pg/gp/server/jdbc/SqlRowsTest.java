@@ -0,0 +1,55 @@
+package org.prebid.pg.gp.server.jdbc;
+
+import io.vertx.core.json.JsonArray;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+
+class SqlRowsTest {
+
+    private static final Instant TIMESTAMP = Instant.parse("2020-01-02T03:04:05Z");
+
+    @Test
+    void shouldReadInstantsOfBothClients() {
+        JsonArray row = new JsonArray()
+                .add(TIMESTAMP)
+                .add("2020-01-02T03:04:05Z")
+                .add("2020-01-02T03:04:05.000")
+                .add("2020-01-02 03:04:05")
+                .add("2020-01-02T05:04:05+02:00")
+                .addNull();
+
+        assertThat(SqlRows.getInstant(row, 0), equalTo(TIMESTAMP));
+        assertThat(SqlRows.getInstant(row, 1), equalTo(TIMESTAMP));
+        assertThat(SqlRows.getInstant(row, 2), equalTo(TIMESTAMP));
+        assertThat(SqlRows.getInstant(row, 3), equalTo(TIMESTAMP));
+        assertThat(SqlRows.getInstant(row, 4), equalTo(TIMESTAMP));
+        assertThat(SqlRows.getInstant(row, 5), nullValue());
+    }
+
+    @Test
+    void shouldReadNumbersOfBothClients() {
+        JsonArray row = new JsonArray()
+                .add(7)
+                .add(7L)
+                .add(7.0)
+                .add("7")
+                .add("0.5")
+                .addNull();
+
+        for (int pos = 0; pos < 4; pos++) {
+            assertThat(SqlRows.getInteger(row, pos), equalTo(7));
+            assertThat(SqlRows.getLong(row, pos), equalTo(7L));
+        }
+        assertThat(SqlRows.getFloat(row, 2), equalTo(7f));
+        assertThat(SqlRows.getFloat(row, 4), equalTo(.5f));
+        assertThat(SqlRows.getInteger(row, 5), nullValue());
+        assertThat(SqlRows.getLong(row, 5), nullValue());
+        assertThat(SqlRows.getFloat(row, 5), nullValue());
+    }
+
+}
@@ -0,0 +1,91 @@
+package org.prebid.pg.gp.server.jfr;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+class PlanRequestStageEventTest {
+
+    @Test
+    void shouldRecordStageWhenEnabled() throws Exception {
+        final Path file = Files.createTempFile("plan-request-stage", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("org.prebid.pg.PlanRequestStage").withoutThreshold();
+            recording.start();
+            PlanRequestStageEvent.start("render", "vendor1^^us-east^^host1").end(3);
+            recording.stop();
+            recording.dump(file);
+
+            final List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                    .filter(event -> event.getEventType().getName().equals("org.prebid.pg.PlanRequestStage"))
+                    .collect(Collectors.toList());
+            assertThat(events.size(), equalTo(1));
+            assertThat(events.get(0).getString("stage"), equalTo("render"));
+            assertThat(events.get(0).getString("host"), equalTo("vendor1^^us-east^^host1"));
+            assertThat(events.get(0).getLong("size"), equalTo(3L));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void shouldNotFailWhenNotRecording() {
+        PlanRequestStageEvent.start("encode", null).end(0);
+        ReallocationCycleEvent.start().end(false);
+        PlannerAdapterRefreshEvent.start("adapter").end(0, false);
+        DeliveryDataFetchEvent.start("vendor1", "us-east").end(0, false);
+    }
+
+    @Test
+    void shouldDisableEventsWithoutJfr() throws Exception {
+        final Class<?> eventClass = new JfrHidingClassLoader().loadClass(PlanRequestStageEvent.class.getName());
+
+        final Object event = eventClass.getMethod("start", String.class, String.class).invoke(null, "render", "host");
+        eventClass.getMethod("end", long.class).invoke(event, 3L);
+    }
+
+    /**
+     * Loads the classes of this package as on a JVM without JFR.
+     */
+    private static class JfrHidingClassLoader extends ClassLoader {
+
+        private final ClassLoader delegate = PlanRequestStageEventTest.class.getClassLoader();
+
+        JfrHidingClassLoader() {
+            super(null);
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (name.startsWith("jdk.jfr.")) {
+                throw new ClassNotFoundException(name);
+            }
+            if (!name.startsWith(PlanRequestStageEvent.class.getPackage().getName() + ".")) {
+                return delegate.loadClass(name);
+            }
+            Class<?> loaded = findLoadedClass(name);
+            if (loaded == null) {
+                try (InputStream in = delegate.getResourceAsStream(name.replace('.', '/') + ".class")) {
+                    final byte[] bytes = IOUtils.toByteArray(in);
+                    loaded = defineClass(name, bytes, 0, bytes.length);
+                } catch (IOException e) {
+                    throw new ClassNotFoundException(name, e);
+                }
+            }
+            return loaded;
+        }
+    }
+
+}
@@ -0,0 +1,141 @@
+package org.prebid.pg.gp.server.metric;
+
+import com.codahale.metrics.MetricRegistry;
+import io.vertx.circuitbreaker.CircuitBreakerState;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.metrics.MetricsOptions;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.prebid.pg.gp.server.breaker.PlannerCircuitBreaker;
+import org.prebid.pg.gp.server.jdbc.PlannerDataSourceProvider;
+import org.prebid.pg.gp.server.spring.config.app.CircuitBreakerConfiguration;
+import org.prebid.pg.gp.server.spring.config.app.SaturationMonitorConfiguration;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+@ExtendWith(VertxExtension.class)
+class SaturationMonitorTest {
+
+    private MetricRegistry registry;
+
+    private PoolMetricsFactory poolMetricsFactory;
+
+    private Vertx vertx;
+
+    private SaturationMonitor monitor;
+
+    @BeforeEach
+    void setUp() {
+        registry = new MetricRegistry();
+        poolMetricsFactory = new PoolMetricsFactory(new Metrics(registry));
+        vertx = Vertx.vertx(new VertxOptions()
+                .setEventLoopPoolSize(1)
+                .setMetricsOptions(new MetricsOptions().setEnabled(true).setFactory(poolMetricsFactory)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (monitor != null) {
+            monitor.close();
+        }
+        vertx.close();
+    }
+
+    @Test
+    void shouldRecordWorkerPoolQueueAndExecuteTime(VertxTestContext context) {
+        vertx.<Void>executeBlocking(Future::complete, false, ar -> context.verify(() -> {
+            assertThat(registry.timer("worker-pool.vert-x-worker-thread.queue-time").getCount(), equalTo(1L));
+            assertThat(registry.timer("worker-pool.vert-x-worker-thread.execute-time").getCount(), equalTo(1L));
+            assertThat(poolMetricsFactory.snapshot().get("vert.x-worker-thread").get("in-use"), equalTo(0));
+            context.completeNow();
+        }));
+    }
+
+    @Test
+    void shouldProbeEventLoopLagAndReportBreakerTransitions(VertxTestContext context) throws Exception {
+        CircuitBreakerConfiguration breakerConfig = new CircuitBreakerConfiguration();
+        breakerConfig.setOpeningThreshold(1);
+        breakerConfig.setClosingIntervalSec(60);
+        PlannerCircuitBreaker breaker = new PlannerCircuitBreaker("test-cb", vertx, breakerConfig);
+        SaturationMonitorConfiguration config = new SaturationMonitorConfiguration();
+        config.setEnabled(true);
+        config.setEventLoopProbeIntervalMs(10);
+        monitor = new SaturationMonitor(
+                vertx, config, new Metrics(registry), poolMetricsFactory, Collections.singletonList(breaker),
+                Collections.emptyList());
+
+        // stall the only event loop for a while
+        vertx.runOnContext(v -> sleep(100));
+        breaker.executeCommand(future -> future.fail("boom"));
+
+        vertx.setTimer(300, id -> context.verify(() -> {
+            Map<String, Object> snapshot = monitor.snapshot();
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> eventLoops = (List<Map<String, Object>>) snapshot.get("event-loops");
+            assertThat(eventLoops.size(), equalTo(1));
+            assertThat((Long) eventLoops.get(0).get("max-lag-ms"), greaterThanOrEqualTo(50L));
+            assertThat(registry.timer("event-loop.lag").getCount(), greaterThan(0L));
+
+            assertThat(breaker.getTransitions(CircuitBreakerState.OPEN), equalTo(1L));
+            assertThat(registry.getGauges().get("circuit-breaker.test-cb.state").getValue(),
+                    equalTo(CircuitBreakerState.OPEN.ordinal()));
+            context.completeNow();
+        }));
+        assertThat(context.awaitCompletion(5, TimeUnit.SECONDS), equalTo(true));
+    }
+
+    @Test
+    void shouldReportUsageOfNamedDbPool(VertxTestContext context) throws Exception {
+        SaturationMonitorConfiguration config = new SaturationMonitorConfiguration();
+        config.setEnabled(false);
+        monitor = new SaturationMonitor(vertx, config, new Metrics(registry), poolMetricsFactory,
+                Collections.emptyList(), Collections.singletonList("test-serving-pool"));
+        assertThat(registry.getGauges().get("db-pool.test-serving-pool.busy").getValue(), equalTo(0));
+
+        JDBCClient jdbcClient = JDBCClient.createShared(vertx, new JsonObject()
+                .put("provider_class", PlannerDataSourceProvider.class.getName())
+                .put(PlannerDataSourceProvider.POOL_NAME, "test-serving-pool")
+                .put("url", "jdbc:h2:mem:saturation-monitor")
+                .put("driver_class", "org.h2.Driver")
+                .put("initial_pool_size", 1)
+                .put("min_pool_size", 1)
+                .put("max_pool_size", 2), "test-serving-pool");
+        jdbcClient.getConnection(ar -> context.verify(() -> {
+            assertThat(registry.getGauges().get("db-pool.test-serving-pool.busy").getValue(), equalTo(1));
+            @SuppressWarnings("unchecked")
+            Map<String, Map<String, Object>> pools = (Map<String, Map<String, Object>>) monitor.snapshot()
+                    .get("db-pools");
+            assertThat(pools.get("test-serving-pool").get("busy"), equalTo(1));
+            ar.result().close(closed -> {
+                jdbcClient.close();
+                context.completeNow();
+            });
+        }));
+        assertThat(context.awaitCompletion(5, TimeUnit.SECONDS), equalTo(true));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,165 @@
+package org.prebid.pg.gp.server.services;
+
+import com.codahale.metrics.MetricRegistry;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.prebid.pg.gp.server.jdbc.ChangeVersionClient;
+import org.prebid.pg.gp.server.jdbc.CircuitBreakerSecuredPlannerDataAccessClient;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.model.ReallocatedPlan;
+import org.prebid.pg.gp.server.model.ReallocationWeights;
+import org.prebid.pg.gp.server.model.Weightage;
+import org.prebid.pg.gp.server.spring.config.app.ChangeFeedConfiguration;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class ChangeFeedServiceTest {
+
+    private static final String HOST_KEY = "vendor1^^us-east^^host1";
+
+    private CircuitBreakerSecuredPlannerDataAccessClient dataAccessClient;
+
+    private ChangeVersionClient changeVersionClient;
+
+    private PlanVersionTracker tracker;
+
+    private LineItemCatalogHistory catalogHistory;
+
+    private ChangeFeedService changeFeedService;
+
+    @BeforeEach
+    void setUp() {
+        ChangeFeedConfiguration config = new ChangeFeedConfiguration();
+        config.setEnabled(true);
+        config.setPollIntervalSec(2);
+        config.setPlanLookbackSec(300);
+        dataAccessClient = mock(CircuitBreakerSecuredPlannerDataAccessClient.class);
+        Metrics metrics = new Metrics(new MetricRegistry());
+        changeVersionClient = new ChangeVersionClient(metrics);
+        changeVersionClient.trackLocalVersions();
+        tracker = new PlanVersionTracker(mock(Vertx.class), changeVersionClient, metrics);
+        catalogHistory = new LineItemCatalogHistory(4);
+        changeFeedService = new ChangeFeedService(
+                mock(Vertx.class), config, dataAccessClient, changeVersionClient, tracker, catalogHistory, metrics);
+    }
+
+    @Test
+    void shouldAdvanceCatalogOnLineItemsChangedElsewhere() {
+        givenVersions(3L, 7L);
+        changeFeedService.poll();
+        long catalogVersion = tracker.getCatalogVersion();
+
+        givenVersions(4L, 7L);
+        changeFeedService.poll();
+
+        assertThat(catalogVersion, equalTo(3L));
+        assertThat(tracker.getCatalogVersion(), equalTo(4L));
+        verify(dataAccessClient, never()).getLatestReallocatedPlans(any());
+    }
+
+    @Test
+    void shouldForgetCatalogVersionSupersededElsewhere() {
+        givenVersions(3L, 7L);
+        changeFeedService.poll();
+        catalogHistory.record(3L, Collections.singletonMap("bidder1-1", "digest"));
+
+        givenVersions(4L, 7L);
+        changeFeedService.poll();
+        catalogHistory.record(3L, Collections.singletonMap("bidder1-1", "digest"));
+
+        assertThat(catalogHistory.get(3L), nullValue());
+    }
+
+    @Test
+    void shouldSkipChangesMadeLocally() {
+        givenVersions(3L, 7L);
+        changeFeedService.poll();
+        long catalogVersion = tracker.getCatalogVersion();
+
+        changeVersionClient.committed(ChangeVersionClient.LINE_ITEMS, 4L);
+        changeVersionClient.committed(ChangeVersionClient.REALLOCATED_PLANS, 8L);
+        givenVersions(4L, 8L);
+        changeFeedService.poll();
+
+        assertThat(tracker.getCatalogVersion(), equalTo(catalogVersion));
+        verify(dataAccessClient, never()).getLatestReallocatedPlans(any());
+    }
+
+    @Test
+    void shouldAdvanceHostVersionOnPlansChangedElsewhere() {
+        givenVersions(3L, 7L);
+        changeFeedService.poll();
+        String hostVersion = tracker.currentVersion(HOST_KEY);
+
+        changeVersionClient.committed(ChangeVersionClient.REALLOCATED_PLANS, 8L);
+        given(dataAccessClient.getLatestReallocatedPlans(any()))
+                .willReturn(Future.succeededFuture(Collections.singletonList(plan())));
+        givenVersions(3L, 9L);
+        changeFeedService.poll();
+
+        assertThat(hostVersion, equalTo("3.7"));
+        assertThat(tracker.currentVersion(HOST_KEY), equalTo("3.9"));
+    }
+
+    @Test
+    void shouldSeedVersionsWhenNotPolling() {
+        ChangeFeedConfiguration config = new ChangeFeedConfiguration();
+        config.setEnabled(false);
+        config.setPollIntervalSec(2);
+        config.setPlanLookbackSec(300);
+        Metrics metrics = new Metrics(new MetricRegistry());
+        changeFeedService = new ChangeFeedService(
+                mock(Vertx.class), config, dataAccessClient, changeVersionClient, tracker, catalogHistory, metrics);
+        givenVersions(3L, 7L);
+
+        changeFeedService.initialize();
+
+        assertThat(tracker.currentVersion(HOST_KEY), equalTo("3.7"));
+    }
+
+    @Test
+    void shouldRetryPlansNotRead() {
+        givenVersions(3L, 7L);
+        changeFeedService.poll();
+        String hostVersion = tracker.currentVersion(HOST_KEY);
+
+        given(dataAccessClient.getLatestReallocatedPlans(any()))
+                .willReturn(Future.failedFuture("failed"), Future.succeededFuture(Collections.singletonList(plan())));
+        givenVersions(3L, 8L);
+        changeFeedService.poll();
+        assertThat(tracker.currentVersion(HOST_KEY), equalTo(hostVersion));
+
+        changeFeedService.poll();
+        assertThat(tracker.currentVersion(HOST_KEY), not(equalTo(hostVersion)));
+    }
+
+    private void givenVersions(long lineItemsVersion, long plansVersion) {
+        Map<String, Long> versions = new HashMap<>();
+        versions.put(ChangeVersionClient.LINE_ITEMS, lineItemsVersion);
+        versions.put(ChangeVersionClient.REALLOCATED_PLANS, plansVersion);
+        given(dataAccessClient.getChangeVersions()).willReturn(Future.succeededFuture(versions));
+    }
+
+    private ReallocatedPlan plan() {
+        Weightage weightage = Weightage.builder().bidderCode("bidder1").lineItemId("1111").weight(40.0).build();
+        return ReallocatedPlan.builder().vendor("vendor1").region("us-east").instanceId("host1")
+                .reallocationWeights(ReallocationWeights.builder()
+                        .weights(Collections.singletonList(weightage)).build())
+                .build();
+    }
+
+}
@@ -15,6 +15,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.prebid.pg.gp.server.http.AlertProxyHttpClient;
 import org.prebid.pg.gp.server.http.CircuitBreakerSecuredDeliveryDataHttpClient;
 import org.prebid.pg.gp.server.jdbc.CircuitBreakerSecuredPlannerDataAccessClient;
+import org.prebid.pg.gp.server.jdbc.LeaderLeaseClient;
 import org.prebid.pg.gp.server.metric.Metrics;
 import org.prebid.pg.gp.server.model.AdminTracer;
 import org.prebid.pg.gp.server.model.HttpResponseContainer;
@@ -22,6 +23,7 @@ import org.prebid.pg.gp.server.model.PbsHost;
 import org.prebid.pg.gp.server.model.Shutdown;
 import org.prebid.pg.gp.server.model.TracerFilters;
 import org.prebid.pg.gp.server.spring.config.app.DeliveryDataConfiguration;
+import org.prebid.pg.gp.server.spring.config.app.LeaderElectionConfiguration;
 
 import java.io.File;
 import java.time.Instant;
@@ -105,7 +107,8 @@ class DeliveryDataServiceTest {
                 tracer,
                 shutdown,
                 alertHttpClientMock,
-                statsCache);
+                statsCache,
+                soleLeader());
     }
 
     @AfterAll
@@ -210,4 +213,11 @@ class DeliveryDataServiceTest {
         return deliveryDataConfiguration.getUrl() + "?vendor=vendor1&region=us-east-1";
     }
 
-}
\ No newline at end of file
+    private static LeaderElection soleLeader() {
+        LeaderElectionConfiguration config = new LeaderElectionConfiguration();
+        config.setEnabled(false);
+        return new LeaderElection(mock(Vertx.class), config, mock(LeaderLeaseClient.class), "test",
+                new Metrics(new MetricRegistry()), new Shutdown());
+    }
+
+}
@@ -0,0 +1,153 @@
+package org.prebid.pg.gp.server.services;
+
+import com.codahale.metrics.MetricRegistry;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.prebid.pg.gp.server.jdbc.HistoryRetentionClient;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.model.Shutdown;
+import org.prebid.pg.gp.server.spring.config.app.HistoryRetentionConfiguration;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+@ExtendWith(VertxExtension.class)
+class HistoryRetentionServiceTest {
+
+    private static final String JDBC_URL = "jdbc:h2:mem:history-retention";
+
+    private static Vertx vertx;
+
+    private static JDBCClient jdbcClient;
+
+    private Connection connection;
+
+    private HistoryRetentionConfiguration config;
+
+    private HistoryRetentionClient retentionClient;
+
+    private LeaderElection leaderElection;
+
+    @BeforeAll
+    static void prepare() {
+        vertx = Vertx.vertx();
+        jdbcClient = JDBCClient.createShared(vertx, new JsonObject()
+                .put("url", JDBC_URL)
+                .put("driver_class", "org.h2.Driver")
+                .put("max_pool_size", 4), JDBC_URL);
+    }
+
+    @AfterAll
+    static void cleanUp() {
+        vertx.close();
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        connection = DriverManager.getConnection(JDBC_URL);
+        connection.createStatement().execute("CREATE TABLE line_items_history ("
+                + "audit_id int NOT NULL AUTO_INCREMENT, line_item_id varchar(64) NOT NULL, "
+                + "audit_time timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP, PRIMARY KEY (audit_id));");
+        config = new HistoryRetentionConfiguration();
+        config.setEnabled(true);
+        config.setInitialDelaySec(0);
+        config.setRunPeriodSec(600);
+        config.setChunkSize(10);
+        config.setChunkPauseMs(1);
+        config.setMaxChunksPerRun(100);
+        config.setLineItemsHistoryTtlDays(30);
+        config.setReallocatedPlansHistoryTtlDays(0);
+        config.setAppRegistrationHistoryTtlDays(0);
+        retentionClient = new HistoryRetentionClient(jdbcClient, new Metrics(new MetricRegistry()));
+        leaderElection = mock(LeaderElection.class);
+        given(leaderElection.isLeader()).willReturn(true);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        try {
+            connection.createStatement().execute("DROP TABLE IF EXISTS line_items_history;");
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    void shouldPurgeExpiredRowsInChunks(VertxTestContext context) throws Exception {
+        insertHistory(25, 40);
+        insertHistory(5, 1);
+        final HistoryRetentionService service = newService();
+
+        service.purge().setHandler(context.succeeding(v -> context.verify(() -> {
+            assertThat(countHistory(), equalTo(5));
+            assertThat(service.getBacklog(HistoryRetentionClient.LINE_ITEMS_HISTORY), equalTo(0L));
+            context.completeNow();
+        })));
+    }
+
+    @Test
+    void shouldLeaveBacklogBeyondMaxChunksToNextRun(VertxTestContext context) throws Exception {
+        config.setMaxChunksPerRun(2);
+        insertHistory(25, 40);
+        insertHistory(5, 1);
+        final HistoryRetentionService service = newService();
+
+        service.purge().setHandler(context.succeeding(v -> context.verify(() -> {
+            assertThat(countHistory(), equalTo(10));
+            assertThat(service.getBacklog(HistoryRetentionClient.LINE_ITEMS_HISTORY), equalTo(5L));
+            context.completeNow();
+        })));
+    }
+
+    @Test
+    void shouldNotPurgeWhenNotTheLeader(VertxTestContext context) throws Exception {
+        given(leaderElection.isLeader()).willReturn(false);
+        insertHistory(25, 40);
+
+        newService().purge().setHandler(context.succeeding(v -> context.verify(() -> {
+            assertThat(countHistory(), equalTo(25));
+            context.completeNow();
+        })));
+    }
+
+    @Test
+    void shouldRejectTablesOtherThanHistoryTables() {
+        assertThrows(IllegalArgumentException.class, () -> retentionClient.findExpiredRange("line_items", 60));
+    }
+
+    private HistoryRetentionService newService() {
+        return new HistoryRetentionService(vertx, config, retentionClient, leaderElection,
+                new Metrics(new MetricRegistry()), new Shutdown());
+    }
+
+    private void insertHistory(int rows, int ageDays) throws Exception {
+        for (int i = 0; i < rows; i++) {
+            connection.createStatement().execute(String.format("INSERT INTO line_items_history "
+                    + "(line_item_id, audit_time) VALUES ('li%d', TIMESTAMPADD(DAY, -%d, CURRENT_TIMESTAMP));",
+                    i, ageDays));
+        }
+    }
+
+    private int countHistory() throws Exception {
+        final ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*) FROM line_items_history");
+        rs.next();
+        return rs.getInt(1);
+    }
+
+}
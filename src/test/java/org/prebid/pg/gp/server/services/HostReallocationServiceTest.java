@@ -7,19 +7,29 @@ import io.vertx.junit5.VertxExtension;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.prebid.pg.gp.server.breaker.ComputeExecutor;
 import org.prebid.pg.gp.server.jdbc.CircuitBreakerSecuredPlannerDataAccessClient;
+import org.prebid.pg.gp.server.jdbc.LeaderLeaseClient;
 import org.prebid.pg.gp.server.metric.Metrics;
 import org.prebid.pg.gp.server.model.*;
+import org.prebid.pg.gp.server.spring.config.app.ComputeExecutorConfiguration;
 import org.prebid.pg.gp.server.spring.config.app.HostReallocationConfiguration;
+import org.prebid.pg.gp.server.spring.config.app.LeaderElectionConfiguration;
 
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Function;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -47,6 +57,10 @@ class HostReallocationServiceTest {
     @BeforeEach
     void setUpBeforeEach() {
         dataAccessClientMock = mock(CircuitBreakerSecuredPlannerDataAccessClient.class);
+        given(dataAccessClientMock.inReadOnlySession(any()))
+                .willAnswer(invocation -> invocation
+                        .<Function<CircuitBreakerSecuredPlannerDataAccessClient, Future<?>>>getArgument(0)
+                        .apply(dataAccessClientMock));
         reallocationAlgoMock = mock(HostBasedTokenReallocation.class);
         configMock = mock(HostReallocationConfiguration.class);
         statsCacheMock = mock(StatsCache.class);
@@ -54,7 +68,8 @@ class HostReallocationServiceTest {
 
         service = new HostReallocationService(
                 vertx, configMock, pbsMaxIdlePeriodInSeconds, dataAccessClientMock, reallocationAlgoMock,
-                new Metrics(new MetricRegistry()), shutdown, statsCacheMock);
+                new Metrics(new MetricRegistry()), shutdown, statsCacheMock,
+                mock(PlanVersionTracker.class), inlineComputeExecutor(), soleLeader());
     }
 
     @Test
@@ -66,7 +81,7 @@ class HostReallocationServiceTest {
         service.calculate(null);
 
         commonVerify();
-        verify(dataAccessClientMock).updateReallocatedPlans(any(), anyInt());
+        verify(dataAccessClientMock).updateReallocatedPlans(any(), anyInt(), any());
     }
 
     @Test
@@ -79,7 +94,7 @@ class HostReallocationServiceTest {
         service.calculate(endTime);
 
         commonVerify();
-        verify(dataAccessClientMock).updateReallocatedPlans(any(), anyInt());
+        verify(dataAccessClientMock).updateReallocatedPlans(any(), anyInt(), any());
     }
 
     @Test
@@ -90,7 +105,7 @@ class HostReallocationServiceTest {
 
         service.calculate(null);
 
-        verify(dataAccessClientMock, times(0)).updateReallocatedPlans(any(), anyInt());
+        verify(dataAccessClientMock, times(0)).updateReallocatedPlans(any(), anyInt(), any());
         verify(reallocationAlgoMock, times(0)).calculate(any(), any(), any(), any());
     }
 
@@ -131,7 +146,35 @@ class HostReallocationServiceTest {
         commonVerify();
         verify(reallocationAlgoMock, times(2)).calculate(any(), any(), any(), any());
         verify(dataAccessClientMock).getLatestReallocatedPlans(any());
-        verify(dataAccessClientMock).updateReallocatedPlans(any(), anyInt());
+        verify(dataAccessClientMock).updateReallocatedPlans(any(), anyInt(), any());
+    }
+
+    @Test
+    void shouldRecordCycleFinishForOtherInstances() {
+        commonSetup();
+        given(configMock.getEnabled()).willReturn(true);
+        given(configMock.getRefreshPeriodSec()).willReturn(60);
+
+        service.calculate(null);
+
+        verify(dataAccessClientMock).updateSystemStateWithUTCTime(
+                argThat(state -> HostReallocationService.REALLOCATION_FINISH_TS.equals(state.getTag())));
+        assertThat(service.nextCycleExpectedFinishAt(), notNullValue());
+    }
+
+    @Test
+    void shouldEstimateNextCycleFromFinishRecordedByLeader() {
+        given(configMock.getEnabled()).willReturn(true);
+        given(configMock.getRefreshPeriodSec()).willReturn(60);
+        given(dataAccessClientMock.getSystemState(HostReallocationService.REALLOCATION_FINISH_TS))
+                .willReturn(Future.succeededFuture(Instant.EPOCH.toString()))
+                .willReturn(Future.succeededFuture("2020-03-01T08:00:00Z"));
+
+        service.refreshLastCycleFinish();
+        assertThat(service.nextCycleExpectedFinishAt(), nullValue());
+
+        service.refreshLastCycleFinish();
+        assertThat(service.nextCycleExpectedFinishAt(), equalTo(Instant.parse("2020-03-01T08:01:00Z")));
     }
 
     private void commonSetup() {
@@ -157,7 +200,8 @@ class HostReallocationServiceTest {
 
         given(reallocationAlgoMock.calculate(any(), any(), any(), any())).willReturn(Collections.emptyList());
         given(configMock.getDbStoreBatchSize()).willReturn(2);
-        given(dataAccessClientMock.updateReallocatedPlans(any(), anyInt())).willReturn(Future.succeededFuture());
+        given(dataAccessClientMock.updateReallocatedPlans(any(), anyInt(), any())).willReturn(Future.succeededFuture());
+        given(dataAccessClientMock.updateSystemStateWithUTCTime(any())).willReturn(Future.succeededFuture());
     }
 
     private void commonVerify() {
@@ -166,5 +210,17 @@ class HostReallocationServiceTest {
         verify(dataAccessClientMock).getLatestReallocatedPlans(any());
     }
 
-}
+    private static ComputeExecutor inlineComputeExecutor() {
+        ComputeExecutorConfiguration config = new ComputeExecutorConfiguration();
+        config.setEnabled(false);
+        return new ComputeExecutor(mock(Vertx.class), config, new Metrics(new MetricRegistry()));
+    }
 
+    private static LeaderElection soleLeader() {
+        LeaderElectionConfiguration config = new LeaderElectionConfiguration();
+        config.setEnabled(false);
+        return new LeaderElection(mock(Vertx.class), config, mock(LeaderLeaseClient.class), "test",
+                new Metrics(new MetricRegistry()), new Shutdown());
+    }
+
+}
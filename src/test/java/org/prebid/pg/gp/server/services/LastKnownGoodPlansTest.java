@@ -0,0 +1,160 @@
+package org.prebid.pg.gp.server.services;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import org.javatuples.Triplet;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.model.LineItem;
+import org.prebid.pg.gp.server.model.PbsHost;
+import org.prebid.pg.gp.server.model.ReallocatedPlan;
+import org.prebid.pg.gp.server.spring.config.app.PlanRequestConfiguration;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class LastKnownGoodPlansTest {
+
+    private static final String HOST_KEY = "vendor1^^us-east^^host1";
+
+    private Vertx vertx;
+
+    private PlanRequestConfiguration.LastKnownGood config;
+
+    private LastKnownGoodPlans lastKnownGoodPlans;
+
+    @BeforeEach
+    void setUp() {
+        vertx = mock(Vertx.class);
+        config = new PlanRequestConfiguration.LastKnownGood();
+        config.setEnabled(true);
+        config.setMaxStalenessSec(900);
+        config.setLatencyBudgetMs(0);
+        config.setSnapshotRefreshSec(60);
+        lastKnownGoodPlans = new LastKnownGoodPlans(vertx, config, new Metrics(new MetricRegistry()));
+    }
+
+    @Test
+    void shouldServeRecordedInputsWhenReadingFails() {
+        Triplet<ReallocatedPlan, List<LineItem>, List<PbsHost>> inputs = inputs(10);
+        LastKnownGoodPlans.Snapshot fresh =
+                lastKnownGoodPlans.guard(HOST_KEY, 1L, Future.succeededFuture(inputs)).result();
+        assertThat(fresh.isStale(), equalTo(false));
+        assertThat(fresh.getInputs(), sameInstance(inputs));
+
+        // rendering the fresh inputs changes them in place
+        inputs.getValue1().get(0).getLineItemJson().put("total", 99);
+
+        LastKnownGoodPlans.Snapshot stale =
+                lastKnownGoodPlans.guard(HOST_KEY, 1L, Future.failedFuture("circuit open")).result();
+        assertThat(stale.isStale(), equalTo(true));
+        assertThat(stale.getInputs().getValue0(), sameInstance(inputs.getValue0()));
+        assertThat(stale.getInputs().getValue1().get(0).getLineItemJson().get("total").asInt(), equalTo(10));
+    }
+
+    @Test
+    void shouldFailWhenNothingIsRecordedForHost() {
+        lastKnownGoodPlans.guard("vendor1^^us-east^^host2", 1L, Future.succeededFuture(inputs(10)));
+
+        Future<LastKnownGoodPlans.Snapshot> result =
+                lastKnownGoodPlans.guard(HOST_KEY, 1L, Future.failedFuture("circuit open"));
+
+        assertThat(result.failed(), equalTo(true));
+        assertThat(result.cause().getMessage(), equalTo("circuit open"));
+    }
+
+    @Test
+    void shouldNotServeInputsOlderThanMaxStaleness() {
+        Instant readAt = Instant.now().minusSeconds(1000);
+        lastKnownGoodPlans.record(HOST_KEY, 1L, inputs(10), readAt);
+
+        assertThat(lastKnownGoodPlans.getStale(HOST_KEY, readAt.plusSeconds(900)).getStaleSec(), equalTo(900L));
+        assertThat(lastKnownGoodPlans.getStale(HOST_KEY, readAt.plusSeconds(901)), nullValue());
+    }
+
+    @Test
+    void shouldCopyCatalogOnlyWhenVersionChangesOrCopyIsOld() {
+        Instant readAt = Instant.now();
+        lastKnownGoodPlans.record(HOST_KEY, 1L, inputs(10), readAt);
+        lastKnownGoodPlans.record(HOST_KEY, 1L, inputs(20), readAt.plusSeconds(30));
+        assertThat(totalOf(lastKnownGoodPlans.getStale(HOST_KEY, readAt.plusSeconds(30))), equalTo(10));
+
+        lastKnownGoodPlans.record(HOST_KEY, 2L, inputs(30), readAt.plusSeconds(40));
+        assertThat(totalOf(lastKnownGoodPlans.getStale(HOST_KEY, readAt.plusSeconds(40))), equalTo(30));
+
+        lastKnownGoodPlans.record(HOST_KEY, 2L, inputs(40), readAt.plusSeconds(101));
+        assertThat(totalOf(lastKnownGoodPlans.getStale(HOST_KEY, readAt.plusSeconds(101))), equalTo(40));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldServeRecordedInputsWhenLatencyBudgetIsExceeded() {
+        config.setLatencyBudgetMs(500);
+        lastKnownGoodPlans.record(HOST_KEY, 1L, inputs(10), Instant.now());
+        Future<Triplet<ReallocatedPlan, List<LineItem>, List<PbsHost>>> slow = Future.future();
+
+        Future<LastKnownGoodPlans.Snapshot> result = lastKnownGoodPlans.guard(HOST_KEY, 1L, slow);
+
+        ArgumentCaptor<Handler<Long>> timerCaptor = ArgumentCaptor.forClass(Handler.class);
+        verify(vertx).setTimer(eq(500L), timerCaptor.capture());
+        assertThat(result.isComplete(), equalTo(false));
+        timerCaptor.getValue().handle(1L);
+        assertThat(result.result().isStale(), equalTo(true));
+
+        // the late inputs refresh the store in the background
+        Triplet<ReallocatedPlan, List<LineItem>, List<PbsHost>> late = inputs(20);
+        slow.complete(late);
+        verify(vertx).cancelTimer(anyLong());
+        assertThat(result.result().getInputs(), not(sameInstance(late)));
+        assertThat(lastKnownGoodPlans.getStale(HOST_KEY, Instant.now()).getInputs().getValue0(),
+                sameInstance(late.getValue0()));
+    }
+
+    @Test
+    void shouldPassThroughWhenDisabled() {
+        config.setEnabled(false);
+        lastKnownGoodPlans.record(HOST_KEY, 1L, inputs(10), Instant.now());
+
+        Future<LastKnownGoodPlans.Snapshot> result =
+                lastKnownGoodPlans.guard(HOST_KEY, 1L, Future.failedFuture("circuit open"));
+
+        assertThat(result.failed(), equalTo(true));
+        verify(vertx, never()).setTimer(anyLong(), any());
+    }
+
+    private static int totalOf(LastKnownGoodPlans.Snapshot snapshot) {
+        return snapshot.getInputs().getValue1().get(0).getLineItemJson().get("total").asInt();
+    }
+
+    private static Triplet<ReallocatedPlan, List<LineItem>, List<PbsHost>> inputs(int total) {
+        ObjectNode json = JsonNodeFactory.instance.objectNode().put("total", total);
+        LineItem lineItem = LineItem.builder()
+                .lineItemId("1111")
+                .bidderCode("pgbidder1")
+                .status("active")
+                .lineItemJson(json)
+                .build();
+        return new Triplet<>(ReallocatedPlan.builder().build(), Collections.singletonList(lineItem),
+                Collections.singletonList(PbsHost.builder().build()));
+    }
+
+}
@@ -0,0 +1,131 @@
+package org.prebid.pg.gp.server.services;
+
+import com.codahale.metrics.MetricRegistry;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.prebid.pg.gp.server.exception.GeneralPlannerException;
+import org.prebid.pg.gp.server.jdbc.LeaderLeaseClient;
+import org.prebid.pg.gp.server.jdbc.LeaderLeaseFence;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.model.Shutdown;
+import org.prebid.pg.gp.server.spring.config.app.LeaderElectionConfiguration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class LeaderElectionTest {
+
+    private LeaderElectionConfiguration config;
+
+    private LeaderLeaseClient leaseClient;
+
+    private Shutdown shutdown;
+
+    private LeaderElection leaderElection;
+
+    @BeforeEach
+    void setUp() {
+        config = new LeaderElectionConfiguration();
+        config.setEnabled(true);
+        config.setLeaseName("general-planner");
+        config.setLeaseSec(15);
+        config.setRenewIntervalSec(5);
+        leaseClient = mock(LeaderLeaseClient.class);
+        shutdown = new Shutdown();
+        leaderElection = new LeaderElection(mock(Vertx.class), config, leaseClient, "gp1",
+                new Metrics(new MetricRegistry()), shutdown);
+    }
+
+    @Test
+    void shouldAlwaysLeadWhenDisabled() {
+        config.setEnabled(false);
+
+        assertThat(leaderElection.isLeader(), is(true));
+        assertThat(leaderElection.fence().result(), equalTo(LeaderLeaseFence.NONE));
+    }
+
+    @Test
+    void shouldLeadOnceLeaseIsAcquired() {
+        final List<Long> elected = new ArrayList<>();
+        leaderElection.onElected(elected::add);
+        given(leaseClient.tryAcquire(anyString(), anyString(), anyInt())).willReturn(Future.succeededFuture(3L));
+
+        assertThat(leaderElection.isLeader(), is(false));
+        leaderElection.renew();
+        leaderElection.renew();
+
+        assertThat(leaderElection.isLeader(), is(true));
+        assertThat(leaderElection.getFencingToken(), equalTo(3L));
+        assertThat(elected.size(), equalTo(1));
+    }
+
+    @Test
+    void shouldStepDownWhenLeaseIsTakenOver() {
+        given(leaseClient.tryAcquire(anyString(), anyString(), anyInt()))
+                .willReturn(Future.succeededFuture(3L), Future.succeededFuture());
+
+        leaderElection.renew();
+        leaderElection.renew();
+
+        assertThat(leaderElection.isLeader(), is(false));
+    }
+
+    @Test
+    void shouldKeepLeadingWhenRenewalFailsWithinLease() {
+        given(leaseClient.tryAcquire(anyString(), anyString(), anyInt()))
+                .willReturn(Future.succeededFuture(3L), Future.failedFuture("db down"));
+
+        leaderElection.renew();
+        leaderElection.renew();
+
+        assertThat(leaderElection.isLeader(), is(true));
+    }
+
+    @Test
+    void shouldFenceWithTokenOfLease() {
+        given(leaseClient.tryAcquire(anyString(), anyString(), anyInt())).willReturn(Future.succeededFuture(3L));
+        leaderElection.renew();
+
+        assertThat(leaderElection.fence().result().getFencingToken(), equalTo(3L));
+    }
+
+    @Test
+    void shouldFailFenceWhenLeaseIsTakenOver() {
+        given(leaseClient.tryAcquire(anyString(), anyString(), anyInt()))
+                .willReturn(Future.succeededFuture(3L), Future.succeededFuture());
+        leaderElection.renew();
+        leaderElection.renew();
+
+        final Future<LeaderLeaseFence> fenced = leaderElection.fence();
+
+        assertThat(fenced.failed(), is(true));
+        assertThat(fenced.cause(), instanceOf(GeneralPlannerException.class));
+    }
+
+    @Test
+    void shouldReleaseLeaseOnShutdown() {
+        given(leaseClient.tryAcquire(anyString(), anyString(), anyInt())).willReturn(Future.succeededFuture(3L));
+        given(leaseClient.release(anyString(), anyString())).willReturn(Future.succeededFuture());
+        leaderElection.renew();
+
+        shutdown.setInitiating(true);
+        leaderElection.renew();
+
+        assertThat(leaderElection.isLeader(), is(false));
+        verify(leaseClient).release(any(), any());
+    }
+
+}
@@ -0,0 +1,110 @@
+package org.prebid.pg.gp.server.services;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.prebid.pg.gp.server.model.LineItem;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
+
+class LineItemCatalogHistoryTest {
+
+    private static final Instant UPDATED_AT = Instant.parse("2019-10-01T10:00:00Z");
+
+    @Test
+    void shouldDropOldestVersionWhenFull() {
+        LineItemCatalogHistory history = new LineItemCatalogHistory(2);
+
+        history.record(1L, Collections.singletonMap("bidder1-1", "1"));
+        history.record(2L, Collections.singletonMap("bidder1-1", "2"));
+        history.record(3L, Collections.singletonMap("bidder1-1", "3"));
+
+        assertThat(history.size(), equalTo(2));
+        assertThat(history.get(1L), nullValue());
+        assertThat(history.get(2L), notNullValue());
+        assertThat(history.get(3L).get("bidder1-1"), equalTo("3"));
+        assertThat(history.get(null), nullValue());
+    }
+
+    @Test
+    void shouldKeepFirstSnapshotOfVersion() {
+        LineItemCatalogHistory history = new LineItemCatalogHistory(2);
+
+        history.record(1L, Collections.singletonMap("bidder1-1", "1"));
+        history.record(1L, Collections.singletonMap("bidder1-1", "2"));
+
+        assertThat(history.get(1L).get("bidder1-1"), equalTo("1"));
+    }
+
+    @Test
+    void shouldNotRecordForgottenVersions() {
+        LineItemCatalogHistory history = new LineItemCatalogHistory(4);
+        history.record(1L, Collections.singletonMap("bidder1-1", "1"));
+        history.record(2L, Collections.singletonMap("bidder1-1", "2"));
+
+        history.forget(2L);
+        history.record(2L, Collections.singletonMap("bidder1-1", "2"));
+        history.record(3L, Collections.singletonMap("bidder1-1", "3"));
+
+        assertThat(history.get(1L), nullValue());
+        assertThat(history.get(2L), nullValue());
+        assertThat(history.get(3L), notNullValue());
+    }
+
+    @Test
+    void shouldDigestLineItemContent() {
+        LineItem first = lineItem("1", "100");
+        LineItem same = lineItem("1", "100");
+        LineItem changed = lineItem("1", "200");
+
+        Map<String, String> digests =
+                LineItemCatalogHistory.contentDigests(Arrays.asList(first, lineItem("2", "1")));
+
+        assertThat(digests.size(), equalTo(2));
+        assertThat(digests.get("bidder1-1"), equalTo(digestOf(same)));
+        assertThat(digests.get("bidder1-1"), not(equalTo(digestOf(changed))));
+    }
+
+    @Test
+    void shouldTellApartSameContentUpdatedAgain() {
+        LineItem first = lineItem("1", "100");
+        LineItem updated = lineItem("1", "100");
+        updated.setUpdatedAt(first.getUpdatedAt().plusSeconds(60));
+
+        assertThat(digestOf(first), not(equalTo(digestOf(updated))));
+    }
+
+    @Test
+    void shouldTellApartContentWithSameHashCode() {
+        // "Aa" and "BB" share their String hash code
+        LineItem first = lineItem("1", "Aa");
+        LineItem collision = lineItem("1", "BB");
+        assertThat(first.getLineItemJson().toString().hashCode(),
+                equalTo(collision.getLineItemJson().toString().hashCode()));
+
+        assertThat(digestOf(first), not(equalTo(digestOf(collision))));
+    }
+
+    private String digestOf(LineItem lineItem) {
+        return LineItemCatalogHistory.contentDigests(Collections.singletonList(lineItem))
+                .get(lineItem.getUniqueLineItemId());
+    }
+
+    private LineItem lineItem(String lineItemId, String total) {
+        ObjectNode json = JsonNodeFactory.instance.objectNode();
+        json.put("lineItemId", lineItemId);
+        json.put("total", total);
+        return LineItem.builder().bidderCode("bidder1").lineItemId(lineItemId).status("active")
+                .lineItemJson(json).updatedAt(UPDATED_AT).build();
+    }
+
+}
@@ -0,0 +1,224 @@
+package org.prebid.pg.gp.server.services;
+
+import com.codahale.metrics.MetricRegistry;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.ext.sql.UpdateResult;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.javatuples.Pair;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.prebid.pg.gp.server.http.AlertProxyHttpClient;
+import org.prebid.pg.gp.server.jdbc.LeaderLeaseClient;
+import org.prebid.pg.gp.server.jdbc.LineItemsTokensSummaryClient;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.model.LineItem;
+import org.prebid.pg.gp.server.model.LineItemPlanTokens;
+import org.prebid.pg.gp.server.model.Shutdown;
+import org.prebid.pg.gp.server.spring.config.app.LeaderElectionConfiguration;
+import org.prebid.pg.gp.server.spring.config.app.TokensSummaryConfiguration;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+@ExtendWith(VertxExtension.class)
+class LineItemsTokensRollupTest {
+
+    private static final String JDBC_URL = "jdbc:h2:mem:tokens-rollup";
+
+    private static final Instant HOUR = Instant.parse("2020-03-01T08:00:00Z");
+
+    private static final Instant UPDATED_AT = Instant.parse("2020-03-01T08:04:30Z");
+
+    private static Vertx vertx;
+
+    private static JDBCClient jdbcClient;
+
+    private Connection connection;
+
+    private TokensSummaryConfiguration config;
+
+    private LineItemsTokensSummaryClient tokensSummaryClient;
+
+    @BeforeAll
+    static void prepare() {
+        vertx = Vertx.vertx();
+        jdbcClient = JDBCClient.createShared(vertx, new JsonObject()
+                .put("url", JDBC_URL)
+                .put("driver_class", "org.h2.Driver")
+                .put("max_pool_size", 4), JDBC_URL);
+    }
+
+    @AfterAll
+    static void cleanUp() {
+        vertx.close();
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        connection = DriverManager.getConnection(JDBC_URL);
+        connection.createStatement().execute("CREATE TABLE line_items_tokens_rollup ("
+                + "line_item_id varchar(64) NOT NULL, plan_start_timestamp timestamp NOT NULL, "
+                + "bidder_code varchar(64) NOT NULL, ext_line_item_id varchar(64) NOT NULL, "
+                + "tokens int NOT NULL DEFAULT 0, updated_at timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+                + "PRIMARY KEY (line_item_id, plan_start_timestamp));");
+        config = new TokensSummaryConfiguration();
+        config.setGranularSummaryMinute(3);
+        config.setIncrementalRollup(true);
+        tokensSummaryClient = new LineItemsTokensSummaryClient(
+                jdbcClient, new Metrics(new MetricRegistry()), mock(AlertProxyHttpClient.class));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        try {
+            connection.createStatement().execute("DROP TABLE IF EXISTS line_items_tokens_rollup;");
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    void shouldRecordFirstTokensOfPlansStartingInWindow(VertxTestContext context) {
+        final LineItemsTokensRollup rollup = newRollup();
+
+        rollup.record(lineItems(10))
+                .compose(v -> rollup.record(lineItems(20)))
+                // a new leader carries on from the recorded plans
+                .compose(v -> newRollup().record(lineItems(30)))
+                .compose(v -> tokensSummaryClient.sumPlanTokens(
+                        Instant.parse("2020-03-01T08:00:00Z"), Instant.parse("2020-03-01T09:00:00Z")))
+                .setHandler(context.succeeding(summaries -> context.verify(() -> {
+                    assertThat(countRollup(), equalTo(1));
+                    assertThat(summaries.size(), equalTo(1));
+                    assertThat(summaries.get(0).getLineItemId(), equalTo("pgvendor1-l1"));
+                    assertThat(summaries.get(0).getExtLineItemId(), equalTo("l1"));
+                    assertThat(summaries.get(0).getTokens(), equalTo(10));
+                    context.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldNotRecordWhenDisabled(VertxTestContext context) {
+        config.setIncrementalRollup(false);
+        final LineItemsTokensSummaryClient clientMock = mock(LineItemsTokensSummaryClient.class);
+
+        new LineItemsTokensRollup(config, clientMock, new Metrics(new MetricRegistry()), soleLeader())
+                .record(lineItems(10))
+                .setHandler(context.succeeding(v -> context.verify(() -> {
+                    verifyZeroInteractions(clientMock);
+                    context.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldRecordPlansOfFailedSaveAgain(VertxTestContext context) {
+        final LineItemsTokensSummaryClient clientMock = mock(LineItemsTokensSummaryClient.class);
+        given(clientMock.findPlanTokens(any(), any())).willReturn(Future.succeededFuture(Collections.emptyList()));
+        given(clientMock.savePlanTokens(any()))
+                .willReturn(Future.failedFuture("db down"), Future.succeededFuture(new UpdateResult()));
+        final LineItemsTokensRollup rollup =
+                new LineItemsTokensRollup(config, clientMock, new Metrics(new MetricRegistry()), soleLeader());
+        final ArgumentCaptor<List<LineItemPlanTokens>> captor = ArgumentCaptor.forClass(List.class);
+
+        rollup.record(lineItems(10))
+                .compose(v -> rollup.record(lineItems(20)))
+                .setHandler(context.succeeding(v -> context.verify(() -> {
+                    verify(clientMock, times(2)).savePlanTokens(captor.capture());
+                    assertThat(captor.getAllValues().get(1).size(), equalTo(1));
+                    assertThat(captor.getAllValues().get(1).get(0).getTokens(), equalTo(20));
+                    // the first retrieval of the window is missing from the rollup
+                    assertThat(rollup.isComplete(HOUR, HOUR.plus(1, ChronoUnit.HOURS)), is(false));
+                    context.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldBeCompleteForHoursRecordedThroughoutOnly(VertxTestContext context) {
+        final LineItemsTokensRollup rollup = newRollup();
+
+        rollup.record(lineItems(10))
+                .setHandler(context.succeeding(v -> context.verify(() -> {
+                    // recording started after the beginning of the hour
+                    assertThat(rollup.isComplete(HOUR, HOUR.plus(1, ChronoUnit.HOURS)), is(false));
+                    assertThat(rollup.isComplete(
+                            HOUR.plus(1, ChronoUnit.HOURS), HOUR.plus(2, ChronoUnit.HOURS)), is(true));
+                    context.completeNow();
+                })));
+    }
+
+    @Test
+    void shouldFindGranularWindows() {
+        assertThat(LineItemsTokensRollup.granularWindow(UPDATED_AT, 3), equalTo(Pair.with(
+                Instant.parse("2020-03-01T08:03:00Z"), Instant.parse("2020-03-01T08:06:00Z"))));
+        assertThat(LineItemsTokensRollup.granularWindow(Instant.parse("2020-03-01T08:59:59Z"), 7),
+                equalTo(Pair.with(Instant.parse("2020-03-01T08:56:00Z"), Instant.parse("2020-03-01T09:00:00Z"))));
+        assertThat(LineItemsTokensRollup.granularWindow(UPDATED_AT, 61), nullValue());
+    }
+
+    private LineItemsTokensRollup newRollup() {
+        return new LineItemsTokensRollup(config, tokensSummaryClient, new Metrics(new MetricRegistry()), soleLeader());
+    }
+
+    private static LeaderElection soleLeader() {
+        LeaderElectionConfiguration config = new LeaderElectionConfiguration();
+        config.setEnabled(false);
+        return new LeaderElection(mock(Vertx.class), config, mock(LeaderLeaseClient.class), "test",
+                new Metrics(new MetricRegistry()), new Shutdown());
+    }
+
+    private static List<LineItem> lineItems(int total) {
+        final JsonObject lineItem = new JsonObject()
+                .put("lineItemId", "l1")
+                .put("deliverySchedules", new JsonArray()
+                        .add(new JsonObject()
+                                .put("startTimeStamp", "2020-03-01T08:04:00Z")
+                                .put("tokens", new JsonArray()
+                                        .add(new JsonObject().put("class", 1).put("total", total))
+                                        .add(new JsonObject().put("class", 2).put("total", 5))))
+                        .add(new JsonObject()
+                                .put("startTimeStamp", "2020-03-01T08:10:00Z")
+                                .put("tokens", new JsonArray()
+                                        .add(new JsonObject().put("class", 1).put("total", 7)))));
+        return Collections.singletonList(LineItem.builder()
+                .bidderCode("pgvendor1")
+                .lineItemId("l1")
+                .lineItemJson(Json.mapper.valueToTree(lineItem.getMap()))
+                .updatedAt(UPDATED_AT)
+                .build());
+    }
+
+    private int countRollup() throws Exception {
+        final ResultSet rs = connection.createStatement()
+                .executeQuery("SELECT COUNT(*) FROM line_items_tokens_rollup");
+        rs.next();
+        return rs.getInt(1);
+    }
+
+}
@@ -0,0 +1,101 @@
+package org.prebid.pg.gp.server.services;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.model.LineItemsTokensSummary;
+import org.prebid.pg.gp.server.spring.config.app.LineItemsTokensSummaryConfiguration;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+
+class LineItemsTokensSummaryCacheTest {
+
+    private static final Instant HOUR = Instant.parse("2020-03-01T08:00:00Z");
+
+    private static final List<String> LINE_ITEM_IDS = Arrays.asList("vendor1-l2", "vendor1-l1");
+
+    private LineItemsTokensSummaryCache cache;
+
+    @BeforeEach
+    void setUp() {
+        LineItemsTokensSummaryConfiguration config = new LineItemsTokensSummaryConfiguration();
+        config.setCacheEnabled(true);
+        config.setCacheMaxRows(4);
+        cache = new LineItemsTokensSummaryCache(config, new Metrics(new MetricRegistry()));
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyReadHoursOverRowLimit() {
+        cache.put(HOUR, LINE_ITEM_IDS, summaries(HOUR, 2));
+        cache.put(HOUR.plus(1, ChronoUnit.HOURS), LINE_ITEM_IDS, summaries(HOUR.plus(1, ChronoUnit.HOURS), 2));
+        cache.get(HOUR, LINE_ITEM_IDS);
+        cache.put(HOUR.plus(2, ChronoUnit.HOURS), LINE_ITEM_IDS, summaries(HOUR.plus(2, ChronoUnit.HOURS), 1));
+
+        assertThat(cache.size(), equalTo(2));
+        assertThat(cache.getRows(), equalTo(3L));
+        assertThat(cache.get(HOUR.plus(1, ChronoUnit.HOURS), LINE_ITEM_IDS), nullValue());
+        assertThat(cache.get(HOUR, Arrays.asList("vendor1-l1", "vendor1-l2")).size(), equalTo(2));
+        assertThat(cache.get(HOUR, Collections.emptyList()), nullValue());
+        assertThat(cache.getHitRate(), equalTo(50L));
+    }
+
+    @Test
+    void shouldNotCacheHourOverRowLimit() {
+        cache.put(HOUR, LINE_ITEM_IDS, summaries(HOUR, 5));
+
+        assertThat(cache.size(), equalTo(0));
+        assertThat(cache.getRows(), equalTo(0L));
+    }
+
+    @Test
+    void shouldEvictHoursWithoutRows() {
+        for (int i = 0; i < 100; i++) {
+            cache.put(HOUR, Collections.singletonList("vendor1-l" + i), Collections.emptyList());
+        }
+
+        assertThat(cache.size(), equalTo(4));
+        assertThat(cache.getRows(), equalTo(4L));
+        assertThat(cache.get(HOUR, Collections.singletonList("vendor1-l0")), nullValue());
+        assertThat(cache.get(HOUR, Collections.singletonList("vendor1-l99")).size(), equalTo(0));
+    }
+
+    @Test
+    void shouldCollectSummariesByHour() {
+        LineItemsTokensSummaryCache.Collector collector = cache.collect(HOUR, LINE_ITEM_IDS);
+        List<LineItemsTokensSummary> page = summaries(HOUR, 1);
+        page.addAll(summaries(HOUR.plus(2, ChronoUnit.HOURS), 2));
+
+        collector.accept(page);
+        collector.complete(HOUR.plus(3, ChronoUnit.HOURS));
+
+        assertThat(cache.size(), equalTo(3));
+        assertThat(cache.get(HOUR, LINE_ITEM_IDS).size(), equalTo(1));
+        assertThat(cache.get(HOUR.plus(1, ChronoUnit.HOURS), LINE_ITEM_IDS).size(), equalTo(0));
+        assertThat(cache.get(HOUR.plus(2, ChronoUnit.HOURS), LINE_ITEM_IDS).size(), equalTo(2));
+    }
+
+    private static List<LineItemsTokensSummary> summaries(Instant hour, int count) {
+        List<LineItemsTokensSummary> summaries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            summaries.add(LineItemsTokensSummary.builder()
+                    .id(i)
+                    .lineItemId("vendor1-l1")
+                    .tokens(10)
+                    .summaryWindowStartTimestamp(hour)
+                    .summaryWindowEndTimestamp(hour.plus(1, ChronoUnit.HOURS))
+                    .build());
+        }
+        return summaries;
+    }
+
+}
@@ -1,5 +1,6 @@
 package org.prebid.pg.gp.server.services;
 
+import com.codahale.metrics.MetricRegistry;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
 import io.vertx.junit5.VertxExtension;
@@ -9,11 +10,14 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.prebid.pg.gp.server.http.AlertProxyHttpClient;
+import org.prebid.pg.gp.server.jdbc.LeaderLeaseClient;
 import org.prebid.pg.gp.server.jdbc.LineItemsHistoryClient;
 import org.prebid.pg.gp.server.jdbc.LineItemsTokensSummaryClient;
+import org.prebid.pg.gp.server.metric.Metrics;
 import org.prebid.pg.gp.server.model.LineItemsTokensSummary;
 import org.prebid.pg.gp.server.model.Shutdown;
 import org.prebid.pg.gp.server.model.SystemState;
+import org.prebid.pg.gp.server.spring.config.app.LeaderElectionConfiguration;
 import org.prebid.pg.gp.server.spring.config.app.TokensSummaryConfiguration;
 
 import java.time.Instant;
@@ -24,6 +28,7 @@ import java.util.List;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -40,6 +45,8 @@ public class LineItemsTokensSummaryServiceTest {
 
     private LineItemsTokensSummaryClient tokensSummaryClientMock;
 
+    private LineItemsTokensRollup tokensRollupMock;
+
     private TokensSummaryConfiguration tokensSummaryConfig = new TokensSummaryConfiguration();
 
     private Shutdown shutdown = new Shutdown();
@@ -56,11 +63,16 @@ public class LineItemsTokensSummaryServiceTest {
     @BeforeEach
     void setUpBeforeEach() throws Exception {
         tokensSummaryConfig.setGranularSummaryMinute(3);
+        tokensSummaryConfig.setMaxConcurrentQueries(4);
+        tokensSummaryConfig.setPipelinedHours(2);
+        tokensSummaryConfig.setIncrementalRollup(false);
         alertHttpClientMock = mock(AlertProxyHttpClient.class);
         tokensSummaryClientMock = mock(LineItemsTokensSummaryClient.class);
         lineItemHistoryClientMock = mock(LineItemsHistoryClient.class);
+        tokensRollupMock = mock(LineItemsTokensRollup.class);
         summaryService = new LineItemsTokensSummaryService(vertx, lineItemHistoryClientMock,
-                tokensSummaryClientMock, alertHttpClientMock, tokensSummaryConfig, shutdown);
+                tokensSummaryClientMock, alertHttpClientMock, tokensSummaryConfig, shutdown, soleLeader(),
+                tokensRollupMock);
     }
 
     @Test
@@ -85,7 +97,7 @@ public class LineItemsTokensSummaryServiceTest {
                 .willReturn(Future.succeededFuture(startTime.toString()));
         given(lineItemHistoryClientMock.findLineItemTokens(any(), any()))
                 .willReturn(Future.succeededFuture(summaries));
-        given(tokensSummaryClientMock.saveLineItemsTokenSummary(listCaptor.capture()))
+        given(tokensSummaryClientMock.saveLineItemsTokenSummary(listCaptor.capture(), any()))
                 .willReturn(Future.succeededFuture());
         given(lineItemHistoryClientMock.updateSystemStateWithUTCTime(any()))
                 .willReturn(Future.succeededFuture());
@@ -103,6 +115,66 @@ public class LineItemsTokensSummaryServiceTest {
         assertThat(rs.get(0).getTokens(), equalTo(tokens));
     }
 
+    @Test
+    void shouldSummarizeFromRollup() {
+        tokensSummaryConfig.setIncrementalRollup(true);
+        given(tokensRollupMock.isComplete(any(), any())).willReturn(true);
+        Instant endTime = Instant.now().truncatedTo(ChronoUnit.HOURS);
+        Instant startTime = endTime.minus(1, ChronoUnit.HOURS);
+        List<LineItemsTokensSummary> summaries = new ArrayList<>();
+        summaries.add(LineItemsTokensSummary.builder()
+                .lineItemId("vendor1-l1")
+                .bidderCode("vendor1")
+                .extLineItemId("l1")
+                .tokens(20)
+                .summaryWindowStartTimestamp(startTime)
+                .summaryWindowEndTimestamp(endTime)
+                .build());
+        given(lineItemHistoryClientMock.readUTCTimeValFromSystemState(any()))
+                .willReturn(Future.succeededFuture(startTime.toString()));
+        given(tokensSummaryClientMock.sumPlanTokens(startTime, endTime))
+                .willReturn(Future.succeededFuture(summaries));
+        given(tokensSummaryClientMock.saveLineItemsTokenSummary(eq(summaries), any()))
+                .willReturn(Future.succeededFuture());
+        given(lineItemHistoryClientMock.updateSystemStateWithUTCTime(any()))
+                .willReturn(Future.succeededFuture());
+        given(tokensSummaryClientMock.deletePlanTokens(startTime))
+                .willReturn(Future.succeededFuture());
+
+        Future<Void> result = summaryService.summarize();
+
+        assertThat(result.succeeded(), equalTo(true));
+        verify(lineItemHistoryClientMock, never()).findLineItemTokens(any(), any());
+        verify(tokensSummaryClientMock).saveLineItemsTokenSummary(eq(summaries), any());
+        verify(tokensSummaryClientMock).deletePlanTokens(startTime);
+        verify(tokensRollupMock).forget(endTime);
+    }
+
+    @Test
+    void shouldSummarizeFromHistoryWhenRollupIsIncomplete() {
+        tokensSummaryConfig.setIncrementalRollup(true);
+        Instant endTime = Instant.now().truncatedTo(ChronoUnit.HOURS);
+        Instant startTime = endTime.minus(1, ChronoUnit.HOURS);
+        given(tokensRollupMock.isComplete(startTime, endTime)).willReturn(false);
+        given(lineItemHistoryClientMock.readUTCTimeValFromSystemState(any()))
+                .willReturn(Future.succeededFuture(startTime.toString()));
+        given(lineItemHistoryClientMock.findLineItemTokens(any(), any()))
+                .willReturn(Future.succeededFuture(new ArrayList<>()));
+        given(tokensSummaryClientMock.saveLineItemsTokenSummary(any(), any()))
+                .willReturn(Future.succeededFuture());
+        given(lineItemHistoryClientMock.updateSystemStateWithUTCTime(any()))
+                .willReturn(Future.succeededFuture());
+        given(tokensSummaryClientMock.deletePlanTokens(startTime))
+                .willReturn(Future.succeededFuture());
+
+        Future<Void> result = summaryService.summarize();
+
+        assertThat(result.succeeded(), equalTo(true));
+        verify(tokensSummaryClientMock, never()).sumPlanTokens(any(), any());
+        verify(lineItemHistoryClientMock).findLineItemTokens(
+                startTime, startTime.plus(tokensSummaryConfig.getGranularSummaryMinute(), ChronoUnit.MINUTES));
+    }
+
     @Test
     void shouldNotSummarizeEmptyInterval() {
         Instant endTime = Instant.now().truncatedTo(ChronoUnit.HOURS);
@@ -116,4 +188,61 @@ public class LineItemsTokensSummaryServiceTest {
         verify(lineItemHistoryClientMock).readUTCTimeValFromSystemState(lineItemHistorySummarySystemStateTag);
         verify(lineItemHistoryClientMock, never()).findLineItemTokens(startTime, endTime);
     }
+
+    @Test
+    void shouldBoundConcurrentWindowQueries() {
+        Instant endTime = Instant.now().truncatedTo(ChronoUnit.HOURS);
+        Instant startTime = endTime.minus(1, ChronoUnit.HOURS);
+        List<Future<List<LineItemsTokensSummary>>> pending = new ArrayList<>();
+        given(lineItemHistoryClientMock.readUTCTimeValFromSystemState(any()))
+                .willReturn(Future.succeededFuture(startTime.toString()));
+        given(lineItemHistoryClientMock.findLineItemTokens(any(), any())).willAnswer(invocation -> {
+            Future<List<LineItemsTokensSummary>> future = Future.future();
+            pending.add(future);
+            return future;
+        });
+        given(tokensSummaryClientMock.saveLineItemsTokenSummary(any(), any())).willReturn(Future.succeededFuture());
+        given(lineItemHistoryClientMock.updateSystemStateWithUTCTime(any())).willReturn(Future.succeededFuture());
+
+        Future<Void> result = summaryService.summarize();
+
+        assertThat(pending.size(), equalTo(tokensSummaryConfig.getMaxConcurrentQueries()));
+        for (int i = 0; i < pending.size(); i++) {
+            pending.get(i).complete(new ArrayList<>());
+            assertThat(pending.size() - i - 1 <= tokensSummaryConfig.getMaxConcurrentQueries(), equalTo(true));
+        }
+        assertThat(pending.size(), equalTo(60 / tokensSummaryConfig.getGranularSummaryMinute()));
+        assertThat(result.succeeded(), equalTo(true));
+    }
+
+    @Test
+    void shouldSaveBacklogHoursInOrder() {
+        Instant endTime = Instant.now().truncatedTo(ChronoUnit.HOURS);
+        Instant startTime = endTime.minus(3, ChronoUnit.HOURS);
+        ArgumentCaptor<SystemState> stateCaptor = ArgumentCaptor.forClass(SystemState.class);
+        given(lineItemHistoryClientMock.readUTCTimeValFromSystemState(any()))
+                .willReturn(Future.succeededFuture(startTime.toString()));
+        given(lineItemHistoryClientMock.findLineItemTokens(any(), any()))
+                .willReturn(Future.succeededFuture(new ArrayList<>()));
+        given(tokensSummaryClientMock.saveLineItemsTokenSummary(any(), any())).willReturn(Future.succeededFuture());
+        given(lineItemHistoryClientMock.updateSystemStateWithUTCTime(stateCaptor.capture()))
+                .willReturn(Future.succeededFuture());
+
+        Future<Void> result = summaryService.summarize();
+
+        assertThat(result.succeeded(), equalTo(true));
+        List<SystemState> states = stateCaptor.getAllValues();
+        assertThat(states.size(), equalTo(3));
+        for (int i = 0; i < states.size(); i++) {
+            assertThat(states.get(i).getVal(), equalTo(startTime.plus(i + 1L, ChronoUnit.HOURS).toString()));
+        }
+    }
+
+    private static LeaderElection soleLeader() {
+        LeaderElectionConfiguration config = new LeaderElectionConfiguration();
+        config.setEnabled(false);
+        return new LeaderElection(mock(Vertx.class), config, mock(LeaderLeaseClient.class), "test",
+                new Metrics(new MetricRegistry()), new Shutdown());
+    }
+
 }
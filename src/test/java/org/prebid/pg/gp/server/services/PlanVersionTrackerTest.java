@@ -0,0 +1,204 @@
+package org.prebid.pg.gp.server.services;
+
+import com.codahale.metrics.MetricRegistry;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.prebid.pg.gp.server.jdbc.ChangeVersionClient;
+import org.prebid.pg.gp.server.metric.Metrics;
+import org.prebid.pg.gp.server.model.ReallocatedPlan;
+import org.prebid.pg.gp.server.model.ReallocationWeights;
+import org.prebid.pg.gp.server.model.Weightage;
+
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsNull.nullValue;
+
+@ExtendWith(VertxExtension.class)
+class PlanVersionTrackerTest {
+
+    private static final String HOST_KEY = "vendor1^^us-east^^host1";
+
+    private Vertx vertx;
+
+    private ChangeVersionClient changeVersionClient;
+
+    private PlanVersionTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        vertx = Vertx.vertx();
+        Metrics metrics = new Metrics(new MetricRegistry());
+        changeVersionClient = new ChangeVersionClient(metrics);
+        tracker = new PlanVersionTracker(vertx, changeVersionClient, metrics);
+    }
+
+    @AfterEach
+    void tearDown() {
+        vertx.close();
+    }
+
+    @Test
+    void shouldAdvanceHostVersionOnlyForChangedHosts() {
+        String before = tracker.currentVersion(HOST_KEY);
+        String otherBefore = tracker.currentVersion("vendor1^^us-east^^host2");
+
+        changeVersionClient.committed(ChangeVersionClient.REALLOCATED_PLANS, 8L);
+        tracker.plansChanged(Collections.singletonList(plan("host1")));
+
+        assertThat(tracker.currentVersion(HOST_KEY), not(equalTo(before)));
+        assertThat(tracker.currentVersion("vendor1^^us-east^^host2"), equalTo(otherBefore));
+    }
+
+    @Test
+    void shouldNotAdvanceHostVersionWhenWeightsAreUnchanged() {
+        changeVersionClient.committed(ChangeVersionClient.REALLOCATED_PLANS, 8L);
+        tracker.plansChanged(Collections.singletonList(plan("host1", 40.0)));
+        String before = tracker.currentVersion(HOST_KEY);
+
+        changeVersionClient.committed(ChangeVersionClient.REALLOCATED_PLANS, 9L);
+        tracker.plansChanged(Collections.singletonList(plan("host1", 40.0)));
+        assertThat(tracker.currentVersion(HOST_KEY), equalTo(before));
+
+        changeVersionClient.committed(ChangeVersionClient.REALLOCATED_PLANS, 10L);
+        tracker.plansChanged(Collections.singletonList(plan("host1", 60.0)));
+        assertThat(tracker.currentVersion(HOST_KEY), not(equalTo(before)));
+    }
+
+    @Test
+    void shouldNotDeemCatalogStableWhileChangeIsInFlight() {
+        long version = tracker.getCatalogVersion();
+        assertThat(tracker.isCatalogStable(version), is(true));
+
+        tracker.beginCatalogChange();
+        assertThat(tracker.isCatalogStable(tracker.getCatalogVersion()), is(false));
+
+        changeVersionClient.committed(ChangeVersionClient.LINE_ITEMS, 3L);
+        tracker.endCatalogChange();
+        assertThat(tracker.getCatalogVersion(), equalTo(3L));
+        assertThat(tracker.isCatalogStable(version), is(false));
+        assertThat(tracker.isCatalogStable(tracker.getCatalogVersion()), is(true));
+    }
+
+    @Test
+    void shouldHandOutSameVersionsAsOtherInstancesForSameChanges() {
+        Metrics metrics = new Metrics(new MetricRegistry());
+        PlanVersionTracker other = new PlanVersionTracker(vertx, new ChangeVersionClient(metrics), metrics);
+
+        tracker.seed(3L, 7L);
+        other.seed(3L, 7L);
+        assertThat(tracker.currentVersion(HOST_KEY), equalTo("3.7"));
+        assertThat(other.currentVersion(HOST_KEY), equalTo("3.7"));
+
+        // written here, followed elsewhere
+        changeVersionClient.committed(ChangeVersionClient.LINE_ITEMS, 4L);
+        tracker.beginCatalogChange();
+        tracker.endCatalogChange();
+        other.catalogChanged(4L);
+        changeVersionClient.committed(ChangeVersionClient.REALLOCATED_PLANS, 8L);
+        tracker.plansChanged(Collections.singletonList(plan("host1", 40.0)));
+        other.plansChanged(Collections.singletonList(plan("host1", 40.0)), 8L);
+
+        assertThat(tracker.currentVersion(HOST_KEY), equalTo("4.8"));
+        assertThat(other.currentVersion(HOST_KEY), equalTo("4.8"));
+    }
+
+    @Test
+    void shouldNotGoBackToOlderCatalogVersion() {
+        tracker.seed(5L, 7L);
+
+        tracker.catalogChanged(4L);
+        tracker.seed(6L, 7L);
+
+        assertThat(tracker.getCatalogVersion(), equalTo(5L));
+    }
+
+    @Test
+    void shouldCompareHostPlanPartOfVersions() {
+        assertThat(PlanVersionTracker.catalogVersionOf("12.34"), equalTo(12L));
+        assertThat(PlanVersionTracker.catalogVersionOf("garbage"), nullValue());
+        assertThat(PlanVersionTracker.isSameHostPlan("12.34", "13.34"), is(true));
+        assertThat(PlanVersionTracker.isSameHostPlan("12.34", "12.35"), is(false));
+        assertThat(PlanVersionTracker.isSameHostPlan(null, "12.35"), is(false));
+    }
+
+    @Test
+    void shouldWakeUpParkedRequestOnPlanChange(VertxTestContext context) {
+        String version = tracker.currentVersion(HOST_KEY);
+        tracker.awaitChange(HOST_KEY, version, 10_000, changed -> context.verify(() -> {
+            assertThat(changed, is(true));
+            assertThat(tracker.getParked(), equalTo(0));
+            context.completeNow();
+        }));
+        assertThat(tracker.getParked(), equalTo(1));
+
+        changeVersionClient.committed(ChangeVersionClient.REALLOCATED_PLANS, 8L);
+        tracker.plansChanged(Collections.singletonList(plan("host1")));
+    }
+
+    @Test
+    void shouldWakeUpParkedRequestOnCatalogChange(VertxTestContext context) {
+        String version = tracker.currentVersion(HOST_KEY);
+        tracker.awaitChange(HOST_KEY, version, 10_000, changed -> context.verify(() -> {
+            assertThat(changed, is(true));
+            context.completeNow();
+        }));
+
+        changeVersionClient.committed(ChangeVersionClient.LINE_ITEMS, 3L);
+        tracker.beginCatalogChange();
+        tracker.endCatalogChange();
+    }
+
+    @Test
+    void shouldTimeOutParkedRequest(VertxTestContext context) {
+        String version = tracker.currentVersion(HOST_KEY);
+        tracker.awaitChange(HOST_KEY, version, 10, changed -> context.verify(() -> {
+            assertThat(changed, is(false));
+            assertThat(tracker.getParked(), equalTo(0));
+            context.completeNow();
+        }));
+    }
+
+    @Test
+    void shouldReturnRightAwayWhenVersionIsOutdated(VertxTestContext context) {
+        tracker.awaitChange(HOST_KEY, "1.1", 10_000, changed -> context.verify(() -> {
+            assertThat(changed, is(true));
+            context.completeNow();
+        }));
+    }
+
+    @Test
+    void shouldNotCallHandlerOfCancelledWaiter() {
+        PlanVersionTracker.Waiter waiter = tracker.awaitChange(HOST_KEY, tracker.currentVersion(HOST_KEY), 10_000,
+                changed -> {
+                    throw new IllegalStateException("should not be called");
+                });
+
+        tracker.cancel(waiter);
+        tracker.beginCatalogChange();
+        tracker.endCatalogChange();
+
+        assertThat(tracker.getParked(), equalTo(0));
+    }
+
+    private ReallocatedPlan plan(String instanceId) {
+        return ReallocatedPlan.builder().vendor("vendor1").region("us-east").instanceId(instanceId).build();
+    }
+
+    private ReallocatedPlan plan(String instanceId, double weight) {
+        Weightage weightage = Weightage.builder().bidderCode("bidder1").lineItemId("1111").weight(weight).build();
+        ReallocationWeights weights = ReallocationWeights.builder()
+                .weights(Collections.singletonList(weightage)).build();
+        return ReallocatedPlan.builder().vendor("vendor1").region("us-east").instanceId(instanceId)
+                .reallocationWeights(weights).build();
+    }
+
+}
@@ -17,11 +17,13 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.prebid.pg.gp.server.http.AlertProxyHttpClient;
 import org.prebid.pg.gp.server.http.CircuitBreakerSecuredPlannerAdapterHttpClient;
 import org.prebid.pg.gp.server.jdbc.CircuitBreakerSecuredPlannerDataAccessClient;
+import org.prebid.pg.gp.server.jdbc.LeaderLeaseClient;
 import org.prebid.pg.gp.server.metric.Metrics;
 import org.prebid.pg.gp.server.model.AdminTracer;
 import org.prebid.pg.gp.server.model.HttpResponseContainer;
 import org.prebid.pg.gp.server.model.Shutdown;
 import org.prebid.pg.gp.server.model.TracerFilters;
+import org.prebid.pg.gp.server.spring.config.app.LeaderElectionConfiguration;
 import org.prebid.pg.gp.server.spring.config.app.PlannerAdapterConfigurations;
 import org.springframework.core.io.ClassPathResource;
 
@@ -57,6 +59,8 @@ class PlannerAdapterServiceTest {
 
     private AlertProxyHttpClient alertProxyHttpClient;
 
+    private LineItemsTokensRollup tokensRollup;
+
     private Shutdown shutdown;
 
     private String vendor = "vendor1";
@@ -81,6 +85,8 @@ class PlannerAdapterServiceTest {
         circuitBreakerSecuredPlannerAdapterHttpClient = mock(CircuitBreakerSecuredPlannerAdapterHttpClient.class);
         circuitBreakerSecuredPlannerDataAccessClient = mock(CircuitBreakerSecuredPlannerDataAccessClient.class);
         alertProxyHttpClient = mock(AlertProxyHttpClient.class);
+        tokensRollup = mock(LineItemsTokensRollup.class);
+        given(tokensRollup.record(any())).willReturn(Future.succeededFuture());
 
         shutdown = new Shutdown();
 
@@ -96,7 +102,8 @@ class PlannerAdapterServiceTest {
         plannerAdapterService = new PlannerAdapterService(
                 vertx, "MyMac", plannerAdapterConfiguration,
                 circuitBreakerSecuredPlannerDataAccessClient, circuitBreakerSecuredPlannerAdapterHttpClient,
-                10, new Metrics(new MetricRegistry()), tracer, shutdown, alertProxyHttpClient);
+                10, new Metrics(new MetricRegistry()), tracer, shutdown, alertProxyHttpClient,
+                mock(PlanVersionTracker.class), soleLeader(), tokensRollup);
 
         objectMapper.findAndRegisterModules();
     }
@@ -129,7 +136,7 @@ class PlannerAdapterServiceTest {
 
         given(circuitBreakerSecuredPlannerAdapterHttpClient.request(any(), any(), any(), any(), any())).willReturn(
                 Future.succeededFuture(HttpResponseContainer.builder().body(content).statusCode(200).build()));
-        given(circuitBreakerSecuredPlannerDataAccessClient.updateLineItems(any(), anyInt())).willReturn(
+        given(circuitBreakerSecuredPlannerDataAccessClient.updateLineItems(any(), anyInt(), any())).willReturn(
                 Future.succeededFuture());
         given(circuitBreakerSecuredPlannerDataAccessClient.updateSystemStateWithUTCTime(any())).willReturn(
                 Future.succeededFuture(new UpdateResult()));
@@ -138,6 +145,7 @@ class PlannerAdapterServiceTest {
 
         verify(circuitBreakerSecuredPlannerAdapterHttpClient)
                 .request(HttpMethod.GET, buildUrl(), "rp", "rp_password", null);
+        verify(tokensRollup).record(any());
         verify(circuitBreakerSecuredPlannerDataAccessClient).updateSystemStateWithUTCTime(any());
     }
 
@@ -154,7 +162,7 @@ class PlannerAdapterServiceTest {
         String now = "2019-01-28T22:16:44.000Z";
         given(circuitBreakerSecuredPlannerAdapterHttpClient.request(any(), any(), any(), any(), any())).willReturn(
                 Future.succeededFuture(HttpResponseContainer.builder().body(content).statusCode(200).build()));
-        given(circuitBreakerSecuredPlannerDataAccessClient.updateLineItems(any(), anyInt())).willReturn(
+        given(circuitBreakerSecuredPlannerDataAccessClient.updateLineItems(any(), anyInt(), any())).willReturn(
                 Future.succeededFuture());
         given(circuitBreakerSecuredPlannerDataAccessClient.updateSystemStateWithUTCTime(any())).willReturn(
                 Future.succeededFuture(new UpdateResult()));
@@ -182,12 +190,12 @@ class PlannerAdapterServiceTest {
                 Future.succeededFuture(HttpResponseContainer.builder().body(content).statusCode(200).build()));
         given(circuitBreakerSecuredPlannerDataAccessClient.updateSystemStateWithUTCTime(any())).willReturn(
                 Future.succeededFuture(new UpdateResult()));
-        given(circuitBreakerSecuredPlannerDataAccessClient.updateLineItems(any(), anyInt()))
+        given(circuitBreakerSecuredPlannerDataAccessClient.updateLineItems(any(), anyInt(), any()))
                 .willReturn(Future.succeededFuture());
 
         plannerAdapterService.refreshPlans();
 
-        verify(circuitBreakerSecuredPlannerDataAccessClient, times(1)).updateLineItems(any(), anyInt());
+        verify(circuitBreakerSecuredPlannerDataAccessClient, times(1)).updateLineItems(any(), anyInt(), any());
     }
 
     @Test
@@ -204,19 +212,19 @@ class PlannerAdapterServiceTest {
                 Future.succeededFuture(HttpResponseContainer.builder().body(content).statusCode(200).build()));
         given(circuitBreakerSecuredPlannerDataAccessClient.updateSystemStateWithUTCTime(any())).willReturn(
                 Future.succeededFuture(new UpdateResult()));
-        given(circuitBreakerSecuredPlannerDataAccessClient.updateLineItems(any(), anyInt()))
+        given(circuitBreakerSecuredPlannerDataAccessClient.updateLineItems(any(), anyInt(), any()))
                 .willReturn(Future.succeededFuture());
 
         plannerAdapterService.refreshPlans();
 
-        verify(circuitBreakerSecuredPlannerDataAccessClient, times(0)).updateLineItems(any(), anyInt());
+        verify(circuitBreakerSecuredPlannerDataAccessClient, times(0)).updateLineItems(any(), anyInt(), any());
     }
 
     @Test
     void shouldNotUpdateSystemStateOnMissingHttpResponseBodyAndStatusCodeNotEqualTo204FromPlannerAdapter() throws Exception {
         given(circuitBreakerSecuredPlannerAdapterHttpClient.request(any(), any(), any(), any(), any())).willReturn(
                 Future.succeededFuture(HttpResponseContainer.builder().statusCode(200).build()));
-        given(circuitBreakerSecuredPlannerDataAccessClient.updateLineItems(any(), anyInt())).willReturn(
+        given(circuitBreakerSecuredPlannerDataAccessClient.updateLineItems(any(), anyInt(), any())).willReturn(
                 Future.succeededFuture());
         given(circuitBreakerSecuredPlannerDataAccessClient.updateSystemStateWithUTCTime(any())).willReturn(
                 Future.succeededFuture(new UpdateResult()));
@@ -233,7 +241,7 @@ class PlannerAdapterServiceTest {
     void shouldUpdateSystemStateOnMissingHttpResponseBodyAndStatusCodeEqualTo204FromPlannerAdapter() throws Exception {
         given(circuitBreakerSecuredPlannerAdapterHttpClient.request(any(), any(), any(), any(), any())).willReturn(
                 Future.succeededFuture(HttpResponseContainer.builder().statusCode(204).build()));
-        given(circuitBreakerSecuredPlannerDataAccessClient.updateLineItems(any(), anyInt())).willReturn(
+        given(circuitBreakerSecuredPlannerDataAccessClient.updateLineItems(any(), anyInt(), any())).willReturn(
                 Future.succeededFuture());
         given(circuitBreakerSecuredPlannerDataAccessClient.updateSystemStateWithUTCTime(any())).willReturn(
                 Future.succeededFuture(new UpdateResult()));
@@ -253,7 +261,7 @@ class PlannerAdapterServiceTest {
     void shouldNotUpdateSystemStateOnEmptyHttpResponseBodyAndStatusCodeNotEqualTo204FromPlannerAdapter() throws Exception {
         given(circuitBreakerSecuredPlannerAdapterHttpClient.request(any(), any(), any(), any(), any())).willReturn(
                 Future.succeededFuture(HttpResponseContainer.builder().body("").statusCode(200).build()));
-        given(circuitBreakerSecuredPlannerDataAccessClient.updateLineItems(any(), anyInt())).willReturn(
+        given(circuitBreakerSecuredPlannerDataAccessClient.updateLineItems(any(), anyInt(), any())).willReturn(
                 Future.succeededFuture());
         given(circuitBreakerSecuredPlannerDataAccessClient.updateSystemStateWithUTCTime(any())).willReturn(
                 Future.succeededFuture(new UpdateResult()));
@@ -279,7 +287,7 @@ class PlannerAdapterServiceTest {
     void shouldUpdateSystemStateOnEmptyHttpResponseBodyAndStatusCodeEqualTo204FromPlannerAdapter() throws Exception {
         given(circuitBreakerSecuredPlannerAdapterHttpClient.request(any(), any(), any(), any(), any())).willReturn(
                 Future.succeededFuture(HttpResponseContainer.builder().body("").statusCode(204).build()));
-        given(circuitBreakerSecuredPlannerDataAccessClient.updateLineItems(any(), anyInt())).willReturn(
+        given(circuitBreakerSecuredPlannerDataAccessClient.updateLineItems(any(), anyInt(), any())).willReturn(
                 Future.succeededFuture());
         given(circuitBreakerSecuredPlannerDataAccessClient.updateSystemStateWithUTCTime(any())).willReturn(
                 Future.succeededFuture(new UpdateResult()));
@@ -295,7 +303,7 @@ class PlannerAdapterServiceTest {
     void shouldNotUpdateSystemStateOnErrorStatusCodeFromPlannerAdapter() {
         given(circuitBreakerSecuredPlannerAdapterHttpClient.request(any(), any(), any(), any(), any())).willReturn(
                 Future.succeededFuture(HttpResponseContainer.builder().body("content").statusCode(400).build()));
-        given(circuitBreakerSecuredPlannerDataAccessClient.updateLineItems(any(), anyInt())).willReturn(
+        given(circuitBreakerSecuredPlannerDataAccessClient.updateLineItems(any(), anyInt(), any())).willReturn(
                 Future.succeededFuture());
         given(circuitBreakerSecuredPlannerDataAccessClient.updateSystemStateWithUTCTime(any())).willReturn(
                 Future.succeededFuture(new UpdateResult()));
@@ -327,5 +335,11 @@ class PlannerAdapterServiceTest {
         return new String(Files.readAllBytes(resource1.toPath()));
     }
 
-}
+    private static LeaderElection soleLeader() {
+        LeaderElectionConfiguration config = new LeaderElectionConfiguration();
+        config.setEnabled(false);
+        return new LeaderElection(mock(Vertx.class), config, mock(LeaderLeaseClient.class), "test",
+                new Metrics(new MetricRegistry()), new Shutdown());
+    }
 
+}
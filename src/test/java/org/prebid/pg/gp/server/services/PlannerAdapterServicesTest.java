@@ -6,9 +6,11 @@ import org.junit.jupiter.api.Test;
 import org.prebid.pg.gp.server.http.AlertProxyHttpClient;
 import org.prebid.pg.gp.server.http.CircuitBreakerSecuredPlannerAdapterHttpClient;
 import org.prebid.pg.gp.server.jdbc.CircuitBreakerSecuredPlannerDataAccessClient;
+import org.prebid.pg.gp.server.jdbc.LeaderLeaseClient;
 import org.prebid.pg.gp.server.metric.Metrics;
 import org.prebid.pg.gp.server.model.AdminTracer;
 import org.prebid.pg.gp.server.model.Shutdown;
+import org.prebid.pg.gp.server.spring.config.app.LeaderElectionConfiguration;
 import org.prebid.pg.gp.server.spring.config.app.PlannerAdapterConfigurations;
 import org.prebid.pg.gp.server.spring.config.app.PlannerAdapterConfigurations.PlannerAdapterConfiguration;
 
@@ -44,7 +46,16 @@ public class PlannerAdapterServicesTest {
         PlannerAdapterServices services = new PlannerAdapterServices(Vertx.vertx());
         services.initialize(
                 "foo", configs, dataAccessClientMock, httpClients,
-                new Metrics(new MetricRegistry()), new AdminTracer(), new Shutdown(), alertProxyHttpClientMock
+                new Metrics(new MetricRegistry()), new AdminTracer(), new Shutdown(), alertProxyHttpClientMock,
+                mock(PlanVersionTracker.class), soleLeader(), mock(LineItemsTokensRollup.class)
         );
     }
+
+    private static LeaderElection soleLeader() {
+        LeaderElectionConfiguration config = new LeaderElectionConfiguration();
+        config.setEnabled(false);
+        return new LeaderElection(mock(Vertx.class), config, mock(LeaderLeaseClient.class), "test",
+                new Metrics(new MetricRegistry()), new Shutdown());
+    }
+
 }
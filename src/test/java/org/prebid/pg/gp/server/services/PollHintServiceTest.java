@@ -0,0 +1,100 @@
+package org.prebid.pg.gp.server.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.prebid.pg.gp.server.breaker.AdmissionController;
+import org.prebid.pg.gp.server.spring.config.app.PollHintConfiguration;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+class PollHintServiceTest {
+
+    private static final Instant NOW = Instant.parse("2019-10-10T10:10:00Z");
+
+    private PollHintConfiguration config;
+
+    private HostReallocationService reallocationService;
+
+    private AdmissionController admissionController;
+
+    private PollHintService pollHintService;
+
+    @BeforeEach
+    void setUp() {
+        config = new PollHintConfiguration();
+        config.setEnabled(true);
+        config.setPlansMinDelaySec(5);
+        config.setPlansMaxDelaySec(300);
+        config.setPlansSettleSec(2);
+        config.setPlansSpreadSec(0);
+        config.setRegistrationIntervalSec(60);
+        config.setMaxLoadBackoffSec(60);
+
+        reallocationService = mock(HostReallocationService.class);
+        given(reallocationService.getRefreshPeriodSec()).willReturn(30);
+        admissionController = mock(AdmissionController.class);
+        pollHintService = new PollHintService(config, reallocationService, admissionController);
+    }
+
+    @Test
+    void shouldReturnNullWhenDisabled() {
+        config.setEnabled(false);
+
+        assertThat(pollHintService.nextPlansPollSec("v", "r", "i", NOW), nullValue());
+        assertThat(pollHintService.nextRegistrationSec("v", "r", "i", NOW), nullValue());
+    }
+
+    @Test
+    void shouldHintPlansPollRightAfterNextReallocationCycle() {
+        given(reallocationService.nextCycleExpectedFinishAt()).willReturn(NOW.plusSeconds(10));
+
+        assertThat(pollHintService.nextPlansPollSec("v", "r", "i", NOW), equalTo(12));
+    }
+
+    @Test
+    void shouldSkipToLaterReallocationCycleWhenNextIsTooClose() {
+        config.setPlansMinDelaySec(15);
+        given(reallocationService.nextCycleExpectedFinishAt()).willReturn(NOW.plusSeconds(1));
+
+        assertThat(pollHintService.nextPlansPollSec("v", "r", "i", NOW), equalTo(33));
+    }
+
+    @Test
+    void shouldStretchPlansPollUnderLoad() {
+        given(reallocationService.nextCycleExpectedFinishAt()).willReturn(NOW.plusSeconds(10));
+        given(admissionController.getUtilization()).willReturn(0.5);
+
+        assertThat(pollHintService.nextPlansPollSec("v", "r", "i", NOW), equalTo(42));
+    }
+
+    @Test
+    void shouldHintRegistrationWithinInterval() {
+        Integer delay = pollHintService.nextRegistrationSec("v", "r", "i", NOW);
+
+        assertThat(delay, greaterThan(0));
+        assertThat(delay, lessThanOrEqualTo(60));
+    }
+
+    @Test
+    void shouldSpreadHostsOverWindow() {
+        Set<Long> offsets = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            long offset = PollHintService.offset("v", "r", "host" + i, 20_000);
+            assertThat(offset, lessThan(20_000L));
+            offsets.add(offset / 1000);
+        }
+        assertThat(offsets.size(), greaterThan(15));
+    }
+
+}
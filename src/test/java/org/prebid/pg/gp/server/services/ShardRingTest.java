@@ -0,0 +1,82 @@
+package org.prebid.pg.gp.server.services;
+
+import org.junit.jupiter.api.Test;
+import org.prebid.pg.gp.server.model.GpInstance;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.number.OrderingComparison.greaterThan;
+import static org.hamcrest.number.OrderingComparison.lessThan;
+
+class ShardRingTest {
+
+    private static final int HOSTS = 3000;
+
+    @Test
+    void shouldSpreadHostsEvenly() {
+        ShardRing ring = new ShardRing(Arrays.asList(instance("gp1"), instance("gp2"), instance("gp3")), 64);
+
+        Map<GpInstance, Integer> counts = new HashMap<>();
+        for (int i = 0; i < HOSTS; i++) {
+            counts.merge(ring.ownerOf(hostKey(i)), 1, Integer::sum);
+        }
+
+        assertThat(counts.size(), equalTo(3));
+        counts.values().forEach(count -> {
+            assertThat(count, greaterThan(HOSTS / 3 / 2));
+            assertThat(count, lessThan(HOSTS / 3 * 2));
+        });
+    }
+
+    @Test
+    void shouldMoveOnlyHostsOfLeavingInstance() {
+        GpInstance gp3 = instance("gp3");
+        ShardRing before = new ShardRing(Arrays.asList(instance("gp1"), instance("gp2"), gp3), 64);
+        ShardRing after = new ShardRing(Arrays.asList(instance("gp2"), instance("gp1")), 64);
+
+        for (int i = 0; i < HOSTS; i++) {
+            GpInstance owner = before.ownerOf(hostKey(i));
+            if (!owner.equals(gp3)) {
+                assertThat(after.ownerOf(hostKey(i)), equalTo(owner));
+            }
+        }
+    }
+
+    @Test
+    void shouldBeIndependentOfInstanceOrder() {
+        List<GpInstance> instances = Arrays.asList(instance("gp1"), instance("gp2"), instance("gp3"));
+        ShardRing ring = new ShardRing(instances, 16);
+        Collections.reverse(instances);
+        ShardRing reversed = new ShardRing(instances, 16);
+
+        assertThat(reversed.getInstances(), equalTo(ring.getInstances()));
+        for (int i = 0; i < 100; i++) {
+            assertThat(reversed.ownerOf(hostKey(i)), equalTo(ring.ownerOf(hostKey(i))));
+        }
+    }
+
+    @Test
+    void shouldHaveNoOwnerOnEmptyRing() {
+        ShardRing ring = new ShardRing(Collections.emptyList(), 64);
+
+        assertThat(ring.ownerOf(hostKey(1)), nullValue());
+        assertThat(ring.getInstances().isEmpty(), is(true));
+    }
+
+    private static String hostKey(int i) {
+        return String.format("vendor1^^us-east^^host%d", i);
+    }
+
+    private static GpInstance instance(String instanceId) {
+        return GpInstance.builder().instanceId(instanceId).baseUrl("http://" + instanceId + ":8080").build();
+    }
+
+}